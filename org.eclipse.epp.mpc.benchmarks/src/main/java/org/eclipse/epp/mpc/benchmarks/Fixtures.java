@@ -0,0 +1,47 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.mpc.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Access to the recorded marketplace responses used as benchmark input.
+ *
+ * @author Carsten Reckord
+ */
+public final class Fixtures {
+
+	private Fixtures() {
+	}
+
+	/**
+	 * Read the fixture with the given name completely, so reading it doesn't count towards the benchmark.
+	 */
+	public static byte[] read(String name) {
+		try (InputStream in = Fixtures.class.getResourceAsStream("fixtures/" + name)) { //$NON-NLS-1$
+			if (in == null) {
+				throw new IllegalArgumentException(name);
+			}
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+				out.write(buffer, 0, read);
+			}
+			return out.toByteArray();
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
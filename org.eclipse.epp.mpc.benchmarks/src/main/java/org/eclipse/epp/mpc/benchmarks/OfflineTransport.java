@@ -0,0 +1,149 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.mpc.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.epp.internal.mpc.core.service.DefaultMarketplaceService;
+import org.eclipse.epp.mpc.core.service.ITransport;
+import org.eclipse.epp.mpc.core.service.ITransportFactory;
+
+/**
+ * Serves recorded {@link Fixtures} instead of going to the network, similar to the tests' MappedTransportFactory.
+ * Requests are mapped by the first matching path prefix relative to the base URI, ignoring query parameters, so the
+ * same fixture answers e.g. all node requests.
+ *
+ * @author Carsten Reckord
+ */
+public class OfflineTransport implements ITransport, ITransportFactory {
+
+	private final URI baseUri;
+
+	private final Map<String, Function<String, byte[]>> responses = new LinkedHashMap<>();
+
+	private final AtomicLong requestCount = new AtomicLong();
+
+	public OfflineTransport(URI baseUri) {
+		String base = baseUri.toString();
+		this.baseUri = base.endsWith("/") ? baseUri : URI.create(base + '/'); //$NON-NLS-1$
+	}
+
+	/**
+	 * Create a transport answering the requests of a {@link DefaultMarketplaceService} for the given base URL.
+	 */
+	public static OfflineTransport forMarketplace(URL baseUrl) {
+		return forMarketplace(baseUrl, id -> true);
+	}
+
+	/**
+	 * Create a transport answering the requests of a {@link DefaultMarketplaceService} for the given base URL, where
+	 * only the nodes with ids matching the given filter are installable.
+	 *
+	 * @see #mapNodes(String, String, Predicate)
+	 */
+	public static OfflineTransport forMarketplace(URL baseUrl, Predicate<String> installable) {
+		try {
+			return new OfflineTransport(baseUrl.toURI()) //
+					.mapNodes(DefaultMarketplaceService.API_NODE_URI + '/', "node.xml", installable) //$NON-NLS-1$
+					.map(DefaultMarketplaceService.API_SEARCH_URI_FULL, "search.xml") //$NON-NLS-1$
+					.map(DefaultMarketplaceService.API_FEATURED_URI, "featured.xml") //$NON-NLS-1$
+					.map(DefaultMarketplaceService.API_RECENT_URI, "recent.xml") //$NON-NLS-1$
+					.map(DefaultMarketplaceService.API_FAVORITES_URI, "favorites.xml") //$NON-NLS-1$
+					.map(DefaultMarketplaceService.API_URI_SUFFIX, "marketplace-root.xml"); //$NON-NLS-1$
+		} catch (URISyntaxException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+
+	/**
+	 * Answer all requests whose path starts with the given prefix with the given fixture. Mappings are checked in the
+	 * order they were added.
+	 */
+	public OfflineTransport map(String pathPrefix, String fixture) {
+		byte[] response = Fixtures.read(fixture);
+		responses.put(pathPrefix, path -> response);
+		return this;
+	}
+
+	/**
+	 * Answer node requests of the form <code>pathPrefix/id[,id...]/...</code> with the given single node fixture,
+	 * repeated for and changed to have each requested id. This allows to request many different nodes, e.g. to fill a
+	 * cache.
+	 */
+	public OfflineTransport mapNodes(String pathPrefix, String fixture) {
+		return mapNodes(pathPrefix, fixture, id -> true);
+	}
+
+	/**
+	 * Like {@link #mapNodes(String, String)}, but nodes whose id doesn't match the given filter are answered without
+	 * their installable units, like nodes that aren't compatible with the running platform.
+	 */
+	public OfflineTransport mapNodes(String pathPrefix, String fixture, Predicate<String> installable) {
+		String document = new String(Fixtures.read(fixture), StandardCharsets.UTF_8);
+		int nodeStart = document.indexOf("<node "); //$NON-NLS-1$
+		int nodeEnd = document.indexOf("</node>") + "</node>".length(); //$NON-NLS-1$ //$NON-NLS-2$
+		String prefix = document.substring(0, nodeStart);
+		String suffix = document.substring(nodeEnd);
+		String template = document.substring(nodeStart, nodeEnd).replaceFirst("<node id=\"[^\"]*\"", //$NON-NLS-1$
+				"<node id=\"{0}\""); //$NON-NLS-1$
+		String uninstallableTemplate = template.replaceFirst("(?s)<ius>.*</ius>", ""); //$NON-NLS-1$ //$NON-NLS-2$
+		Map<String, byte[]> nodeResponses = new ConcurrentHashMap<>();
+		responses.put(pathPrefix, path -> {
+			int idEnd = path.indexOf('/', pathPrefix.length());
+			String ids = path.substring(pathPrefix.length(), idEnd == -1 ? path.length() : idEnd);
+			return nodeResponses.computeIfAbsent(ids, nodeIds -> {
+				StringBuilder response = new StringBuilder(prefix);
+				for (String id : nodeIds.split(",")) { //$NON-NLS-1$
+					String node = installable.test(id) ? template : uninstallableTemplate;
+					response.append(node.replace("{0}", id)); //$NON-NLS-1$
+				}
+				return response.append(suffix).toString().getBytes(StandardCharsets.UTF_8);
+			});
+		});
+		return this;
+	}
+
+	@Override
+	public InputStream stream(URI location, IProgressMonitor monitor) throws FileNotFoundException {
+		requestCount.incrementAndGet();
+		String path = baseUri.relativize(location).getPath();
+		for (Map.Entry<String, Function<String, byte[]>> response : responses.entrySet()) {
+			if (path.startsWith(response.getKey())) {
+				return new ByteArrayInputStream(response.getValue().apply(path));
+			}
+		}
+		throw new FileNotFoundException(location.toString());
+	}
+
+	@Override
+	public ITransport getTransport() {
+		return this;
+	}
+
+	public long getRequestCount() {
+		return requestCount.get();
+	}
+}
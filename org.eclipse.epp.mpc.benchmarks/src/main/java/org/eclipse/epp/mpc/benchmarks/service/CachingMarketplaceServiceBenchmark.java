@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.mpc.benchmarks.service;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.epp.internal.mpc.core.service.CachingMarketplaceService;
+import org.eclipse.epp.internal.mpc.core.service.DefaultMarketplaceService;
+import org.eclipse.epp.mpc.benchmarks.OfflineTransport;
+import org.eclipse.epp.mpc.core.model.INode;
+import org.eclipse.epp.mpc.core.model.ISearchResult;
+import org.eclipse.epp.mpc.core.service.QueryHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Lookups through a {@link CachingMarketplaceService} from many threads at once, as happens when the discovery
+ * viewer resolves nodes, icons and install state in parallel. The wrapped service runs against an
+ * {@link OfflineTransport}, so cache misses only cost the parsing of a recorded response.
+ *
+ * @author Carsten Reckord
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class CachingMarketplaceServiceBenchmark {
+
+	/**
+	 * Number of distinct nodes looked up, all of them fit into the cache
+	 */
+	@Param({ "1", "500" })
+	public int nodeCount;
+
+	private INode[] nodes;
+
+	private CachingMarketplaceService cachingService;
+
+	private DefaultMarketplaceService uncachedService;
+
+	@State(Scope.Thread)
+	public static class Lookup {
+
+		private int next;
+
+		INode nextNode(INode[] nodes) {
+			return nodes[next++ % nodes.length];
+		}
+	}
+
+	@Setup
+	public void setUp() throws CoreException {
+		uncachedService = new DefaultMarketplaceService(DefaultMarketplaceService.DEFAULT_SERVICE_URL,
+				OfflineTransport.forMarketplace(DefaultMarketplaceService.DEFAULT_SERVICE_URL));
+		cachingService = new CachingMarketplaceService(uncachedService);
+
+		nodes = new INode[nodeCount];
+		for (int i = 0; i < nodeCount; i++) {
+			nodes[i] = QueryHelper.nodeById(Integer.toString(1000 + i));
+			cachingService.getNode(nodes[i], new NullProgressMonitor());
+		}
+		cachingService.featured(new NullProgressMonitor());
+	}
+
+	@Benchmark
+	public INode cachedGetNode(Lookup lookup) throws CoreException {
+		return cachingService.getNode(lookup.nextNode(nodes), new NullProgressMonitor());
+	}
+
+	@Benchmark
+	public ISearchResult cachedFeatured() throws CoreException {
+		return cachingService.featured(new NullProgressMonitor());
+	}
+
+	@Benchmark
+	public INode uncachedGetNode(Lookup lookup) throws CoreException {
+		return uncachedService.getNode(lookup.nextNode(nodes), new NullProgressMonitor());
+	}
+}
@@ -0,0 +1,181 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.mpc.benchmarks.service;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.epp.internal.mpc.core.service.DefaultMarketplaceService;
+import org.eclipse.epp.mpc.benchmarks.OfflineTransport;
+import org.eclipse.epp.mpc.core.model.IFavoriteList;
+import org.eclipse.epp.mpc.core.model.INode;
+import org.eclipse.epp.mpc.core.model.ISearchResult;
+import org.eclipse.epp.mpc.core.service.IMarketplaceStorageService;
+import org.eclipse.epp.mpc.core.service.IUserFavoritesService;
+import org.eclipse.epp.mpc.core.service.QueryHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compatibility filtering, as covered by the remote SolutionCompatibilityFilterTest. Listing requests carry the os,
+ * product and platform meta parameters of the running system and are filtered by the server, so on the client they
+ * only cost request assembly and parsing. Favorites are resolved by id instead, and the
+ * {@link DefaultMarketplaceService} itself drops the ones without installable units from a user's favorites, or sorts
+ * them last in a favorites list. Runs against an {@link OfflineTransport} where every other node is not installable.
+ *
+ * @author Carsten Reckord
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompatibilityFilterBenchmark {
+
+	private static final URI FAVORITES_LIST = URI.create("https://marketplace.eclipse.org/user/nobody/favorites"); //$NON-NLS-1$
+
+	/**
+	 * Number of favorite nodes, half of them installable
+	 */
+	@Param({ "10", "200" })
+	public int favoriteCount;
+
+	private DefaultMarketplaceService service;
+
+	/**
+	 * Answers with a fixed list of favorite nodes, which the {@link DefaultMarketplaceService} then resolves and
+	 * filters.
+	 */
+	private static class FixedFavorites implements IUserFavoritesService {
+
+		private final List<INode> favorites;
+
+		FixedFavorites(List<INode> favorites) {
+			this.favorites = favorites;
+		}
+
+		@Override
+		public List<INode> getFavorites(IProgressMonitor monitor) {
+			return new ArrayList<>(favorites);
+		}
+
+		@Override
+		public List<INode> getFavorites(URI user, IProgressMonitor monitor) {
+			return new ArrayList<>(favorites);
+		}
+
+		@Override
+		public IMarketplaceStorageService getStorageService() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Integer getFavoriteCount(INode node) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Set<String> getFavoriteIds(IProgressMonitor monitor) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void setFavorites(Collection<? extends INode> nodes, IProgressMonitor monitor) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void setFavorite(INode node, boolean favorite, IProgressMonitor monitor) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void addFavorites(Collection<? extends INode> nodes, IProgressMonitor monitor) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void removeFavorites(Collection<? extends INode> nodes, IProgressMonitor monitor) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public List<String> getFavoriteIds(URI user, IProgressMonitor monitor) throws IOException {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public List<IFavoriteList> getRandomFavoriteLists(IProgressMonitor monitor) throws IOException {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	@Setup
+	public void setUp() {
+		service = new DefaultMarketplaceService(DefaultMarketplaceService.DEFAULT_SERVICE_URL, OfflineTransport
+				.forMarketplace(DefaultMarketplaceService.DEFAULT_SERVICE_URL, id -> Integer.parseInt(id) % 2 == 0));
+		Map<String, String> metaParams = new HashMap<>();
+		metaParams.put(DefaultMarketplaceService.META_PARAM_CLIENT, "org.eclipse.epp.mpc.core"); //$NON-NLS-1$
+		metaParams.put(DefaultMarketplaceService.META_PARAM_OS, "linux"); //$NON-NLS-1$
+		metaParams.put(DefaultMarketplaceService.META_PARAM_PRODUCT, "epp.package.java"); //$NON-NLS-1$
+		metaParams.put(DefaultMarketplaceService.META_PARAM_PRODUCT_VERSION, "4.4.2.20150219-0708"); //$NON-NLS-1$
+		metaParams.put(DefaultMarketplaceService.META_PARAM_PLATFORM_VERSION, "4.4.2.v20150204-1700"); //$NON-NLS-1$
+		service.setRequestMetaParameters(metaParams);
+
+		List<INode> favorites = new ArrayList<>(favoriteCount);
+		for (int i = 0; i < favoriteCount; i++) {
+			favorites.add(QueryHelper.nodeById(Integer.toString(1000 + i)));
+		}
+		service.setUserFavoritesService(new FixedFavorites(favorites));
+	}
+
+	@Benchmark
+	public ISearchResult recent() throws CoreException {
+		return service.recent(new NullProgressMonitor());
+	}
+
+	@Benchmark
+	public ISearchResult search() throws CoreException {
+		return service.search(null, null, "wikitext", new NullProgressMonitor()); //$NON-NLS-1$
+	}
+
+	@Benchmark
+	public ISearchResult userFavorites() throws Exception {
+		return service.userFavorites(new NullProgressMonitor());
+	}
+
+	@Benchmark
+	public ISearchResult favoritesList() throws CoreException {
+		return service.userFavorites(FAVORITES_LIST, new NullProgressMonitor());
+	}
+}
@@ -0,0 +1,71 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.mpc.benchmarks.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.epp.internal.mpc.core.service.FavoritesResponseParser;
+import org.eclipse.epp.mpc.benchmarks.Fixtures;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing of the JSON responses of the user favorites API, as done by the UserFavoritesService for a user's favorites
+ * and for the random favorite lists shown on the favorites tab.
+ *
+ * @author Carsten Reckord
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FavoritesResponseParserBenchmark {
+
+	private String favorites;
+
+	private String favoriteLists;
+
+	@Setup
+	public void setUp() {
+		favorites = new String(Fixtures.read("favorites.json"), StandardCharsets.UTF_8).trim(); //$NON-NLS-1$
+		favoriteLists = new String(Fixtures.read("favorite-lists.json"), StandardCharsets.UTF_8).trim(); //$NON-NLS-1$
+	}
+
+	@Benchmark
+	public List<String> favoriteIds() {
+		return FavoritesResponseParser.parseFavoriteIds(favorites);
+	}
+
+	@Benchmark
+	public List<String[]> favoriteLists() {
+		return FavoritesResponseParser.parseFavoriteLists(favoriteLists, entry -> new String[] { //
+				FavoritesResponseParser.findFavoritesListId(entry), //
+				FavoritesResponseParser.findFavoritesListOwner(entry), //
+				FavoritesResponseParser.findFavoritesListLabel(entry), //
+				FavoritesResponseParser.findFavoritesListUrl(entry), //
+				FavoritesResponseParser.findOwnerIcon(entry), //
+				FavoritesResponseParser.findOwnerProfileUrl(entry) });
+	}
+}
@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.mpc.benchmarks.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.epp.internal.mpc.core.model.Marketplace;
+import org.eclipse.epp.internal.mpc.core.service.MarketplaceUnmarshaller;
+import org.eclipse.epp.internal.mpc.core.util.TextUtil;
+import org.eclipse.epp.internal.mpc.core.util.URLUtil;
+import org.eclipse.epp.mpc.benchmarks.Fixtures;
+import org.eclipse.epp.mpc.core.model.INode;
+import org.eclipse.epp.mpc.core.service.UnmarshalException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * {@link TextUtil} and {@link URLUtil} helpers applied to the descriptions and URLs of all nodes of a recorded
+ * listing, as done when rendering catalog items.
+ *
+ * @author Carsten Reckord
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UtilBenchmark {
+
+	private String[] descriptions;
+
+	private String[] urls;
+
+	@Setup
+	public void setUp() throws IOException, UnmarshalException {
+		Marketplace marketplace = new MarketplaceUnmarshaller().unmarshal(
+				new ByteArrayInputStream(Fixtures.read("featured.xml")), Marketplace.class, null); //$NON-NLS-1$
+		List<String> descriptions = new ArrayList<>();
+		List<String> urls = new ArrayList<>();
+		for (INode node : marketplace.getFeatured().getNode()) {
+			descriptions.add(node.getBody());
+			urls.add(node.getUrl());
+			urls.add(node.getImage());
+			urls.add(node.getUpdateurl());
+		}
+		//unencoded URLs as sometimes entered by solution owners
+		urls.add("http://download.eclipse.org/releases/some path/update site"); //$NON-NLS-1$
+		urls.add("http://www.example.org/images/logo [small].png?size=64 x 64"); //$NON-NLS-1$
+		urls.removeIf(url -> url == null || !isValid(url));
+		this.descriptions = descriptions.toArray(new String[descriptions.size()]);
+		this.urls = urls.toArray(new String[urls.size()]);
+	}
+
+	private static boolean isValid(String url) {
+		try {
+			URLUtil.toURI(url);
+			return true;
+		} catch (URISyntaxException e) {
+			return false;
+		}
+	}
+
+	@Benchmark
+	public void stripHtmlMarkup(Blackhole blackhole) {
+		for (String description : descriptions) {
+			blackhole.consume(TextUtil.stripHtmlMarkup(description));
+		}
+	}
+
+	@Benchmark
+	public void cleanInformalHtmlMarkup(Blackhole blackhole) {
+		for (String description : descriptions) {
+			blackhole.consume(TextUtil.cleanInformalHtmlMarkup(description));
+		}
+	}
+
+	@Benchmark
+	public void escapeText(Blackhole blackhole) {
+		for (String description : descriptions) {
+			blackhole.consume(TextUtil.escapeText(description));
+		}
+	}
+
+	@Benchmark
+	public void toURI(Blackhole blackhole) throws URISyntaxException {
+		for (String url : urls) {
+			blackhole.consume(URLUtil.toURI(url));
+		}
+	}
+
+	@Benchmark
+	public void urlEncode(Blackhole blackhole) {
+		for (String url : urls) {
+			blackhole.consume(URLUtil.urlEncode(url));
+		}
+	}
+
+	@Benchmark
+	public void appendPath(Blackhole blackhole) {
+		for (String url : urls) {
+			blackhole.consume(URLUtil.appendPath(url, "api/p", "/")); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+	}
+}
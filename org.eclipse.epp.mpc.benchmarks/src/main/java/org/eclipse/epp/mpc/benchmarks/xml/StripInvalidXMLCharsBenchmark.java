@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.mpc.benchmarks.xml;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.epp.internal.mpc.core.service.MarketplaceUnmarshaller;
+import org.eclipse.epp.internal.mpc.core.service.xml.StripInvalidXMLCharsInputStream;
+import org.eclipse.epp.internal.mpc.core.service.xml.StripInvalidXMLCharsReader;
+import org.eclipse.epp.mpc.benchmarks.Fixtures;
+import org.eclipse.epp.mpc.core.service.UnmarshalException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of removing invalid XML characters from recorded marketplace responses, comparing the original
+ * buffer-shifting reader with the single pass {@link StripInvalidXMLCharsReader} and the byte level
+ * {@link StripInvalidXMLCharsInputStream}. Control characters are mixed into the fixtures at a fixed interval to
+ * simulate the garbage that occasionally ends up in solution descriptions.
+ *
+ * @author Carsten Reckord
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StripInvalidXMLCharsBenchmark {
+
+	private static final char[] INVALID_CHARS = { '\u0001', '\u000B', '\u001B', '\u000C', '\uFFFF', '\u0000' };
+
+	@Param({ "search.xml", "node.xml" })
+	public String fixture;
+
+	/**
+	 * Number of valid characters between two invalid ones, 0 for a clean response
+	 */
+	@Param({ "0", "1000", "20" })
+	public int invalidCharInterval;
+
+	private byte[] content;
+
+	private final char[] readBuffer = new char[8192];
+
+	private MarketplaceUnmarshaller marketplaceUnmarshaller;
+
+	@Setup
+	public void setUp() {
+		content = Fixtures.read(fixture);
+		if (invalidCharInterval > 0) {
+			content = insertInvalidChars(new String(content, StandardCharsets.UTF_8), invalidCharInterval)
+					.getBytes(StandardCharsets.UTF_8);
+		}
+		marketplaceUnmarshaller = new MarketplaceUnmarshaller();
+	}
+
+	private static String insertInvalidChars(String text, int interval) {
+		StringBuilder dirty = new StringBuilder(text.length() + text.length() / interval + 1);
+		int invalid = 0;
+		for (int i = 0; i < text.length();) {
+			int end = Math.min(text.length(), i + interval);
+			if (end < text.length() && Character.isHighSurrogate(text.charAt(end - 1))) {
+				end++;
+			}
+			dirty.append(text, i, end);
+			dirty.append(INVALID_CHARS[invalid++ % INVALID_CHARS.length]);
+			i = end;
+		}
+		return dirty.toString();
+	}
+
+	@Benchmark
+	public int unfiltered() throws IOException {
+		return drain(new InputStreamReader(new ByteArrayInputStream(content), StandardCharsets.UTF_8));
+	}
+
+	@Benchmark
+	public int legacyReader() throws IOException {
+		return drain(new LegacyStripInvalidXMLCharsReader(
+				new InputStreamReader(new ByteArrayInputStream(content), StandardCharsets.UTF_8)));
+	}
+
+	@Benchmark
+	public int reader() throws IOException {
+		return drain(new StripInvalidXMLCharsReader(
+				new InputStreamReader(new ByteArrayInputStream(content), StandardCharsets.UTF_8)));
+	}
+
+	@Benchmark
+	public int inputStream() throws IOException {
+		return drain(new InputStreamReader(new StripInvalidXMLCharsInputStream(new ByteArrayInputStream(content)),
+				StandardCharsets.UTF_8));
+	}
+
+	@Benchmark
+	public Object unmarshal() throws IOException, UnmarshalException {
+		return marketplaceUnmarshaller.unmarshal(new ByteArrayInputStream(content), Object.class, null);
+	}
+
+	private int drain(Reader reader) throws IOException {
+		int total = 0;
+		for (int read = reader.read(readBuffer); read != -1; read = reader.read(readBuffer)) {
+			total += read;
+		}
+		return total;
+	}
+}
@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.mpc.benchmarks.xml;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.epp.internal.mpc.core.service.MarketplaceUnmarshaller;
+import org.eclipse.epp.internal.mpc.core.service.xml.Unmarshaller;
+import org.eclipse.epp.mpc.benchmarks.Fixtures;
+import org.eclipse.epp.mpc.core.service.UnmarshalException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+/**
+ * Parsing throughput of recorded marketplace responses, comparing a pooled {@link Unmarshaller} with a fresh
+ * unmarshaller and XML reader for every parse. Run with <code>-prof gc</code> to compare allocation rates.
+ *
+ * @author Carsten Reckord
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UnmarshallerBenchmark {
+
+	@Param({ "search.xml", "featured.xml", "node.xml", "catalogs.xml", "recent.xml", "favorites.xml",
+			"marketplace-root.xml" })
+	public String fixture;
+
+	private byte[] content;
+
+	private MarketplaceUnmarshaller marketplaceUnmarshaller;
+
+	@Setup
+	public void setUp() {
+		content = Fixtures.read(fixture);
+		marketplaceUnmarshaller = new MarketplaceUnmarshaller();
+	}
+
+	@Benchmark
+	public Object freshUnmarshaller() throws IOException, SAXException {
+		Unmarshaller unmarshaller = new Unmarshaller();
+		Unmarshaller.createXMLReader(unmarshaller).parse(new InputSource(new ByteArrayInputStream(content)));
+		return unmarshaller.getModel();
+	}
+
+	@Benchmark
+	public Object pooledUnmarshaller() throws IOException, SAXException {
+		return Unmarshaller.parse(new InputSource(new ByteArrayInputStream(content)));
+	}
+
+	@Benchmark
+	public Object marketplaceUnmarshaller() throws IOException, UnmarshalException {
+		return marketplaceUnmarshaller.unmarshal(new ByteArrayInputStream(content), Object.class, null);
+	}
+}
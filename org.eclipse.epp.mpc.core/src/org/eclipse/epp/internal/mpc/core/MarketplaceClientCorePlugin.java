@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2018 The Eclipse Foundation and others.
+ * Copyright (c) 2010, 2019 The Eclipse Foundation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v2.0
  * which accompanies this distribution, and is available at
@@ -26,6 +26,12 @@ public class MarketplaceClientCorePlugin implements BundleActivator {
 
 	public static final String DEBUG_OPTION = "/debug"; //$NON-NLS-1$
 
+	public static final String DEBUG_CACHE_OPTION = "/debug/cache"; //$NON-NLS-1$
+
+	public static final String DEBUG_NETWORK_OPTION = "/debug/network"; //$NON-NLS-1$
+
+	public static final String DEBUG_HTTP_OPTION = "/debug/http"; //$NON-NLS-1$
+
 	public static final String DEBUG_FAKE_CLIENT_OPTION = "/client/fakeVersion"; //$NON-NLS-1$
 
 	public static final String DEBUG_CLIENT_OPTIONS_PATH = MarketplaceClientCore.BUNDLE_ID + "/client/"; //$NON-NLS-1$
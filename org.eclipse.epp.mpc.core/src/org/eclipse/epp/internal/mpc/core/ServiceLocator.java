@@ -13,10 +13,12 @@
  *******************************************************************************/
 package org.eclipse.epp.internal.mpc.core;
 
+import java.io.File;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Dictionary;
+import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -24,20 +26,24 @@ import java.util.Map;
 
 import org.eclipse.core.runtime.IProduct;
 import org.eclipse.core.runtime.Platform;
+import org.eclipse.epp.internal.mpc.core.service.AsyncMarketplaceService;
 import org.eclipse.epp.internal.mpc.core.service.CachingMarketplaceService;
 import org.eclipse.epp.internal.mpc.core.service.DefaultCatalogService;
 import org.eclipse.epp.internal.mpc.core.service.DefaultMarketplaceService;
 import org.eclipse.epp.internal.mpc.core.service.MarketplaceStorageService;
 import org.eclipse.epp.internal.mpc.core.service.UserFavoritesService;
+import org.eclipse.epp.internal.mpc.core.service.cache.ResponseCache;
 import org.eclipse.epp.internal.mpc.core.transport.httpclient.HttpClientService;
 import org.eclipse.epp.internal.mpc.core.util.ServiceUtil;
 import org.eclipse.epp.internal.mpc.core.util.URLUtil;
+import org.eclipse.epp.mpc.core.service.IAsyncMarketplaceService;
 import org.eclipse.epp.mpc.core.service.ICatalogService;
 import org.eclipse.epp.mpc.core.service.IMarketplaceService;
 import org.eclipse.epp.mpc.core.service.IMarketplaceServiceLocator;
 import org.eclipse.epp.mpc.core.service.IMarketplaceStorageService;
 import org.eclipse.epp.mpc.core.service.IUserFavoritesService;
 import org.eclipse.epp.mpc.core.service.ServiceHelper;
+import org.eclipse.osgi.util.NLS;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.FrameworkUtil;
@@ -119,8 +125,12 @@ public class ServiceLocator implements IMarketplaceServiceLocator {
 
 	private final List<ServiceRegistration<?>> dynamicServiceRegistrations = new ArrayList<>();
 
+	private final Map<String, IAsyncMarketplaceService> asyncMarketplaceServices = new HashMap<>();
+
 	private HttpClientService httpClient;
 
+	private ResponseCache responseCache;
+
 	public ServiceLocator() {
 		defaultMarketplaceUrl = DefaultMarketplaceService.DEFAULT_SERVICE_URL;
 		defaultCatalogUrl = DefaultCatalogService.DEFAULT_CATALOG_SERVICE_URL;
@@ -206,6 +216,23 @@ public class ServiceLocator implements IMarketplaceServiceLocator {
 		return service;
 	}
 
+	@Override
+	public IAsyncMarketplaceService getDefaultAsyncMarketplaceService() {
+		return getAsyncMarketplaceService(defaultMarketplaceUrl.toExternalForm());
+	}
+
+	@Override
+	public synchronized IAsyncMarketplaceService getAsyncMarketplaceService(String baseUrl) {
+		IMarketplaceService service = getMarketplaceService(baseUrl);
+		IAsyncMarketplaceService asyncService = asyncMarketplaceServices.get(baseUrl);
+		//replace the wrapper if the registered service changed
+		if (asyncService == null || asyncService.getMarketplaceService() != service) {
+			asyncService = new AsyncMarketplaceService(service);
+			asyncMarketplaceServices.put(baseUrl, asyncService);
+		}
+		return asyncService;
+	}
+
 	private <T> void registerService(String baseUrl, Class<T> serviceClass, T service) {
 		registerService(baseUrl, serviceClass, service, null);
 	}
@@ -259,10 +286,46 @@ public class ServiceLocator implements IMarketplaceServiceLocator {
 		IUserFavoritesService favoritesService = getFavoritesService(baseUrl);
 		defaultService.setUserFavoritesService(favoritesService);//FIXME this should be a service reference!
 		defaultService.setHttpClient(httpClient);
+		defaultService.setResponseCache(getResponseCache());
 		service = new CachingMarketplaceService(defaultService);
 		return service;
 	}
 
+	private synchronized ResponseCache getResponseCache() {
+		if (responseCache == null) {
+			responseCache = createResponseCache();
+		}
+		return responseCache;
+	}
+
+	private static ResponseCache createResponseCache() {
+		BundleContext bundleContext = FrameworkUtil.getBundle(ServiceLocator.class).getBundleContext();
+		if (bundleContext == null || Boolean.parseBoolean(bundleContext.getProperty(ResponseCache.DISABLED_PROPERTY))) {
+			return null;
+		}
+		File cacheDirectory;
+		try {
+			cacheDirectory = Platform.getStateLocation(bundleContext.getBundle()).append("responses").toFile(); //$NON-NLS-1$
+		} catch (RuntimeException ex) {
+			//no writable instance location
+			return null;
+		}
+		long maximumSize = ResponseCache.DEFAULT_MAXIMUM_SIZE;
+		String maximumSizeValue = bundleContext.getProperty(ResponseCache.MAXIMUM_SIZE_PROPERTY);
+		if (maximumSizeValue != null && !"".equals(maximumSizeValue)) { //$NON-NLS-1$
+			try {
+				maximumSize = Long.parseLong(maximumSizeValue);
+			} catch (NumberFormatException ex) {
+				MarketplaceClientCore.error(NLS.bind("Invalid value for {0}: {1}", ResponseCache.MAXIMUM_SIZE_PROPERTY, //$NON-NLS-1$
+						maximumSizeValue), ex);
+			}
+		}
+		if (maximumSize <= 0) {
+			return null;
+		}
+		return new ResponseCache(cacheDirectory, maximumSize);
+	}
+
 	@Override
 	public IMarketplaceStorageService getStorageService(String marketplaceUrl) {
 		return getService(storageServiceTracker, marketplaceUrl);
@@ -556,6 +619,7 @@ public class ServiceLocator implements IMarketplaceServiceLocator {
 		for (ServiceRegistration<?> serviceRegistration : dynamicServiceRegistrations) {
 			serviceRegistration.unregister();
 		}
+		asyncMarketplaceServices.clear();
 	}
 
 	@Override
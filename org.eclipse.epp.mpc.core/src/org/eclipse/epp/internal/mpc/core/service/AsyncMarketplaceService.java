@@ -0,0 +1,288 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.internal.mpc.core.service;
+
+import java.net.URI;
+import java.net.URL;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.epp.internal.mpc.core.MarketplaceClientCore;
+import org.eclipse.epp.internal.mpc.core.util.ConcurrentTasks;
+import org.eclipse.epp.internal.mpc.core.util.ConcurrentTasks.CancellationMonitor;
+import org.eclipse.epp.mpc.core.model.ICategory;
+import org.eclipse.epp.mpc.core.model.IMarket;
+import org.eclipse.epp.mpc.core.model.INews;
+import org.eclipse.epp.mpc.core.model.INode;
+import org.eclipse.epp.mpc.core.model.ISearchResult;
+import org.eclipse.epp.mpc.core.service.IAsyncMarketplaceService;
+import org.eclipse.epp.mpc.core.service.IMarketplaceService;
+
+/**
+ * Default {@link IAsyncMarketplaceService} implementation, running the calls of a blocking {@link IMarketplaceService}
+ * on a small shared pool of threads. Combined with the request coalescing and caching of the default service, this
+ * allows callers to have many lookups outstanding without dedicating a thread to each of them.
+ * <p>
+ * Use {@link #join(CompletableFuture, IProgressMonitor)} to wait for a result from blocking code.
+ *
+ * @author Carsten Reckord
+ */
+public class AsyncMarketplaceService implements IAsyncMarketplaceService {
+
+	/**
+	 * Number of requests the shared default executor performs in parallel
+	 */
+	public static final int DEFAULT_PARALLELISM = 6;
+
+	private static final class DefaultExecutor {
+
+		private static final ExecutorService INSTANCE = ConcurrentTasks.createExecutor("Marketplace request", //$NON-NLS-1$
+				DEFAULT_PARALLELISM);
+	}
+
+	private static final class CancellationPoller {
+
+		private static final ScheduledExecutorService INSTANCE = createPoller();
+
+		private static ScheduledExecutorService createPoller() {
+			ScheduledThreadPoolExecutor poller = new ScheduledThreadPoolExecutor(1,
+					ConcurrentTasks.daemonThreadFactory("Marketplace request cancellation")); //$NON-NLS-1$
+			poller.setRemoveOnCancelPolicy(true);
+			return poller;
+		}
+	}
+
+	private interface ServiceCall<T> {
+		T call(IProgressMonitor monitor) throws CoreException;
+	}
+
+	private final IMarketplaceService delegate;
+
+	private final Executor executor;
+
+	public AsyncMarketplaceService(IMarketplaceService delegate) {
+		this(delegate, DefaultExecutor.INSTANCE);
+	}
+
+	public AsyncMarketplaceService(IMarketplaceService delegate, Executor executor) {
+		if (delegate == null || executor == null) {
+			throw new IllegalArgumentException();
+		}
+		this.delegate = delegate;
+		this.executor = executor;
+	}
+
+	@Override
+	public URL getBaseUrl() {
+		return delegate.getBaseUrl();
+	}
+
+	@Override
+	public IMarketplaceService getMarketplaceService() {
+		return delegate;
+	}
+
+	@Override
+	public CompletableFuture<List<? extends IMarket>> listMarkets(IProgressMonitor monitor) {
+		return submit(m -> delegate.listMarkets(m), monitor);
+	}
+
+	@Override
+	public CompletableFuture<IMarket> getMarket(IMarket market, IProgressMonitor monitor) {
+		return submit(m -> delegate.getMarket(market, m), monitor);
+	}
+
+	@Override
+	public CompletableFuture<ICategory> getCategory(ICategory category, IProgressMonitor monitor) {
+		return submit(m -> delegate.getCategory(category, m), monitor);
+	}
+
+	@Override
+	public CompletableFuture<INode> getNode(INode node, IProgressMonitor monitor) {
+		return submit(m -> delegate.getNode(node, m), monitor);
+	}
+
+	@Override
+	public CompletableFuture<List<INode>> getNodes(Collection<? extends INode> nodes, IProgressMonitor monitor) {
+		return submit(m -> delegate.getNodes(nodes, m), monitor);
+	}
+
+	@Override
+	public CompletableFuture<ISearchResult> search(IMarket market, ICategory category, String queryText,
+			IProgressMonitor monitor) {
+		return submit(m -> delegate.search(market, category, queryText, m), monitor);
+	}
+
+	@Override
+	public CompletableFuture<ISearchResult> tagged(String tag, IProgressMonitor monitor) {
+		return submit(m -> delegate.tagged(tag, m), monitor);
+	}
+
+	@Override
+	public CompletableFuture<ISearchResult> tagged(List<String> tags, IProgressMonitor monitor) {
+		return submit(m -> delegate.tagged(tags, m), monitor);
+	}
+
+	@Override
+	public CompletableFuture<ISearchResult> featured(IProgressMonitor monitor) {
+		return submit(m -> delegate.featured(m), monitor);
+	}
+
+	@Override
+	public CompletableFuture<ISearchResult> featured(IMarket market, ICategory category, IProgressMonitor monitor) {
+		return submit(m -> delegate.featured(market, category, m), monitor);
+	}
+
+	@Override
+	public CompletableFuture<ISearchResult> recent(IProgressMonitor monitor) {
+		return submit(m -> delegate.recent(m), monitor);
+	}
+
+	@Override
+	public CompletableFuture<ISearchResult> topFavorites(IProgressMonitor monitor) {
+		return submit(m -> delegate.topFavorites(m), monitor);
+	}
+
+	@Override
+	public CompletableFuture<ISearchResult> popular(IProgressMonitor monitor) {
+		return submit(m -> delegate.popular(m), monitor);
+	}
+
+	@Override
+	public CompletableFuture<ISearchResult> related(List<? extends INode> basedOn, IProgressMonitor monitor) {
+		return submit(m -> delegate.related(basedOn, m), monitor);
+	}
+
+	@Override
+	public CompletableFuture<ISearchResult> userFavorites(URI favoritesUri, IProgressMonitor monitor) {
+		return submit(m -> delegate.userFavorites(favoritesUri, m), monitor);
+	}
+
+	@Override
+	public CompletableFuture<INews> news(IProgressMonitor monitor) {
+		return submit(m -> delegate.news(m), monitor);
+	}
+
+	private <T> CompletableFuture<T> submit(ServiceCall<T> call, IProgressMonitor parentMonitor) {
+		//canceled if either the caller's monitor or the returned future are canceled
+		CancellationMonitor monitor = new CancellationMonitor(parentMonitor);
+		CompletableFuture<T> future = new CompletableFuture<>();
+		future.whenComplete((result, failure) -> {
+			if (future.isCancelled()) {
+				monitor.setCanceled(true);
+			}
+		});
+		if (parentMonitor != null) {
+			pollForCancellation(parentMonitor, future);
+		}
+		try {
+			executor.execute(() -> {
+				if (future.isDone()) {
+					return;
+				}
+				if (monitor.isCanceled()) {
+					future.cancel(false);
+					return;
+				}
+				try {
+					future.complete(call.call(monitor));
+				} catch (OperationCanceledException e) {
+					future.cancel(false);
+				} catch (CoreException e) {
+					if (e.getStatus().getSeverity() == IStatus.CANCEL || monitor.isCanceled()) {
+						future.cancel(false);
+					} else {
+						future.completeExceptionally(e);
+					}
+				} catch (RuntimeException | Error e) {
+					future.completeExceptionally(e);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+	/**
+	 * Cancel the future as soon as the monitor is canceled, even while the request is still queued or the service
+	 * doesn't check the monitor.
+	 */
+	private static void pollForCancellation(IProgressMonitor monitor, CompletableFuture<?> future) {
+		if (monitor.isCanceled()) {
+			future.cancel(false);
+			return;
+		}
+		ScheduledFuture<?> poll = CancellationPoller.INSTANCE.scheduleWithFixedDelay(() -> {
+			if (monitor.isCanceled()) {
+				future.cancel(false);
+			}
+		}, ConcurrentTasks.CANCEL_POLL_INTERVAL, ConcurrentTasks.CANCEL_POLL_INTERVAL, TimeUnit.MILLISECONDS);
+		future.whenComplete((result, failure) -> poll.cancel(false));
+	}
+
+	/**
+	 * Wait for the given future's result, for callers that need to block. If the monitor is canceled while waiting,
+	 * the future is canceled as well.
+	 *
+	 * @throws CoreException
+	 *             with the original status if the future completed with a {@link CoreException}, or a
+	 *             {@link Status#CANCEL_STATUS cancel status} if the future or the monitor were canceled
+	 */
+	public static <T> T join(CompletableFuture<T> future, IProgressMonitor monitor) throws CoreException {
+		while (true) {
+			if (monitor != null && monitor.isCanceled()) {
+				future.cancel(true);
+				throw new CoreException(Status.CANCEL_STATUS);
+			}
+			try {
+				return future.get(ConcurrentTasks.CANCEL_POLL_INTERVAL, TimeUnit.MILLISECONDS);
+			} catch (TimeoutException e) {
+				//check for cancellation
+			} catch (CancellationException e) {
+				throw new CoreException(Status.CANCEL_STATUS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new CoreException(Status.CANCEL_STATUS);
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof CoreException) {
+					throw (CoreException) cause;
+				}
+				if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				}
+				if (cause instanceof Error) {
+					throw (Error) cause;
+				}
+				throw new CoreException(MarketplaceClientCore.computeStatus(cause, null));
+			}
+		}
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2018 The Eclipse Foundation and others.
+ * Copyright (c) 2010, 2019 The Eclipse Foundation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v2.0
  * which accompanies this distribution, and is available at
@@ -13,18 +13,15 @@
  *******************************************************************************/
 package org.eclipse.epp.internal.mpc.core.service;
 
-import java.lang.ref.Reference;
-import java.lang.ref.ReferenceQueue;
-import java.lang.ref.SoftReference;
 import java.net.URI;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import org.eclipse.core.runtime.CoreException;
@@ -32,6 +29,14 @@ import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.epp.internal.mpc.core.model.Node;
 import org.eclipse.epp.internal.mpc.core.service.AbstractDataStorageService.NotAuthorizedException;
+import org.eclipse.epp.internal.mpc.core.service.cache.CacheStatistics;
+import org.eclipse.epp.internal.mpc.core.service.cache.ConcurrentMarketplaceCache;
+import org.eclipse.epp.internal.mpc.core.service.cache.InFlightRequests;
+import org.eclipse.epp.internal.mpc.core.service.cache.InFlightRequests.Flight;
+import org.eclipse.epp.internal.mpc.core.service.cache.InFlightRequests.LeaderCanceledException;
+import org.eclipse.epp.internal.mpc.core.service.cache.InFlightRequests.Request;
+import org.eclipse.epp.internal.mpc.core.service.cache.MarketplaceCache;
+import org.eclipse.epp.internal.mpc.core.service.cache.MarketplaceCache.EntryType;
 import org.eclipse.epp.internal.mpc.core.util.URLUtil;
 import org.eclipse.epp.mpc.core.model.ICategory;
 import org.eclipse.epp.mpc.core.model.IFavoriteList;
@@ -43,65 +48,84 @@ import org.eclipse.epp.mpc.core.service.IMarketplaceService;
 import org.eclipse.epp.mpc.core.service.IUserFavoritesService;
 import org.eclipse.epp.mpc.core.service.QueryHelper;
 
-public class CachingMarketplaceService implements IMarketplaceService {
+public class CachingMarketplaceService implements StreamingMarketplaceService {
 
 	private static final String MISSING_NODE_TYPE = "__MISSING__"; //$NON-NLS-1$
 
 	private final IMarketplaceService delegate;
 
-	private final Map<String, Reference<Object>> cache = new LinkedHashMap<>();
+	private final MarketplaceCache cache;
 
-	private final ReferenceQueue<Object> cacheReferenceQueue = new ReferenceQueue<>();
+	private final InFlightRequests inFlightRequests = new InFlightRequests();
 
 	public CachingMarketplaceService(IMarketplaceService delegate) {
-		if (delegate == null) {
+		this(delegate, new ConcurrentMarketplaceCache());
+	}
+
+	public CachingMarketplaceService(IMarketplaceService delegate, MarketplaceCache cache) {
+		if (delegate == null || cache == null) {
 			throw new IllegalArgumentException();
 		}
 		this.delegate = delegate;
+		this.cache = cache;
 	}
 
 	public IMarketplaceService getDelegate() {
 		return delegate;
 	}
 
+	public MarketplaceCache getCache() {
+		return cache;
+	}
+
+	public CacheStatistics getCacheStatistics() {
+		return cache.getStatistics();
+	}
+
+	/**
+	 * @return the registry of outstanding requests, which also keeps track of how many requests were coalesced
+	 */
+	public InFlightRequests getInFlightRequests() {
+		return inFlightRequests;
+	}
+
+	/**
+	 * Discard all cached data, forcing subsequent requests to go to the delegate service.
+	 */
+	public void clearCache() {
+		cache.clear();
+	}
+
 	@Override
 	public List<? extends IMarket> listMarkets(IProgressMonitor monitor) throws CoreException {
 		String marketsKey = "Markets:Markets"; //$NON-NLS-1$
 		@SuppressWarnings("unchecked")
-		List<? extends IMarket> marketsResult = getCached(marketsKey, List.class);
-		if (marketsResult == null) {
-			marketsResult = delegate.listMarkets(monitor);
-			synchronized (cache) {
-				cache(marketsKey, marketsResult);
-				for (IMarket market : marketsResult) {
-					cacheMarket(market);
-				}
+		List<? extends IMarket> marketsResult = getCachedOrLoad(marketsKey, List.class, () -> {
+			List<? extends IMarket> markets = delegate.listMarkets(monitor);
+			cache(marketsKey, EntryType.MARKET, markets);
+			for (IMarket market : markets) {
+				cacheMarket(market);
 			}
-		}
+			return markets;
+		}, monitor);
 		return marketsResult;
 	}
 
 	@Override
 	public IMarket getMarket(IMarket market, IProgressMonitor monitor) throws CoreException {
 		String marketKey = computeMarketKey(market);
-		IMarket marketResult = null;
-		if (marketKey != null) {
-			marketResult = getCached(marketKey, IMarket.class);
-		}
-		if (marketResult == null) {
-			marketResult = delegate.getMarket(market, monitor);
+		return getCachedOrLoad(marketKey, IMarket.class, () -> {
+			IMarket marketResult = delegate.getMarket(market, monitor);
 			if (marketResult != null) {
-				synchronized (cache) {
-					cacheMarket(marketResult);
-				}
+				cacheMarket(marketResult);
 			}
-		}
-		return marketResult;
+			return marketResult;
+		}, monitor);
 	}
 
 	private void cacheMarket(IMarket market) {
 		String marketKey = computeMarketKey(market);
-		cache(marketKey, market);
+		cache(marketKey, EntryType.MARKET, market);
 		List<? extends ICategory> categories = market.getCategory();
 		for (ICategory category : categories) {
 			cacheCategory(category);
@@ -110,69 +134,128 @@ public class CachingMarketplaceService implements IMarketplaceService {
 
 	private void cacheCategory(ICategory category) {
 		String categoryKey = computeCategoryKey(category);
-		cache(categoryKey, category);
+		cache(categoryKey, EntryType.CATEGORY, category);
 	}
 
 	@Override
 	public ICategory getCategory(ICategory category, IProgressMonitor monitor) throws CoreException {
 		String categoryKey = computeCategoryKey(category);
-		ICategory categoryResult = null;
-		if (categoryKey != null) {
-			categoryResult = getCached(categoryKey, ICategory.class);
-		}
-		if (categoryResult == null) {
-			categoryResult = delegate.getCategory(category, monitor);
+		return getCachedOrLoad(categoryKey, ICategory.class, () -> {
+			ICategory categoryResult = delegate.getCategory(category, monitor);
 			if (categoryResult != null) {
-				synchronized (cache) {
-					cacheCategory(categoryResult);
-				}
+				cacheCategory(categoryResult);
 			}
-		}
-		return categoryResult;
+			return categoryResult;
+		}, monitor);
 	}
 
 	@Override
 	public INode getNode(INode node, IProgressMonitor monitor) throws CoreException {
 		INode nodeResult = lookupCachedNode(node);
 		if (nodeResult == null) {
-			nodeResult = delegate.getNode(node, monitor);
-			if (nodeResult != null) {
-				cacheNode(nodeResult);
+			nodeResult = inFlightRequests.execute(computeNodeRequestKey(node), INode.class, () -> {
+				INode cachedNode = lookupCachedNode(node);
+				return cachedNode != null ? cachedNode : loadNode(node, monitor);
+			}, monitor);
+			if (nodeResult == null) {
+				//joined a getNodes() request that didn't resolve the node
+				nodeResult = loadNode(node, monitor);
 			}
 		}
 		return nodeResult;
 	}
 
-	private void cacheNode(INode node) {
-		synchronized (cache) {
-			cache(computeNodeKey(node), node);
-			cache(computeNodeUrlKey(node), node);
-			cache(computeNodeIdUrlKey(node), node);
+	private INode loadNode(INode node, IProgressMonitor monitor) throws CoreException {
+		INode nodeResult = delegate.getNode(node, monitor);
+		if (nodeResult != null) {
+			cacheNode(nodeResult);
 		}
+		return nodeResult;
+	}
+
+	private void cacheNode(INode node) {
+		EntryType entryType = MISSING_NODE_TYPE.equals(node.getType()) ? EntryType.MISSING_NODE : EntryType.NODE;
+		cache(computeNodeKey(node), entryType, node);
+		cache(computeNodeUrlKey(node), entryType, node);
+		cache(computeNodeIdUrlKey(node), entryType, node);
 	}
 
 	@Override
 	public List<INode> getNodes(Collection<? extends INode> nodes, IProgressMonitor monitor) throws CoreException {
+		return getNodes(nodes, null, monitor);
+	}
+
+	/**
+	 * Cached nodes are published right away, the rest as the wrapped service resolves them if it supports streaming,
+	 * or once all nodes have been resolved otherwise.
+	 */
+	@Override
+	public List<INode> getNodes(Collection<? extends INode> nodes, Consumer<? super INode> nodeConsumer,
+			IProgressMonitor monitor) throws CoreException {
+		DistinctNodeConsumer distinctConsumer = nodeConsumer == null ? null : new DistinctNodeConsumer(nodeConsumer);
 		Map<INode, INode> resolvedNodes = new LinkedHashMap<>();
 		List<INode> unresolvedNodes = new ArrayList<>();
 		for (INode node : nodes) {
 			if (!mapCachedNode(node, resolvedNodes)) {
 				unresolvedNodes.add(node);
+			} else if (distinctConsumer != null) {
+				INode resolvedNode = resolvedNodes.get(node);
+				if (!MISSING_NODE_TYPE.equals(resolvedNode.getType())) {
+					distinctConsumer.accept(resolvedNode);
+				}
 			}
 		}
 		if (!unresolvedNodes.isEmpty()) {
-			List<INode> newResolvedNodes = delegate.getNodes(unresolvedNodes, monitor);
-			for (INode node : newResolvedNodes) {
-				cacheNode(node);
-			}
+			//join requests already in flight for some of the nodes, request the rest ourselves
+			List<INode> requestedNodes = new ArrayList<>();
+			Map<INode, Flight> ledFlights = new LinkedHashMap<>();
+			Map<INode, Flight> joinedFlights = new LinkedHashMap<>();
 			for (INode node : unresolvedNodes) {
-				if (!mapCachedNode(node, resolvedNodes)) {
-					//Cache not-found nodes
-					INode missingNode = createMissingNode(node);
-					if (missingNode != null) {
-						cacheNode(missingNode);
+				String key = computeNodeRequestKey(node);
+				Flight flight = key == null ? null : inFlightRequests.begin(key);
+				if (flight == null || flight.isLeader()) {
+					requestedNodes.add(node);
+					if (flight != null) {
+						ledFlights.put(node, flight);
+					}
+				} else {
+					joinedFlights.put(node, flight);
+				}
+			}
+			try {
+				loadNodes(requestedNodes, resolvedNodes, distinctConsumer, monitor);
+			} catch (CoreException | RuntimeException | Error ex) {
+				for (Flight flight : ledFlights.values()) {
+					flight.fail(ex);
+				}
+				throw ex;
+			}
+			for (Map.Entry<INode, Flight> entry : ledFlights.entrySet()) {
+				entry.getValue().complete(resolvedNodes.get(entry.getKey()));
+			}
+			List<INode> retryNodes = new ArrayList<>();
+			for (Map.Entry<INode, Flight> entry : joinedFlights.entrySet()) {
+				INode node = entry.getKey();
+				INode resolvedNode;
+				try {
+					resolvedNode = entry.getValue().await(INode.class, monitor);
+				} catch (LeaderCanceledException ex) {
+					resolvedNode = null;
+				} catch (CoreException ex) {
+					if (ex.getStatus().getSeverity() == IStatus.CANCEL) {
+						throw ex;
 					}
+					//the joined getNode() call fails for missing nodes, which we need to handle as usual
+					resolvedNode = null;
 				}
+				if (resolvedNode != null) {
+					resolvedNodes.put(node, resolvedNode);
+				} else if (!mapCachedNode(node, resolvedNodes)) {
+					retryNodes.add(node);
+				}
+			}
+			if (!retryNodes.isEmpty()) {
+				loadNodes(retryNodes, resolvedNodes, distinctConsumer, monitor);
 			}
 		}
 		List<INode> result = new ArrayList<>(nodes.size());
@@ -182,9 +265,35 @@ public class CachingMarketplaceService implements IMarketplaceService {
 				result.add(resolvedNode);
 			}
 		}
+		if (distinctConsumer != null) {
+			distinctConsumer.acceptAll(result);
+		}
 		return result;
 	}
 
+	private void loadNodes(List<INode> nodes, Map<INode, INode> resolvedNodes, Consumer<INode> nodeConsumer,
+			IProgressMonitor monitor) throws CoreException {
+		if (nodes.isEmpty()) {
+			return;
+		}
+		List<INode> newResolvedNodes = nodeConsumer != null && delegate instanceof StreamingMarketplaceService
+				? ((StreamingMarketplaceService) delegate).getNodes(nodes, nodeConsumer, monitor)
+						: delegate.getNodes(nodes, monitor);
+		for (INode node : newResolvedNodes) {
+			cacheNode(node);
+		}
+		for (INode node : nodes) {
+			if (!mapCachedNode(node, resolvedNodes)) {
+				//Cache not-found nodes
+				INode missingNode = createMissingNode(node);
+				if (missingNode != null) {
+					cacheNode(missingNode);
+					resolvedNodes.put(node, missingNode);
+				}
+			}
+		}
+	}
+
 	private INode createMissingNode(INode node) {
 		INode missingNode;
 		if (node.getId() != null) {
@@ -226,35 +335,32 @@ public class CachingMarketplaceService implements IMarketplaceService {
 		return null;
 	}
 
-	private void cache(String key, Object value) {
-		if (key != null) {
-			cache.put(key, new SoftReference<>(value, cacheReferenceQueue));
-		}
+	private void cache(String key, EntryType entryType, Object value) {
+		cache.put(key, entryType, value);
 	}
 
 	private <T> T getCached(String key, Class<T> type) {
-		synchronized (cache) {
-			gcCache();
-			Reference<Object> reference = cache.get(key);
-			if (reference != null) {
-				return type.cast(reference.get());
-			}
-		}
-		return null;
+		return cache.get(key, type);
 	}
 
-	private void gcCache() {
-		if (cacheReferenceQueue.poll() != null) {
-			while (cacheReferenceQueue.poll() != null) {
-				//clear the queue
-			}
-			for (Iterator<Reference<Object>> i = cache.values().iterator(); i.hasNext();) {
-				Reference<Object> reference = i.next();
-				if (reference.isEnqueued()) {
-					i.remove();
-				}
-			}
+	/**
+	 * Get the cached value for the given key, or load it. Concurrent loads for the same key are coalesced into a
+	 * single request. The loader is responsible for caching its result.
+	 */
+	private <T> T getCachedOrLoad(String key, Class<T> type, Request<? extends T> loader, IProgressMonitor monitor)
+			throws CoreException {
+		if (key == null) {
+			return loader.execute();
+		}
+		T result = getCached(key, type);
+		if (result == null) {
+			result = inFlightRequests.execute(key, type, () -> {
+				//a request might have completed between our cache lookup and joining the in-flight requests
+				T cached = getCached(key, type);
+				return cached != null ? cached : loader.execute();
+			}, monitor);
 		}
+		return result;
 	}
 
 	private String computeNodeKey(INode node) {
@@ -271,6 +377,11 @@ public class CachingMarketplaceService implements IMarketplaceService {
 		return null;
 	}
 
+	private String computeNodeRequestKey(INode node) {
+		String key = computeNodeKey(node);
+		return key != null ? key : computeNodeUrlKey(node);
+	}
+
 	private String computeNodeIdUrlKey(INode node) {
 		if (node.getId() != null) {
 			String url = URLUtil.appendPath(getBaseUrl().toString(), DefaultMarketplaceService.API_NODE_URI,
@@ -299,17 +410,40 @@ public class CachingMarketplaceService implements IMarketplaceService {
 		public ISearchResult doSearch(IProgressMonitor monitor) throws CoreException;
 	}
 
+	private interface StreamingSearchOperation {
+		public ISearchResult doSearch(Consumer<? super INode> nodeConsumer, IProgressMonitor monitor)
+				throws CoreException;
+	}
+
 	@Override
 	public ISearchResult search(final IMarket market, final ICategory category, final String queryText,
 			IProgressMonitor monitor) throws CoreException {
+		return search(market, category, queryText, null, monitor);
+	}
+
+	@Override
+	public ISearchResult search(IMarket market, ICategory category, String queryText,
+			Consumer<? super INode> nodeConsumer, IProgressMonitor monitor) throws CoreException {
 		String key = computeSearchKey("search", market, category, queryText); //$NON-NLS-1$
-		return performSearch(monitor, key, monitor1 -> delegate.search(market, category, queryText, monitor1));
+		return performSearch(monitor, key, nodeConsumer,
+				(consumer, monitor1) -> consumer != null && delegate instanceof StreamingMarketplaceService
+				? ((StreamingMarketplaceService) delegate).search(market, category, queryText, consumer, monitor1)
+						: delegate.search(market, category, queryText, monitor1));
 	}
 
 	@Override
 	public ISearchResult tagged(final String tag, IProgressMonitor monitor) throws CoreException {
+		return tagged(tag, null, monitor);
+	}
+
+	@Override
+	public ISearchResult tagged(String tag, Consumer<? super INode> nodeConsumer, IProgressMonitor monitor)
+			throws CoreException {
 		String key = computeSearchKey("tagged", null, null, tag); //$NON-NLS-1$
-		return performSearch(monitor, key, monitor1 -> delegate.tagged(tag, monitor1));
+		return performSearch(monitor, key, nodeConsumer,
+				(consumer, monitor1) -> consumer != null && delegate instanceof StreamingMarketplaceService
+				? ((StreamingMarketplaceService) delegate).tagged(tag, consumer, monitor1)
+						: delegate.tagged(tag, monitor1));
 	}
 
 	@Override
@@ -320,23 +454,33 @@ public class CachingMarketplaceService implements IMarketplaceService {
 
 	private ISearchResult performSearch(IProgressMonitor monitor, String key, SearchOperation searchOperation)
 			throws CoreException {
-		ISearchResult result = null;
-		synchronized (cache) {
-			Reference<Object> reference = cache.get(key);
-			if (reference != null) {
-				result = (ISearchResult) reference.get();
-			}
-		}
-		if (result == null) {
-			result = searchOperation.doSearch(monitor);
+		return getCachedOrLoad(key, ISearchResult.class, () -> {
+			ISearchResult result = searchOperation.doSearch(monitor);
 			if (result != null) {
-				synchronized (cache) {
-					cache(key, result);
-					for (INode node : result.getNodes()) {
-						cache(computeNodeKey(node), node);
-					}
+				cache(key, EntryType.SEARCH, result);
+				for (INode node : result.getNodes()) {
+					cache(computeNodeKey(node), EntryType.NODE, node);
 				}
 			}
+			return result;
+		}, monitor);
+	}
+
+	/**
+	 * Perform a search, streaming its nodes to the given consumer. Nodes are only streamed while they are parsed if
+	 * this thread performs the actual request - cached results and results of coalesced requests are published once
+	 * they are available.
+	 */
+	private ISearchResult performSearch(IProgressMonitor monitor, String key, Consumer<? super INode> nodeConsumer,
+			StreamingSearchOperation searchOperation) throws CoreException {
+		if (nodeConsumer == null) {
+			return performSearch(monitor, key, monitor1 -> searchOperation.doSearch(null, monitor1));
+		}
+		DistinctNodeConsumer distinctConsumer = new DistinctNodeConsumer(nodeConsumer);
+		ISearchResult result = performSearch(monitor, key,
+				monitor1 -> searchOperation.doSearch(distinctConsumer, monitor1));
+		if (result != null) {
+			distinctConsumer.acceptAll(result.getNodes());
 		}
 		return result;
 	}
@@ -360,14 +504,31 @@ public class CachingMarketplaceService implements IMarketplaceService {
 	@Override
 	public ISearchResult featured(final IMarket market, final ICategory category, IProgressMonitor monitor)
 			throws CoreException {
+		return featured(market, category, null, monitor);
+	}
+
+	@Override
+	public ISearchResult featured(IMarket market, ICategory category, Consumer<? super INode> nodeConsumer,
+			IProgressMonitor monitor) throws CoreException {
 		String key = computeSearchKey("featured", market, category, null); //$NON-NLS-1$
-		return performSearch(monitor, key, monitor1 -> delegate.featured(market, category, monitor1));
+		return performSearch(monitor, key, nodeConsumer,
+				(consumer, monitor1) -> consumer != null && delegate instanceof StreamingMarketplaceService
+				? ((StreamingMarketplaceService) delegate).featured(market, category, consumer, monitor1)
+						: delegate.featured(market, category, monitor1));
 	}
 
 	@Override
 	public ISearchResult recent(IProgressMonitor monitor) throws CoreException {
+		return recent(null, monitor);
+	}
+
+	@Override
+	public ISearchResult recent(Consumer<? super INode> nodeConsumer, IProgressMonitor monitor) throws CoreException {
 		String key = computeSearchKey("recent", null, null, null); //$NON-NLS-1$
-		return performSearch(monitor, key, monitor1 -> delegate.recent(monitor1));
+		return performSearch(monitor, key, nodeConsumer,
+				(consumer, monitor1) -> consumer != null && delegate instanceof StreamingMarketplaceService
+				? ((StreamingMarketplaceService) delegate).recent(consumer, monitor1)
+						: delegate.recent(monitor1));
 	}
 
 	@Override
@@ -378,8 +539,16 @@ public class CachingMarketplaceService implements IMarketplaceService {
 
 	@Override
 	public ISearchResult popular(IProgressMonitor monitor) throws CoreException {
+		return popular(null, monitor);
+	}
+
+	@Override
+	public ISearchResult popular(Consumer<? super INode> nodeConsumer, IProgressMonitor monitor) throws CoreException {
 		String key = computeSearchKey("popular", null, null, null); //$NON-NLS-1$
-		return performSearch(monitor, key, monitor1 -> delegate.popular(monitor1));
+		return performSearch(monitor, key, nodeConsumer,
+				(consumer, monitor1) -> consumer != null && delegate instanceof StreamingMarketplaceService
+				? ((StreamingMarketplaceService) delegate).popular(consumer, monitor1)
+						: delegate.popular(monitor1));
 
 	}
 
@@ -400,14 +569,11 @@ public class CachingMarketplaceService implements IMarketplaceService {
 	@Override
 	public INews news(IProgressMonitor monitor) throws CoreException {
 		String newsKey = "News:News"; //$NON-NLS-1$
-		INews newsResult = getCached(newsKey, INews.class);
-		if (newsResult == null) {
-			newsResult = delegate.news(monitor);
-			synchronized (cache) {
-				cache(newsKey, newsResult);
-			}
-		}
-		return newsResult;
+		return getCachedOrLoad(newsKey, INews.class, () -> {
+			INews newsResult = delegate.news(monitor);
+			cache(newsKey, EntryType.NEWS, newsResult);
+			return newsResult;
+		}, monitor);
 	}
 
 	public void reportInstallError(IProgressMonitor monitor, IStatus result, Set<Node> nodes,
@@ -22,14 +22,26 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import org.apache.http.NameValuePair;
@@ -42,6 +54,7 @@ import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.MultiStatus;
 import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.epp.internal.mpc.core.MarketplaceClientCore;
 import org.eclipse.epp.internal.mpc.core.model.Category;
@@ -55,6 +68,8 @@ import org.eclipse.epp.internal.mpc.core.model.SearchResult;
 import org.eclipse.epp.internal.mpc.core.service.AbstractDataStorageService.NotAuthorizedException;
 import org.eclipse.epp.internal.mpc.core.transport.httpclient.HttpClientService;
 import org.eclipse.epp.internal.mpc.core.transport.httpclient.RequestTemplate;
+import org.eclipse.epp.internal.mpc.core.util.ConcurrentTasks;
+import org.eclipse.epp.internal.mpc.core.util.ConcurrentTasks.CancellationMonitor;
 import org.eclipse.epp.internal.mpc.core.util.ServiceUtil;
 import org.eclipse.epp.internal.mpc.core.util.URLUtil;
 import org.eclipse.epp.mpc.core.model.ICategory;
@@ -66,6 +81,8 @@ import org.eclipse.epp.mpc.core.model.INode;
 import org.eclipse.epp.mpc.core.model.ISearchResult;
 import org.eclipse.epp.mpc.core.service.IMarketplaceService;
 import org.eclipse.epp.mpc.core.service.IMarketplaceServiceLocator;
+import org.eclipse.epp.mpc.core.service.IMarketplaceUnmarshaller;
+import org.eclipse.epp.mpc.core.service.ITransport;
 import org.eclipse.epp.mpc.core.service.IUserFavoritesService;
 import org.eclipse.epp.mpc.core.service.ServiceHelper;
 import org.eclipse.osgi.util.NLS;
@@ -76,7 +93,7 @@ import org.eclipse.osgi.util.NLS;
  */
 @SuppressWarnings("deprecation")
 public class DefaultMarketplaceService extends RemoteMarketplaceService<Marketplace> implements IMarketplaceService,
-MarketplaceService {
+MarketplaceService, StreamingMarketplaceService {
 
 //	This provisional API will be identified by /api/p at the end of most urls.
 //
@@ -122,6 +139,50 @@ MarketplaceService {
 
 	private static final String API_ERROR_REPORT_URI = "install/error/report"; //$NON-NLS-1$
 
+	/**
+	 * Default maximum number of node ids requested at once by {@link #getNodes(Collection, IProgressMonitor)}, keeping
+	 * request urls and responses at a reasonable size
+	 */
+	public static final int DEFAULT_NODE_BATCH_SIZE = Math
+			.max(1, Integer.getInteger(DefaultMarketplaceService.class.getName() + ".nodeBatchSize", 50)); //$NON-NLS-1$
+
+	/**
+	 * Default number of requests {@link #getNodes(Collection, IProgressMonitor)} performs in parallel
+	 */
+	public static final int DEFAULT_NODE_REQUEST_PARALLELISM = Math
+			.max(1, Integer.getInteger(DefaultMarketplaceService.class.getName() + ".nodeRequestParallelism", 4)); //$NON-NLS-1$
+
+	private static final class NodeRequestExecutor {
+
+		//parallelism is limited per getNodes() call, so just reuse idle threads
+		private static final ExecutorService INSTANCE = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 30,
+				TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+				ConcurrentTasks.daemonThreadFactory("Marketplace node request")); //$NON-NLS-1$
+	}
+
+	private interface NodeRequest {
+		NodeResolution resolve(IProgressMonitor monitor) throws CoreException;
+	}
+
+	/**
+	 * Outcome of a single node request in {@link DefaultMarketplaceService#getNodes(Collection, IProgressMonitor)}
+	 */
+	private static final class NodeResolution {
+
+		private final List<INode> requestedNodes;
+
+		private final boolean byUrl;
+
+		private final Map<INode, INode> resolvedNodes = new HashMap<>();
+
+		private final Map<INode, CoreException> errors = new HashMap<>(1);
+
+		public NodeResolution(List<INode> requestedNodes, boolean byUrl) {
+			this.requestedNodes = requestedNodes;
+			this.byUrl = byUrl;
+		}
+	}
+
 	public static final String DEFAULT_SERVICE_LOCATION = System
 			.getProperty(IMarketplaceServiceLocator.DEFAULT_MARKETPLACE_PROPERTY_NAME, "http://marketplace.eclipse.org"); //$NON-NLS-1$
 
@@ -177,6 +238,10 @@ MarketplaceService {
 
 	private HttpClientService httpClient;
 
+	private int nodeBatchSize = DEFAULT_NODE_BATCH_SIZE;
+
+	private int nodeRequestParallelism = DEFAULT_NODE_REQUEST_PARALLELISM;
+
 	public DefaultMarketplaceService(URL baseUrl) {
 		this.baseUrl = baseUrl == null ? DEFAULT_SERVICE_URL : baseUrl;
 	}
@@ -185,6 +250,14 @@ MarketplaceService {
 		this(null);
 	}
 
+	/**
+	 * @see RemoteMarketplaceService#RemoteMarketplaceService(ITransport, IMarketplaceUnmarshaller)
+	 */
+	public DefaultMarketplaceService(URL baseUrl, ITransport transport) {
+		super(transport, null);
+		this.baseUrl = baseUrl == null ? DEFAULT_SERVICE_URL : baseUrl;
+	}
+
 	@Override
 	public URL getBaseUrl() {
 		return super.getBaseUrl();
@@ -299,6 +372,12 @@ MarketplaceService {
 
 	@Override
 	public List<INode> getNodes(Collection<? extends INode> nodes, IProgressMonitor monitor) throws CoreException {
+		return getNodes(nodes, null, monitor);
+	}
+
+	@Override
+	public List<INode> getNodes(Collection<? extends INode> nodes, Consumer<? super INode> nodeConsumer,
+			IProgressMonitor monitor) throws CoreException {
 		SubMonitor progress = SubMonitor.convert(monitor, Messages.DefaultMarketplaceService_getNodesProgress, nodes.size());
 		if (nodes.isEmpty()) {
 			return new ArrayList<>();
@@ -309,27 +388,23 @@ MarketplaceService {
 			if (node.getId() == null && node.getUrl() == null) {
 				throw new CoreException(createErrorStatus(Messages.DefaultMarketplaceService_invalidNode, node));
 			}
-			if (node.getUrl() != null) {
-				if (nodesByUrl == null) {
-					nodesByUrl = new ArrayList<>();
-				}
-				nodesByUrl.add(node);
-			}
 			if (node.getId() != null) {
 				if (nodesById == null) {
 					nodesById = new ArrayList<>(nodes.size());
 				}
 				nodesById.add(node);
+			} else {
+				//nodes with an id are only resolved by url if they can't be found by id
+				if (nodesByUrl == null) {
+					nodesByUrl = new ArrayList<>();
+				}
+				nodesByUrl.add(node);
 			}
 		}
 		Map<INode, INode> resolvedNodeMapping = new HashMap<>(nodes.size());
 		Map<INode, CoreException> resolutionErrors = new HashMap<>(2);
-		if (nodesById != null) {
-			getNodesById(nodesById, resolvedNodeMapping, progress.newChild(nodesById.size()));
-		}
-		if (nodesByUrl != null) {
-			getNodesByUrl(nodesByUrl, resolvedNodeMapping, resolutionErrors, progress.newChild(nodesByUrl.size()));
-		}
+		DistinctNodeConsumer distinctConsumer = nodeConsumer == null ? null : new DistinctNodeConsumer(nodeConsumer);
+		resolveNodes(nodesById, nodesByUrl, resolvedNodeMapping, resolutionErrors, distinctConsumer, progress);
 
 		List<INode> resultNodes = new ArrayList<>(nodes.size());
 		MultiStatus missingNodes = null;
@@ -358,17 +433,125 @@ MarketplaceService {
 		if (missingNodes != null) {
 			MarketplaceClientCore.getLog().log(missingNodes);
 		}
+		if (distinctConsumer != null) {
+			distinctConsumer.acceptAll(resultNodes);
+		}
 		return resultNodes;
 	}
 
-	private void getNodesById(Collection<? extends INode> nodes, Map<INode, INode> resolvedNodeMapping,
+	/**
+	 * Resolve nodes by id in batches of at most {@link #getNodeBatchSize()} ids, and nodes without id or not found by
+	 * id by their url, using up to {@link #getNodeRequestParallelism()} parallel requests. Results are collected and
+	 * published on the calling thread as each request completes.
+	 */
+	private void resolveNodes(List<INode> nodesById, List<INode> nodesByUrl, Map<INode, INode> resolvedNodeMapping,
+			Map<INode, CoreException> resolutionErrors, Consumer<INode> nodeConsumer, SubMonitor progress)
+					throws CoreException {
+		Deque<NodeRequest> pendingRequests = new ArrayDeque<>();
+		if (nodesById != null) {
+			int batchSize = nodeBatchSize;
+			for (int i = 0; i < nodesById.size(); i += batchSize) {
+				List<INode> batch = nodesById.subList(i, Math.min(i + batchSize, nodesById.size()));
+				pendingRequests.add(monitor -> getNodesById(batch, monitor));
+			}
+		}
+		if (nodesByUrl != null) {
+			for (INode node : nodesByUrl) {
+				pendingRequests.add(monitor -> getSingleNode(node, monitor));
+			}
+		}
+
+		CancellationMonitor requestMonitor = new CancellationMonitor(progress);
+		CompletionService<NodeResolution> completionService = new ExecutorCompletionService<>(
+				NodeRequestExecutor.INSTANCE);
+		Set<Future<NodeResolution>> runningRequests = new HashSet<>();
+		try {
+			while (!pendingRequests.isEmpty() || !runningRequests.isEmpty()) {
+				NodeResolution resolution;
+				if (runningRequests.isEmpty() && pendingRequests.size() == 1) {
+					//no need to hand off a single request
+					resolution = pendingRequests.poll().resolve(requestMonitor);
+				} else {
+					while (runningRequests.size() < nodeRequestParallelism && !pendingRequests.isEmpty()) {
+						NodeRequest request = pendingRequests.poll();
+						runningRequests.add(completionService.submit(() -> request.resolve(requestMonitor)));
+					}
+					Future<NodeResolution> completedRequest = awaitNext(completionService, progress);
+					if (completedRequest == null) {
+						continue;
+					}
+					runningRequests.remove(completedRequest);
+					resolution = getResolution(completedRequest);
+				}
+
+				int completedNodes = 0;
+				for (INode node : resolution.requestedNodes) {
+					INode resolvedNode = resolution.resolvedNodes.get(node);
+					CoreException error = resolution.errors.get(node);
+					if (resolvedNode != null) {
+						resolvedNodeMapping.put(node, resolvedNode);
+						if (nodeConsumer != null) {
+							nodeConsumer.accept(resolvedNode);
+						}
+					} else if (error == null && node.getId() != null && node.getUrl() != null
+							&& !resolution.byUrl) {
+						pendingRequests.add(monitor -> getSingleNode(node, monitor));
+						continue;
+					} else if (error != null) {
+						resolutionErrors.put(node, error);
+					}
+					completedNodes++;
+				}
+				progress.worked(completedNodes);
+			}
+		} finally {
+			if (!runningRequests.isEmpty()) {
+				requestMonitor.setCanceled(true);
+				for (Future<NodeResolution> runningRequest : runningRequests) {
+					runningRequest.cancel(true);
+				}
+			}
+		}
+	}
+
+	private static Future<NodeResolution> awaitNext(CompletionService<NodeResolution> completionService,
 			IProgressMonitor monitor) throws CoreException {
+		if (monitor.isCanceled()) {
+			throw new CoreException(Status.CANCEL_STATUS);
+		}
+		try {
+			return completionService.poll(ConcurrentTasks.CANCEL_POLL_INTERVAL, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CoreException(Status.CANCEL_STATUS);
+		}
+	}
+
+	private static NodeResolution getResolution(Future<NodeResolution> completedRequest) throws CoreException {
+		try {
+			return completedRequest.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CoreException(Status.CANCEL_STATUS);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof CoreException) {
+				throw (CoreException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new CoreException(MarketplaceClientCore.computeStatus(cause, null));
+		}
+	}
+
+	private NodeResolution getNodesById(List<INode> nodes, IProgressMonitor monitor) throws CoreException {
 		StringBuilder nodeIdQuery = new StringBuilder();
 		Map<String, INode> nodeIds = new HashMap<>(nodes.size());
 		for (INode node : nodes) {
-			if (node.getId() == null) {
-				continue;
-			}
 			nodeIds.put(node.getId(), node);
 			String encodedId = urlEncode(node.getId());
 			if (nodeIdQuery.length() > 0) {
@@ -377,40 +560,99 @@ MarketplaceService {
 			nodeIdQuery.append(encodedId);
 		}
 		Marketplace marketplace = processRequest(API_NODE_URI + '/' + nodeIdQuery + '/' + API_URI_SUFFIX, monitor);
+		NodeResolution resolution = new NodeResolution(nodes, false);
 		List<Node> resolvedNodes = marketplace.getNode();
 		for (Node node : resolvedNodes) {
 			INode inputNode = nodeIds.get(node.getId());
 			if (inputNode != null) {
-				resolvedNodeMapping.put(inputNode, node);
+				resolution.resolvedNodes.put(inputNode, node);
 			} else {
 				throw new CoreException(
 						createErrorStatus(Messages.DefaultMarketplaceService_unexpectedResponse, nodeIdQuery));
 			}
 		}
-	}
-
-	private void getNodesByUrl(Collection<? extends INode> nodes, Map<INode, INode> resolvedNodeMapping,
-			Map<INode, CoreException> resolutionErrors, IProgressMonitor monitor) throws CoreException {
-		SubMonitor progress = SubMonitor.convert(monitor, nodes.size());
-		int remaining = nodes.size();
+		//map duplicate input nodes for the same id
 		for (INode node : nodes) {
-			if (node.getUrl() != null && !resolvedNodeMapping.containsKey(node)) {
-				try {
-					Node resolvedNode = getNode(node, progress.newChild(1));
-					resolvedNodeMapping.put(node, resolvedNode);
-				} catch (CoreException ex) {
-					resolutionErrors.put(node, ex);
+			if (!resolution.resolvedNodes.containsKey(node)) {
+				INode resolvedNode = resolution.resolvedNodes.get(nodeIds.get(node.getId()));
+				if (resolvedNode != null) {
+					resolution.resolvedNodes.put(node, resolvedNode);
 				}
 			}
-			progress.setWorkRemaining(--remaining);
 		}
+		return resolution;
+	}
+
+	private NodeResolution getSingleNode(INode node, IProgressMonitor monitor) throws CoreException {
+		NodeResolution resolution = new NodeResolution(Collections.singletonList(node), true);
+		try {
+			Node resolvedNode = getNode(node, monitor);
+			resolution.resolvedNodes.put(node, resolvedNode);
+		} catch (CoreException ex) {
+			if (ex.getStatus().getSeverity() == IStatus.CANCEL) {
+				throw ex;
+			}
+			resolution.errors.put(node, ex);
+		}
+		return resolution;
+	}
+
+	public int getNodeBatchSize() {
+		return nodeBatchSize;
+	}
+
+	/**
+	 * Set the maximum number of node ids requested at once by {@link #getNodes(Collection, IProgressMonitor)}. Larger
+	 * lookups are split into multiple requests.
+	 */
+	public void setNodeBatchSize(int nodeBatchSize) {
+		if (nodeBatchSize < 1) {
+			throw new IllegalArgumentException();
+		}
+		this.nodeBatchSize = nodeBatchSize;
+	}
+
+	public int getNodeRequestParallelism() {
+		return nodeRequestParallelism;
+	}
+
+	/**
+	 * Set the number of requests {@link #getNodes(Collection, IProgressMonitor)} performs in parallel.
+	 */
+	public void setNodeRequestParallelism(int nodeRequestParallelism) {
+		if (nodeRequestParallelism < 1) {
+			throw new IllegalArgumentException();
+		}
+		this.nodeRequestParallelism = nodeRequestParallelism;
 	}
 
 	@Override
 	public SearchResult search(IMarket market, ICategory category, String queryText, IProgressMonitor monitor)
 			throws CoreException {
+		return search(market, category, queryText, null, monitor);
+	}
+
+	@Override
+	public SearchResult search(IMarket market, ICategory category, String queryText,
+			Consumer<? super INode> nodeConsumer, IProgressMonitor monitor) throws CoreException {
 		String relativeUrl = computeRelativeSearchUrl(market, category, queryText, true);
-		return processSearchRequest(relativeUrl, queryText, monitor);
+		return stream(nodeConsumer, consumer -> processSearchRequest(relativeUrl, queryText, consumer, monitor));
+	}
+
+	private interface StreamingRequest {
+		SearchResult execute(Consumer<? super INode> nodeConsumer) throws CoreException;
+	}
+
+	private static SearchResult stream(Consumer<? super INode> nodeConsumer, StreamingRequest request)
+			throws CoreException {
+		if (nodeConsumer == null) {
+			return request.execute(null);
+		}
+		DistinctNodeConsumer distinctConsumer = new DistinctNodeConsumer(nodeConsumer);
+		SearchResult result = request.execute(distinctConsumer);
+		//publish whatever couldn't be streamed, e.g. with a custom unmarshaller
+		distinctConsumer.acceptAll(result.getNodes());
+		return result;
 	}
 
 	@Override
@@ -488,8 +730,8 @@ MarketplaceService {
 		return relativeUrl;
 	}
 
-	private SearchResult processSearchRequest(String relativeUrl, String queryText, IProgressMonitor monitor)
-			throws CoreException {
+	private SearchResult processSearchRequest(String relativeUrl, String queryText,
+			Consumer<? super INode> nodeConsumer, IProgressMonitor monitor) throws CoreException {
 		SearchResult result = new SearchResult();
 		if (relativeUrl == null) {
 			// empty search
@@ -498,7 +740,7 @@ MarketplaceService {
 		} else {
 			Marketplace marketplace;
 			try {
-				marketplace = processRequest(relativeUrl, monitor);
+				marketplace = processRequest(relativeUrl, nodeConsumer, monitor);
 			} catch (CoreException ex) {
 				Throwable cause = ex.getCause();
 				if (cause instanceof FileNotFoundException) {
@@ -525,7 +767,14 @@ MarketplaceService {
 
 	@Override
 	public SearchResult tagged(String tag, IProgressMonitor monitor) throws CoreException {
-		return processSearchRequest(API_FREETAGGING_URI + URLUtil.urlEncode(tag) + '/' + API_URI_SUFFIX, tag, monitor);
+		return tagged(tag, null, monitor);
+	}
+
+	@Override
+	public SearchResult tagged(String tag, Consumer<? super INode> nodeConsumer, IProgressMonitor monitor)
+			throws CoreException {
+		String relativeUrl = API_FREETAGGING_URI + URLUtil.urlEncode(tag) + '/' + API_URI_SUFFIX;
+		return stream(nodeConsumer, consumer -> processSearchRequest(relativeUrl, tag, consumer, monitor));
 	}
 
 	@Override
@@ -541,6 +790,12 @@ MarketplaceService {
 
 	@Override
 	public SearchResult featured(IMarket market, ICategory category, IProgressMonitor monitor) throws CoreException {
+		return featured(market, category, null, monitor);
+	}
+
+	@Override
+	public SearchResult featured(IMarket market, ICategory category, Consumer<? super INode> nodeConsumer,
+			IProgressMonitor monitor) throws CoreException {
 		String nodePart = ""; //$NON-NLS-1$
 		if (market != null) {
 			nodePart += urlEncode(market.getId());
@@ -555,8 +810,9 @@ MarketplaceService {
 		if (nodePart.length() > 0) {
 			uri += nodePart + '/';
 		}
-		Marketplace marketplace = processRequest(uri + API_URI_SUFFIX, monitor);
-		return createSearchResult(marketplace.getFeatured());
+		String relativeUrl = uri + API_URI_SUFFIX;
+		return stream(nodeConsumer,
+				consumer -> createSearchResult(processRequest(relativeUrl, consumer, monitor).getFeatured()));
 	}
 
 	@Override
@@ -566,8 +822,13 @@ MarketplaceService {
 
 	@Override
 	public SearchResult recent(IProgressMonitor monitor) throws CoreException {
-		Marketplace marketplace = processRequest(API_RECENT_URI + '/' + API_URI_SUFFIX, monitor);
-		return createSearchResult(marketplace.getRecent());
+		return recent(null, monitor);
+	}
+
+	@Override
+	public SearchResult recent(Consumer<? super INode> nodeConsumer, IProgressMonitor monitor) throws CoreException {
+		return stream(nodeConsumer, consumer -> createSearchResult(
+				processRequest(API_RECENT_URI + '/' + API_URI_SUFFIX, consumer, monitor).getRecent()));
 	}
 
 	/**
@@ -663,8 +924,9 @@ MarketplaceService {
 
 	private ISearchResult resolveFavoriteNodes(final List<INode> nodes, IProgressMonitor monitor, boolean filterIncompatible) throws CoreException {
 		IMarketplaceService resolveService = this;
-		IMarketplaceService registeredService = ServiceHelper.getMarketplaceServiceLocator()
-				.getMarketplaceService(this.getBaseUrl().toString());
+		IMarketplaceServiceLocator serviceLocator = ServiceHelper.getMarketplaceServiceLocator();
+		IMarketplaceService registeredService = serviceLocator == null ? null
+				: serviceLocator.getMarketplaceService(this.getBaseUrl().toString());
 		if (registeredService instanceof CachingMarketplaceService) {
 			CachingMarketplaceService cachingService = (CachingMarketplaceService) registeredService;
 			if (cachingService.getDelegate() == this) {
@@ -719,8 +981,13 @@ MarketplaceService {
 
 	@Override
 	public SearchResult popular(IProgressMonitor monitor) throws CoreException {
-		Marketplace marketplace = processRequest(API_POPULAR_URI + '/' + API_URI_SUFFIX, monitor);
-		return createSearchResult(marketplace.getPopular());
+		return popular(null, monitor);
+	}
+
+	@Override
+	public SearchResult popular(Consumer<? super INode> nodeConsumer, IProgressMonitor monitor) throws CoreException {
+		return stream(nodeConsumer, consumer -> createSearchResult(
+				processRequest(API_POPULAR_URI + '/' + API_URI_SUFFIX, consumer, monitor).getPopular()));
 	}
 
 	@Override
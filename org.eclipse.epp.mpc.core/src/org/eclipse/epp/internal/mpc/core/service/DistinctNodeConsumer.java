@@ -0,0 +1,64 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.internal.mpc.core.service;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import org.eclipse.epp.mpc.core.model.INode;
+
+/**
+ * Forwards each node to the delegate consumer only once, identified by its id or - lacking that - its url. This is
+ * used to publish streamed nodes exactly once, even if a request is retried or the full result is published again after
+ * the request completed.
+ *
+ * @author Carsten Reckord
+ */
+public class DistinctNodeConsumer implements Consumer<INode> {
+
+	private final Consumer<? super INode> delegate;
+
+	private final Set<String> published = new HashSet<>();
+
+	public DistinctNodeConsumer(Consumer<? super INode> delegate) {
+		if (delegate == null) {
+			throw new IllegalArgumentException();
+		}
+		this.delegate = delegate;
+	}
+
+	@Override
+	public void accept(INode node) {
+		String key = node.getId() != null ? node.getId() : node.getUrl();
+		if (key == null || published.add(key)) {
+			delegate.accept(node);
+		}
+	}
+
+	/**
+	 * Publish all nodes from the given collection that haven't been published yet.
+	 */
+	public void acceptAll(Collection<? extends INode> nodes) {
+		if (nodes != null) {
+			for (INode node : nodes) {
+				accept(node);
+			}
+		}
+	}
+
+	public int getPublishedCount() {
+		return published.size();
+	}
+}
@@ -0,0 +1,182 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.internal.mpc.core.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parses the JSON responses of the user favorites API used by {@link UserFavoritesService}. The responses have a fixed
+ * and simple structure, so this is a minimal pattern based parser instead of a full JSON library.
+ *
+ * @author Carsten Reckord
+ */
+public final class FavoritesResponseParser {
+
+	private static final String TEMPLATE_VARIABLE = "%s"; //$NON-NLS-1$
+
+	/**
+	 * Matches a single object/dict in a list, returning its body (i.e. without the braces) in its first match group.
+	 * This only supports dicts with simple attributes. Nested dicts will result in wrong matches.
+	 */
+	private static final String JSON_LIST_OBJECTS_REGEX = "\\{([^\\{\\}]+)\\}"; //$NON-NLS-1$
+
+	private static final Pattern JSON_LIST_OBJECTS_PATTERN = Pattern.compile(JSON_LIST_OBJECTS_REGEX,
+			Pattern.MULTILINE);
+
+	/**
+	 * Returns the body of the list value for the attribute with the given name, e.g. for <code>
+	 *    {"users":[{...},{...}], "count"="2"}
+	 * </code> and the name "users" it will return "{...},{...}" in its first match group.
+	 */
+	private static final String JSON_ATTRIBUTE_OBJECT_LIST_REGEX = "\\{(?:.*,)?\\s*\"" + TEMPLATE_VARIABLE //$NON-NLS-1$
+			+ "\"\\s*:\\s*\\[((?:\\s*" + JSON_LIST_OBJECTS_REGEX + "\\s*,?\\s*)*)\\],.*\\}"; //$NON-NLS-1$ //$NON-NLS-2$
+
+	/**
+	 * Matches a single string attribute in a dict. Returns the matched attribute name in the first match group and the
+	 * attribute value in the second.
+	 */
+	private static final String JSON_ATTRIBUTE_REGEX = "(?<=[,\\{]|^)\\s*\"(" + TEMPLATE_VARIABLE //$NON-NLS-1$
+			+ ")\"\\s*:\\s*\"([^\"]*)\"\\s*(?=[,\\}]|$)"; //$NON-NLS-1$
+
+	private static final Pattern JSON_MPC_FAVORITES_PATTERN = Pattern
+			.compile(String.format(JSON_ATTRIBUTE_OBJECT_LIST_REGEX, "mpc_favorites"), Pattern.MULTILINE); //$NON-NLS-1$
+
+	private static final Pattern JSON_FAVORITE_LISTS_PATTERN = Pattern
+			.compile(String.format(JSON_ATTRIBUTE_OBJECT_LIST_REGEX, "users"), Pattern.MULTILINE); //$NON-NLS-1$
+
+	private static final Pattern JSON_USER_ID_ATTRIBUTE_PATTERN = Pattern
+			.compile(String.format(JSON_ATTRIBUTE_REGEX, "name"), Pattern.MULTILINE); //$NON-NLS-1$
+
+	private static final Pattern JSON_OWNER_ATTRIBUTE_PATTERN = Pattern
+			.compile(String.format(JSON_ATTRIBUTE_REGEX, "(?:full_)?name"), Pattern.MULTILINE); //$NON-NLS-1$
+
+	private static final Pattern JSON_NAME_ATTRIBUTE_PATTERN = Pattern
+			.compile(String.format(JSON_ATTRIBUTE_REGEX, "mpc_list_name"), Pattern.MULTILINE); //$NON-NLS-1$
+
+	private static final Pattern JSON_CONTENT_ID_ATTRIBUTE_PATTERN = Pattern
+			.compile(String.format(JSON_ATTRIBUTE_REGEX, "content_id"), Pattern.MULTILINE); //$NON-NLS-1$
+
+	private static final Pattern JSON_LIST_URL_ATTRIBUTE_PATTERN = Pattern
+			.compile(String.format(JSON_ATTRIBUTE_REGEX, "html_mpc_favorites_url"), Pattern.MULTILINE); //$NON-NLS-1$
+
+	private static final Pattern JSON_OWNER_ICON_ATTRIBUTE_PATTERN = Pattern
+			.compile(String.format(JSON_ATTRIBUTE_REGEX, "picture"), Pattern.MULTILINE); //$NON-NLS-1$
+
+	private static final Pattern JSON_OWNER_PROFILE_URL_ATTRIBUTE_PATTERN = Pattern
+			.compile(String.format(JSON_ATTRIBUTE_REGEX, "html_profile_url"), Pattern.MULTILINE); //$NON-NLS-1$
+
+	private FavoritesResponseParser() {
+	}
+
+	/**
+	 * Parse the node ids from a user's favorites list.
+	 *
+	 * @return the favorite node ids, or null if the body is not a favorites response
+	 */
+	public static List<String> parseFavoriteIds(String body) {
+		return parseList(JSON_MPC_FAVORITES_PATTERN, body, FavoritesResponseParser::findContentId);
+	}
+
+	/**
+	 * Parse the entries of a list of favorite lists, passing the JSON body of each entry to the given element parser.
+	 * Elements for which the parser returns null are skipped.
+	 *
+	 * @return the parsed entries, or null if the body is not a list of favorite lists
+	 */
+	public static <T> List<T> parseFavoriteLists(String body, Function<String, T> elementParser) {
+		return parseList(JSON_FAVORITE_LISTS_PATTERN, body, elementParser);
+	}
+
+	private static <T> List<T> parseList(Pattern listAttributePattern, String body,
+			Function<String, T> elementParser) {
+		List<T> elements = new ArrayList<>();
+		if (!"".equals(body)) { //$NON-NLS-1$
+			Matcher matcher = listAttributePattern.matcher(body);
+			if (!matcher.find()) {
+				return null;
+			}
+			String listBody = matcher.group(1);
+			Matcher entryMatcher = JSON_LIST_OBJECTS_PATTERN.matcher(listBody);
+			while (entryMatcher.find()) {
+				String listElement = entryMatcher.group(1);
+				T parsedElement = elementParser.apply(listElement);
+				if (parsedElement != null) {
+					elements.add(parsedElement);
+				}
+			}
+		}
+		return elements;
+	}
+
+	private static String findContentId(String entryBody) {
+		Matcher contentIdMatcher = JSON_CONTENT_ID_ATTRIBUTE_PATTERN.matcher(entryBody);
+		if (contentIdMatcher.find()) {
+			return contentIdMatcher.group(2);
+		}
+		return null;
+	}
+
+	public static String findFavoritesListId(String entryBody) {
+		return findFavoritesNameOrId(entryBody, JSON_USER_ID_ATTRIBUTE_PATTERN);
+	}
+
+	public static String findFavoritesListOwner(String entryBody) {
+		return findFavoritesNameOrId(entryBody, JSON_OWNER_ATTRIBUTE_PATTERN);
+	}
+
+	public static String findFavoritesListLabel(String entryBody) {
+		return findFavoritesNameOrId(entryBody, JSON_NAME_ATTRIBUTE_PATTERN);
+	}
+
+	public static String findFavoritesListUrl(String entryBody) {
+		return getAttribute(JSON_LIST_URL_ATTRIBUTE_PATTERN, entryBody);
+	}
+
+	public static String findOwnerIcon(String entryBody) {
+		return getAttribute(JSON_OWNER_ICON_ATTRIBUTE_PATTERN, entryBody);
+	}
+
+	public static String findOwnerProfileUrl(String entryBody) {
+		return getAttribute(JSON_OWNER_PROFILE_URL_ATTRIBUTE_PATTERN, entryBody);
+	}
+
+	private static String getAttribute(Pattern attributePattern, String entryBody) {
+		Matcher matcher = attributePattern.matcher(entryBody);
+		if (matcher.find()) {
+			return matcher.group(2);
+		}
+		return null;
+	}
+
+	private static String findFavoritesNameOrId(String entryBody, Pattern pattern) {
+		String result = null;
+		Matcher matcher = pattern.matcher(entryBody);
+		while (matcher.find()) {
+			String name = matcher.group(1);
+			String value = matcher.group(2);
+			if ("name".equals(name)) { //$NON-NLS-1$
+				//remember, but try to find a better match
+				if (result == null) {
+					result = value;
+				}
+			} else {
+				return value;
+			}
+		}
+		return result;
+	}
+}
@@ -26,14 +26,16 @@ import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.CharsetDecoder;
 import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.MultiStatus;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.epp.internal.mpc.core.MarketplaceClientCore;
-import org.eclipse.epp.internal.mpc.core.service.xml.StripInvalidXMLCharsReader;
+import org.eclipse.epp.internal.mpc.core.service.xml.StripInvalidXMLCharsInputStream;
 import org.eclipse.epp.internal.mpc.core.service.xml.Unmarshaller;
+import org.eclipse.epp.mpc.core.model.INode;
 import org.eclipse.epp.mpc.core.service.IMarketplaceUnmarshaller;
 import org.eclipse.epp.mpc.core.service.UnmarshalException;
 import org.eclipse.osgi.util.NLS;
@@ -51,19 +53,38 @@ public class MarketplaceUnmarshaller implements IMarketplaceUnmarshaller {
 	@Override
 	public <T> T unmarshal(InputStream in, Class<T> type, IProgressMonitor monitor) throws IOException,
 	UnmarshalException {
+		return unmarshal(in, type, null, true, monitor);
+	}
+
+	/**
+	 * Unmarshal the given stream, publishing each node to the given consumer as soon as it has been parsed. This
+	 * happens on the calling thread while the rest of the response is still being read, so callers can start working
+	 * on the first nodes of a large listing early.
+	 *
+	 * @param nodeConsumer
+	 *            receives the parsed nodes in document order, may be null
+	 * @param retainNodes
+	 *            false to drop nodes from the returned model once they have been published to the consumer, keeping
+	 *            memory use independent of the number of nodes in the response
+	 * @see Unmarshaller#setNodeConsumer(Consumer, boolean)
+	 */
+	public <T> T unmarshal(InputStream in, Class<T> type, Consumer<? super INode> nodeConsumer, boolean retainNodes,
+			IProgressMonitor monitor) throws IOException, UnmarshalException {
 		if (in == null) {
 			throw new IOException(Messages.MarketplaceUnmarshaller_errorNullStream);
 		}
-		final Unmarshaller unmarshaller = new Unmarshaller();
-		final XMLReader xmlReader = Unmarshaller.createXMLReader(unmarshaller);
+		final Unmarshaller unmarshaller = Unmarshaller.acquire();
+		unmarshaller.setNodeConsumer(nodeConsumer, retainNodes);
+		final XMLReader xmlReader = unmarshaller.getXMLReader();
 
 		BufferedInputStream bufferedInput = in instanceof BufferedInputStream ? (BufferedInputStream) in
 				: new BufferedInputStream(in);
 		ByteBuffer peekBuffer = peekResponseContent(bufferedInput);
 
 		// FIXME how can the charset be determined?
-		Reader reader = new InputStreamReader(bufferedInput, StandardCharsets.UTF_8);
-		reader = new StripInvalidXMLCharsReader(reader);
+		// filter on the raw UTF-8 bytes, which is cheaper than checking each decoded char
+		Reader reader = new InputStreamReader(new StripInvalidXMLCharsInputStream(bufferedInput),
+				StandardCharsets.UTF_8);
 		try {
 			xmlReader.parse(new InputSource(reader));
 		} catch (final SAXException e) {
@@ -73,6 +94,8 @@ public class MarketplaceUnmarshaller implements IMarketplaceUnmarshaller {
 		}
 
 		Object model = unmarshaller.getModel();
+		//only reuse the unmarshaller after a successful parse - failures are dropped with whatever state they left
+		Unmarshaller.release(unmarshaller);
 		if (model == null) {
 			// if we reach here this should never happen
 			IStatus error = createContentError(peekBuffer,
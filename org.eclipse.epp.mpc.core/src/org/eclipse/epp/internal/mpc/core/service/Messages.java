@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2018 The Eclipse Foundation and others.
+ * Copyright (c) 2010, 2019 The Eclipse Foundation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v2.0
  * which accompanies this distribution, and is available at
@@ -18,6 +18,8 @@ class Messages extends NLS {
 	private static final String BUNDLE_NAME = "org.eclipse.epp.internal.mpc.core.service.messages"; //$NON-NLS-1$
 
 
+	public static String DefaultMarketplaceService_cacheWriteFailed;
+
 	public static String DefaultMarketplaceService_cannotCompleteRequest_reason;
 
 	public static String DefaultMarketplaceService_categoryNotFound;
@@ -34,6 +36,9 @@ class Messages extends NLS {
 	public static String DefaultMarketplaceService_getNodesProgress;
 
 
+	public static String DefaultMarketplaceService_hostUnavailable;
+
+
 	public static String DefaultMarketplaceService_invalidLocation;
 
 
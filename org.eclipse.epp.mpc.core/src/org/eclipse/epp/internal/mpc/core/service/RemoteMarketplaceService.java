@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2018 The Eclipse Foundation and others.
+ * Copyright (c) 2010, 2019 The Eclipse Foundation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v2.0
  * which accompanies this distribution, and is available at
@@ -13,6 +13,9 @@
  *******************************************************************************/
 package org.eclipse.epp.internal.mpc.core.service;
 
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
@@ -21,21 +24,34 @@ import java.net.URL;
 import java.net.URLEncoder;
 import java.text.MessageFormat;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.epp.internal.mpc.core.MarketplaceClientCore;
+import org.eclipse.epp.internal.mpc.core.MarketplaceClientCorePlugin;
+import org.eclipse.epp.internal.mpc.core.service.cache.ResponseCache;
+import org.eclipse.epp.internal.mpc.core.service.resilience.RequestResilience;
+import org.eclipse.epp.internal.mpc.core.util.ConcurrentTasks;
+import org.eclipse.epp.internal.mpc.core.util.ConditionalTransport;
 import org.eclipse.epp.internal.mpc.core.util.ServiceUtil;
 import org.eclipse.epp.internal.mpc.core.util.TransportFactory;
 import org.eclipse.epp.internal.mpc.core.util.URLUtil;
+import org.eclipse.epp.mpc.core.model.INode;
 import org.eclipse.epp.mpc.core.service.IMarketplaceService;
 import org.eclipse.epp.mpc.core.service.IMarketplaceUnmarshaller;
 import org.eclipse.epp.mpc.core.service.ITransport;
 import org.eclipse.epp.mpc.core.service.ServiceHelper;
+import org.eclipse.epp.mpc.core.service.ServiceUnavailableException;
 import org.eclipse.epp.mpc.core.service.UnmarshalException;
 import org.eclipse.osgi.util.NLS;
 
@@ -47,7 +63,24 @@ public class RemoteMarketplaceService<T> {
 
 	private static final String UTF_8 = "UTF-8"; //$NON-NLS-1$
 
-	private static final int RETRY_COUNT = 3;
+	/**
+	 * Default time a cached response is used without revalidating it with the server
+	 */
+	public static final long DEFAULT_RESPONSE_MAX_AGE = TimeUnit.MINUTES.toMillis(5);
+
+	/**
+	 * Default time after {@link #DEFAULT_RESPONSE_MAX_AGE} during which a cached response is still used, while it is
+	 * revalidated in the background
+	 */
+	public static final long DEFAULT_RESPONSE_STALE_WHILE_REVALIDATE = TimeUnit.DAYS.toMillis(1);
+
+	private static final class RevalidationExecutor {
+
+		private static final ExecutorService INSTANCE = ConcurrentTasks
+				.createExecutor("Marketplace response revalidation", 2); //$NON-NLS-1$
+	}
+
+	private static final Set<String> pendingRevalidations = ConcurrentHashMap.newKeySet();
 
 	protected final ITransport transport;
 
@@ -55,6 +88,14 @@ public class RemoteMarketplaceService<T> {
 
 	private Map<String, String> requestMetaParameters;
 
+	private ResponseCache responseCache;
+
+	private long responseMaxAge = DEFAULT_RESPONSE_MAX_AGE;
+
+	private long responseStaleWhileRevalidate = DEFAULT_RESPONSE_STALE_WHILE_REVALIDATE;
+
+	private RequestResilience requestResilience = RequestResilience.getDefault();
+
 	public RemoteMarketplaceService() {
 		this.transport = TransportFactory.createTransport();
 		IMarketplaceUnmarshaller unmarshaller = ServiceHelper.getMarketplaceUnmarshaller();
@@ -65,6 +106,21 @@ public class RemoteMarketplaceService<T> {
 		this.unmarshaller = unmarshaller;
 	}
 
+	/**
+	 * Create a service using the given transport instead of the one provided by the registered transport factories,
+	 * e.g. to run against recorded responses.
+	 *
+	 * @param unmarshaller
+	 *            the unmarshaller for responses, or null to use a default instance
+	 */
+	public RemoteMarketplaceService(ITransport transport, IMarketplaceUnmarshaller unmarshaller) {
+		if (transport == null) {
+			throw new IllegalArgumentException();
+		}
+		this.transport = transport;
+		this.unmarshaller = unmarshaller == null ? new MarketplaceUnmarshaller() : unmarshaller;
+	}
+
 	protected IStatus createErrorStatus(String message, Throwable t) {
 		return createStatus(IStatus.ERROR, message, t);
 	}
@@ -134,17 +190,48 @@ public class RemoteMarketplaceService<T> {
 		return processRequest(baseUri, relativePath, true, monitor);
 	}
 
-	@SuppressWarnings({ "unchecked" })
 	protected T processRequest(String baseUri, String relativePath, boolean withMetaParams, IProgressMonitor monitor)
 			throws CoreException {
+		return processRequest(baseUri, relativePath, withMetaParams, null, monitor);
+	}
+
+	/**
+	 * Process the request, publishing each node to the given consumer as soon as it has been parsed from the response.
+	 * Nodes might be published more than once if the request has to be retried after a connection problem, so the
+	 * consumer should be able to deal with that (see {@link DistinctNodeConsumer}).
+	 * <p>
+	 * If the configured unmarshaller does not support streaming, nothing is published and the caller has to process
+	 * the returned model as usual.
+	 */
+	protected T processRequest(String relativeUrl, Consumer<? super INode> nodeConsumer, IProgressMonitor monitor)
+			throws CoreException {
+		URI baseUri;
+		try {
+			baseUri = baseUrl.toURI();
+		} catch (URISyntaxException e) {
+			// should never happen
+			throw new IllegalStateException(e);
+		}
+
+		return processRequest(baseUri.toString(), relativeUrl, true, nodeConsumer, monitor);
+	}
+
+	@SuppressWarnings({ "unchecked" })
+	protected T processRequest(String baseUri, String relativePath, boolean withMetaParams,
+			Consumer<? super INode> nodeConsumer, IProgressMonitor monitor) throws CoreException {
 		checkConfiguration();
 		if (baseUri == null || relativePath == null) {
 			throw new IllegalArgumentException();
 		}
 
 		String uri = URLUtil.appendPath(baseUri, relativePath);
+		//meta parameters don't identify the resource, but a change in e.g. the platform version must not reuse
+		//a response cached for a different one
+		String cacheKey = uri;
+		String cacheVariant = null;
 		if (withMetaParams) {
 			uri = addMetaParameters(uri);
+			cacheVariant = addMetaParameters(""); //$NON-NLS-1$
 		}
 
 		URI location;
@@ -155,20 +242,30 @@ public class RemoteMarketplaceService<T> {
 			throw new CoreException(createErrorStatus(message, e));
 		}
 
-		int retry = 0;
+		RequestResilience.Request request = requestResilience.begin(location);
 		SubMonitor progress = SubMonitor.convert(monitor,
 				NLS.bind(Messages.DefaultMarketplaceService_retrievingDataFrom, baseUri), 100);
 		try {
 			while (true) {
 				progress.setWorkRemaining(100);
+				if (!request.tryAttempt()) {
+					throw hostUnavailable(location, request.getRetryAfter());
+				}
 				try {
-					InputStream in = transport.stream(location, progress.newChild(70));
+					InputStream in = openStream(location, cacheKey, cacheVariant, progress.newChild(70));
+					T result;
 					try {
 						progress.setWorkRemaining(100);
 						progress.worked(30);
 
-						return (T) unmarshaller.unmarshal(in, Object.class, progress.newChild(70));//FIXME having T.class available here would be great...
+						if (nodeConsumer != null && unmarshaller instanceof MarketplaceUnmarshaller) {
+							result = (T) ((MarketplaceUnmarshaller) unmarshaller).unmarshal(in, Object.class,
+									nodeConsumer, true, progress.newChild(70));
+						} else {
+							result = (T) unmarshaller.unmarshal(in, Object.class, progress.newChild(70));//FIXME having T.class available here would be great...
+						}
 					} catch (UnmarshalException e) {
+						invalidateResponse(cacheKey);
 						MarketplaceClientCore.error(
 								NLS.bind(Messages.DefaultMarketplaceService_parseError, location.toString()), e);
 						throw e;
@@ -177,34 +274,192 @@ public class RemoteMarketplaceService<T> {
 							in.close();
 						}
 					}
+					//only now, the connection can still break while the body is read
+					request.succeeded();
+					return result;
 				} catch (Exception e) {
 					if (e.getCause() instanceof OperationCanceledException) {
+						request.aborted();
 						throw new CoreException(Status.CANCEL_STATUS);
 					}
 					String causeMessage = e.getMessage();
 					String message = NLS.bind(Messages.DefaultMarketplaceService_cannotCompleteRequest_reason,
 							location.toString(), causeMessage);
-					if (MarketplaceClientCore.isFailedDownloadException(e)) {
-						if (++retry < RETRY_COUNT) {
+					if (!RequestResilience.isConnectionFailure(e)) {
+						//the host responded, just not with what we wanted
+						request.succeeded();
+					} else {
+						boolean failedDownload = MarketplaceClientCore.isFailedDownloadException(e);
+						long backoff = request.failed(failedDownload);
+						if (backoff >= 0) {
 							// retry on unreliable connections
 							MarketplaceClientCore.getLog().log(createStatus(IStatus.INFO, message, e));
+							try {
+								RequestResilience.pause(backoff, progress);
+							} catch (OperationCanceledException ex) {
+								throw new CoreException(Status.CANCEL_STATUS);
+							}
 							continue;
 						}
-						IStatus connectionProblemStatus = MarketplaceClientCore.createConnectionProblemStatus(e);
-						causeMessage = connectionProblemStatus.getMessage();
-						e = new CoreException(connectionProblemStatus);
-						//rebind with updated message
-						message = NLS.bind(Messages.DefaultMarketplaceService_cannotCompleteRequest_reason, location.toString(),
-								causeMessage);
+						if (failedDownload) {
+							IStatus connectionProblemStatus = MarketplaceClientCore.createConnectionProblemStatus(e);
+							causeMessage = connectionProblemStatus.getMessage();
+							e = new CoreException(connectionProblemStatus);
+							//rebind with updated message
+							message = NLS.bind(Messages.DefaultMarketplaceService_cannotCompleteRequest_reason,
+									location.toString(), causeMessage);
+						}
 					}
 					throw new CoreException(createErrorStatus(message, e));
 				}
 			}
 		} finally {
+			request.aborted();
 			monitor.done();
 		}
 	}
 
+	private ServiceUnavailableException hostUnavailable(URI location, long retryAfter) {
+		long seconds = Math.max(1, TimeUnit.MILLISECONDS.toSeconds(retryAfter + 999));
+		String message = NLS.bind(Messages.DefaultMarketplaceService_hostUnavailable, location.getHost(), seconds);
+		return new ServiceUnavailableException(
+				new Status(IStatus.ERROR, MarketplaceClientCore.BUNDLE_ID, 503, message, null));
+	}
+
+	private InputStream openStream(URI location, String cacheKey, String cacheVariant, IProgressMonitor monitor)
+			throws FileNotFoundException, ServiceUnavailableException, CoreException, IOException {
+		ResponseCache cache = responseCache;
+		if (cache == null || !(transport instanceof ConditionalTransport)) {
+			return transport.stream(location, monitor);
+		}
+		ResponseCache.Entry entry = cache.get(cacheKey, cacheVariant);
+		if (entry != null) {
+			long age = entry.getAge();
+			if (age < responseMaxAge + responseStaleWhileRevalidate) {
+				InputStream in = openCached(entry);
+				if (in != null) {
+					if (age >= responseMaxAge) {
+						scheduleRevalidation(cache, location, entry);
+					}
+					return in;
+				}
+			}
+		}
+		return fetch(cache, location, cacheKey, cacheVariant, entry, monitor);
+	}
+
+	private static InputStream openCached(ResponseCache.Entry entry) {
+		try {
+			return entry.openStream();
+		} catch (IOException e) {
+			//concurrently evicted
+			return null;
+		}
+	}
+
+	private InputStream fetch(ResponseCache cache, URI location, String cacheKey, String cacheVariant,
+			ResponseCache.Entry entry, IProgressMonitor monitor)
+					throws FileNotFoundException, ServiceUnavailableException, CoreException, IOException {
+		ConditionalTransport conditionalTransport = (ConditionalTransport) transport;
+		ConditionalTransport.Response response = entry == null
+				? conditionalTransport.stream(location, null, null, monitor)
+						: conditionalTransport.stream(location, entry.getETag(), entry.getLastModified(), monitor);
+		if (response.isNotModified()) {
+			if (entry != null) {
+				if (MarketplaceClientCorePlugin.DEBUG) {
+					MarketplaceClientCorePlugin.trace(MarketplaceClientCorePlugin.DEBUG_CACHE_OPTION,
+							"Cached response for {0} is still valid", location); //$NON-NLS-1$
+				}
+				InputStream in = openCached(cache.revalidated(entry));
+				if (in != null) {
+					return in;
+				}
+			}
+			//cached response vanished in the meantime - get it again
+			response = conditionalTransport.stream(location, null, null, monitor);
+		}
+		ReadTrackingInputStream content = new ReadTrackingInputStream(response.getContent());
+		try {
+			return cache.put(cacheKey, cacheVariant, response.getETag(), response.getLastModified(), content)
+					.openStream();
+		} catch (IOException e) {
+			cache.remove(cacheKey);
+			if (content.failure != null) {
+				//the download failed, not the cache
+				throw e;
+			}
+			MarketplaceClientCore.getLog().log(
+					createStatus(IStatus.WARNING, NLS.bind(Messages.DefaultMarketplaceService_cacheWriteFailed,
+							location.toString(), e.getMessage()), e));
+			content.close();
+			return transport.stream(location, monitor);
+		}
+	}
+
+	/**
+	 * Remembers if reading from the wrapped stream failed, to tell download failures from cache write failures.
+	 */
+	private static final class ReadTrackingInputStream extends FilterInputStream {
+
+		private IOException failure;
+
+		ReadTrackingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			try {
+				return super.read();
+			} catch (IOException e) {
+				failure = e;
+				throw e;
+			}
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			try {
+				return super.read(b, off, len);
+			} catch (IOException e) {
+				failure = e;
+				throw e;
+			}
+		}
+	}
+
+	private void scheduleRevalidation(ResponseCache cache, URI location, ResponseCache.Entry entry) {
+		String pendingKey = entry.getKey() + '\n' + entry.getVariant();
+		if (!pendingRevalidations.add(pendingKey)) {
+			return;
+		}
+		try {
+			RevalidationExecutor.INSTANCE.execute(() -> {
+				try (InputStream in = fetch(cache, location, entry.getKey(), entry.getVariant(), entry,
+						new NullProgressMonitor())) {
+					//just update the cache
+				} catch (Exception e) {
+					if (MarketplaceClientCorePlugin.DEBUG) {
+						MarketplaceClientCorePlugin.trace(MarketplaceClientCorePlugin.DEBUG_CACHE_OPTION,
+								"Failed to revalidate cached response for {0}: {1}", location, e); //$NON-NLS-1$
+					}
+				} finally {
+					pendingRevalidations.remove(pendingKey);
+				}
+			});
+		} catch (RuntimeException e) {
+			pendingRevalidations.remove(pendingKey);
+			throw e;
+		}
+	}
+
+	private void invalidateResponse(String cacheKey) {
+		ResponseCache cache = responseCache;
+		if (cache != null) {
+			cache.remove(cacheKey);
+		}
+	}
+
 	public String addMetaParameters(String uri) {
 		if (requestMetaParameters != null) {
 			try {
@@ -251,6 +506,45 @@ public class RemoteMarketplaceService<T> {
 		this.requestMetaParameters = requestMetaParameters;
 	}
 
+	/**
+	 * The on-disk cache for raw API responses, or null if responses aren't cached. Only used if the transport supports
+	 * {@link ConditionalTransport conditional requests}, so cached responses can be revalidated.
+	 */
+	public ResponseCache getResponseCache() {
+		return responseCache;
+	}
+
+	public void setResponseCache(ResponseCache responseCache) {
+		this.responseCache = responseCache;
+	}
+
+	public RequestResilience getRequestResilience() {
+		return requestResilience;
+	}
+
+	/**
+	 * Set the retry and circuit breaker handling for requests. Defaults to the {@link RequestResilience#getDefault()
+	 * shared instance}, so failures of a host are seen by all services talking to it.
+	 */
+	public void setRequestResilience(RequestResilience requestResilience) {
+		if (requestResilience == null) {
+			throw new IllegalArgumentException();
+		}
+		this.requestResilience = requestResilience;
+	}
+
+	/**
+	 * Set how long cached responses are used without revalidating them with the server, and how long they are still
+	 * used afterwards while they are revalidated in the background.
+	 */
+	public void setResponseCacheTimes(long maxAge, long staleWhileRevalidate, TimeUnit unit) {
+		if (maxAge < 0 || staleWhileRevalidate < 0) {
+			throw new IllegalArgumentException();
+		}
+		this.responseMaxAge = unit.toMillis(maxAge);
+		this.responseStaleWhileRevalidate = unit.toMillis(staleWhileRevalidate);
+	}
+
 	protected static String urlEncode(String urlPart) {
 		try {
 			return URLEncoder.encode(urlPart, UTF_8);
@@ -0,0 +1,73 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.internal.mpc.core.service;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.epp.mpc.core.model.ICategory;
+import org.eclipse.epp.mpc.core.model.IMarket;
+import org.eclipse.epp.mpc.core.model.INode;
+import org.eclipse.epp.mpc.core.model.ISearchResult;
+import org.eclipse.epp.mpc.core.service.IMarketplaceService;
+
+/**
+ * Marketplace service that can publish the nodes of a listing while the response is still being read. Each method
+ * behaves like its {@link IMarketplaceService} counterpart, but additionally passes every node of the result to the
+ * given consumer exactly once, on the calling thread and in result order, as soon as it is available. The returned
+ * result still contains all nodes.
+ *
+ * @author Carsten Reckord
+ */
+public interface StreamingMarketplaceService extends IMarketplaceService {
+
+	/**
+	 * @see IMarketplaceService#search(IMarket, ICategory, String, IProgressMonitor)
+	 */
+	ISearchResult search(IMarket market, ICategory category, String queryText, Consumer<? super INode> nodeConsumer,
+			IProgressMonitor monitor) throws CoreException;
+
+	/**
+	 * @see IMarketplaceService#tagged(String, IProgressMonitor)
+	 */
+	ISearchResult tagged(String tag, Consumer<? super INode> nodeConsumer, IProgressMonitor monitor)
+			throws CoreException;
+
+	/**
+	 * @see IMarketplaceService#featured(IMarket, ICategory, IProgressMonitor)
+	 */
+	ISearchResult featured(IMarket market, ICategory category, Consumer<? super INode> nodeConsumer,
+			IProgressMonitor monitor) throws CoreException;
+
+	/**
+	 * @see IMarketplaceService#recent(IProgressMonitor)
+	 */
+	ISearchResult recent(Consumer<? super INode> nodeConsumer, IProgressMonitor monitor) throws CoreException;
+
+	/**
+	 * @see IMarketplaceService#popular(IProgressMonitor)
+	 */
+	ISearchResult popular(Consumer<? super INode> nodeConsumer, IProgressMonitor monitor) throws CoreException;
+
+	/**
+	 * Unlike the listings, nodes are resolved by several parallel requests, so they are published in the order they
+	 * are received, not in result order.
+	 *
+	 * @see IMarketplaceService#getNodes(Collection, IProgressMonitor)
+	 */
+	List<INode> getNodes(Collection<? extends INode> nodes, Consumer<? super INode> nodeConsumer,
+			IProgressMonitor monitor) throws CoreException;
+}
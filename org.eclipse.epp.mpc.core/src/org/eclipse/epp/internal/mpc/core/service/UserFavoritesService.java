@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2018 The Eclipse Foundation and others.
+ * Copyright (c) 2010, 2019 The Eclipse Foundation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v2.0
  * which accompanies this distribution, and is available at
@@ -46,6 +46,8 @@ import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.epp.internal.mpc.core.MarketplaceClientCore;
 import org.eclipse.epp.internal.mpc.core.model.FavoriteList;
+import org.eclipse.epp.internal.mpc.core.service.resilience.RequestResilience;
+import org.eclipse.epp.internal.mpc.core.service.resilience.RetryPolicy;
 import org.eclipse.epp.internal.mpc.core.transport.httpclient.HttpClientService;
 import org.eclipse.epp.internal.mpc.core.transport.httpclient.RequestTemplate;
 import org.eclipse.epp.internal.mpc.core.util.URLUtil;
@@ -74,66 +76,11 @@ public class UserFavoritesService extends AbstractDataStorageService implements
 
 	private static final int MALFORMED_CONTENT_ERROR_CODE = 499;
 
-	private static final String TEMPLATE_VARIABLE = "%s"; //$NON-NLS-1$
-
-	/**
-	 * Matches a single object/dict in a list, returning its body (i.e. without the braces) in its first match group.
-	 * This only supports dicts with simple attributes. Nested dicts will result in wrong matches.
-	 */
-	private static final String JSON_LIST_OBJECTS_REGEX = "\\{([^\\{\\}]+)\\}"; //$NON-NLS-1$
-
-	private static final Pattern JSON_LIST_OBJECTS_PATTERN = Pattern.compile(JSON_LIST_OBJECTS_REGEX,
-			Pattern.MULTILINE);
-
-	/**
-	 * Returns the body of the list value for the attribute with the given name, e.g. for <code>
-	 *    {"users":[{...},{...}], "count"="2"}
-	 * </code> and the name "users" it will return "{...},{...}" in its first match group.
-	 */
-	private static final String JSON_ATTRIBUTE_OBJECT_LIST_REGEX = "\\{(?:.*,)?\\s*\"" + TEMPLATE_VARIABLE //$NON-NLS-1$
-			+ "\"\\s*:\\s*\\[((?:\\s*" + JSON_LIST_OBJECTS_REGEX + "\\s*,?\\s*)*)\\],.*\\}"; //$NON-NLS-1$ //$NON-NLS-2$
-
-	/**
-	 * Matches a single string attribute in a dict. Returns the matched attribute name in the first match group and the
-	 * attribute value in the second.
-	 */
-	private static final String JSON_ATTRIBUTE_REGEX = "(?<=[,\\{]|^)\\s*\"(" + TEMPLATE_VARIABLE //$NON-NLS-1$
-			+ ")\"\\s*:\\s*\"([^\"]*)\"\\s*(?=[,\\}]|$)"; //$NON-NLS-1$
-
-	private static final Pattern JSON_MPC_FAVORITES_PATTERN = Pattern
-			.compile(String.format(JSON_ATTRIBUTE_OBJECT_LIST_REGEX, "mpc_favorites"), Pattern.MULTILINE); //$NON-NLS-1$
-
-	private static final Pattern JSON_FAVORITE_LISTS_PATTERN = Pattern
-			.compile(String.format(JSON_ATTRIBUTE_OBJECT_LIST_REGEX, "users"), Pattern.MULTILINE); //$NON-NLS-1$
-
-	private static final Pattern JSON_USER_ID_ATTRIBUTE_PATTERN = Pattern
-			.compile(String.format(JSON_ATTRIBUTE_REGEX, "name"), Pattern.MULTILINE); //$NON-NLS-1$
-
-	private static final Pattern JSON_OWNER_ATTRIBUTE_PATTERN = Pattern
-			.compile(String.format(JSON_ATTRIBUTE_REGEX, "(?:full_)?name"), Pattern.MULTILINE); //$NON-NLS-1$
-
-	private static final Pattern JSON_NAME_ATTRIBUTE_PATTERN = Pattern
-			.compile(String.format(JSON_ATTRIBUTE_REGEX, "mpc_list_name"), Pattern.MULTILINE); //$NON-NLS-1$
-
-	private static final Pattern JSON_CONTENT_ID_ATTRIBUTE_PATTERN = Pattern
-			.compile(String.format(JSON_ATTRIBUTE_REGEX, "content_id"), Pattern.MULTILINE); //$NON-NLS-1$
-
-	private static final Pattern JSON_LIST_URL_ATTRIBUTE_PATTERN = Pattern
-			.compile(String.format(JSON_ATTRIBUTE_REGEX, "html_mpc_favorites_url"), Pattern.MULTILINE); //$NON-NLS-1$
-
-	private static final Pattern JSON_OWNER_ICON_ATTRIBUTE_PATTERN = Pattern
-			.compile(String.format(JSON_ATTRIBUTE_REGEX, "picture"), Pattern.MULTILINE); //$NON-NLS-1$
-
-	private static final Pattern JSON_OWNER_PROFILE_URL_ATTRIBUTE_PATTERN = Pattern
-			.compile(String.format(JSON_ATTRIBUTE_REGEX, "html_profile_url"), Pattern.MULTILINE); //$NON-NLS-1$
-
 	public static final Pattern FAVORITES_URL_PATTERN = Pattern
 			.compile("^(?:https?:.*/)?user/([^/#?]+)(?:/favorites)?(?:[/#?].*)?$"); //$NON-NLS-1$
 
 	private static final String KEY = "mpc_favorites"; //$NON-NLS-1$
 
-	private static final int RETRY_COUNT = 3;
-
 	private static final String SEPARATOR = ","; //$NON-NLS-1$
 
 	private final Map<String, Integer> favoritesCorrections = new HashMap<>();
@@ -205,55 +152,48 @@ public class UserFavoritesService extends AbstractDataStorageService implements
 	public List<IFavoriteList> getRandomFavoriteLists(IProgressMonitor monitor) throws IOException {
 		URI serviceUri = getStorageService().getServiceUri();
 		final URI randomFavoritesUri = serviceUri.resolve(RANDOM_FAVORITE_LISTS_ENDPOINT);
-		return new AbstractJSONListRequest<IFavoriteList>(randomFavoritesUri, JSON_FAVORITE_LISTS_PATTERN) {
+		return new AbstractJSONListRequest<IFavoriteList>(randomFavoritesUri) {
 
 			@Override
-			protected IFavoriteList parseListElement(String entryBody) {
-				String id = findFavoritesListId(entryBody);
-				if (id == null) {
-					return null;
-				}
-				String owner = findFavoritesListOwner(entryBody);
-				if (owner == null) {
-					owner = id;
-				}
-				String label = findFavoritesListLabel(entryBody);
-				if (label != null && (label.equals(id) || label.equals(owner))) {
-					label = null;
-				}
-				String favoritesListUrl = getFavoritesListUrl(entryBody, id);
-				if (favoritesListUrl == null) {
-					return null;
-				}
-				String icon = getAttribute(JSON_OWNER_ICON_ATTRIBUTE_PATTERN, null, entryBody);
-				String profileUrl = getAttribute(JSON_OWNER_PROFILE_URL_ATTRIBUTE_PATTERN, null, entryBody);
-				IFavoriteList favoritesByUserId = QueryHelper.favoritesByUserId(id);
-				((FavoriteList) favoritesByUserId).setOwner(owner);
-				((FavoriteList) favoritesByUserId).setOwnerProfileUrl(profileUrl);
-				((FavoriteList) favoritesByUserId).setName(label);
-				((FavoriteList) favoritesByUserId).setUrl(favoritesListUrl);
-				((FavoriteList) favoritesByUserId).setIcon(icon);
-				return favoritesByUserId;
+			protected List<IFavoriteList> parseList(String body) {
+				return FavoritesResponseParser.parseFavoriteLists(body, UserFavoritesService.this::parseFavoriteList);
 			}
 
 		}.execute(httpClient, randomFavoritesUri);
 	}
 
-	private static String getAttribute(Pattern attributePattern, String attributeName, String entryBody) {
-		Matcher matcher = attributePattern.matcher(entryBody);
-		while (matcher.find()) {
-			String matchedName = matcher.group(1);
-			if (attributeName == null || attributeName.equals(matchedName)) {
-				return matcher.group(2);
-			}
+	private IFavoriteList parseFavoriteList(String entryBody) {
+		String id = FavoritesResponseParser.findFavoritesListId(entryBody);
+		if (id == null) {
+			return null;
+		}
+		String owner = FavoritesResponseParser.findFavoritesListOwner(entryBody);
+		if (owner == null) {
+			owner = id;
 		}
-		return null;
+		String label = FavoritesResponseParser.findFavoritesListLabel(entryBody);
+		if (label != null && (label.equals(id) || label.equals(owner))) {
+			label = null;
+		}
+		String favoritesListUrl = getFavoritesListUrl(entryBody, id);
+		if (favoritesListUrl == null) {
+			return null;
+		}
+		String icon = FavoritesResponseParser.findOwnerIcon(entryBody);
+		String profileUrl = FavoritesResponseParser.findOwnerProfileUrl(entryBody);
+		IFavoriteList favoritesByUserId = QueryHelper.favoritesByUserId(id);
+		((FavoriteList) favoritesByUserId).setOwner(owner);
+		((FavoriteList) favoritesByUserId).setOwnerProfileUrl(profileUrl);
+		((FavoriteList) favoritesByUserId).setName(label);
+		((FavoriteList) favoritesByUserId).setUrl(favoritesListUrl);
+		((FavoriteList) favoritesByUserId).setIcon(icon);
+		return favoritesByUserId;
 	}
 
 	private String getFavoritesListUrl(String entryBody, String id) {
 		String marketplaceBaseUri = getMarketplaceBaseUri();
 		//We use the HTML URL shown in the web frontend instead of the API URL, because that's what's advertised
-		String explicitUrl = getAttribute(JSON_LIST_URL_ATTRIBUTE_PATTERN, null, entryBody);
+		String explicitUrl = FavoritesResponseParser.findFavoritesListUrl(entryBody);
 		if (explicitUrl != null && explicitUrl.trim().length() > 0) {
 			try {
 				//Check that it's a valid URL
@@ -287,36 +227,6 @@ public class UserFavoritesService extends AbstractDataStorageService implements
 		return DefaultMarketplaceService.DEFAULT_SERVICE_LOCATION;
 	}
 
-	private static String findFavoritesListOwner(String entryBody) {
-		return findFavoritesNameOrId(entryBody, JSON_OWNER_ATTRIBUTE_PATTERN);
-	}
-
-	private static String findFavoritesListLabel(String entryBody) {
-		return findFavoritesNameOrId(entryBody, JSON_NAME_ATTRIBUTE_PATTERN);
-	}
-
-	private static String findFavoritesListId(String entryBody) {
-		return findFavoritesNameOrId(entryBody, JSON_USER_ID_ATTRIBUTE_PATTERN);
-	}
-
-	private static String findFavoritesNameOrId(String entryBody, Pattern pattern) {
-		String result = null;
-		Matcher matcher = pattern.matcher(entryBody);
-		while (matcher.find()) {
-			String name = matcher.group(1);
-			String value = matcher.group(2);
-			if ("name".equals(name)) { //$NON-NLS-1$
-				//remember, but try to find a better match
-				if (result == null) {
-					result = value;
-				}
-			} else {
-				return value;
-			}
-		}
-		return result;
-	}
-
 	private static List<INode> toNodes(Collection<String> favoriteIds) {
 		List<INode> favoriteNodes = new ArrayList<>(favoriteIds.size());
 		for (String nodeId : favoriteIds) {
@@ -439,8 +349,13 @@ public class UserFavoritesService extends AbstractDataStorageService implements
 			throws NotAuthorizedException, ConflictException, IOException {
 		SubMonitor progress = SubMonitor.convert(monitor, Messages.UserFavoritesService_SettingUserFavorites, 1000);
 		ConflictException conflictException = null;
-		for (int i = 0; i < RETRY_COUNT; i++) {
+		RetryPolicy retryPolicy = RetryPolicy.DEFAULT;
+		for (int i = 0; i < retryPolicy.getMaxAttempts(); i++) {
 			try {
+				if (conflictException != null) {
+					//back off, so concurrent updates don't keep running into each other
+					RequestResilience.pause(retryPolicy.computeBackoff(i), progress);
+				}
 				progress.setWorkRemaining(1000);
 				doAlterFavorites(nodes, favorite, progress.newChild(800));
 				progress.done();
@@ -511,15 +426,11 @@ public class UserFavoritesService extends AbstractDataStorageService implements
 	public List<String> getFavoriteIds(final URI uri, IProgressMonitor monitor) throws IOException {
 		URI normalizedUri = normalizeURI(uri);
 		try {
-			return new AbstractJSONListRequest<String>(normalizedUri, JSON_MPC_FAVORITES_PATTERN) {
+			return new AbstractJSONListRequest<String>(normalizedUri) {
 
 				@Override
-				protected String parseListElement(String listElement) {
-					Matcher contentIdMatcher = JSON_CONTENT_ID_ATTRIBUTE_PATTERN.matcher(listElement);
-					if (contentIdMatcher.find()) {
-						return contentIdMatcher.group(2);
-					}
-					return null;
+				protected List<String> parseList(String body) {
+					return FavoritesResponseParser.parseFavoriteIds(body);
 				}
 
 			}.execute(httpClient, uri);
@@ -613,11 +524,8 @@ public class UserFavoritesService extends AbstractDataStorageService implements
 	private static abstract class AbstractJSONListRequest<T> extends RequestTemplate<List<T>> {
 		private final URI uri;
 
-		private final Pattern listAttributePattern;
-
-		private AbstractJSONListRequest(URI uri, Pattern listAttributePattern) {
+		private AbstractJSONListRequest(URI uri) {
 			this.uri = uri;
-			this.listAttributePattern = listAttributePattern;
 		}
 
 		@Override
@@ -656,27 +564,17 @@ public class UserFavoritesService extends AbstractDataStorageService implements
 		}
 
 		protected List<T> handleBody(final URI uri, String body) throws ProtocolException {
-			List<T> favoriteIds = new ArrayList<>();
-			if (!"".equals(body)) { //$NON-NLS-1$
-				Matcher matcher = listAttributePattern.matcher(body);
-				if (matcher.find()) {
-					String listBody = matcher.group(1);
-					Matcher entryMatcher = JSON_LIST_OBJECTS_PATTERN.matcher(listBody);
-					while (entryMatcher.find()) {
-						String listElement = entryMatcher.group(1);
-						T parsedElement = parseListElement(listElement);
-						if (parsedElement != null) {
-							favoriteIds.add(parsedElement);
-						}
-					}
-				} else {
-					throw malformedContentException(uri, body);
-				}
+			List<T> elements = parseList(body);
+			if (elements == null) {
+				throw malformedContentException(uri, body);
 			}
-			return favoriteIds;
+			return elements;
 		}
 
-		protected abstract T parseListElement(String listElement);
+		/**
+		 * @return the parsed list, or null if the body has an unexpected format
+		 */
+		protected abstract List<T> parseList(String body);
 
 		@Override
 		protected HttpUriRequest createRequest(URI uri) {
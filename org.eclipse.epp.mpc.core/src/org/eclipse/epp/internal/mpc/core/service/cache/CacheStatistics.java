@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.internal.mpc.core.service.cache;
+
+/**
+ * Immutable snapshot of a {@link MarketplaceCache}'s counters.
+ *
+ * @author Carsten Reckord
+ */
+public final class CacheStatistics {
+
+	private final long hitCount;
+
+	private final long missCount;
+
+	private final long evictionCount;
+
+	private final long expirationCount;
+
+	private final long collectedCount;
+
+	private final int size;
+
+	private final long weight;
+
+	public CacheStatistics(long hitCount, long missCount, long evictionCount, long expirationCount,
+			long collectedCount, int size, long weight) {
+		this.hitCount = hitCount;
+		this.missCount = missCount;
+		this.evictionCount = evictionCount;
+		this.expirationCount = expirationCount;
+		this.collectedCount = collectedCount;
+		this.size = size;
+		this.weight = weight;
+	}
+
+	public long getHitCount() {
+		return hitCount;
+	}
+
+	public long getMissCount() {
+		return missCount;
+	}
+
+	public long getRequestCount() {
+		return hitCount + missCount;
+	}
+
+	public double getHitRate() {
+		long requestCount = getRequestCount();
+		return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+	}
+
+	/**
+	 * @return the number of entries removed to keep the cache within its weight bound
+	 */
+	public long getEvictionCount() {
+		return evictionCount;
+	}
+
+	/**
+	 * @return the number of entries removed because their time-to-live had passed
+	 */
+	public long getExpirationCount() {
+		return expirationCount;
+	}
+
+	/**
+	 * @return the number of entries whose values were reclaimed by the garbage collector
+	 */
+	public long getCollectedCount() {
+		return collectedCount;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	public long getWeight() {
+		return weight;
+	}
+
+	@Override
+	public String toString() {
+		return "CacheStatistics [hits=" + hitCount + ", misses=" + missCount + ", hitRate=" //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				+ String.format("%.2f", getHitRate()) + ", evictions=" + evictionCount + ", expirations=" //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				+ expirationCount + ", collected=" + collectedCount + ", size=" + size + ", weight=" + weight + "]"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+	}
+}
@@ -0,0 +1,335 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.internal.mpc.core.service.cache;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.eclipse.epp.internal.mpc.core.MarketplaceClientCorePlugin;
+import org.eclipse.epp.mpc.core.model.IMarket;
+import org.eclipse.epp.mpc.core.model.ISearchResult;
+
+/**
+ * Default {@link MarketplaceCache} implementation. Reads are lock-free and only touch the accessed entry. Entries
+ * expire after a per-{@link EntryType type} time-to-live and the total weight of all entries is bounded: once the
+ * bound is exceeded, the least recently used entries are evicted in a batch by whichever writer wins the eviction lock.
+ * Values are still softly referenced, so memory pressure can reclaim them before their expiry.
+ *
+ * @author Carsten Reckord
+ */
+public class ConcurrentMarketplaceCache implements MarketplaceCache {
+
+	/**
+	 * Default maximum weight. With the {@link #DEFAULT_WEIGHER}, this is roughly the number of nodes and categories
+	 * kept in the cache.
+	 */
+	public static final long DEFAULT_MAXIMUM_WEIGHT = 10000;
+
+	/**
+	 * Fraction of the maximum weight the cache is trimmed to on eviction, so not every write past the bound has to
+	 * evict again.
+	 */
+	private static final double EVICTION_TARGET_RATIO = 0.9;
+
+	/**
+	 * Computes the weight of a cache entry.
+	 */
+	public interface Weigher {
+		int weigh(EntryType type, Object value);
+	}
+
+	/**
+	 * Weighs search results and markets by the number of contained nodes or categories, all other entries by 1.
+	 */
+	public static final Weigher DEFAULT_WEIGHER = (type, value) -> {
+		int weight = 1;
+		if (value instanceof ISearchResult) {
+			Collection<?> nodes = ((ISearchResult) value).getNodes();
+			weight += nodes == null ? 0 : nodes.size();
+		} else if (value instanceof IMarket) {
+			Collection<?> categories = ((IMarket) value).getCategory();
+			weight += categories == null ? 0 : categories.size();
+		} else if (value instanceof Collection<?>) {
+			weight += ((Collection<?>) value).size();
+		}
+		return weight;
+	};
+
+	private static final class EntryReference extends SoftReference<Object> {
+
+		private final String key;
+
+		public EntryReference(String key, Object referent, ReferenceQueue<? super Object> q) {
+			super(referent, q);
+			this.key = key;
+		}
+	}
+
+	private static final class CacheEntry {
+
+		private final EntryReference value;
+
+		private final long expiresAt;
+
+		private final int weight;
+
+		private volatile long lastAccess;
+
+		public CacheEntry(EntryReference value, long expiresAt, int weight, long lastAccess) {
+			this.value = value;
+			this.expiresAt = expiresAt;
+			this.weight = weight;
+			this.lastAccess = lastAccess;
+		}
+	}
+
+	private static final class EvictionCandidate {
+
+		private final String key;
+
+		private final CacheEntry entry;
+
+		//snapshot, so concurrent reads don't break the sort order
+		private final long lastAccess;
+
+		public EvictionCandidate(String key, CacheEntry entry) {
+			this.key = key;
+			this.entry = entry;
+			this.lastAccess = entry.lastAccess;
+		}
+	}
+
+	private final ConcurrentHashMap<String, CacheEntry> entries = new ConcurrentHashMap<>();
+
+	private final ReferenceQueue<Object> referenceQueue = new ReferenceQueue<>();
+
+	//copy-on-write, so writers don't need to lock to look up their TTL
+	private volatile Map<EntryType, Long> timeToLive;
+
+	private final ReentrantLock evictionLock = new ReentrantLock();
+
+	private final AtomicLong accessClock = new AtomicLong();
+
+	private final AtomicLong totalWeight = new AtomicLong();
+
+	private final LongAdder hitCount = new LongAdder();
+
+	private final LongAdder missCount = new LongAdder();
+
+	private final LongAdder evictionCount = new LongAdder();
+
+	private final LongAdder expirationCount = new LongAdder();
+
+	private final LongAdder collectedCount = new LongAdder();
+
+	private final long maximumWeight;
+
+	private final Weigher weigher;
+
+	public ConcurrentMarketplaceCache() {
+		this(DEFAULT_MAXIMUM_WEIGHT, DEFAULT_WEIGHER);
+	}
+
+	public ConcurrentMarketplaceCache(long maximumWeight, Weigher weigher) {
+		if (maximumWeight <= 0 || weigher == null) {
+			throw new IllegalArgumentException();
+		}
+		this.maximumWeight = maximumWeight;
+		this.weigher = weigher;
+		Map<EntryType, Long> timeToLive = new EnumMap<>(EntryType.class);
+		for (EntryType type : EntryType.values()) {
+			timeToLive.put(type, type.getDefaultTimeToLive());
+		}
+		this.timeToLive = timeToLive;
+	}
+
+	/**
+	 * Override the time-to-live for entries of the given type. A value of 0 disables caching for this type. Only
+	 * affects entries added after this call.
+	 */
+	public synchronized void setTimeToLive(EntryType type, long duration, TimeUnit unit) {
+		if (duration < 0) {
+			throw new IllegalArgumentException();
+		}
+		Map<EntryType, Long> timeToLive = new EnumMap<>(this.timeToLive);
+		timeToLive.put(type, unit.toMillis(duration));
+		this.timeToLive = timeToLive;
+	}
+
+	public long getTimeToLive(EntryType type, TimeUnit unit) {
+		return unit.convert(timeToLive.get(type), TimeUnit.MILLISECONDS);
+	}
+
+	public long getMaximumWeight() {
+		return maximumWeight;
+	}
+
+	@Override
+	public <T> T get(String key, Class<T> type) {
+		if (key == null) {
+			return null;
+		}
+		expungeCollectedEntries();
+		CacheEntry entry = entries.get(key);
+		if (entry == null) {
+			missCount.increment();
+			return null;
+		}
+		if (entry.expiresAt - currentTimeMillis() <= 0) {
+			if (removeEntry(key, entry)) {
+				expirationCount.increment();
+			}
+			missCount.increment();
+			return null;
+		}
+		Object value = entry.value.get();
+		if (value == null) {
+			if (removeEntry(key, entry)) {
+				collectedCount.increment();
+			}
+			missCount.increment();
+			return null;
+		}
+		if (!type.isInstance(value)) {
+			missCount.increment();
+			return null;
+		}
+		entry.lastAccess = accessClock.incrementAndGet();
+		hitCount.increment();
+		return type.cast(value);
+	}
+
+	@Override
+	public void put(String key, EntryType entryType, Object value) {
+		if (key == null || value == null) {
+			return;
+		}
+		long ttl = timeToLive.get(entryType);
+		if (ttl <= 0) {
+			remove(key);
+			return;
+		}
+		expungeCollectedEntries();
+		int weight = Math.max(1, weigher.weigh(entryType, value));
+		CacheEntry entry = new CacheEntry(new EntryReference(key, value, referenceQueue), currentTimeMillis() + ttl,
+				weight, accessClock.incrementAndGet());
+		CacheEntry oldEntry = entries.put(key, entry);
+		long delta = oldEntry == null ? weight : weight - oldEntry.weight;
+		if (totalWeight.addAndGet(delta) > maximumWeight) {
+			evict();
+		}
+	}
+
+	@Override
+	public void remove(String key) {
+		if (key == null) {
+			return;
+		}
+		CacheEntry entry = entries.remove(key);
+		if (entry != null) {
+			totalWeight.addAndGet(-entry.weight);
+		}
+	}
+
+	@Override
+	public void clear() {
+		for (String key : entries.keySet()) {
+			remove(key);
+		}
+	}
+
+	@Override
+	public CacheStatistics getStatistics() {
+		return new CacheStatistics(hitCount.sum(), missCount.sum(), evictionCount.sum(), expirationCount.sum(),
+				collectedCount.sum(), entries.size(), totalWeight.get());
+	}
+
+	/**
+	 * @return the current time in milliseconds, used for expiry. Only relative values are relevant.
+	 */
+	protected long currentTimeMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+	}
+
+	private boolean removeEntry(String key, CacheEntry entry) {
+		if (entries.remove(key, entry)) {
+			totalWeight.addAndGet(-entry.weight);
+			return true;
+		}
+		return false;
+	}
+
+	private void expungeCollectedEntries() {
+		Reference<?> reference;
+		while ((reference = referenceQueue.poll()) != null) {
+			EntryReference entryReference = (EntryReference) reference;
+			CacheEntry entry = entries.get(entryReference.key);
+			if (entry != null && entry.value == entryReference && removeEntry(entryReference.key, entry)) {
+				collectedCount.increment();
+			}
+		}
+	}
+
+	private void evict() {
+		//only one thread needs to evict, others just carry on
+		if (!evictionLock.tryLock()) {
+			return;
+		}
+		try {
+			long now = currentTimeMillis();
+			List<EvictionCandidate> candidates = new ArrayList<>(entries.size());
+			for (Map.Entry<String, CacheEntry> mapEntry : entries.entrySet()) {
+				CacheEntry entry = mapEntry.getValue();
+				if (entry.expiresAt - now <= 0) {
+					if (removeEntry(mapEntry.getKey(), entry)) {
+						expirationCount.increment();
+					}
+				} else {
+					candidates.add(new EvictionCandidate(mapEntry.getKey(), entry));
+				}
+			}
+			long targetWeight = (long) (maximumWeight * EVICTION_TARGET_RATIO);
+			if (totalWeight.get() <= targetWeight) {
+				return;
+			}
+			candidates.sort((c1, c2) -> Long.compare(c1.lastAccess, c2.lastAccess));
+			int evicted = 0;
+			for (EvictionCandidate candidate : candidates) {
+				if (totalWeight.get() <= targetWeight) {
+					break;
+				}
+				if (removeEntry(candidate.key, candidate.entry)) {
+					evictionCount.increment();
+					evicted++;
+				}
+			}
+			if (MarketplaceClientCorePlugin.DEBUG) {
+				MarketplaceClientCorePlugin.trace(MarketplaceClientCorePlugin.DEBUG_CACHE_OPTION,
+						"Evicted {0} cache entries: {1}", evicted, getStatistics()); //$NON-NLS-1$
+			}
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+}
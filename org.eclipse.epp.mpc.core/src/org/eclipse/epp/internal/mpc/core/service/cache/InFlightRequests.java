@@ -0,0 +1,252 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.internal.mpc.core.service.cache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.epp.internal.mpc.core.MarketplaceClientCore;
+import org.eclipse.epp.internal.mpc.core.MarketplaceClientCorePlugin;
+
+/**
+ * Registry of outstanding requests, so concurrent callers asking for the same resource share a single request instead
+ * of each sending their own. The first caller for a key becomes the leader and performs the request, all callers
+ * arriving while it is in flight join the leader's result.
+ * <p>
+ * If the leader is canceled, its followers aren't: they retry and one of them becomes the new leader.
+ *
+ * @author Carsten Reckord
+ */
+public class InFlightRequests {
+
+	private static final long CANCEL_POLL_INTERVAL = 100;
+
+	/**
+	 * The actual request, performed by the leader
+	 */
+	public interface Request<T> {
+		T execute() throws CoreException;
+	}
+
+	/**
+	 * A caller's participation in a request for a key. Leaders must either {@link #complete(Object) complete} or
+	 * {@link #fail(Throwable) fail} the flight, followers {@link #await(Class, IProgressMonitor) wait} for its
+	 * result.
+	 */
+	public final class Flight {
+
+		private final String key;
+
+		private final CompletableFuture<Object> future;
+
+		private final boolean leader;
+
+		private Flight(String key, CompletableFuture<Object> future, boolean leader) {
+			this.key = key;
+			this.future = future;
+			this.leader = leader;
+		}
+
+		public String getKey() {
+			return key;
+		}
+
+		public boolean isLeader() {
+			return leader;
+		}
+
+		public void complete(Object value) {
+			checkLeader();
+			inFlight.remove(key, future);
+			future.complete(value);
+		}
+
+		public void fail(Throwable failure) {
+			checkLeader();
+			inFlight.remove(key, future);
+			future.completeExceptionally(failure);
+		}
+
+		/**
+		 * Wait for the leader's result.
+		 *
+		 * @return the result, or null if the leader's result wasn't of the requested type
+		 * @throws LeaderCanceledException
+		 *             if the leader was canceled, so this caller should retry
+		 * @throws CoreException
+		 *             if the leader's request failed, or with a {@link Status#CANCEL_STATUS cancel status} if this
+		 *             caller was canceled while waiting
+		 */
+		public <T> T await(Class<T> type, IProgressMonitor monitor) throws CoreException {
+			Object result;
+			try {
+				result = waitFor(future, monitor);
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (isCancellation(cause)) {
+					throw new LeaderCanceledException();
+				}
+				if (cause instanceof CoreException) {
+					//new instance, so the stack trace shows this caller
+					throw new CoreException(((CoreException) cause).getStatus());
+				}
+				if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				}
+				if (cause instanceof Error) {
+					throw (Error) cause;
+				}
+				throw new CoreException(MarketplaceClientCore.computeStatus(cause, null));
+			}
+			return type.isInstance(result) ? type.cast(result) : null;
+		}
+
+		private void checkLeader() {
+			if (!leader) {
+				throw new IllegalStateException();
+			}
+		}
+	}
+
+	/**
+	 * Thrown to followers if the leader's request was canceled. Callers should retry the request.
+	 */
+	public static final class LeaderCanceledException extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		private LeaderCanceledException() {
+			super(null, null, false, false);
+		}
+	}
+
+	private final ConcurrentHashMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+	private final LongAdder requestCount = new LongAdder();
+
+	private final LongAdder coalescedCount = new LongAdder();
+
+	/**
+	 * Join the in-flight request for the given key, or become the leader for it if there is none.
+	 */
+	public Flight begin(String key) {
+		CompletableFuture<Object> future = new CompletableFuture<>();
+		CompletableFuture<Object> existing = inFlight.putIfAbsent(key, future);
+		if (existing != null) {
+			coalescedCount.increment();
+			if (MarketplaceClientCorePlugin.DEBUG) {
+				MarketplaceClientCorePlugin.trace(MarketplaceClientCorePlugin.DEBUG_CACHE_OPTION,
+						"Joining in-flight request for {0}", key); //$NON-NLS-1$
+			}
+			return new Flight(key, existing, false);
+		}
+		requestCount.increment();
+		return new Flight(key, future, true);
+	}
+
+	/**
+	 * Perform the request for the given key, unless an identical request is already in flight, in which case its
+	 * result is used instead.
+	 *
+	 * @return the request result, or null if the result of a joined request wasn't of the requested type
+	 */
+	public <T> T execute(String key, Class<T> type, Request<? extends T> request, IProgressMonitor monitor)
+			throws CoreException {
+		if (key == null) {
+			return request.execute();
+		}
+		while (true) {
+			Flight flight = begin(key);
+			if (flight.isLeader()) {
+				T result;
+				try {
+					result = request.execute();
+				} catch (CoreException | RuntimeException | Error e) {
+					flight.fail(e);
+					throw e;
+				}
+				flight.complete(result);
+				return result;
+			}
+			try {
+				return flight.await(type, monitor);
+			} catch (LeaderCanceledException e) {
+				//retry - we might become the new leader
+			}
+		}
+	}
+
+	/**
+	 * @return the number of requests actually performed
+	 */
+	public long getRequestCount() {
+		return requestCount.sum();
+	}
+
+	/**
+	 * @return the number of requests that joined another in-flight request instead of being performed
+	 */
+	public long getCoalescedCount() {
+		return coalescedCount.sum();
+	}
+
+	/**
+	 * @return the number of requests currently in flight
+	 */
+	public int getInFlightCount() {
+		return inFlight.size();
+	}
+
+	@Override
+	public String toString() {
+		return "InFlightRequests [requests=" + getRequestCount() + ", coalesced=" + getCoalescedCount() //$NON-NLS-1$ //$NON-NLS-2$
+		+ ", inFlight=" + getInFlightCount() + "]"; //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	private static Object waitFor(CompletableFuture<Object> future, IProgressMonitor monitor)
+			throws ExecutionException, CoreException {
+		while (true) {
+			if (monitor != null && monitor.isCanceled()) {
+				throw new CoreException(Status.CANCEL_STATUS);
+			}
+			try {
+				return future.get(CANCEL_POLL_INTERVAL, TimeUnit.MILLISECONDS);
+			} catch (TimeoutException e) {
+				//check for cancellation
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new CoreException(Status.CANCEL_STATUS);
+			}
+		}
+	}
+
+	private static boolean isCancellation(Throwable t) {
+		if (t instanceof OperationCanceledException) {
+			return true;
+		}
+		if (t instanceof CoreException) {
+			IStatus status = ((CoreException) t).getStatus();
+			return status.getSeverity() == IStatus.CANCEL || status.getException() instanceof OperationCanceledException;
+		}
+		return false;
+	}
+}
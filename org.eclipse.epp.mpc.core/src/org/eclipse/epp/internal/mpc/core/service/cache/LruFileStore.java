@@ -0,0 +1,327 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.internal.mpc.core.service.cache;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A size-bounded directory of content files for the on-disk caches. Content files are named after an id and a common
+ * suffix, and can be accompanied by other files like metadata, which don't count towards the size. All files are
+ * written to a temporary file first and then moved into place, so concurrent readers never see partial content. Once
+ * the maximum size is exceeded, the least recently used content is {@link #evictIfNecessary() evicted}, unless it has
+ * been {@link #retain(String) retained} for the current session.
+ *
+ * @author Carsten Reckord
+ */
+public class LruFileStore {
+
+	private static final double EVICTION_TARGET_RATIO = 0.9;
+
+	/**
+	 * Age after which a leftover temporary file can't belong to a write in progress anymore
+	 */
+	private static final long STALE_TEMP_FILE_AGE = TimeUnit.HOURS.toMillis(1);
+
+	private static final String TEMP_SUFFIX = ".tmp"; //$NON-NLS-1$
+
+	private final File directory;
+
+	private final long maximumSize;
+
+	private final String contentSuffix;
+
+	private final AtomicLong size = new AtomicLong(-1);
+
+	private final Object contentLock = new Object();
+
+	private final AtomicBoolean tempFilesChecked = new AtomicBoolean();
+
+	private final Set<String> retained = ConcurrentHashMap.newKeySet();
+
+	public LruFileStore(File directory, long maximumSize, String contentSuffix) {
+		if (directory == null || maximumSize <= 0) {
+			throw new IllegalArgumentException();
+		}
+		this.directory = directory;
+		this.maximumSize = maximumSize;
+		this.contentSuffix = contentSuffix;
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	public long getMaximumSize() {
+		return maximumSize;
+	}
+
+	/**
+	 * @return the content file for the given id, which might not exist
+	 */
+	public File getContentFile(String id) {
+		return new File(directory, id + contentSuffix);
+	}
+
+	/**
+	 * @return the file with the given name in the store's directory, which might not exist
+	 */
+	public File getFile(String name) {
+		return new File(directory, name);
+	}
+
+	/**
+	 * Mark the content with the given id as recently used.
+	 *
+	 * @return true if the content exists
+	 */
+	public boolean touch(String id) {
+		File contentFile = getContentFile(id);
+		return contentFile.setLastModified(System.currentTimeMillis()) || contentFile.isFile();
+	}
+
+	/**
+	 * Keep the content with the given id until the end of the session, e.g. because its file has been handed out and
+	 * might still be read.
+	 */
+	public void retain(String id) {
+		retained.add(id);
+	}
+
+	/**
+	 * Write the given content to a new temporary file in the store's directory, to {@link #commit(File, String, boolean)
+	 * commit} it later. The content is fully consumed and closed.
+	 */
+	public File write(String prefix, InputStream content) throws IOException {
+		File tempFile = createTempFile(prefix);
+		boolean written = false;
+		try {
+			try (InputStream in = content; OutputStream out = new FileOutputStream(tempFile)) {
+				byte[] buffer = new byte[8192];
+				int read;
+				while ((read = in.read(buffer)) != -1) {
+					out.write(buffer, 0, read);
+				}
+			}
+			written = true;
+			return tempFile;
+		} finally {
+			if (!written) {
+				tempFile.delete();
+			}
+		}
+	}
+
+	/**
+	 * Move a temporary file from {@link #write(String, InputStream)} into place as the content with the given id.
+	 *
+	 * @param replace
+	 *            true to replace existing content, false to keep existing content and only mark it as recently used
+	 * @return the content file
+	 */
+	public File commit(File tempFile, String id, boolean replace) throws IOException {
+		File contentFile = getContentFile(id);
+		try {
+			synchronized (contentLock) {
+				if (replace || !touch(id)) {
+					long oldSize = contentFile.length();
+					long newSize = tempFile.length();
+					move(tempFile, contentFile);
+					if (size.get() >= 0) {
+						size.addAndGet(newSize - oldSize);
+					}
+				}
+			}
+		} finally {
+			tempFile.delete();
+		}
+		return contentFile;
+	}
+
+	public void deleteContent(String id) {
+		File contentFile = getContentFile(id);
+		synchronized (contentLock) {
+			long length = contentFile.length();
+			if (contentFile.delete() && size.get() >= 0) {
+				size.addAndGet(-length);
+			}
+		}
+	}
+
+	public Properties readProperties(String name) throws IOException {
+		Properties properties = new Properties();
+		try (InputStream in = new FileInputStream(getFile(name))) {
+			properties.load(in);
+		}
+		return properties;
+	}
+
+	public void writeProperties(String name, Properties properties) throws IOException {
+		File tempFile = createTempFile(name);
+		try {
+			try (OutputStream out = new FileOutputStream(tempFile)) {
+				properties.store(out, null);
+			}
+			move(tempFile, getFile(name));
+		} finally {
+			tempFile.delete();
+		}
+	}
+
+	public void clear() {
+		synchronized (contentLock) {
+			File[] files = directory.listFiles();
+			if (files != null) {
+				for (File file : files) {
+					file.delete();
+				}
+			}
+			size.set(0);
+		}
+	}
+
+	/**
+	 * @return the total size of all content in bytes
+	 */
+	public long getSize() {
+		long currentSize = size.get();
+		if (currentSize < 0) {
+			long computedSize = 0;
+			for (File file : listFiles(contentSuffix)) {
+				computedSize += file.length();
+			}
+			size.compareAndSet(currentSize, computedSize);
+			currentSize = size.get();
+		}
+		return currentSize;
+	}
+
+	/**
+	 * Delete the least recently used content until the store is well below its maximum size, if the maximum size is
+	 * exceeded. Retained content is kept.
+	 *
+	 * @return the ids of the deleted content
+	 */
+	public List<String> evictIfNecessary() {
+		List<String> evicted = new ArrayList<>();
+		if (getSize() <= maximumSize) {
+			return evicted;
+		}
+		synchronized (contentLock) {
+			long targetSize = (long) (maximumSize * EVICTION_TARGET_RATIO);
+			if (getSize() <= targetSize) {
+				return evicted;
+			}
+			List<File> contents = listFiles(contentSuffix);
+			long[] lastUsed = new long[contents.size()];
+			Integer[] order = new Integer[contents.size()];
+			for (int i = 0; i < lastUsed.length; i++) {
+				//snapshot, so concurrent reads don't break the sort order
+				lastUsed[i] = contents.get(i).lastModified();
+				order[i] = i;
+			}
+			Arrays.sort(order, (i1, i2) -> Long.compare(lastUsed[i1], lastUsed[i2]));
+			for (Integer i : order) {
+				if (getSize() <= targetSize) {
+					break;
+				}
+				String name = contents.get(i).getName();
+				String id = name.substring(0, name.length() - contentSuffix.length());
+				if (!retained.contains(id)) {
+					deleteContent(id);
+					evicted.add(id);
+				}
+			}
+		}
+		return evicted;
+	}
+
+	public List<File> listFiles(String suffix) {
+		File[] files = directory.listFiles((dir, name) -> name.endsWith(suffix));
+		return files == null ? new ArrayList<>() : Arrays.asList(files);
+	}
+
+	private File createTempFile(String prefix) throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+			throw new IOException("Failed to create cache directory " + directory); //$NON-NLS-1$
+		}
+		if (tempFilesChecked.compareAndSet(false, true)) {
+			deleteStaleTempFiles();
+		}
+		return File.createTempFile(prefix, TEMP_SUFFIX, directory);
+	}
+
+	/**
+	 * Delete temporary files left behind by writes that were interrupted by a crash
+	 */
+	private void deleteStaleTempFiles() {
+		long staleBefore = System.currentTimeMillis() - STALE_TEMP_FILE_AGE;
+		for (File file : listFiles(TEMP_SUFFIX)) {
+			if (file.lastModified() < staleBefore) {
+				file.delete();
+			}
+		}
+	}
+
+	private static void move(File source, File target) throws IOException {
+		try {
+			Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * @return a file name safe id for the given key
+	 */
+	public static String id(String key) {
+		return toHex(digest("SHA-1").digest(key.getBytes(StandardCharsets.UTF_8))); //$NON-NLS-1$
+	}
+
+	public static MessageDigest digest(String algorithm) {
+		try {
+			return MessageDigest.getInstance(algorithm);
+		} catch (NoSuchAlgorithmException e) {
+			//SHA-1 and SHA-256 are required on every Java platform
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public static String toHex(byte[] hash) {
+		StringBuilder hex = new StringBuilder(hash.length * 2);
+		for (byte b : hash) {
+			hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return hex.toString();
+	}
+}
@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.internal.mpc.core.service.cache;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache engine used by {@link org.eclipse.epp.internal.mpc.core.service.CachingMarketplaceService} to keep resolved
+ * markets, categories, nodes and search results. Implementations must be safe for concurrent use.
+ *
+ * @author Carsten Reckord
+ */
+public interface MarketplaceCache {
+
+	/**
+	 * Kinds of cached entries. Each type has its own default time-to-live, reflecting how often the corresponding
+	 * marketplace data changes.
+	 */
+	enum EntryType {
+		MARKET(TimeUnit.HOURS.toMillis(12)), //
+		CATEGORY(TimeUnit.HOURS.toMillis(12)), //
+		NODE(TimeUnit.HOURS.toMillis(1)), //
+		MISSING_NODE(TimeUnit.MINUTES.toMillis(10)), //
+		SEARCH(TimeUnit.MINUTES.toMillis(10)), //
+		NEWS(TimeUnit.HOURS.toMillis(1));
+
+		private final long defaultTimeToLive;
+
+		private EntryType(long defaultTimeToLive) {
+			this.defaultTimeToLive = defaultTimeToLive;
+		}
+
+		/**
+		 * @return the default time-to-live in milliseconds
+		 */
+		public long getDefaultTimeToLive() {
+			return defaultTimeToLive;
+		}
+	}
+
+	/**
+	 * Look up a cached value.
+	 *
+	 * @return the cached value, or null if there is no live entry for the key or the entry is not of the requested
+	 *         type
+	 */
+	<T> T get(String key, Class<T> type);
+
+	/**
+	 * Cache a value. Null keys or values are ignored.
+	 */
+	void put(String key, EntryType entryType, Object value);
+
+	void remove(String key);
+
+	void clear();
+
+	CacheStatistics getStatistics();
+}
@@ -0,0 +1,255 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.internal.mpc.core.service.cache;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Objects;
+import java.util.Properties;
+
+import org.eclipse.epp.internal.mpc.core.MarketplaceClientCorePlugin;
+
+/**
+ * A size-bounded on-disk store for raw marketplace API responses, so they survive restarts and can be revalidated
+ * with the server instead of being downloaded again. Each response is stored in an {@link LruFileStore} as a body
+ * file and a properties file with its metadata, both named after a hash of the request key. Once the maximum size is
+ * exceeded, the least recently used responses are deleted.
+ *
+ * @author Carsten Reckord
+ */
+public class ResponseCache {
+
+	/**
+	 * Default maximum total size of all cached response bodies in bytes
+	 */
+	public static final long DEFAULT_MAXIMUM_SIZE = 32L * 1024 * 1024;
+
+	/**
+	 * Framework property to disable the response cache
+	 */
+	public static final String DISABLED_PROPERTY = ResponseCache.class.getName() + ".disabled"; //$NON-NLS-1$
+
+	/**
+	 * Framework property to override the maximum total size of the response cache in bytes
+	 */
+	public static final String MAXIMUM_SIZE_PROPERTY = ResponseCache.class.getName() + ".maximumSize"; //$NON-NLS-1$
+
+	private static final String BODY_SUFFIX = ".body"; //$NON-NLS-1$
+
+	private static final String META_SUFFIX = ".properties"; //$NON-NLS-1$
+
+	private static final String META_KEY = "key"; //$NON-NLS-1$
+
+	private static final String META_VARIANT = "variant"; //$NON-NLS-1$
+
+	private static final String META_ETAG = "etag"; //$NON-NLS-1$
+
+	private static final String META_LAST_MODIFIED = "lastModified"; //$NON-NLS-1$
+
+	private static final String META_VALIDATED = "validated"; //$NON-NLS-1$
+
+	/**
+	 * A cached response
+	 */
+	public static final class Entry {
+
+		private final String key;
+
+		private final String variant;
+
+		private final String eTag;
+
+		private final String lastModified;
+
+		private final long validated;
+
+		private final File body;
+
+		private Entry(String key, String variant, String eTag, String lastModified, long validated, File body) {
+			this.key = key;
+			this.variant = variant;
+			this.eTag = eTag;
+			this.lastModified = lastModified;
+			this.validated = validated;
+			this.body = body;
+		}
+
+		public String getKey() {
+			return key;
+		}
+
+		public String getVariant() {
+			return variant;
+		}
+
+		public String getETag() {
+			return eTag;
+		}
+
+		public String getLastModified() {
+			return lastModified;
+		}
+
+		/**
+		 * @return true if the entry has an entity tag or modification date to revalidate it with the server
+		 */
+		public boolean hasValidators() {
+			return eTag != null || lastModified != null;
+		}
+
+		/**
+		 * @return the time in milliseconds since the entry was last retrieved or revalidated
+		 */
+		public long getAge() {
+			return Math.max(0, System.currentTimeMillis() - validated);
+		}
+
+		/**
+		 * Open the cached response body.
+		 *
+		 * @throws IOException
+		 *             if the entry has been removed from the cache in the meantime
+		 */
+		public InputStream openStream() throws IOException {
+			return new BufferedInputStream(new FileInputStream(body));
+		}
+	}
+
+	private final LruFileStore store;
+
+	public ResponseCache(File directory) {
+		this(directory, DEFAULT_MAXIMUM_SIZE);
+	}
+
+	public ResponseCache(File directory, long maximumSize) {
+		this.store = new LruFileStore(directory, maximumSize, BODY_SUFFIX);
+	}
+
+	public File getDirectory() {
+		return store.getDirectory();
+	}
+
+	public long getMaximumSize() {
+		return store.getMaximumSize();
+	}
+
+	/**
+	 * @return the cached response for the given key, or null if there is none or it was stored for a different
+	 *         variant
+	 */
+	public Entry get(String key, String variant) {
+		String id = LruFileStore.id(key);
+		File metaFile = store.getFile(id + META_SUFFIX);
+		File bodyFile = store.getContentFile(id);
+		if (!metaFile.isFile() || !bodyFile.isFile()) {
+			return null;
+		}
+		Properties meta;
+		try {
+			meta = store.readProperties(metaFile.getName());
+		} catch (IOException e) {
+			return null;
+		}
+		if (!key.equals(meta.getProperty(META_KEY)) || !Objects.equals(variant, meta.getProperty(META_VARIANT))) {
+			return null;
+		}
+		long validated;
+		try {
+			validated = Long.parseLong(meta.getProperty(META_VALIDATED, "0")); //$NON-NLS-1$
+		} catch (NumberFormatException e) {
+			return null;
+		}
+		//mark as recently used for eviction
+		store.touch(id);
+		return new Entry(key, variant, meta.getProperty(META_ETAG), meta.getProperty(META_LAST_MODIFIED), validated,
+				bodyFile);
+	}
+
+	/**
+	 * Store a response, replacing any previous response for the same key. The content is fully consumed and closed.
+	 *
+	 * @return the new cache entry
+	 */
+	public Entry put(String key, String variant, String eTag, String lastModified, InputStream content)
+			throws IOException {
+		String id = LruFileStore.id(key);
+		File bodyFile = store.commit(store.write(id, content), id, true);
+		long validated = System.currentTimeMillis();
+		writeMeta(id, key, variant, eTag, lastModified, validated);
+		evictIfNecessary();
+		return new Entry(key, variant, eTag, lastModified, validated, bodyFile);
+	}
+
+	/**
+	 * Mark an entry as successfully revalidated with the server, resetting its age.
+	 *
+	 * @return the updated entry
+	 */
+	public Entry revalidated(Entry entry) throws IOException {
+		long validated = System.currentTimeMillis();
+		writeMeta(LruFileStore.id(entry.key), entry.key, entry.variant, entry.eTag, entry.lastModified, validated);
+		return new Entry(entry.key, entry.variant, entry.eTag, entry.lastModified, validated, entry.body);
+	}
+
+	public void remove(String key) {
+		delete(LruFileStore.id(key));
+	}
+
+	public void clear() {
+		store.clear();
+	}
+
+	/**
+	 * @return the total size of all cached response bodies in bytes
+	 */
+	public long getSize() {
+		return store.getSize();
+	}
+
+	private void delete(String id) {
+		store.getFile(id + META_SUFFIX).delete();
+		store.deleteContent(id);
+	}
+
+	private void evictIfNecessary() {
+		List<String> evicted = store.evictIfNecessary();
+		for (String id : evicted) {
+			store.getFile(id + META_SUFFIX).delete();
+		}
+		if (MarketplaceClientCorePlugin.DEBUG && !evicted.isEmpty()) {
+			MarketplaceClientCorePlugin.trace(MarketplaceClientCorePlugin.DEBUG_CACHE_OPTION,
+					"Evicted {0} responses from {1}, {2} bytes remaining", evicted.size(), getDirectory(), getSize()); //$NON-NLS-1$
+		}
+	}
+
+	private void writeMeta(String id, String key, String variant, String eTag, String lastModified, long validated)
+			throws IOException {
+		Properties meta = new Properties();
+		meta.setProperty(META_KEY, key);
+		if (variant != null) {
+			meta.setProperty(META_VARIANT, variant);
+		}
+		if (eTag != null) {
+			meta.setProperty(META_ETAG, eTag);
+		}
+		if (lastModified != null) {
+			meta.setProperty(META_LAST_MODIFIED, lastModified);
+		}
+		meta.setProperty(META_VALIDATED, Long.toString(validated));
+		store.writeProperties(id + META_SUFFIX, meta);
+	}
+}
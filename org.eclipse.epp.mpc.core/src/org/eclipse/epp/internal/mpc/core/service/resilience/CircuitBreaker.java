@@ -0,0 +1,141 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.internal.mpc.core.service.resilience;
+
+/**
+ * Tracks connection failures for a single host. After a number of consecutive failures, the circuit is opened and
+ * requests fail immediately instead of piling up on a host that doesn't respond. Once the open period has passed, a
+ * single probe request is let through (half-open). If it succeeds, the circuit is closed again, otherwise it is
+ * re-opened for another period.
+ * <p>
+ * Times are passed in by the caller, so they can be controlled in tests.
+ *
+ * @author Carsten Reckord
+ */
+public class CircuitBreaker {
+
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private final String host;
+
+	private final int failureThreshold;
+
+	private final long openDuration;
+
+	private State state = State.CLOSED;
+
+	private int consecutiveFailures;
+
+	private long openedAt;
+
+	private boolean probeInFlight;
+
+	/**
+	 * @param failureThreshold
+	 *            number of consecutive failures after which the circuit opens
+	 * @param openDuration
+	 *            time in milliseconds requests are rejected before a probe request is let through
+	 */
+	public CircuitBreaker(String host, int failureThreshold, long openDuration) {
+		if (failureThreshold < 1 || openDuration < 0) {
+			throw new IllegalArgumentException();
+		}
+		this.host = host;
+		this.failureThreshold = failureThreshold;
+		this.openDuration = openDuration;
+	}
+
+	public String getHost() {
+		return host;
+	}
+
+	public synchronized State getState() {
+		return state;
+	}
+
+	/**
+	 * @return the time in milliseconds until a probe request will be let through, or 0 if the circuit is not open
+	 */
+	public synchronized long getRemainingOpenTime(long now) {
+		return state == State.OPEN ? Math.max(0, openedAt + openDuration - now) : 0;
+	}
+
+	/**
+	 * Check if a request may be attempted. A request that is let through must be followed by a call to
+	 * {@link #onSuccess()}, {@link #onFailure(long)} or {@link #onAbort()}.
+	 */
+	public synchronized boolean tryAcquire(long now) {
+		switch (state) {
+		case CLOSED:
+			return true;
+		case OPEN:
+			if (now - openedAt < openDuration) {
+				return false;
+			}
+			state = State.HALF_OPEN;
+			probeInFlight = true;
+			return true;
+		case HALF_OPEN:
+		default:
+			if (probeInFlight) {
+				return false;
+			}
+			probeInFlight = true;
+			return true;
+		}
+	}
+
+	/**
+	 * Record that the host responded.
+	 *
+	 * @return true if this closed a previously open circuit
+	 */
+	public synchronized boolean onSuccess() {
+		boolean closed = state != State.CLOSED;
+		state = State.CLOSED;
+		consecutiveFailures = 0;
+		probeInFlight = false;
+		return closed;
+	}
+
+	/**
+	 * Record a connection failure.
+	 *
+	 * @return true if this opened the circuit
+	 */
+	public synchronized boolean onFailure(long now) {
+		consecutiveFailures++;
+		if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+			state = State.OPEN;
+			openedAt = now;
+			probeInFlight = false;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Record that a request ended without telling anything about the host, e.g. because it was canceled.
+	 */
+	public synchronized void onAbort() {
+		probeInFlight = false;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "CircuitBreaker [host=" + host + ", state=" + state + ", consecutiveFailures=" + consecutiveFailures //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				+ "]"; //$NON-NLS-1$
+	}
+}
@@ -0,0 +1,307 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.internal.mpc.core.service.resilience;
+
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.http.NoHttpResponseException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.epp.internal.mpc.core.MarketplaceClientCore;
+import org.eclipse.epp.internal.mpc.core.MarketplaceClientCorePlugin;
+import org.eclipse.epp.mpc.core.service.ServiceUnavailableException;
+
+/**
+ * Shared retry and failure handling for requests to remote hosts. Failed requests are retried with exponential backoff
+ * and jitter according to a {@link RetryPolicy}, as long as the {@link RetryBudget} allows it. Connection failures are
+ * tracked per host by a {@link CircuitBreaker}, so once a host stops responding, all callers fail fast instead of
+ * each of them running into the same timeouts and retries.
+ * <p>
+ * A single instance is {@link #getDefault() shared} by all marketplace services. Each logical request is tracked by a
+ * {@link Request} obtained from {@link #begin(URI)}.
+ *
+ * @author Carsten Reckord
+ */
+public class RequestResilience {
+
+	/**
+	 * Default number of consecutive connection failures after which requests to a host are suspended
+	 */
+	public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+
+	/**
+	 * Default time requests to a host are suspended before a probe request is let through
+	 */
+	public static final long DEFAULT_OPEN_DURATION = TimeUnit.SECONDS.toMillis(30);
+
+	/**
+	 * Default number of retries per request allowed by the retry budget in the long run
+	 */
+	public static final double DEFAULT_RETRY_RATIO = 0.2;
+
+	/**
+	 * Default number of retries the retry budget can save up
+	 */
+	public static final int DEFAULT_MAX_SAVED_RETRIES = 10;
+
+	private static final long CANCEL_POLL_INTERVAL = 100;
+
+	private static final RequestResilience DEFAULT = new RequestResilience(RetryPolicy.DEFAULT);
+
+	private final RetryPolicy retryPolicy;
+
+	private final RetryBudget retryBudget;
+
+	private final int failureThreshold;
+
+	private final long openDuration;
+
+	private final ConcurrentMap<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+
+	private final LongAdder requestCount = new LongAdder();
+
+	private final LongAdder attemptCount = new LongAdder();
+
+	private final LongAdder failureCount = new LongAdder();
+
+	private final LongAdder retryCount = new LongAdder();
+
+	private final LongAdder shortCircuitCount = new LongAdder();
+
+	private final LongAdder budgetExhaustedCount = new LongAdder();
+
+	public RequestResilience(RetryPolicy retryPolicy) {
+		this(retryPolicy, new RetryBudget(DEFAULT_RETRY_RATIO, DEFAULT_MAX_SAVED_RETRIES), DEFAULT_FAILURE_THRESHOLD,
+				DEFAULT_OPEN_DURATION);
+	}
+
+	public RequestResilience(RetryPolicy retryPolicy, RetryBudget retryBudget, int failureThreshold,
+			long openDuration) {
+		if (retryPolicy == null || retryBudget == null || failureThreshold < 1 || openDuration < 0) {
+			throw new IllegalArgumentException();
+		}
+		this.retryPolicy = retryPolicy;
+		this.retryBudget = retryBudget;
+		this.failureThreshold = failureThreshold;
+		this.openDuration = openDuration;
+	}
+
+	public static RequestResilience getDefault() {
+		return DEFAULT;
+	}
+
+	public RetryPolicy getRetryPolicy() {
+		return retryPolicy;
+	}
+
+	/**
+	 * Start tracking a new request to the given location.
+	 */
+	public Request begin(URI location) {
+		requestCount.increment();
+		retryBudget.onRequest();
+		return new Request(location);
+	}
+
+	/**
+	 * @return the circuit breaker for the given host, or null for locations without host
+	 */
+	public CircuitBreaker getCircuitBreaker(String host) {
+		if (host == null) {
+			return null;
+		}
+		return circuitBreakers.computeIfAbsent(host.toLowerCase(),
+				h -> new CircuitBreaker(h, failureThreshold, openDuration));
+	}
+
+	public ResilienceStatistics getStatistics() {
+		int openCircuits = 0;
+		for (CircuitBreaker circuitBreaker : circuitBreakers.values()) {
+			if (circuitBreaker.getState() != CircuitBreaker.State.CLOSED) {
+				openCircuits++;
+			}
+		}
+		return new ResilienceStatistics(requestCount.sum(), attemptCount.sum(), failureCount.sum(), retryCount.sum(),
+				shortCircuitCount.sum(), budgetExhaustedCount.sum(), openCircuits);
+	}
+
+	protected long currentTimeMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+	}
+
+	/**
+	 * @return true if the given exception indicates that the host could not be reached, didn't respond properly or
+	 *         answered with 503 Service Unavailable, as opposed to e.g. a missing resource, another HTTP error or an
+	 *         unparseable response
+	 */
+	public static boolean isConnectionFailure(Throwable exception) {
+		if (MarketplaceClientCore.isFailedDownloadException(exception)) {
+			return true;
+		}
+		while (exception != null) {
+			if (exception instanceof ConnectException || exception instanceof NoRouteToHostException
+					|| exception instanceof UnknownHostException || exception instanceof SocketTimeoutException
+					|| exception instanceof NoHttpResponseException
+					|| exception instanceof ServiceUnavailableException) {
+				return true;
+			}
+			Throwable cause = exception.getCause();
+			if (cause == exception) {
+				break;
+			}
+			exception = cause;
+		}
+		return false;
+	}
+
+	/**
+	 * Wait for the given time, checking the monitor for cancellation.
+	 *
+	 * @throws OperationCanceledException
+	 *             if the monitor was canceled or the thread interrupted while waiting
+	 */
+	public static void pause(long millis, IProgressMonitor monitor) {
+		long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+		long remaining = millis;
+		while (remaining > 0) {
+			if (monitor != null && monitor.isCanceled()) {
+				throw new OperationCanceledException();
+			}
+			try {
+				Thread.sleep(Math.min(remaining, CANCEL_POLL_INTERVAL));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new OperationCanceledException();
+			}
+			remaining = TimeUnit.NANOSECONDS.toMillis(end - System.nanoTime());
+		}
+	}
+
+	/**
+	 * Tracks the attempts of a single logical request. Each attempt starts with {@link #tryAttempt()} and must be
+	 * ended with one of {@link #succeeded()}, {@link #failed(boolean)} or {@link #aborted()}.
+	 */
+	public final class Request {
+
+		private final URI location;
+
+		private final CircuitBreaker circuitBreaker;
+
+		private int attempts;
+
+		private boolean attemptInProgress;
+
+		private Request(URI location) {
+			this.location = location;
+			this.circuitBreaker = getCircuitBreaker(location.getHost());
+		}
+
+		/**
+		 * @return true if the request may be sent, false if the host's circuit is open
+		 */
+		public boolean tryAttempt() {
+			if (circuitBreaker != null && !circuitBreaker.tryAcquire(currentTimeMillis())) {
+				shortCircuitCount.increment();
+				return false;
+			}
+			attempts++;
+			attemptCount.increment();
+			attemptInProgress = true;
+			return true;
+		}
+
+		public int getAttempts() {
+			return attempts;
+		}
+
+		/**
+		 * @return the time in milliseconds until requests to this host will be attempted again, or 0 if they are not
+		 *         suspended
+		 */
+		public long getRetryAfter() {
+			return circuitBreaker == null ? 0 : circuitBreaker.getRemainingOpenTime(currentTimeMillis());
+		}
+
+		/**
+		 * Record that the host responded. This includes error responses unrelated to connection problems.
+		 */
+		public void succeeded() {
+			if (!attemptInProgress) {
+				return;
+			}
+			attemptInProgress = false;
+			if (circuitBreaker != null && circuitBreaker.onSuccess() && MarketplaceClientCorePlugin.DEBUG) {
+				MarketplaceClientCorePlugin.trace(MarketplaceClientCorePlugin.DEBUG_NETWORK_OPTION,
+						"Resuming requests to {0}: {1}", circuitBreaker.getHost(), getStatistics()); //$NON-NLS-1$
+			}
+		}
+
+		/**
+		 * Record that the attempt ended without result, e.g. because it was canceled.
+		 */
+		public void aborted() {
+			if (!attemptInProgress) {
+				return;
+			}
+			attemptInProgress = false;
+			if (circuitBreaker != null) {
+				circuitBreaker.onAbort();
+			}
+		}
+
+		/**
+		 * Record a connection failure and decide if the request should be retried.
+		 *
+		 * @param retryable
+		 *            if the failed attempt may be repeated at all
+		 * @return the time in milliseconds to wait before retrying, or -1 if the request should not be retried
+		 */
+		public long failed(boolean retryable) {
+			if (!attemptInProgress) {
+				return -1;
+			}
+			attemptInProgress = false;
+			failureCount.increment();
+			if (circuitBreaker != null && circuitBreaker.onFailure(currentTimeMillis())
+					&& MarketplaceClientCorePlugin.DEBUG) {
+				MarketplaceClientCorePlugin.trace(MarketplaceClientCorePlugin.DEBUG_NETWORK_OPTION,
+						"Suspending requests to {0} for {1} ms after {2}: {3}", circuitBreaker.getHost(), openDuration, //$NON-NLS-1$
+						location, getStatistics());
+			}
+			if (!retryable || attempts >= retryPolicy.getMaxAttempts()) {
+				return -1;
+			}
+			if (circuitBreaker != null && circuitBreaker.getState() != CircuitBreaker.State.CLOSED) {
+				return -1;
+			}
+			if (!retryBudget.tryRetry()) {
+				budgetExhaustedCount.increment();
+				if (MarketplaceClientCorePlugin.DEBUG) {
+					MarketplaceClientCorePlugin.trace(MarketplaceClientCorePlugin.DEBUG_NETWORK_OPTION,
+							"Retry budget exhausted, not retrying {0}: {1}", location, getStatistics()); //$NON-NLS-1$
+				}
+				return -1;
+			}
+			retryCount.increment();
+			return retryPolicy.computeBackoff(attempts);
+		}
+	}
+}
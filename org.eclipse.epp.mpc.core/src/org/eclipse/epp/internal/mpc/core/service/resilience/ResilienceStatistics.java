@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.internal.mpc.core.service.resilience;
+
+/**
+ * Immutable snapshot of a {@link RequestResilience}'s counters.
+ *
+ * @author Carsten Reckord
+ */
+public final class ResilienceStatistics {
+
+	private final long requestCount;
+
+	private final long attemptCount;
+
+	private final long failureCount;
+
+	private final long retryCount;
+
+	private final long shortCircuitCount;
+
+	private final long budgetExhaustedCount;
+
+	private final int openCircuitCount;
+
+	public ResilienceStatistics(long requestCount, long attemptCount, long failureCount, long retryCount,
+			long shortCircuitCount, long budgetExhaustedCount, int openCircuitCount) {
+		this.requestCount = requestCount;
+		this.attemptCount = attemptCount;
+		this.failureCount = failureCount;
+		this.retryCount = retryCount;
+		this.shortCircuitCount = shortCircuitCount;
+		this.budgetExhaustedCount = budgetExhaustedCount;
+		this.openCircuitCount = openCircuitCount;
+	}
+
+	public long getRequestCount() {
+		return requestCount;
+	}
+
+	/**
+	 * @return the number of attempts sent to a server, including retries
+	 */
+	public long getAttemptCount() {
+		return attemptCount;
+	}
+
+	/**
+	 * @return the number of attempts that failed with a connection problem
+	 */
+	public long getFailureCount() {
+		return failureCount;
+	}
+
+	public long getRetryCount() {
+		return retryCount;
+	}
+
+	/**
+	 * @return the number of attempts rejected without contacting the server, because its circuit was open
+	 */
+	public long getShortCircuitCount() {
+		return shortCircuitCount;
+	}
+
+	/**
+	 * @return the number of retries skipped because the retry budget was used up
+	 */
+	public long getBudgetExhaustedCount() {
+		return budgetExhaustedCount;
+	}
+
+	/**
+	 * @return the number of hosts currently not accepting requests
+	 */
+	public int getOpenCircuitCount() {
+		return openCircuitCount;
+	}
+
+	@Override
+	public String toString() {
+		return "ResilienceStatistics [requests=" + requestCount + ", attempts=" + attemptCount + ", failures=" //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				+ failureCount + ", retries=" + retryCount + ", shortCircuits=" + shortCircuitCount //$NON-NLS-1$ //$NON-NLS-2$
+				+ ", budgetExhausted=" + budgetExhaustedCount + ", openCircuits=" + openCircuitCount + "]"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+}
@@ -0,0 +1,63 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.internal.mpc.core.service.resilience;
+
+/**
+ * Limits retries to a fraction of all requests, so retries can't multiply the load on a struggling server. Every
+ * request deposits <code>retryRatio</code> tokens up to a maximum of <code>maxTokens</code>, every retry withdraws
+ * one. The budget starts out full, which allows for some retries before any requests have been made.
+ *
+ * @author Carsten Reckord
+ */
+public class RetryBudget {
+
+	private final double retryRatio;
+
+	private final double maxTokens;
+
+	private double tokens;
+
+	/**
+	 * @param retryRatio
+	 *            retries allowed per request in the long run
+	 * @param maxTokens
+	 *            maximum number of retries that can be saved up
+	 */
+	public RetryBudget(double retryRatio, int maxTokens) {
+		if (retryRatio < 0 || maxTokens < 1) {
+			throw new IllegalArgumentException();
+		}
+		this.retryRatio = retryRatio;
+		this.maxTokens = maxTokens;
+		this.tokens = maxTokens;
+	}
+
+	public synchronized void onRequest() {
+		tokens = Math.min(maxTokens, tokens + retryRatio);
+	}
+
+	/**
+	 * @return true if a retry may be performed
+	 */
+	public synchronized boolean tryRetry() {
+		if (tokens < 1) {
+			return false;
+		}
+		tokens -= 1;
+		return true;
+	}
+
+	public synchronized double getAvailableRetries() {
+		return tokens;
+	}
+}
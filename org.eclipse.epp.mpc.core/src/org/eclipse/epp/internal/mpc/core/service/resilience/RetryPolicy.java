@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.internal.mpc.core.service.resilience;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Immutable settings for retrying failed requests with exponential backoff. The backoff for the n-th retry is
+ * <code>initialBackoff * multiplier^(n-1)</code>, capped at <code>maxBackoff</code>, of which a random part of up to
+ * one half is skipped. The jitter keeps clients that failed at the same time from retrying in lockstep.
+ *
+ * @author Carsten Reckord
+ */
+public final class RetryPolicy {
+
+	public static final RetryPolicy DEFAULT = new RetryPolicy(3, 250, TimeUnit.SECONDS.toMillis(5), 2.0);
+
+	private final int maxAttempts;
+
+	private final long initialBackoff;
+
+	private final long maxBackoff;
+
+	private final double multiplier;
+
+	/**
+	 * @param maxAttempts
+	 *            total number of attempts for a request, including the first one
+	 * @param initialBackoff
+	 *            backoff in milliseconds before the first retry
+	 * @param maxBackoff
+	 *            upper bound for the backoff in milliseconds
+	 * @param multiplier
+	 *            factor by which the backoff grows with each retry
+	 */
+	public RetryPolicy(int maxAttempts, long initialBackoff, long maxBackoff, double multiplier) {
+		if (maxAttempts < 1 || initialBackoff < 0 || maxBackoff < initialBackoff || multiplier < 1) {
+			throw new IllegalArgumentException();
+		}
+		this.maxAttempts = maxAttempts;
+		this.initialBackoff = initialBackoff;
+		this.maxBackoff = maxBackoff;
+		this.multiplier = multiplier;
+	}
+
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	public long getInitialBackoff() {
+		return initialBackoff;
+	}
+
+	public long getMaxBackoff() {
+		return maxBackoff;
+	}
+
+	public double getMultiplier() {
+		return multiplier;
+	}
+
+	/**
+	 * @param retry
+	 *            the number of the upcoming retry, starting at 1
+	 * @return the randomized backoff in milliseconds
+	 */
+	public long computeBackoff(int retry) {
+		return computeBackoff(retry, ThreadLocalRandom.current().nextDouble());
+	}
+
+	/**
+	 * @param retry
+	 *            the number of the upcoming retry, starting at 1
+	 * @param random
+	 *            a random value in <code>[0, 1)</code>
+	 * @return the backoff in milliseconds
+	 */
+	public long computeBackoff(int retry, double random) {
+		if (retry < 1) {
+			throw new IllegalArgumentException();
+		}
+		double backoff = Math.min(maxBackoff, initialBackoff * Math.pow(multiplier, retry - 1));
+		return (long) (backoff - backoff * random / 2);
+	}
+
+	@Override
+	public String toString() {
+		return "RetryPolicy [maxAttempts=" + maxAttempts + ", initialBackoff=" + initialBackoff + ", maxBackoff=" //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				+ maxBackoff + ", multiplier=" + multiplier + "]"; //$NON-NLS-1$ //$NON-NLS-2$
+	}
+}
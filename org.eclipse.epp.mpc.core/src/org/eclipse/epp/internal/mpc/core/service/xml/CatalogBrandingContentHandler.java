@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2018 The Eclipse Foundation and others.
+ * Copyright (c) 2010, 2019 The Eclipse Foundation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v2.0
  * which accompanies this distribution, and is available at
@@ -104,4 +104,10 @@ public class CatalogBrandingContentHandler extends UnmarshalContentHandler {
 		return false;
 	}
 
+	@Override
+	protected void reset() {
+		super.reset();
+		model = null;
+	}
+
 }
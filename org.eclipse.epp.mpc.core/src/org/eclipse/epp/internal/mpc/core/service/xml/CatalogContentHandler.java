@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2011, 2018 Tasktop Technologies and others.
+ * Copyright (c) 2011, 2019 Tasktop Technologies and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v2.0
  * which accompanies this distribution, and is available at
@@ -42,14 +42,15 @@ public class CatalogContentHandler extends UnmarshalContentHandler {
 		} else if (localName.equals("description")) { //$NON-NLS-1$
 			capturingContent = true;
 		} else if (localName.equals("wizard")) { //$NON-NLS-1$
-			org.eclipse.epp.internal.mpc.core.service.xml.CatalogBrandingContentHandler childHandler = new org.eclipse.epp.internal.mpc.core.service.xml.CatalogBrandingContentHandler();
+			CatalogBrandingContentHandler childHandler =
+					getChildHandler(CatalogBrandingContentHandler.class, CatalogBrandingContentHandler::new);
 			childHandler.setParentModel(model);
 			childHandler.setParentHandler(this);
 			childHandler.setUnmarshaller(getUnmarshaller());
 			getUnmarshaller().setCurrentHandler(childHandler);
 			childHandler.startElement(uri, localName, attributes);
 		} else if (localName.equals("news")) { //$NON-NLS-1$
-			org.eclipse.epp.internal.mpc.core.service.xml.NewsContentHandler childHandler = new org.eclipse.epp.internal.mpc.core.service.xml.NewsContentHandler();
+			NewsContentHandler childHandler = getChildHandler(NewsContentHandler.class, NewsContentHandler::new);
 			childHandler.setParentModel(model);
 			childHandler.setParentHandler(this);
 			childHandler.setUnmarshaller(getUnmarshaller());
@@ -91,4 +92,10 @@ public class CatalogContentHandler extends UnmarshalContentHandler {
 		return false;
 	}
 
+	@Override
+	protected void reset() {
+		super.reset();
+		model = null;
+	}
+
 }
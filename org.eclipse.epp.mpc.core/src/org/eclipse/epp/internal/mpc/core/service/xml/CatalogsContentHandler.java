@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2018 The Eclipse Foundation and others.
+ * Copyright (c) 2010, 2019 The Eclipse Foundation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v2.0
  * which accompanies this distribution, and is available at
@@ -29,7 +29,7 @@ public class CatalogsContentHandler extends UnmarshalContentHandler {
 			model = new Catalogs();
 
 		} else if (localName.equals("catalog")) { //$NON-NLS-1$
-			CatalogContentHandler childHandler = new CatalogContentHandler();
+			CatalogContentHandler childHandler = getChildHandler(CatalogContentHandler.class, CatalogContentHandler::new);
 			childHandler.setParentModel(model);
 			childHandler.setParentHandler(this);
 			childHandler.setUnmarshaller(getUnmarshaller());
@@ -50,4 +50,10 @@ public class CatalogsContentHandler extends UnmarshalContentHandler {
 		return false;
 	}
 
+	@Override
+	protected void reset() {
+		super.reset();
+		model = null;
+	}
+
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2018 The Eclipse Foundation and others.
+ * Copyright (c) 2010, 2019 The Eclipse Foundation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v2.0
  * which accompanies this distribution, and is available at
@@ -37,7 +37,7 @@ public class CategoryContentHandler extends UnmarshalContentHandler {
 			model.setUrl(attributes.getValue(NS_URI,"url")); //$NON-NLS-1$
 			model.setCount(toInteger(attributes.getValue(NS_URI,"count"))); //$NON-NLS-1$
 		} else if (localName.equals("node")) { //$NON-NLS-1$
-			org.eclipse.epp.internal.mpc.core.service.xml.NodeContentHandler childHandler = new org.eclipse.epp.internal.mpc.core.service.xml.NodeContentHandler();
+			NodeContentHandler childHandler = getChildHandler(NodeContentHandler.class, NodeContentHandler::new);
 			childHandler.setParentModel(model);
 			childHandler.setParentHandler(this);
 			childHandler.setUnmarshaller(getUnmarshaller());
@@ -69,4 +69,10 @@ public class CategoryContentHandler extends UnmarshalContentHandler {
 		return false;
 	}
 
+	@Override
+	protected void reset() {
+		super.reset();
+		model = null;
+	}
+
 }
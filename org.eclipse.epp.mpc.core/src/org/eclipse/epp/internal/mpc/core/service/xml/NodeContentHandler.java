@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2018 The Eclipse Foundation and others.
+ * Copyright (c) 2010, 2019 The Eclipse Foundation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v2.0
  * which accompanies this distribution, and is available at
@@ -46,14 +46,15 @@ public class NodeContentHandler extends UnmarshalContentHandler {
 		} else if (localName.equals("type")) { //$NON-NLS-1$
 			capturingContent = true;
 		} else if (localName.equals("categories")) { //$NON-NLS-1$
-			CategoriesContentHandler childHandler = new CategoriesContentHandler();
+			CategoriesContentHandler childHandler =
+					getChildHandler(CategoriesContentHandler.class, CategoriesContentHandler::new);
 			childHandler.setParentModel(model);
 			childHandler.setParentHandler(this);
 			childHandler.setUnmarshaller(getUnmarshaller());
 			getUnmarshaller().setCurrentHandler(childHandler);
 			childHandler.startElement(uri, localName, attributes);
 		} else if (localName.equals("tags")) { //$NON-NLS-1$
-			TagsContentHandler childHandler = new TagsContentHandler();
+			TagsContentHandler childHandler = getChildHandler(TagsContentHandler.class, TagsContentHandler::new);
 			childHandler.setParentModel(model);
 			childHandler.setParentHandler(this);
 			childHandler.setUnmarshaller(getUnmarshaller());
@@ -92,14 +93,14 @@ public class NodeContentHandler extends UnmarshalContentHandler {
 		} else if (localName.equals("updateurl")) { //$NON-NLS-1$
 			capturingContent = true;
 		} else if (localName.equals("ius")) { //$NON-NLS-1$
-			IusContentHandler childHandler = new IusContentHandler();
+			IusContentHandler childHandler = getChildHandler(IusContentHandler.class, IusContentHandler::new);
 			childHandler.setParentModel(model);
 			childHandler.setParentHandler(this);
 			childHandler.setUnmarshaller(getUnmarshaller());
 			getUnmarshaller().setCurrentHandler(childHandler);
 			childHandler.startElement(uri, localName, attributes);
 		} else if (localName.equals("platforms")) { //$NON-NLS-1$
-			PlatformsContentHandler childHandler = new PlatformsContentHandler();
+			PlatformsContentHandler childHandler = getChildHandler(PlatformsContentHandler.class, PlatformsContentHandler::new);
 			childHandler.setParentModel(model);
 			childHandler.setParentHandler(this);
 			childHandler.setUnmarshaller(getUnmarshaller());
@@ -111,14 +112,18 @@ public class NodeContentHandler extends UnmarshalContentHandler {
 	@Override
 	public boolean endElement(String uri, String localName) throws SAXException {
 		if (localName.equals("node")) { //$NON-NLS-1$
-			if (parentModel instanceof Marketplace) {
-				((Marketplace) parentModel).getNode().add(model);
-			} else if (parentModel instanceof NodeListing) {
-				((NodeListing) parentModel).getNode().add(model);
-			} else if (parentModel instanceof Category) {
-				((Category) parentModel).getNode().add(model);
+			Unmarshaller unmarshaller = getUnmarshaller();
+			if (unmarshaller.isRetainNodes()) {
+				if (parentModel instanceof Marketplace) {
+					((Marketplace) parentModel).getNode().add(model);
+				} else if (parentModel instanceof NodeListing) {
+					((NodeListing) parentModel).getNode().add(model);
+				} else if (parentModel instanceof Category) {
+					((Category) parentModel).getNode().add(model);
+				}
 			}
-			getUnmarshaller().setModel(model);
+			unmarshaller.publishNode(model);
+			unmarshaller.setModel(model);
 			model = null;
 			getUnmarshaller().setCurrentHandler(parentHandler);
 			if (parentHandler != null) {
@@ -255,4 +260,10 @@ public class NodeContentHandler extends UnmarshalContentHandler {
 		return false;
 	}
 
+	@Override
+	protected void reset() {
+		super.reset();
+		model = null;
+	}
+
 }
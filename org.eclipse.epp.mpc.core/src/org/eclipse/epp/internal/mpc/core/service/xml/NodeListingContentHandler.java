@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2018 The Eclipse Foundation and others.
+ * Copyright (c) 2010, 2019 The Eclipse Foundation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v2.0
  * which accompanies this distribution, and is available at
@@ -50,7 +50,7 @@ public abstract class NodeListingContentHandler<T extends NodeListing> extends U
 			model = createModel();
 			configureModel(model, attributes);
 		} else if (localName.equals("node")) { //$NON-NLS-1$
-			org.eclipse.epp.internal.mpc.core.service.xml.NodeContentHandler childHandler = new org.eclipse.epp.internal.mpc.core.service.xml.NodeContentHandler();
+			NodeContentHandler childHandler = getChildHandler(NodeContentHandler.class, NodeContentHandler::new);
 			childHandler.setParentModel(model);
 			childHandler.setParentHandler(this);
 			childHandler.setUnmarshaller(getUnmarshaller());
@@ -85,4 +85,10 @@ public abstract class NodeListingContentHandler<T extends NodeListing> extends U
 
 	protected abstract void setMarketplaceResult(Marketplace marketplace, T model);
 
+	@Override
+	protected void reset() {
+		super.reset();
+		model = null;
+	}
+
 }
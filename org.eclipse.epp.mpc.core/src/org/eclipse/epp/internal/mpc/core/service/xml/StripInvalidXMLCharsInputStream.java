@@ -0,0 +1,196 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.internal.mpc.core.service.xml;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Removes characters that are not allowed in an XML 1.0 document from an UTF-8 encoded stream, before it is decoded.
+ * <p>
+ * Works on the raw bytes, so it only has to look at single byte control characters and the three byte encodings of
+ * U+FFFE and U+FFFF, all of which can't occur inside of other multi-byte sequences. Encoded surrogates are not valid
+ * UTF-8 and are left to the decoder, which will replace them or fail depending on its configuration.
+ *
+ * @see StripInvalidXMLCharsReader
+ * @author Carsten Reckord
+ */
+public class StripInvalidXMLCharsInputStream extends FilterInputStream {
+
+	private static final int DEFAULT_BUFFER_SIZE = 8192;
+
+	private static final byte NONCHARACTER_LEAD = (byte) 0xEF;
+
+	private static final byte NONCHARACTER_MIDDLE = (byte) 0xBF;
+
+	private byte[] buffer;
+
+	private int position;
+
+	private int limit;
+
+	private boolean eof;
+
+	private final byte[] singleByte = new byte[1];
+
+	public StripInvalidXMLCharsInputStream(InputStream in) {
+		this(in, DEFAULT_BUFFER_SIZE);
+	}
+
+	public StripInvalidXMLCharsInputStream(InputStream in, int bufferSize) {
+		super(in);
+		if (bufferSize < 3) {
+			throw new IllegalArgumentException();
+		}
+		this.buffer = new byte[bufferSize];
+	}
+
+	@Override
+	public synchronized int read() throws IOException {
+		int read = read(singleByte, 0, 1);
+		return read == -1 ? -1 : singleByte[0] & 0xFF;
+	}
+
+	@Override
+	public synchronized int read(byte[] b, int off, int len) throws IOException {
+		ensureOpen();
+		if (off < 0 || len < 0 || len > b.length - off) {
+			throw new IndexOutOfBoundsException();
+		}
+		if (len == 0) {
+			return 0;
+		}
+		while (true) {
+			int w = strip(b, off, off + len);
+			if (w > off) {
+				return w - off;
+			}
+			if (!fill()) {
+				return -1;
+			}
+		}
+	}
+
+	/**
+	 * Copy the valid bytes from the internal buffer to the target buffer. Stops when the target is full, when the
+	 * internal buffer is exhausted, or when the internal buffer ends with an incomplete U+FFFE/U+FFFF sequence.
+	 *
+	 * @return the new write position in the target buffer
+	 */
+	private int strip(byte[] b, int w, int end) {
+		final byte[] buf = buffer;
+		final int limit = this.limit;
+		int i = position;
+		while (i < limit && w < end) {
+			byte c = buf[i];
+			if (c == NONCHARACTER_LEAD) {
+				if (i + 2 < limit) {
+					if (buf[i + 1] == NONCHARACTER_MIDDLE && (buf[i + 2] & 0xFE) == 0xBE) {
+						i += 3;
+						continue;
+					}
+				} else if (!eof && (i + 1 == limit || buf[i + 1] == NONCHARACTER_MIDDLE)) {
+					//wait for the rest of the sequence
+					break;
+				}
+				b[w++] = c;
+				i++;
+			} else if ((c & 0xE0) != 0 || c == 0x9 || c == 0xA || c == 0xD) {
+				b[w++] = c;
+				i++;
+			} else {
+				i++;
+			}
+		}
+		position = i;
+		return w;
+	}
+
+	private boolean fill() throws IOException {
+		if (eof) {
+			return false;
+		}
+		//keep the start of an incomplete sequence
+		int remaining = limit - position;
+		if (remaining > 0) {
+			System.arraycopy(buffer, position, buffer, 0, remaining);
+		}
+		position = 0;
+		limit = remaining;
+		int read = in.read(buffer, remaining, buffer.length - remaining);
+		if (read == -1) {
+			eof = true;
+		} else {
+			limit += read;
+		}
+		return true;
+	}
+
+	@Override
+	public synchronized long skip(long n) throws IOException {
+		if (n <= 0) {
+			return 0;
+		}
+		byte[] skipBuffer = new byte[(int) Math.min(n, 512)];
+		long remaining = n;
+		while (remaining > 0) {
+			int read = read(skipBuffer, 0, (int) Math.min(remaining, skipBuffer.length));
+			if (read == -1) {
+				break;
+			}
+			remaining -= read;
+		}
+		return n - remaining;
+	}
+
+	@Override
+	public synchronized int available() throws IOException {
+		ensureOpen();
+		//buffered content might consist of invalid characters only
+		return 0;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	@Override
+	public synchronized void mark(int readlimit) {
+		//not supported
+	}
+
+	@Override
+	public synchronized void reset() throws IOException {
+		throw new IOException("reset() not supported"); //$NON-NLS-1$
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (buffer == null) {
+			return;
+		}
+		try {
+			in.close();
+		} finally {
+			buffer = null;
+		}
+	}
+
+	private void ensureOpen() throws IOException {
+		if (buffer == null) {
+			throw new IOException("Stream closed"); //$NON-NLS-1$
+		}
+	}
+}
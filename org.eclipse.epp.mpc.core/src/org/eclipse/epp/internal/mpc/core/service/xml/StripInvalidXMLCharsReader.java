@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2018 The Eclipse Foundation and others.
+ * Copyright (c) 2018, 2019 The Eclipse Foundation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v2.0
  * which accompanies this distribution, and is available at
@@ -16,42 +16,264 @@ import java.io.FilterReader;
 import java.io.IOException;
 import java.io.Reader;
 
+/**
+ * Removes all characters that are not allowed in an XML 1.0 document from the underlying reader.
+ * <p>
+ * Input is compacted in a single pass, in place in the caller's buffer for all but the smallest reads. Supplementary
+ * characters are only passed on as complete surrogate pairs, even if the pair is split between two reads of the
+ * underlying reader. Unpaired surrogates are removed.
+ *
+ * @see StripInvalidXMLCharsInputStream
+ */
 public class StripInvalidXMLCharsReader extends FilterReader {
 
+	private static final int DEFAULT_BUFFER_SIZE = 8192;
+
+	private static final int NONE = -1;
+
+	private char[] buffer;
+
+	private int position;
+
+	private int limit;
+
+	private boolean eof;
+
+	private int pendingLowSurrogate = NONE;
+
+	private int stripPosition;
+
+	private final char[] singleChar = new char[1];
+
 	public StripInvalidXMLCharsReader(Reader in) {
+		this(in, DEFAULT_BUFFER_SIZE);
+	}
+
+	public StripInvalidXMLCharsReader(Reader in, int bufferSize) {
 		super(in);
+		if (bufferSize < 2) {
+			throw new IllegalArgumentException();
+		}
+		this.buffer = new char[bufferSize];
+	}
+
+	public static boolean isValidXMLChar(char c) {
+		return c >= 0x20 ? c <= 0xD7FF || (c >= 0xE000 && c <= 0xFFFD) : c == 0x9 || c == 0xA || c == 0xD;
+	}
+
+	public static boolean isValidXMLCodePoint(int cp) {
+		return (cp == 0x9) || (cp == 0xA) || (cp == 0xD) || ((cp >= 0x20) && (cp <= 0xD7FF))
+				|| ((cp >= 0xE000) && (cp <= 0xFFFD)) || ((cp >= 0x10000) && (cp <= 0x10FFFF));
 	}
 
 	@Override
 	public int read() throws IOException {
-		for (int r = -1; (r = super.read()) != -1;) {
-			if (isValidXMLCodePoint(r)) {
-				return r;
+		synchronized (lock) {
+			int read = read(singleChar, 0, 1);
+			return read == -1 ? -1 : singleChar[0];
+		}
+	}
+
+	@Override
+	public int read(char[] cbuf, int off, int len) throws IOException {
+		synchronized (lock) {
+			ensureOpen();
+			if (off < 0 || len < 0 || len > cbuf.length - off) {
+				throw new IndexOutOfBoundsException();
+			}
+			if (len == 0) {
+				return 0;
+			}
+			if (pendingLowSurrogate != NONE) {
+				cbuf[off] = (char) pendingLowSurrogate;
+				pendingLowSurrogate = NONE;
+				return 1;
+			}
+			int end = off + len;
+			while (true) {
+				int read;
+				if (len > 1 && limit - position <= 1) {
+					read = readDirect(cbuf, off, end);
+				} else {
+					read = readBuffered(cbuf, off, end);
+				}
+				if (read != 0) {
+					return read;
+				}
 			}
 		}
-		return -1;
 	}
 
-	private boolean isValidXMLCodePoint(int cp) {
-		return (cp == 0x9) || (cp == 0xA) || (cp == 0xD) || ((cp >= 0x20) && (cp <= 0xD7FF))
-				|| ((cp >= 0xE000) && (cp <= 0xFFFD)) || ((cp >= 0x10000) && (cp <= 0x10FFFF));
+	/**
+	 * Read from the underlying reader directly into the target buffer and filter it in place. Used for all but tiny
+	 * reads, so the characters are only copied once.
+	 *
+	 * @return the number of characters read, -1 at the end of the stream or 0 if everything read so far was invalid
+	 */
+	private int readDirect(char[] cbuf, int off, int end) throws IOException {
+		int start = off;
+		if (position < limit) {
+			//carried over from the last read, usually a high surrogate waiting for its other half
+			cbuf[start++] = buffer[position];
+		}
+		position = 0;
+		limit = 0;
+		int read = eof ? -1 : in.read(cbuf, start, end - start);
+		if (read == -1) {
+			eof = true;
+			read = 0;
+		}
+		int available = start + read;
+		int w = strip(cbuf, off, available, cbuf, off, end);
+		if (stripPosition < available) {
+			//high surrogate at the end of the underlying read - keep it for the next read
+			buffer[0] = cbuf[stripPosition];
+			limit = 1;
+		}
+		if (w > off) {
+			return w - off;
+		}
+		return eof && limit == 0 ? -1 : 0;
+	}
+
+	/**
+	 * Filter characters from the internal buffer into the target buffer, refilling the internal buffer as needed.
+	 *
+	 * @return the number of characters read, -1 at the end of the stream or 0 if everything read so far was invalid
+	 */
+	private int readBuffered(char[] cbuf, int off, int end) throws IOException {
+		int w = strip(buffer, position, limit, cbuf, off, end);
+		position = stripPosition;
+		if (w > off) {
+			return w - off;
+		}
+		return fill() ? 0 : -1;
+	}
+
+	/**
+	 * Copy the valid characters from the source to the target buffer in a single pass. Source and target may be the
+	 * same buffer, as long as the target range doesn't start behind the source range. Stops when the target is full,
+	 * when the source is exhausted, or when a high surrogate at the end of the source needs the next read to find its
+	 * low surrogate. The position up to which the source has been consumed is left in {@link #stripPosition}.
+	 *
+	 * @return the new write position in the target buffer
+	 */
+	private int strip(char[] src, int i, int limit, char[] cbuf, int off, int end) {
+		int w = off;
+		while (i < limit && w < end) {
+			char c = src[i];
+			if (isValidXMLChar(c)) {
+				cbuf[w++] = c;
+				i++;
+			} else if (Character.isHighSurrogate(c)) {
+				if (i + 1 == limit) {
+					if (!eof) {
+						break;
+					}
+					i++;
+				} else if (Character.isLowSurrogate(src[i + 1])) {
+					if (w + 1 < end) {
+						cbuf[w++] = c;
+						cbuf[w++] = src[i + 1];
+					} else if (w == off) {
+						//no room for both halves and nothing else to return - hand out the low surrogate on the next read
+						cbuf[w++] = c;
+						pendingLowSurrogate = src[i + 1];
+					} else {
+						break;
+					}
+					i += 2;
+				} else {
+					i++;
+				}
+			} else {
+				i++;
+			}
+		}
+		stripPosition = i;
+		return w;
+	}
+
+	private boolean fill() throws IOException {
+		if (eof) {
+			return false;
+		}
+		//keep a trailing high surrogate
+		int remaining = limit - position;
+		if (remaining > 0) {
+			System.arraycopy(buffer, position, buffer, 0, remaining);
+		}
+		position = 0;
+		limit = remaining;
+		int read = in.read(buffer, remaining, buffer.length - remaining);
+		if (read == -1) {
+			eof = true;
+		} else {
+			limit += read;
+		}
+		return true;
 	}
 
 	@Override
-	public int read(char[] cbuf, int off, int len) throws IOException {
-		int read = super.read(cbuf, off, len);
-		int remaining = read;
-		for (int i = off; i < off + read; i++) {
-			char c = cbuf[i];
-			if (!isValidXMLCodePoint(c)) {
-				remaining--;
-				int after = off + read - i - 1;
-				if (after > 0) {
-					System.arraycopy(cbuf, i + 1, cbuf, i, after);
-					cbuf[remaining] = 0;
+	public long skip(long n) throws IOException {
+		if (n < 0L) {
+			throw new IllegalArgumentException();
+		}
+		synchronized (lock) {
+			char[] skipBuffer = new char[(int) Math.min(n, 512)];
+			long remaining = n;
+			while (remaining > 0) {
+				int read = read(skipBuffer, 0, (int) Math.min(remaining, skipBuffer.length));
+				if (read == -1) {
+					break;
 				}
+				remaining -= read;
+			}
+			return n - remaining;
+		}
+	}
+
+	@Override
+	public boolean ready() throws IOException {
+		synchronized (lock) {
+			ensureOpen();
+			//buffered content might consist of invalid characters only, so only rely on the underlying reader
+			return pendingLowSurrogate != NONE || in.ready();
+		}
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	@Override
+	public void mark(int readAheadLimit) throws IOException {
+		throw new IOException("mark() not supported"); //$NON-NLS-1$
+	}
+
+	@Override
+	public void reset() throws IOException {
+		throw new IOException("reset() not supported"); //$NON-NLS-1$
+	}
+
+	@Override
+	public void close() throws IOException {
+		synchronized (lock) {
+			if (buffer == null) {
+				return;
 			}
+			try {
+				in.close();
+			} finally {
+				buffer = null;
+			}
+		}
+	}
+
+	private void ensureOpen() throws IOException {
+		if (buffer == null) {
+			throw new IOException("Stream closed"); //$NON-NLS-1$
 		}
-		return remaining;
 	}
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2011, 2018 Tasktop Technologies and others.
+ * Copyright (c) 2011, 2019 Tasktop Technologies and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v2.0
  * which accompanies this distribution, and is available at
@@ -29,7 +29,7 @@ public class TagsContentHandler extends UnmarshalContentHandler {
 			model = new Tags();
 
 		} else if (localName.equals("tag")) { //$NON-NLS-1$
-			TagContentHandler childHandler = new TagContentHandler();
+			TagContentHandler childHandler = getChildHandler(TagContentHandler.class, TagContentHandler::new);
 			childHandler.setParentModel(model);
 			childHandler.setParentHandler(this);
 			childHandler.setUnmarshaller(getUnmarshaller());
@@ -57,4 +57,10 @@ public class TagsContentHandler extends UnmarshalContentHandler {
 		return false;
 	}
 
+	@Override
+	protected void reset() {
+		super.reset();
+		model = null;
+	}
+
 }
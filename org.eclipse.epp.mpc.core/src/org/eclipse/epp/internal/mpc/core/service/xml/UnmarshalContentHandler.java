@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2018 The Eclipse Foundation and others.
+ * Copyright (c) 2010, 2019 The Eclipse Foundation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v2.0
  * which accompanies this distribution, and is available at
@@ -13,6 +13,7 @@
 package org.eclipse.epp.internal.mpc.core.service.xml;
 
 import java.util.Date;
+import java.util.function.Supplier;
 
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
@@ -24,6 +25,8 @@ import org.xml.sax.SAXException;
  */
 public abstract class UnmarshalContentHandler {
 
+	private static final int MAX_RETAINED_BUFFER_SIZE = 8192;
+
 	protected Unmarshaller unmarshaller;
 
 	protected StringBuilder content;
@@ -34,6 +37,8 @@ public abstract class UnmarshalContentHandler {
 
 	protected UnmarshalContentHandler parentHandler;
 
+	private StringBuilder contentBuffer;
+
 	public abstract void startElement(String uri, String localName, Attributes attributes) throws SAXException;
 
 	/**
@@ -44,12 +49,40 @@ public abstract class UnmarshalContentHandler {
 	public void characters(char[] ch, int start, int length) throws SAXException {
 		if (capturingContent) {
 			if (content == null) {
-				content = new StringBuilder();
+				//reuse the buffer of previously captured content, which has been consumed at this point
+				if (contentBuffer == null) {
+					contentBuffer = new StringBuilder();
+				} else {
+					contentBuffer.setLength(0);
+				}
+				content = contentBuffer;
 			}
 			content.append(ch, start, length);
 		}
 	}
 
+	/**
+	 * Get a handler for a child element. Child handlers are reused for subsequent elements, so the returned handler
+	 * has to be initialized completely by the caller and its {@link #startElement(String, String, Attributes)}.
+	 */
+	protected <H extends UnmarshalContentHandler> H getChildHandler(Class<H> type, Supplier<H> factory) {
+		Unmarshaller unmarshaller = getUnmarshaller();
+		return unmarshaller == null ? factory.get() : unmarshaller.getChildHandler(type, factory, this);
+	}
+
+	/**
+	 * Clear all references to the unmarshalled model and the state of the last parse, so this handler can be reused.
+	 */
+	protected void reset() {
+		content = null;
+		capturingContent = false;
+		parentModel = null;
+		parentHandler = null;
+		if (contentBuffer != null && contentBuffer.capacity() > MAX_RETAINED_BUFFER_SIZE) {
+			contentBuffer = null;
+		}
+	}
+
 	protected Unmarshaller getUnmarshaller() {
 		return unmarshaller;
 	}
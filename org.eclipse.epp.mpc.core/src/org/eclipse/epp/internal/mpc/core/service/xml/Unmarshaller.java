@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2018 The Eclipse Foundation and others.
+ * Copyright (c) 2010, 2019 The Eclipse Foundation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v2.0
  * which accompanies this distribution, and is available at
@@ -18,10 +18,16 @@ import java.io.IOException;
 import java.io.StringReader;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParserFactory;
 
+import org.eclipse.epp.internal.mpc.core.model.Node;
+
 import org.xml.sax.Attributes;
 import org.xml.sax.EntityResolver;
 import org.xml.sax.InputSource;
@@ -33,12 +39,19 @@ import org.xml.sax.helpers.DefaultHandler;
 
 /**
  * XML unmarshaller
+ * <p>
+ * Unmarshallers and their content handlers and XML readers are reusable. Use {@link #acquire()} and
+ * {@link #release(Unmarshaller)} to get an instance from a shared pool instead of creating a new one for every parse.
  *
  * @author David Green
  * @author Benjamin Muskalla
  */
 public class Unmarshaller extends DefaultHandler {
 
+	private static final int MAX_POOLED_UNMARSHALLERS = 8;
+
+	private static final BlockingQueue<Unmarshaller> pool = new ArrayBlockingQueue<>(MAX_POOLED_UNMARSHALLERS);
+
 	private static SAXParserFactory parserFactory;
 
 	private static EntityResolver emptyResolver;
@@ -88,10 +101,29 @@ public class Unmarshaller extends DefaultHandler {
 	 * Unmarshal an object from the given input source
 	 */
 	public static Object parse(InputSource input) throws IOException, SAXException {
-		Unmarshaller unmarshaller = new Unmarshaller();
-		XMLReader xmlReader = createXMLReader(unmarshaller);
-		xmlReader.parse(input);
-		return unmarshaller.getModel();
+		Unmarshaller unmarshaller = acquire();
+		unmarshaller.getXMLReader().parse(input);
+		Object model = unmarshaller.getModel();
+		release(unmarshaller);
+		return model;
+	}
+
+	/**
+	 * Get an unmarshaller from the shared pool, or a new one if the pool is empty. The unmarshaller should be
+	 * {@link #release(Unmarshaller) returned} to the pool after a successful parse. Unmarshallers that failed to parse
+	 * their input should just be dropped, since they might have been left in an inconsistent state.
+	 */
+	public static Unmarshaller acquire() {
+		Unmarshaller unmarshaller = pool.poll();
+		return unmarshaller == null ? new Unmarshaller() : unmarshaller;
+	}
+
+	/**
+	 * Reset the given unmarshaller and return it to the shared pool
+	 */
+	public static void release(Unmarshaller unmarshaller) {
+		unmarshaller.reset();
+		pool.offer(unmarshaller);
 	}
 
 
@@ -118,9 +150,17 @@ public class Unmarshaller extends DefaultHandler {
 		elementNameToUnmarshalContentHandler.put("news", new NewsContentHandler()); //$NON-NLS-1$
 	}
 
+	private final Map<Class<?>, UnmarshalContentHandler> childHandlers = new HashMap<>();
+
+	private XMLReader xmlReader;
+
 	private UnmarshalContentHandler currentHandler;
 	private Object model;
 
+	private Consumer<? super Node> nodeConsumer;
+
+	private boolean retainNodes = true;
+
 	@Override
 	public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
 		computeHandler(localName);
@@ -149,6 +189,33 @@ public class Unmarshaller extends DefaultHandler {
 		}
 	}
 
+	/**
+	 * @return the XML reader for this unmarshaller, which is created on first access and reused afterwards
+	 */
+	public XMLReader getXMLReader() {
+		if (xmlReader == null) {
+			xmlReader = createXMLReader(this);
+		}
+		return xmlReader;
+	}
+
+	/**
+	 * Clear all state of the last parse, including all references to the unmarshalled model, so this unmarshaller can
+	 * be reused.
+	 */
+	public void reset() {
+		currentHandler = null;
+		model = null;
+		nodeConsumer = null;
+		retainNodes = true;
+		for (UnmarshalContentHandler handler : elementNameToUnmarshalContentHandler.values()) {
+			handler.reset();
+		}
+		for (UnmarshalContentHandler handler : childHandlers.values()) {
+			handler.reset();
+		}
+	}
+
 	public Object getModel() {
 		return model;
 	}
@@ -156,6 +223,36 @@ public class Unmarshaller extends DefaultHandler {
 	public void setModel(Object model) {
 		this.model = model;
 	}
+
+	/**
+	 * Publish each {@link Node} to the given consumer as soon as its end tag has been parsed, instead of only making
+	 * it available through the model once the whole document has been read.
+	 *
+	 * @param nodeConsumer
+	 *            receives completed nodes in document order, or null to disable streaming
+	 * @param retainNodes
+	 *            true to also add the published nodes to their parent element's model as usual, false to drop them
+	 *            after publishing, so arbitrarily large listings can be processed without keeping all nodes in memory
+	 */
+	public void setNodeConsumer(Consumer<? super Node> nodeConsumer, boolean retainNodes) {
+		this.nodeConsumer = nodeConsumer;
+		this.retainNodes = nodeConsumer == null || retainNodes;
+	}
+
+	public Consumer<? super Node> getNodeConsumer() {
+		return nodeConsumer;
+	}
+
+	public boolean isRetainNodes() {
+		return retainNodes;
+	}
+
+	void publishNode(Node node) {
+		if (nodeConsumer != null) {
+			nodeConsumer.accept(node);
+		}
+	}
+
 	protected UnmarshalContentHandler getCurrentHandler() {
 		return currentHandler;
 	}
@@ -167,4 +264,26 @@ public class Unmarshaller extends DefaultHandler {
 	public UnmarshalContentHandler getHandler(String localName) {
 		return elementNameToUnmarshalContentHandler.get(localName);
 	}
+
+	/**
+	 * Get a reusable handler of the given type for a child element of the given parent. A new handler is only created
+	 * if there is no cached handler of that type yet, or if it is currently in use further up the parent chain for
+	 * recursive elements.
+	 */
+	<H extends UnmarshalContentHandler> H getChildHandler(Class<H> type, Supplier<H> factory,
+			UnmarshalContentHandler parent) {
+		UnmarshalContentHandler handler = childHandlers.get(type);
+		if (handler == null) {
+			H newHandler = factory.get();
+			childHandlers.put(type, newHandler);
+			return newHandler;
+		}
+		for (UnmarshalContentHandler active = parent; active != null; active = active.getParentHandler()) {
+			if (active == handler) {
+				return factory.get();
+			}
+		}
+		handler.reset();
+		return type.cast(handler);
+	}
 }
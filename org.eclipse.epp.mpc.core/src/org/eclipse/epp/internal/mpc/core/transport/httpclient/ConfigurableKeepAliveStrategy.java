@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.internal.mpc.core.transport.httpclient;
+
+import org.apache.http.HeaderElement;
+import org.apache.http.HeaderElementIterator;
+import org.apache.http.HttpResponse;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.message.BasicHeaderElementIterator;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Keep-alive strategy that honors the server's <code>Keep-Alive: timeout=...</code> hint, but never keeps a connection
+ * alive longer than a configured maximum. Without a hint, connections are kept alive for the maximum duration.
+ * <p>
+ * Unlike the default strategy, this doesn't keep connections alive indefinitely, so connections the server has long
+ * since closed are not reused.
+ *
+ * @author Carsten Reckord
+ */
+public class ConfigurableKeepAliveStrategy implements ConnectionKeepAliveStrategy {
+
+	private static final String TIMEOUT_PARAMETER = "timeout"; //$NON-NLS-1$
+
+	private final long maxKeepAlive;
+
+	/**
+	 * @param maxKeepAlive
+	 *            maximum keep-alive duration in milliseconds, or a negative value to keep connections alive
+	 *            indefinitely unless the server says otherwise
+	 */
+	public ConfigurableKeepAliveStrategy(long maxKeepAlive) {
+		this.maxKeepAlive = maxKeepAlive;
+	}
+
+	public long getMaxKeepAlive() {
+		return maxKeepAlive;
+	}
+
+	@Override
+	public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+		long serverKeepAlive = getServerKeepAlive(response);
+		if (serverKeepAlive < 0) {
+			return maxKeepAlive;
+		}
+		return maxKeepAlive < 0 ? serverKeepAlive : Math.min(serverKeepAlive, maxKeepAlive);
+	}
+
+	private static long getServerKeepAlive(HttpResponse response) {
+		HeaderElementIterator it = new BasicHeaderElementIterator(response.headerIterator(HTTP.CONN_KEEP_ALIVE));
+		while (it.hasNext()) {
+			HeaderElement element = it.nextElement();
+			String value = element.getValue();
+			if (value != null && TIMEOUT_PARAMETER.equalsIgnoreCase(element.getName())) {
+				try {
+					return Math.max(0, Long.parseLong(value.trim()) * 1000);
+				} catch (NumberFormatException ignore) {
+				}
+			}
+		}
+		return -1;
+	}
+}
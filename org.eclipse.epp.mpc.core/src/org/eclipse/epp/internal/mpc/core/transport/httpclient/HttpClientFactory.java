@@ -1,9 +1,9 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2018 The Eclipse Foundation and others.
+ * Copyright (c) 2010, 2019 The Eclipse Foundation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v2.0
  * which accompanies this distribution, and is available at
- * https://www.eclipse.org/legal/epl-2.0/
+ * https://www.eclipse.org/legal/epl-2.0/
  *
  * SPDX-License-Identifier: EPL-2.0
  *
@@ -15,6 +15,7 @@ package org.eclipse.epp.internal.mpc.core.transport.httpclient;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.http.HttpRequestInterceptor;
 import org.apache.http.client.CookieStore;
@@ -22,10 +23,15 @@ import org.apache.http.client.CredentialsProvider;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.config.SocketConfig;
 import org.apache.http.impl.client.BasicCookieStore;
+import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.ProxyAuthenticationStrategy;
 import org.apache.http.impl.client.TargetAuthenticationStrategy;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
 import org.eclipse.epp.internal.mpc.core.MarketplaceClientCore;
+import org.eclipse.osgi.util.NLS;
 import org.eclipse.userstorage.internal.StorageProperties;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.FrameworkUtil;
@@ -39,11 +45,14 @@ import org.osgi.service.component.annotations.ReferencePolicy;
 import org.osgi.service.component.annotations.ReferencePolicyOption;
 
 @Component(name = "org.eclipse.epp.mpc.core.http.client.factory", service = { HttpClientFactory.class })
-public class HttpClientFactory {
+public class HttpClientFactory {
 
 	@Reference(cardinality = ReferenceCardinality.MULTIPLE, policyOption = ReferencePolicyOption.GREEDY, policy = ReferencePolicy.STATIC, fieldOption = FieldOption.REPLACE)
 	private List<HttpClientCustomizer> customizers;
 
+	@Reference(cardinality = ReferenceCardinality.OPTIONAL, policyOption = ReferencePolicyOption.GREEDY, policy = ReferencePolicy.STATIC)
+	private HttpClientMetrics metrics;
+
 	public List<HttpClientCustomizer> getCustomizers() {
 		return customizers;
 	}
@@ -52,12 +61,21 @@ public class HttpClientFactory {
 		this.customizers = customizers;
 	}
 
+	public HttpClientMetrics getMetrics() {
+		return metrics;
+	}
+
+	public void setMetrics(HttpClientMetrics metrics) {
+		this.metrics = metrics;
+	}
+
 	public HttpServiceContext build() {
 		return build(null);
 	}
 
 	public HttpServiceContext build(HttpServiceContext oldContext) {
-		HttpClientBuilder clientBuilder = builder();
+		HttpClientBuilder clientBuilder = HttpClientBuilder.create();
+		PoolingHttpClientConnectionManager connectionManager = configure(clientBuilder);
 
 		CookieStore cookieStore = oldContext == null ? null : oldContext.getCookieStore();
 		if (cookieStore == null) {
@@ -84,8 +102,8 @@ public class HttpClientFactory {
 
 		clientBuilder = customizeBuilder(clientBuilder);
 
-		return new HttpServiceContext(clientBuilder.build(), cookieStore, credentialsProvider,
-				initialCredentialsProvider, cacheProvider);
+		return new HttpServiceContext(clientBuilder.build(), connectionManager, cookieStore, credentialsProvider,
+				initialCredentialsProvider, cacheProvider, metrics);
 	}
 
 	protected CredentialsProvider createCredentialsProvider() {
@@ -118,9 +136,17 @@ public class HttpClientFactory {
 
 	protected HttpClientBuilder builder() {
 		HttpClientBuilder builder = HttpClientBuilder.create();
+		configure(builder);
+		return builder;
+	}
 
-		builder.setMaxConnPerRoute(100).setMaxConnTotal(200);
-		setClientDefaultTimeouts(builder);
+	private PoolingHttpClientConnectionManager configure(HttpClientBuilder builder) {
+		SocketConfig socketConfig = setClientDefaultTimeouts(builder);
+		PoolingHttpClientConnectionManager connectionManager = setClientConnectionPool(builder, socketConfig,
+				metrics);
+		if (metrics != null) {
+			instrument(builder, metrics);
+		}
 
 		builder.setTargetAuthenticationStrategy(
 				new CacheCredentialsAuthenticationStrategy.Target(TargetAuthenticationStrategy.INSTANCE));
@@ -129,10 +155,50 @@ public class HttpClientFactory {
 
 		builder.setUserAgent(HttpClientTransport.USER_AGENT);
 
-		return builder;
+		return connectionManager;
+	}
+
+	private static PoolingHttpClientConnectionManager setClientConnectionPool(HttpClientBuilder builder, SocketConfig socketConfig,
+			HttpClientMetrics metrics) {
+		int maxConnectionsPerRoute = getIntValue(HttpClientTransport.MAX_CONNECTIONS_PER_ROUTE_PROPERTY,
+				HttpClientTransport.DEFAULT_MAX_CONNECTIONS_PER_ROUTE);
+		int maxConnectionsTotal = getIntValue(HttpClientTransport.MAX_CONNECTIONS_TOTAL_PROPERTY,
+				HttpClientTransport.DEFAULT_MAX_CONNECTIONS_TOTAL);
+		int timeToLive = getIntValue(HttpClientTransport.CONNECTION_TIME_TO_LIVE_PROPERTY,
+				HttpClientTransport.DEFAULT_CONNECTION_TIME_TO_LIVE);
+		int validateAfterInactivity = getIntValue(HttpClientTransport.VALIDATE_AFTER_INACTIVITY_PROPERTY,
+				HttpClientTransport.DEFAULT_VALIDATE_AFTER_INACTIVITY);
+		int keepAlive = getIntValue(HttpClientTransport.KEEP_ALIVE_PROPERTY, HttpClientTransport.DEFAULT_KEEP_ALIVE);
+		int maxIdleTime = getIntValue(HttpClientTransport.MAX_IDLE_TIME_PROPERTY,
+				HttpClientTransport.DEFAULT_MAX_IDLE_TIME);
+
+		//we set our own pool instead of the builder's default, so the pool's ttl and validation can be configured
+		PoolingHttpClientConnectionManager connectionManager = metrics == null
+				? new PoolingHttpClientConnectionManager(timeToLive, TimeUnit.MILLISECONDS)
+				: new InstrumentedConnectionManager(metrics, timeToLive);
+		connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+		connectionManager.setMaxTotal(maxConnectionsTotal);
+		connectionManager.setValidateAfterInactivity(validateAfterInactivity);
+		connectionManager.setDefaultSocketConfig(socketConfig);
+		builder.setConnectionManager(connectionManager);
+
+		builder.setKeepAliveStrategy(new ConfigurableKeepAliveStrategy(keepAlive));
+		//close connections that expired or went idle in the background, so they don't fail on reuse
+		builder.evictExpiredConnections();
+		if (maxIdleTime > 0) {
+			builder.evictIdleConnections(maxIdleTime, TimeUnit.MILLISECONDS);
+		}
+		return connectionManager;
+	}
+
+	private static void instrument(HttpClientBuilder builder, HttpClientMetrics metrics) {
+		builder.setRetryHandler(metrics.instrument(DefaultHttpRequestRetryHandler.INSTANCE));
+		//The builder advertises gzip and deflate encodings and decodes responses lazily while they are read.
+		//First interceptors run before the decoding one, so this sees the response as transferred.
+		builder.addInterceptorFirst(metrics.createTransferInterceptor());
 	}
 
-	private static void setClientDefaultTimeouts(HttpClientBuilder builder) {
+	private static SocketConfig setClientDefaultTimeouts(HttpClientBuilder builder) {
 		@SuppressWarnings("restriction")
 		int connectTimeoutUssDefault = StorageProperties.getProperty(StorageProperties.CONNECT_TIMEOUT,
 				HttpClientTransport.DEFAULT_CONNECT_TIMEOUT);
@@ -140,10 +206,10 @@ public class HttpClientFactory {
 		int readTimeoutUssDefault = StorageProperties.getProperty(StorageProperties.SOCKET_TIMEOUT,
 				HttpClientTransport.DEFAULT_READ_TIMEOUT);
 
-		int connectTimeout = getTimeoutValue(HttpClientTransport.CONNECT_TIMEOUT_PROPERTY, connectTimeoutUssDefault);
-		int readTimeout = getTimeoutValue(HttpClientTransport.READ_TIMEOUT_PROPERTY, readTimeoutUssDefault);
+		int connectTimeout = getIntValue(HttpClientTransport.CONNECT_TIMEOUT_PROPERTY, connectTimeoutUssDefault);
+		int readTimeout = getIntValue(HttpClientTransport.READ_TIMEOUT_PROPERTY, readTimeoutUssDefault);
 
-		int connectionRequestTimeout = getTimeoutValue(HttpClientTransport.CONNECTION_REQUEST_TIMEOUT_PROPERTY,
+		int connectionRequestTimeout = getIntValue(HttpClientTransport.CONNECTION_REQUEST_TIMEOUT_PROPERTY,
 				HttpClientTransport.DEFAULT_CONNECTION_REQUEST_TIMEOUT);
 
 		SocketConfig defaultSocketConfig = SocketConfig.copy(SocketConfig.DEFAULT)
@@ -161,9 +227,10 @@ public class HttpClientFactory {
 				.build();
 		builder.setDefaultSocketConfig(defaultSocketConfig);
 		builder.setDefaultRequestConfig(defaultRequestConfig);
+		return defaultSocketConfig;
 	}
 
-	private static int getTimeoutValue(String property, int defaultValue) {
+	private static int getIntValue(String property, int defaultValue) {
 		String propertyValue = FrameworkUtil.getBundle(HttpClientTransport.class)
 				.getBundleContext()
 				.getProperty(property);
@@ -173,7 +240,10 @@ public class HttpClientFactory {
 		try {
 			return Integer.parseInt(propertyValue);
 		} catch (NumberFormatException ex) {
-			//TODO log
+			MarketplaceClientCore.getLog()
+			.log(new Status(IStatus.WARNING, MarketplaceClientCore.BUNDLE_ID,
+					NLS.bind(Messages.HttpClientFactory_invalidIntegerProperty,
+							new Object[] { property, propertyValue, defaultValue })));
 			return defaultValue;
 		}
 	}
@@ -0,0 +1,315 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.internal.mpc.core.transport.httpclient;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.client.HttpRequestRetryHandler;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.pool.ConnPoolControl;
+import org.apache.http.pool.PoolStats;
+import org.eclipse.epp.internal.mpc.core.MarketplaceClientCorePlugin;
+import org.osgi.service.component.annotations.Component;
+
+/**
+ * Records per-host request latencies, status codes, retries, connection pool lease waits and response sizes of the
+ * {@link HttpClientService}. Response sizes are recorded both as transferred over the wire and after decoding any
+ * content encoding. The current numbers are available as a {@link #getStatistics() snapshot}, which can also
+ * be {@link #dump() written to the debug trace} on demand.
+ * <p>
+ * Individual requests are traced with the {@link MarketplaceClientCorePlugin#DEBUG_HTTP_OPTION http debug option}.
+ *
+ * @author Carsten Reckord
+ */
+@Component(name = "org.eclipse.epp.mpc.core.http.client.metrics", service = { HttpClientMetrics.class })
+public class HttpClientMetrics {
+
+	private static final String UNKNOWN_HOST = "<unknown>"; //$NON-NLS-1$
+
+	private static final class HostMetrics {
+
+		private final LongAdder requestCount = new LongAdder();
+
+		private final LongAdder failureCount = new LongAdder();
+
+		private final LongAdder retryCount = new LongAdder();
+
+		private final LongAdder bytesReceived = new LongAdder();
+
+		private final LongAdder bytesTransferred = new LongAdder();
+
+		private final ConcurrentMap<Integer, LongAdder> statusCodeCounts = new ConcurrentHashMap<>();
+
+		private final LatencyHistogram latency = new LatencyHistogram();
+
+		private final LatencyHistogram leaseWait = new LatencyHistogram();
+
+		HttpClientStatistics.HostStatistics getStatistics(String host) {
+			Map<Integer, Long> statusCodes = new TreeMap<>();
+			for (Map.Entry<Integer, LongAdder> entry : statusCodeCounts.entrySet()) {
+				statusCodes.put(entry.getKey(), entry.getValue().sum());
+			}
+			return new HttpClientStatistics.HostStatistics(host, requestCount.sum(), failureCount.sum(),
+					retryCount.sum(), bytesReceived.sum(), bytesTransferred.sum(), statusCodes, latency.getSnapshot(), leaseWait.getSnapshot());
+		}
+	}
+
+	private final ConcurrentMap<String, HostMetrics> hosts = new ConcurrentHashMap<>();
+
+	private volatile ConnPoolControl<HttpRoute> connectionPool;
+
+	public HttpClientStatistics getStatistics() {
+		Map<String, HttpClientStatistics.HostStatistics> hostStatistics = new TreeMap<>();
+		for (Map.Entry<String, HostMetrics> entry : hosts.entrySet()) {
+			hostStatistics.put(entry.getKey(), entry.getValue().getStatistics(entry.getKey()));
+		}
+		ConnPoolControl<HttpRoute> pool = connectionPool;
+		PoolStats poolStats = pool == null ? null : pool.getTotalStats();
+		return new HttpClientStatistics(hostStatistics, poolStats);
+	}
+
+	/**
+	 * Write the current {@link #getStatistics() statistics} to the debug trace
+	 *
+	 * @return the written statistics
+	 */
+	public HttpClientStatistics dump() {
+		HttpClientStatistics statistics = getStatistics();
+		MarketplaceClientCorePlugin.trace(MarketplaceClientCorePlugin.DEBUG_HTTP_OPTION, "{0}", statistics); //$NON-NLS-1$
+		return statistics;
+	}
+
+	/**
+	 * Discard all recorded metrics
+	 */
+	public void reset() {
+		hosts.clear();
+	}
+
+	/**
+	 * Set the connection pool whose utilization is included in the {@link #getStatistics() statistics}
+	 */
+	public void setConnectionPool(ConnPoolControl<HttpRoute> connectionPool) {
+		this.connectionPool = connectionPool;
+	}
+
+	public void requestCompleted(URI uri, HttpResponse response, long durationNanos) {
+		String host = getHost(uri);
+		HostMetrics metrics = getMetrics(host);
+		int statusCode = response.getStatusLine().getStatusCode();
+		metrics.requestCount.increment();
+		metrics.statusCodeCounts.computeIfAbsent(statusCode, code -> new LongAdder()).increment();
+		long millis = TimeUnit.NANOSECONDS.toMillis(durationNanos);
+		metrics.latency.record(millis);
+		if (MarketplaceClientCorePlugin.DEBUG) {
+			MarketplaceClientCorePlugin.trace(MarketplaceClientCorePlugin.DEBUG_HTTP_OPTION,
+					"{0} responded with {1} after {2} ms", uri, statusCode, millis); //$NON-NLS-1$
+		}
+	}
+
+	public void requestFailed(URI uri, IOException failure, long durationNanos) {
+		String host = getHost(uri);
+		HostMetrics metrics = getMetrics(host);
+		metrics.requestCount.increment();
+		metrics.failureCount.increment();
+		long millis = TimeUnit.NANOSECONDS.toMillis(durationNanos);
+		metrics.latency.record(millis);
+		if (MarketplaceClientCorePlugin.DEBUG) {
+			MarketplaceClientCorePlugin.trace(MarketplaceClientCorePlugin.DEBUG_HTTP_OPTION,
+					"{0} failed after {1} ms: {2}", uri, millis, failure); //$NON-NLS-1$
+		}
+	}
+
+	public void requestRetried(HttpHost host) {
+		getMetrics(getHost(host)).retryCount.increment();
+	}
+
+	public void connectionLeased(HttpRoute route, long waitNanos) {
+		getMetrics(getHost(route.getTargetHost())).leaseWait.record(TimeUnit.NANOSECONDS.toMillis(waitNanos));
+	}
+
+	public void responseReceived(URI uri, long bytes) {
+		getMetrics(getHost(uri)).bytesReceived.add(bytes);
+		if (MarketplaceClientCorePlugin.DEBUG) {
+			MarketplaceClientCorePlugin.trace(MarketplaceClientCorePlugin.DEBUG_HTTP_OPTION,
+					"{0} received {1} bytes", uri, bytes); //$NON-NLS-1$
+		}
+	}
+
+	public void responseTransferred(HttpHost host, long bytes) {
+		getMetrics(getHost(host)).bytesTransferred.add(bytes);
+		if (MarketplaceClientCorePlugin.DEBUG) {
+			MarketplaceClientCorePlugin.trace(MarketplaceClientCorePlugin.DEBUG_HTTP_OPTION,
+					"{0} transferred {1} bytes", host, bytes); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * Wrap the response's entity, so the size of the response body is recorded once it has been read.
+	 */
+	public void instrument(URI uri, HttpResponse response) {
+		HttpEntity entity = response.getEntity();
+		if (entity != null) {
+			response.setEntity(new MeasuredEntity(entity, bytes -> responseReceived(uri, bytes)));
+		}
+	}
+
+	/**
+	 * @return a response interceptor that records the size of the response body as transferred over the wire. It has
+	 *         to run before the client decodes the response's content encoding.
+	 */
+	public HttpResponseInterceptor createTransferInterceptor() {
+		return (response, context) -> {
+			HttpEntity entity = response.getEntity();
+			if (entity != null) {
+				HttpHost host = HttpClientContext.adapt(context).getTargetHost();
+				response.setEntity(new MeasuredEntity(entity, bytes -> responseTransferred(host, bytes)));
+			}
+		};
+	}
+
+	/**
+	 * @return a retry handler that counts the retries permitted by the given handler
+	 */
+	public HttpRequestRetryHandler instrument(HttpRequestRetryHandler retryHandler) {
+		return (exception, executionCount, context) -> {
+			boolean retry = retryHandler.retryRequest(exception, executionCount, context);
+			if (retry) {
+				requestRetried(HttpClientContext.adapt(context).getTargetHost());
+			}
+			return retry;
+		};
+	}
+
+	private HostMetrics getMetrics(String host) {
+		return hosts.computeIfAbsent(host, h -> new HostMetrics());
+	}
+
+	private static String getHost(URI uri) {
+		return uri == null || uri.getHost() == null ? UNKNOWN_HOST : uri.getHost().toLowerCase(Locale.ROOT);
+	}
+
+	private static String getHost(HttpHost host) {
+		return host == null ? UNKNOWN_HOST : host.getHostName().toLowerCase(Locale.ROOT);
+	}
+
+	private static final class MeasuredEntity extends HttpEntityWrapper {
+
+		private final LongConsumer recorder;
+
+		private final AtomicBoolean recorded = new AtomicBoolean();
+
+		private InputStream content;
+
+		MeasuredEntity(HttpEntity wrappedEntity, LongConsumer recorder) {
+			super(wrappedEntity);
+			this.recorder = recorder;
+		}
+
+		@Override
+		public synchronized InputStream getContent() throws IOException {
+			if (content == null || isRepeatable()) {
+				InputStream wrappedContent = super.getContent();
+				content = wrappedContent == null ? null : new MeasuredInputStream(wrappedContent);
+			}
+			return content;
+		}
+
+		@Override
+		public void writeTo(OutputStream outstream) throws IOException {
+			//go through getContent(), so the written bytes are counted
+			try (InputStream in = getContent()) {
+				if (in == null) {
+					return;
+				}
+				byte[] buffer = new byte[8192];
+				int read;
+				while ((read = in.read(buffer)) != -1) {
+					outstream.write(buffer, 0, read);
+				}
+			}
+		}
+
+		private final class MeasuredInputStream extends FilterInputStream {
+
+			private long bytes;
+
+			MeasuredInputStream(InputStream in) {
+				super(in);
+			}
+
+			@Override
+			public int read() throws IOException {
+				int read = super.read();
+				if (read == -1) {
+					record();
+				} else {
+					bytes++;
+				}
+				return read;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				int read = super.read(b, off, len);
+				if (read == -1) {
+					record();
+				} else {
+					bytes += read;
+				}
+				return read;
+			}
+
+			@Override
+			public long skip(long n) throws IOException {
+				long skipped = super.skip(n);
+				bytes += skipped;
+				return skipped;
+			}
+
+			@Override
+			public void close() throws IOException {
+				try {
+					super.close();
+				} finally {
+					record();
+				}
+			}
+
+			private void record() {
+				if (recorded.compareAndSet(false, true)) {
+					recorder.accept(bytes);
+				}
+			}
+		}
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2018 The Eclipse Foundation and others.
+ * Copyright (c) 2010, 2019 The Eclipse Foundation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v2.0
  * which accompanies this distribution, and is available at
@@ -14,6 +14,9 @@ package org.eclipse.epp.internal.mpc.core.transport.httpclient;
 
 import java.io.IOException;
 import java.net.URI;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.http.HttpHost;
 import org.apache.http.HttpResponse;
@@ -31,11 +34,15 @@ import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.client.methods.RequestBuilder;
 import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
 import org.apache.http.protocol.HttpContext;
 import org.eclipse.core.net.proxy.IProxyData;
 import org.eclipse.core.net.proxy.IProxyService;
+import org.eclipse.epp.internal.mpc.core.MarketplaceClientCore;
 import org.eclipse.epp.internal.mpc.core.util.ProxyHelper;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.component.annotations.ReferencePolicy;
 import org.osgi.service.component.annotations.ReferencePolicyOption;
@@ -43,20 +50,95 @@ import org.osgi.service.component.annotations.ReferencePolicyOption;
 @Component(name = "org.eclipse.epp.mpc.core.http.client", service = { HttpClientService.class })
 public class HttpClientService {
 
-	private HttpClient client;
+	private volatile HttpClient client;
 
-	private HttpServiceContext context;
+	private volatile HttpServiceContext context;
+
+	private volatile HttpClientMetrics metrics;
+
+	private HttpClientFactory clientFactory;
+
+	/**
+	 * Replaced clients, which are closed once their outstanding requests have released their connections
+	 */
+	private final List<HttpServiceContext> retiredContexts = new CopyOnWriteArrayList<>();
 
 	private volatile IProxyService proxyService;
 
 	@Reference(policy = ReferencePolicy.DYNAMIC, policyOption = ReferencePolicyOption.GREEDY, updated = "bindClientFactory", unbind = "unbindClientFactory")
-	void bindClientFactory(HttpClientFactory factory) {
-		context = factory.build(context);
-		client = context.getClient();
+	synchronized void bindClientFactory(HttpClientFactory factory) {
+		HttpServiceContext oldContext = context;
+		HttpServiceContext newContext = factory.build(oldContext);
+		//publish the new client before retiring the old one, so new requests don't end up in the retired pool
+		metrics = newContext.getMetrics();
+		client = newContext.getClient();
+		context = newContext;
+		clientFactory = factory;
+		if (oldContext != null && oldContext.getClient() != null) {
+			retire(oldContext);
+		}
+	}
+
+	synchronized void unbindClientFactory(HttpClientFactory factory) {
+		//a replacement factory is bound before the old one is unbound
+		if (clientFactory == factory) {
+			clientFactory = null;
+			client = null;
+			metrics = null;
+			//keep the context, so cookies and credentials carry over to the next factory
+			retire(context);
+		}
 	}
 
-	void unbindClientFactory(HttpClientFactory factory) {
-		//do nothing
+	@Deactivate
+	synchronized void deactivate() {
+		client = null;
+		metrics = null;
+		HttpServiceContext oldContext = context;
+		context = null;
+		clientFactory = null;
+		if (oldContext != null) {
+			retire(oldContext);
+		}
+		closeRetiredClients(true);
+	}
+
+	/**
+	 * Close the given client's idle connections and close the client for good once requests that are still running on
+	 * other threads have released their connections, so their responses can still be read.
+	 */
+	private void retire(HttpServiceContext oldContext) {
+		PoolingHttpClientConnectionManager connectionManager = oldContext.getConnectionManager();
+		if (connectionManager != null) {
+			connectionManager.closeIdleConnections(0, TimeUnit.MILLISECONDS);
+		}
+		retiredContexts.add(oldContext);
+		closeRetiredClients(false);
+	}
+
+	private void closeRetiredClients(boolean force) {
+		for (HttpServiceContext retired : retiredContexts) {
+			if ((force || !isInUse(retired)) && retiredContexts.remove(retired)) {
+				closeClient(retired);
+			}
+		}
+	}
+
+	private static boolean isInUse(HttpServiceContext context) {
+		PoolingHttpClientConnectionManager connectionManager = context.getConnectionManager();
+		if (connectionManager == null) {
+			return false;
+		}
+		PoolStats stats = connectionManager.getTotalStats();
+		return stats.getLeased() > 0 || stats.getPending() > 0;
+	}
+
+	private static void closeClient(HttpServiceContext context) {
+		try {
+			context.getClient().close();
+		} catch (IOException e) {
+			MarketplaceClientCore.error(e);
+		}
 	}
 
 	@Reference(field = "proxyService", unbind = "unbindProxyService", policy = ReferencePolicy.DYNAMIC)
@@ -78,12 +160,41 @@ public class HttpClientService {
 			throws ClientProtocolException, IOException {
 		HttpClientContext internalContext = context == null ? new HttpClientContext()
 				: HttpClientContext.adapt(context);
-		HttpUriRequest configuredRequest = configureRequestExecution(request, internalContext);
-		return client.execute(configuredRequest, internalContext);
+		if (!retiredContexts.isEmpty()) {
+			closeRetiredClients(false);
+		}
+		HttpClient client = this.client;
+		if (client == null) {
+			throw new IOException(Messages.HttpClientService_noClient);
+		}
+		HttpUriRequest configuredRequest = configureRequestExecution(client, request, internalContext);
+		HttpClientMetrics metrics = this.metrics;
+		if (metrics == null) {
+			return client.execute(configuredRequest, internalContext);
+		}
+		URI uri = configuredRequest.getURI();
+		long start = System.nanoTime();
+		HttpResponse response;
+		try {
+			response = client.execute(configuredRequest, internalContext);
+		} catch (IOException ex) {
+			metrics.requestFailed(uri, ex, System.nanoTime() - start);
+			throw ex;
+		}
+		metrics.requestCompleted(uri, response, System.nanoTime() - start);
+		metrics.instrument(uri, response);
+		return response;
+	}
+
+	/**
+	 * @return the metrics recorded for this service's client, or null if the client isn't instrumented
+	 */
+	public HttpClientMetrics getMetrics() {
+		return metrics;
 	}
 
-	private HttpUriRequest configureRequestExecution(HttpUriRequest request, HttpClientContext context)
-			throws IOException {
+	private HttpUriRequest configureRequestExecution(HttpClient client, HttpUriRequest request,
+			HttpClientContext context) throws IOException {
 		final RequestConfig.Builder builder;
 		RequestConfig requestConfig = context.getRequestConfig();
 
@@ -123,6 +234,7 @@ public class HttpClientService {
 	}
 
 	public HttpUriRequest configureRequest(HttpUriRequest request) {
+		HttpClient client = this.client;
 		if (client instanceof Configurable && ((Configurable) client).getConfig() != null) {
 			return setConfig(request, ((Configurable) client).getConfig());
 		}
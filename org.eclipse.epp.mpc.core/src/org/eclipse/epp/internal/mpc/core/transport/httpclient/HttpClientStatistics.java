@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.internal.mpc.core.transport.httpclient;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.http.pool.PoolStats;
+
+/**
+ * Immutable snapshot of the {@link HttpClientMetrics} of all hosts and of the connection pool.
+ *
+ * @author Carsten Reckord
+ */
+public final class HttpClientStatistics {
+
+	/**
+	 * Immutable snapshot of the metrics of a single host.
+	 */
+	public static final class HostStatistics {
+
+		private final String host;
+
+		private final long requestCount;
+
+		private final long failureCount;
+
+		private final long retryCount;
+
+		private final long bytesReceived;
+
+		private final long bytesTransferred;
+
+		private final Map<Integer, Long> statusCodeCounts;
+
+		private final LatencyHistogram.Snapshot latency;
+
+		private final LatencyHistogram.Snapshot leaseWait;
+
+		HostStatistics(String host, long requestCount, long failureCount, long retryCount, long bytesReceived,
+				long bytesTransferred, Map<Integer, Long> statusCodeCounts, LatencyHistogram.Snapshot latency,
+				LatencyHistogram.Snapshot leaseWait) {
+			this.host = host;
+			this.requestCount = requestCount;
+			this.failureCount = failureCount;
+			this.retryCount = retryCount;
+			this.bytesReceived = bytesReceived;
+			this.bytesTransferred = bytesTransferred;
+			this.statusCodeCounts = Collections.unmodifiableMap(statusCodeCounts);
+			this.latency = latency;
+			this.leaseWait = leaseWait;
+		}
+
+		public String getHost() {
+			return host;
+		}
+
+		/**
+		 * @return the number of requests sent to this host, including failed ones
+		 */
+		public long getRequestCount() {
+			return requestCount;
+		}
+
+		/**
+		 * @return the number of requests that failed without a response
+		 */
+		public long getFailureCount() {
+			return failureCount;
+		}
+
+		/**
+		 * @return the number of times a request was automatically resent after an I/O error
+		 */
+		public long getRetryCount() {
+			return retryCount;
+		}
+
+		/**
+		 * @return the number of response body bytes read so far, after decoding any content encoding
+		 */
+		public long getBytesReceived() {
+			return bytesReceived;
+		}
+
+		/**
+		 * @return the number of response body bytes transferred over the wire so far, before decoding any content
+		 *         encoding
+		 */
+		public long getBytesTransferred() {
+			return bytesTransferred;
+		}
+
+		/**
+		 * @return the number of responses by HTTP status code, in ascending order
+		 */
+		public Map<Integer, Long> getStatusCodeCounts() {
+			return statusCodeCounts;
+		}
+
+		/**
+		 * @return the time until the response headers were received
+		 */
+		public LatencyHistogram.Snapshot getLatency() {
+			return latency;
+		}
+
+		/**
+		 * @return the time spent waiting for a pooled connection
+		 */
+		public LatencyHistogram.Snapshot getLeaseWait() {
+			return leaseWait;
+		}
+
+		@Override
+		public String toString() {
+			return host + ": requests=" + requestCount + ", failures=" + failureCount + ", retries=" + retryCount //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+					+ ", bytes=" + bytesReceived + ", transferred=" + bytesTransferred + ", status=" + statusCodeCounts //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+					+ ", latency=[" + latency + "], leaseWait=[" + leaseWait + "]"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		}
+	}
+
+	private final Map<String, HostStatistics> hosts;
+
+	private final PoolStats poolStats;
+
+	HttpClientStatistics(Map<String, HostStatistics> hosts, PoolStats poolStats) {
+		this.hosts = Collections.unmodifiableMap(hosts);
+		this.poolStats = poolStats;
+	}
+
+	/**
+	 * @return the statistics by host name, in alphabetical order
+	 */
+	public Map<String, HostStatistics> getHosts() {
+		return hosts;
+	}
+
+	/**
+	 * @return the current utilization of the connection pool, or null if the client doesn't use an instrumented pool
+	 */
+	public PoolStats getPoolStats() {
+		return poolStats;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder("HttpClientStatistics [pool="); //$NON-NLS-1$
+		builder.append(poolStats);
+		for (HostStatistics host : hosts.values()) {
+			builder.append("\n  ").append(host); //$NON-NLS-1$
+		}
+		return builder.append(']').toString();
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2018 The Eclipse Foundation and others.
+ * Copyright (c) 2010, 2019 The Eclipse Foundation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v2.0
  * which accompanies this distribution, and is available at
@@ -20,20 +20,26 @@ import java.net.URI;
 import java.nio.charset.Charset;
 import java.util.concurrent.TimeUnit;
 
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.apache.http.StatusLine;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.util.EntityUtils;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.epp.internal.mpc.core.MarketplaceClientCore;
+import org.eclipse.epp.internal.mpc.core.util.ConditionalTransport;
 import org.eclipse.epp.internal.mpc.core.util.UserAgentUtil;
 import org.eclipse.epp.mpc.core.service.ITransport;
 import org.eclipse.epp.mpc.core.service.ServiceUnavailableException;
@@ -42,7 +48,7 @@ import org.osgi.service.component.annotations.Reference;
 
 @Component(name = "org.eclipse.epp.mpc.core.transport.http", service = { HttpClientTransport.class,
 		ITransport.class })
-public class HttpClientTransport implements ITransport {
+public class HttpClientTransport implements ITransport, ConditionalTransport {
 
 	public static final String USER_AGENT;
 
@@ -72,6 +78,54 @@ public class HttpClientTransport implements ITransport {
 	public static final String CONNECTION_REQUEST_TIMEOUT_PROPERTY = HttpClientTransport.class.getPackage().getName()
 			+ ".connectionRequestTimeout"; //$NON-NLS-1$
 
+	/**
+	 * Maximum number of pooled connections per host
+	 */
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 100;
+
+	/**
+	 * Maximum number of pooled connections overall
+	 */
+	public static final int DEFAULT_MAX_CONNECTIONS_TOTAL = 200;
+
+	/**
+	 * Maximum lifetime of a pooled connection, regardless of keep-alive
+	 */
+	public static final int DEFAULT_CONNECTION_TIME_TO_LIVE = (int) TimeUnit.MINUTES.toMillis(5);
+
+	/**
+	 * Time after which an idle pooled connection is checked for staleness before it is reused
+	 */
+	public static final int DEFAULT_VALIDATE_AFTER_INACTIVITY = (int) TimeUnit.SECONDS.toMillis(2);
+
+	/**
+	 * Maximum time a connection is kept alive if the server doesn't request a shorter keep-alive
+	 */
+	public static final int DEFAULT_KEEP_ALIVE = (int) TimeUnit.SECONDS.toMillis(30);
+
+	/**
+	 * Time after which idle connections are closed by the background evictor
+	 */
+	public static final int DEFAULT_MAX_IDLE_TIME = (int) TimeUnit.SECONDS.toMillis(60);
+
+	public static final String MAX_CONNECTIONS_PER_ROUTE_PROPERTY = HttpClientTransport.class.getPackage().getName()
+			+ ".maxConnectionsPerRoute"; //$NON-NLS-1$
+
+	public static final String MAX_CONNECTIONS_TOTAL_PROPERTY = HttpClientTransport.class.getPackage().getName()
+			+ ".maxConnectionsTotal"; //$NON-NLS-1$
+
+	public static final String CONNECTION_TIME_TO_LIVE_PROPERTY = HttpClientTransport.class.getPackage().getName()
+			+ ".connectionTimeToLive"; //$NON-NLS-1$
+
+	public static final String VALIDATE_AFTER_INACTIVITY_PROPERTY = HttpClientTransport.class.getPackage().getName()
+			+ ".validateAfterInactivity"; //$NON-NLS-1$
+
+	public static final String KEEP_ALIVE_PROPERTY = HttpClientTransport.class.getPackage().getName()
+			+ ".keepAlive"; //$NON-NLS-1$
+
+	public static final String MAX_IDLE_TIME_PROPERTY = HttpClientTransport.class.getPackage().getName()
+			+ ".maxIdleTime"; //$NON-NLS-1$
+
 	static {
 		USER_AGENT = UserAgentUtil.computeUserAgent();
 	}
@@ -101,23 +155,40 @@ public class HttpClientTransport implements ITransport {
 		try {
 			return createStreamingRequest().execute(clientService, location);
 		} catch (HttpResponseException e) {
-			int statusCode = e.getStatusCode();
-			switch (statusCode) {
-			case 404:
-				FileNotFoundException fnfe = new FileNotFoundException(e.getMessage());
-				fnfe.initCause(e);
-				throw fnfe;
-			case 503:
-				throw new ServiceUnavailableException(
-						new Status(IStatus.ERROR, MarketplaceClientCore.BUNDLE_ID, e.getMessage(), e));
-			default:
-				throw new CoreException(MarketplaceClientCore.computeStatus(e, null));
-			}
+			throw handleResponseException(e);
 		} catch (IOException e) {
 			throw new CoreException(MarketplaceClientCore.computeStatus(e, null));
 		}
 	}
 
+	@Override
+	public Response stream(URI location, String eTag, String lastModified, IProgressMonitor monitor)
+			throws FileNotFoundException, ServiceUnavailableException, CoreException {
+		try {
+			return createConditionalRequest(eTag, lastModified).execute(clientService, location);
+		} catch (HttpResponseException e) {
+			throw handleResponseException(e);
+		} catch (IOException e) {
+			throw new CoreException(MarketplaceClientCore.computeStatus(e, null));
+		}
+	}
+
+	private static CoreException handleResponseException(HttpResponseException e)
+			throws FileNotFoundException, ServiceUnavailableException {
+		int statusCode = e.getStatusCode();
+		switch (statusCode) {
+		case 404:
+			FileNotFoundException fnfe = new FileNotFoundException(e.getMessage());
+			fnfe.initCause(e);
+			throw fnfe;
+		case 503:
+			throw new ServiceUnavailableException(
+					new Status(IStatus.ERROR, MarketplaceClientCore.BUNDLE_ID, e.getMessage(), e));
+		default:
+			return new CoreException(MarketplaceClientCore.computeStatus(e, null));
+		}
+	}
+
 	protected RequestTemplate<InputStream> createStreamingRequest() {
 		return new RequestTemplate<InputStream>() {
 
@@ -145,4 +216,57 @@ public class HttpClientTransport implements ITransport {
 			}
 		};
 	}
+
+	protected RequestTemplate<Response> createConditionalRequest(String eTag, String lastModified) {
+		return new RequestTemplate<Response>() {
+
+			private String responseETag;
+
+			private String responseLastModified;
+
+			@Override
+			protected HttpUriRequest createRequest(URI uri) {
+				HttpGet request = new HttpGet(uri);
+				if (eTag != null) {
+					request.setHeader(HttpHeaders.IF_NONE_MATCH, eTag);
+				}
+				if (lastModified != null) {
+					request.setHeader(HttpHeaders.IF_MODIFIED_SINCE, lastModified);
+				}
+				return request;
+			}
+
+			@Override
+			protected Response handleResponse(HttpResponse response) throws ClientProtocolException, IOException {
+				HttpEntity entity = response.getEntity();
+				StatusLine statusLine = response.getStatusLine();
+				if (statusLine.getStatusCode() == HttpStatus.SC_NOT_MODIFIED) {
+					EntityUtils.consumeQuietly(entity);
+					if (response instanceof CloseableHttpResponse) {
+						((CloseableHttpResponse) response).close();
+					}
+					return Response.notModified();
+				}
+				handleResponseStatus(statusLine.getStatusCode(), statusLine.getReasonPhrase());
+				responseETag = getHeader(response, HttpHeaders.ETAG);
+				responseLastModified = getHeader(response, HttpHeaders.LAST_MODIFIED);
+				return handleResponseEntity(entity);
+			}
+
+			@Override
+			protected Response handleResponseStream(InputStream content, Charset charset) throws IOException {
+				return Response.modified(content, responseETag, responseLastModified);
+			}
+
+			@Override
+			protected Response handleEmptyResponse() {
+				return Response.modified(new ByteArrayInputStream(new byte[0]), responseETag, responseLastModified);
+			}
+		};
+	}
+
+	private static String getHeader(HttpResponse response, String name) {
+		Header header = response.getFirstHeader(name);
+		return header == null ? null : header.getValue();
+	}
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2018 The Eclipse Foundation and others.
+ * Copyright (c) 2018, 2019 The Eclipse Foundation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v2.0
  * which accompanies this distribution, and is available at
@@ -15,11 +15,14 @@ package org.eclipse.epp.internal.mpc.core.transport.httpclient;
 import org.apache.http.client.CookieStore;
 import org.apache.http.client.CredentialsProvider;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 
 public class HttpServiceContext {
 
 	private final CloseableHttpClient client;
 
+	private final PoolingHttpClientConnectionManager connectionManager;
+
 	private final CookieStore cookieStore;
 
 	private final CredentialsProvider credentialsProvider;
@@ -28,19 +31,32 @@ public class HttpServiceContext {
 
 	private final CredentialsProvider initialCredentialsProvider;
 
-	HttpServiceContext(CloseableHttpClient client, CookieStore cookieStore, CredentialsProvider credentialsProvider,
-			CredentialsProvider initialCredentialsProvider, CredentialsProvider credentialsCacheProvider) {
+	private final HttpClientMetrics metrics;
+
+	HttpServiceContext(CloseableHttpClient client, PoolingHttpClientConnectionManager connectionManager,
+			CookieStore cookieStore, CredentialsProvider credentialsProvider,
+			CredentialsProvider initialCredentialsProvider, CredentialsProvider credentialsCacheProvider,
+			HttpClientMetrics metrics) {
 		this.client = client;
+		this.connectionManager = connectionManager;
 		this.cookieStore = cookieStore;
 		this.credentialsProvider = credentialsProvider;
 		this.initialCredentialsProvider = initialCredentialsProvider;
 		this.credentialsCacheProvider = credentialsCacheProvider;
+		this.metrics = metrics;
 	}
 
 	public CloseableHttpClient getClient() {
 		return client;
 	}
 
+	/**
+	 * @return the client's connection pool
+	 */
+	PoolingHttpClientConnectionManager getConnectionManager() {
+		return connectionManager;
+	}
+
 	public CookieStore getCookieStore() {
 		return cookieStore;
 	}
@@ -56,4 +72,11 @@ public class HttpServiceContext {
 	CredentialsProvider getCredentialsCacheProvider() {
 		return credentialsCacheProvider;
 	}
+
+	/**
+	 * @return the metrics recorded for the client, or null if the client isn't instrumented
+	 */
+	public HttpClientMetrics getMetrics() {
+		return metrics;
+	}
 }
@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.internal.mpc.core.transport.httpclient;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+
+/**
+ * Connection pool that reports how long requests wait to lease a connection to {@link HttpClientMetrics}.
+ *
+ * @author Carsten Reckord
+ */
+class InstrumentedConnectionManager extends PoolingHttpClientConnectionManager {
+
+	private final HttpClientMetrics metrics;
+
+	InstrumentedConnectionManager(HttpClientMetrics metrics, long timeToLive) {
+		super(createDefaultRegistry(), null, null, null, timeToLive, TimeUnit.MILLISECONDS);
+		this.metrics = metrics;
+		metrics.setConnectionPool(this);
+	}
+
+	private static Registry<ConnectionSocketFactory> createDefaultRegistry() {
+		//same as HttpClientBuilder's default
+		return RegistryBuilder.<ConnectionSocketFactory> create()
+				.register("http", PlainConnectionSocketFactory.getSocketFactory()) //$NON-NLS-1$
+				.register("https", SSLConnectionSocketFactory.getSocketFactory()) //$NON-NLS-1$
+				.build();
+	}
+
+	@Override
+	public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+		ConnectionRequest request = super.requestConnection(route, state);
+		return new ConnectionRequest() {
+
+			@Override
+			public boolean cancel() {
+				return request.cancel();
+			}
+
+			@Override
+			public HttpClientConnection get(long timeout, TimeUnit timeUnit)
+					throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+				long start = System.nanoTime();
+				try {
+					return request.get(timeout, timeUnit);
+				} finally {
+					metrics.connectionLeased(route, System.nanoTime() - start);
+				}
+			}
+		};
+	}
+}
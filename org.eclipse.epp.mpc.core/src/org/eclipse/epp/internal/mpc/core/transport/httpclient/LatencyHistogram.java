@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.internal.mpc.core.transport.httpclient;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of durations in milliseconds with fixed, roughly logarithmic buckets.
+ *
+ * @author Carsten Reckord
+ */
+public class LatencyHistogram {
+
+	/**
+	 * Inclusive upper bounds of the buckets in milliseconds. The last bucket has no upper bound.
+	 */
+	static final long[] BUCKET_BOUNDS = { 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000 };
+
+	private final LongAdder[] buckets = new LongAdder[BUCKET_BOUNDS.length + 1];
+
+	private final LongAdder sum = new LongAdder();
+
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	public LatencyHistogram() {
+		for (int i = 0; i < buckets.length; i++) {
+			buckets[i] = new LongAdder();
+		}
+	}
+
+	public void record(long millis) {
+		long value = Math.max(0, millis);
+		int bucket = Arrays.binarySearch(BUCKET_BOUNDS, value);
+		if (bucket < 0) {
+			bucket = -bucket - 1;
+		}
+		buckets[bucket].increment();
+		sum.add(value);
+		max.accumulate(value);
+	}
+
+	public Snapshot getSnapshot() {
+		long[] counts = new long[buckets.length];
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = buckets[i].sum();
+		}
+		return new Snapshot(counts, sum.sum(), max.get());
+	}
+
+	/**
+	 * Immutable copy of a histogram's counts.
+	 */
+	public static final class Snapshot {
+
+		private final long[] counts;
+
+		private final long count;
+
+		private final long sum;
+
+		private final long max;
+
+		Snapshot(long[] counts, long sum, long max) {
+			this.counts = counts;
+			this.sum = sum;
+			this.max = max;
+			long total = 0;
+			for (long bucketCount : counts) {
+				total += bucketCount;
+			}
+			this.count = total;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public long getMean() {
+			return count == 0 ? 0 : sum / count;
+		}
+
+		public long getMax() {
+			return max;
+		}
+
+		/**
+		 * @param percentile
+		 *            a value between 0 and 100
+		 * @return an upper bound for the given percentile of the recorded durations, precise to the histogram's bucket
+		 *         size, or 0 if nothing was recorded
+		 */
+		public long getPercentile(double percentile) {
+			if (count == 0) {
+				return 0;
+			}
+			long rank = (long) Math.ceil(count * Math.min(100, Math.max(0, percentile)) / 100);
+			long seen = 0;
+			for (int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+				if (seen >= rank && counts[i] > 0) {
+					return i < BUCKET_BOUNDS.length ? Math.min(BUCKET_BOUNDS[i], max) : max;
+				}
+			}
+			return max;
+		}
+
+		/**
+		 * @return the number of recorded durations per bucket, see {@link LatencyHistogram#getBucketBounds()}
+		 */
+		public long[] getCounts() {
+			return counts.clone();
+		}
+
+		@Override
+		public String toString() {
+			return "count=" + count + ", mean=" + getMean() + "ms, p50=" + getPercentile(50) + "ms, p90=" //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+					+ getPercentile(90) + "ms, p99=" + getPercentile(99) + "ms, max=" + max + "ms"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		}
+	}
+
+	/**
+	 * @return the inclusive upper bounds of all but the last bucket in milliseconds
+	 */
+	public static long[] getBucketBounds() {
+		return BUCKET_BOUNDS.clone();
+	}
+}
@@ -0,0 +1,31 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.internal.mpc.core.transport.httpclient;
+
+import org.eclipse.osgi.util.NLS;
+
+class Messages extends NLS {
+	private static final String BUNDLE_NAME = "org.eclipse.epp.internal.mpc.core.transport.httpclient.messages"; //$NON-NLS-1$
+
+	public static String HttpClientFactory_invalidIntegerProperty;
+
+	public static String HttpClientService_noClient;
+
+	static {
+		// initialize resource bundle
+		NLS.initializeMessages(BUNDLE_NAME, Messages.class);
+	}
+
+	private Messages() {
+	}
+}
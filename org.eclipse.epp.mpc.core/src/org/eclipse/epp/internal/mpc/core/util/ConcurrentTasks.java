@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.internal.mpc.core.util;
+
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+
+/**
+ * Helpers for running work on background threads on behalf of a caller with a progress monitor: shared executors,
+ * monitors that forward the caller's cancellation, and waiting for results while watching for it.
+ *
+ * @author Carsten Reckord
+ */
+public final class ConcurrentTasks {
+
+	/**
+	 * Interval in milliseconds in which waiting callers check their monitor for cancellation
+	 */
+	public static final long CANCEL_POLL_INTERVAL = 100;
+
+	private static final long KEEP_ALIVE_SECONDS = 30;
+
+	/**
+	 * Progress monitor for tasks running in another thread, which reports the cancellation of the calling thread's
+	 * monitor, but not progress, which is tracked by the calling thread. It can also be canceled on its own, to stop
+	 * just the task.
+	 */
+	public static class CancellationMonitor extends NullProgressMonitor {
+
+		private final IProgressMonitor parent;
+
+		public CancellationMonitor(IProgressMonitor parent) {
+			this.parent = parent;
+		}
+
+		@Override
+		public boolean isCanceled() {
+			return super.isCanceled() || (parent != null && parent.isCanceled());
+		}
+	}
+
+	private ConcurrentTasks() {
+	}
+
+	/**
+	 * Create a thread factory for numbered daemon threads, so pending background work doesn't keep the VM alive.
+	 */
+	public static ThreadFactory daemonThreadFactory(String threadName) {
+		AtomicInteger threadCount = new AtomicInteger();
+		return r -> {
+			Thread thread = new Thread(r, threadName + " " + threadCount.incrementAndGet()); //$NON-NLS-1$
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+	/**
+	 * Create an executor that runs up to <code>parallelism</code> tasks at the same time on daemon threads and queues
+	 * the rest. Its threads terminate when they have been idle for a while.
+	 */
+	public static ExecutorService createExecutor(String threadName, int parallelism) {
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(parallelism, parallelism, KEEP_ALIVE_SECONDS,
+				TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), daemonThreadFactory(threadName));
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	/**
+	 * Wait for the next task of the given completion service to complete.
+	 *
+	 * @throws OperationCanceledException
+	 *             if the monitor is canceled while waiting
+	 */
+	public static <V> Future<V> awaitNext(CompletionService<V> completionService, IProgressMonitor monitor)
+			throws InterruptedException {
+		while (true) {
+			if (monitor.isCanceled()) {
+				throw new OperationCanceledException();
+			}
+			Future<V> completed = completionService.poll(CANCEL_POLL_INTERVAL, TimeUnit.MILLISECONDS);
+			if (completed != null) {
+				return completed;
+			}
+		}
+	}
+}
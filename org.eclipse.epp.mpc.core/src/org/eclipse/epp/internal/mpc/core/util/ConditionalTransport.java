@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.internal.mpc.core.util;
+
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.net.URI;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.epp.mpc.core.service.ITransport;
+import org.eclipse.epp.mpc.core.service.ServiceUnavailableException;
+
+/**
+ * A transport that can revalidate a previously retrieved resource using its entity tag and last modification date,
+ * without transferring the content again if it didn't change.
+ *
+ * @author Carsten Reckord
+ */
+public interface ConditionalTransport extends ITransport {
+
+	/**
+	 * Result of a conditional request. Either {@link #isNotModified() not modified}, or the new content along with
+	 * its updated validators.
+	 */
+	final class Response {
+
+		private static final Response NOT_MODIFIED = new Response(null, null, null);
+
+		private final InputStream content;
+
+		private final String eTag;
+
+		private final String lastModified;
+
+		private Response(InputStream content, String eTag, String lastModified) {
+			this.content = content;
+			this.eTag = eTag;
+			this.lastModified = lastModified;
+		}
+
+		public static Response notModified() {
+			return NOT_MODIFIED;
+		}
+
+		public static Response modified(InputStream content, String eTag, String lastModified) {
+			if (content == null) {
+				throw new IllegalArgumentException();
+			}
+			return new Response(content, eTag, lastModified);
+		}
+
+		public boolean isNotModified() {
+			return content == null;
+		}
+
+		/**
+		 * @return the new content or null if the resource was not modified
+		 */
+		public InputStream getContent() {
+			return content;
+		}
+
+		public String getETag() {
+			return eTag;
+		}
+
+		public String getLastModified() {
+			return lastModified;
+		}
+	}
+
+	/**
+	 * Stream the given location, unless it still matches the given validators. If both validators are null, this
+	 * behaves like a plain {@link #stream(URI, IProgressMonitor) stream} call.
+	 *
+	 * @param eTag
+	 *            the entity tag of the previously retrieved content or null
+	 * @param lastModified
+	 *            the last modification date of the previously retrieved content, as reported by the server, or null
+	 */
+	Response stream(URI location, String eTag, String lastModified, IProgressMonitor monitor)
+			throws FileNotFoundException, ServiceUnavailableException, CoreException;
+}
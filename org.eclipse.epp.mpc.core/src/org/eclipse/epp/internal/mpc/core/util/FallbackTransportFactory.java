@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2018 The Eclipse Foundation and others.
+ * Copyright (c) 2010, 2019 The Eclipse Foundation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v2.0
  * which accompanies this distribution, and is available at
@@ -18,14 +18,19 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.Locale;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.epp.internal.mpc.core.MarketplaceClientCore;
+import org.eclipse.epp.internal.mpc.core.MarketplaceClientCorePlugin;
 import org.eclipse.epp.mpc.core.service.ITransport;
 import org.eclipse.epp.mpc.core.service.ITransportFactory;
 import org.eclipse.epp.mpc.core.service.ServiceUnavailableException;
@@ -37,12 +42,47 @@ import org.osgi.framework.ServiceReference;
 
 public class FallbackTransportFactory implements ITransportFactory {
 
-	private static final class FallbackTransport implements ITransport {
+	/**
+	 * Default time over which failures of the primary transport are counted
+	 */
+	public static final long DEFAULT_HEALTH_WINDOW = TimeUnit.MINUTES.toMillis(5);
+
+	/**
+	 * Default number of slices the health window is divided into
+	 */
+	public static final int DEFAULT_HEALTH_BUCKETS = 10;
+
+	/**
+	 * Default number of attempts in the health window before the primary transport can be disabled for a host
+	 */
+	public static final int DEFAULT_MIN_ATTEMPTS = 10;
+
+	/**
+	 * Default ratio of failed attempts above which the primary transport is disabled for a host
+	 */
+	public static final double DEFAULT_MAX_FAILURE_RATIO = 0.75;
+
+	/**
+	 * Default time after which a disabled primary transport is tried again
+	 */
+	public static final long DEFAULT_REPROBE_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+
+	private static final String NO_HOST = ""; //$NON-NLS-1$
+
+	private static final class FallbackTransport implements ConditionalTransport {
 		private final ITransport primaryTransport;
 
-		private ITransport fallbackTransport;
+		private volatile ITransport fallbackTransport;
+
+		private final ConcurrentMap<String, TransportHealth> health = new ConcurrentHashMap<>();
+
+		private final Set<String> reportedProblems = ConcurrentHashMap.newKeySet();
 
-		private boolean primaryDisabled = false;
+		private final LongAdder primaryCount = new LongAdder();
+
+		private final LongAdder fallbackCount = new LongAdder();
+
+		private final LongAdder primaryFailureCount = new LongAdder();
 
 		FallbackTransport(ITransport primaryTransport, ITransport fallbackTransport) {
 			super();
@@ -50,24 +90,12 @@ public class FallbackTransportFactory implements ITransportFactory {
 			this.fallbackTransport = fallbackTransport;
 		}
 
-		private final Set<String> reportedProblems = new HashSet<>();
-
-		private int connectionAttempts;
-
-		private int connectionFailures;
-
 		@Override
 		public InputStream stream(URI location, IProgressMonitor monitor)
 				throws FileNotFoundException, ServiceUnavailableException, CoreException {
-			connectionAttempts++;
-			if (connectionAttempts > 10 && connectionFailures / (double) connectionAttempts > 0.75) {
-				MarketplaceClientCore.getLog()
-				.log(new Status(IStatus.INFO, MarketplaceClientCore.BUNDLE_ID,
-						NLS.bind(Messages.FallbackTransportFactory_disablingTransport, primaryTransport)));
-				primaryDisabled = true;
-			}
-			if (primaryTransport == null || primaryDisabled) {
-				return fallbackTransport.stream(location, monitor);
+			TransportHealth health = getHealth(location);
+			if (!tryPrimary(health)) {
+				return streamFallback(location, monitor);
 			}
 			InputStream stream;
 			try {
@@ -76,25 +104,25 @@ public class FallbackTransportFactory implements ITransportFactory {
 					throw new NullPointerException();
 				}
 			} catch (FileNotFoundException ex) {
-				InputStream fallbackStream = primaryFailed(location, monitor, ex);
+				InputStream fallbackStream = primaryFailed(health, location, monitor, ex);
 				if (fallbackStream == null) {
 					throw ex;
 				}
 				return fallbackStream;
 			} catch (ServiceUnavailableException ex) {
-				InputStream fallbackStream = primaryFailed(location, monitor, ex);
+				InputStream fallbackStream = primaryFailed(health, location, monitor, ex);
 				if (fallbackStream == null) {
 					throw ex;
 				}
 				return fallbackStream;
 			} catch (CoreException ex) {
-				InputStream fallbackStream = primaryFailed(location, monitor, ex);
+				InputStream fallbackStream = primaryFailed(health, location, monitor, ex);
 				if (fallbackStream == null) {
 					throw ex;
 				}
 				return fallbackStream;
 			} catch (RuntimeException ex) {
-				InputStream fallbackStream = primaryFailed(location, monitor, ex);
+				InputStream fallbackStream = primaryFailed(health, location, monitor, ex);
 				if (fallbackStream == null) {
 					throw ex;
 				}
@@ -103,9 +131,10 @@ public class FallbackTransportFactory implements ITransportFactory {
 			try {
 				BufferedInputStream buffered = new BufferedInputStream(stream);
 				tryBuffer(buffered);
+				primarySucceeded(health, location);
 				return buffered;
 			} catch (IOException ex) {
-				InputStream fallbackStream = primaryFailed(location, monitor, ex);
+				InputStream fallbackStream = primaryFailed(health, location, monitor, ex);
 				if (fallbackStream == null) {
 					throw new CoreException(MarketplaceClientCore.computeStatus(ex, null));
 				}
@@ -113,6 +142,52 @@ public class FallbackTransportFactory implements ITransportFactory {
 			}
 		}
 
+		@Override
+		public Response stream(URI location, String eTag, String lastModified, IProgressMonitor monitor)
+				throws FileNotFoundException, ServiceUnavailableException, CoreException {
+			if (!(primaryTransport instanceof ConditionalTransport)) {
+				return Response.modified(stream(location, monitor), null, null);
+			}
+			TransportHealth health = getHealth(location);
+			if (!tryPrimary(health)) {
+				return Response.modified(streamFallback(location, monitor), null, null);
+			}
+			Response response;
+			try {
+				response = ((ConditionalTransport) primaryTransport).stream(location, eTag, lastModified, monitor);
+			} catch (FileNotFoundException ex) {
+				InputStream fallbackStream = primaryFailed(health, location, monitor, ex);
+				if (fallbackStream == null) {
+					throw ex;
+				}
+				return Response.modified(fallbackStream, null, null);
+			} catch (ServiceUnavailableException ex) {
+				InputStream fallbackStream = primaryFailed(health, location, monitor, ex);
+				if (fallbackStream == null) {
+					throw ex;
+				}
+				return Response.modified(fallbackStream, null, null);
+			} catch (CoreException ex) {
+				InputStream fallbackStream = primaryFailed(health, location, monitor, ex);
+				if (fallbackStream == null) {
+					throw ex;
+				}
+				return Response.modified(fallbackStream, null, null);
+			} catch (RuntimeException ex) {
+				InputStream fallbackStream = primaryFailed(health, location, monitor, ex);
+				if (fallbackStream == null) {
+					throw ex;
+				}
+				return Response.modified(fallbackStream, null, null);
+			}
+			primarySucceeded(health, location);
+			return response;
+		}
+
+		/**
+		 * Probe the start of the stream, so a transport that connected but can't deliver content can still fall back.
+		 * The transports hand out decoded content streams, so this also catches broken content encodings.
+		 */
 		private static void tryBuffer(BufferedInputStream buffered) throws IOException {
 			buffered.mark(128);
 			try {
@@ -122,9 +197,43 @@ public class FallbackTransportFactory implements ITransportFactory {
 			}
 		}
 
-		private InputStream primaryFailed(URI location, IProgressMonitor monitor, Exception ex)
+		private TransportHealth getHealth(URI location) {
+			String host = location == null || location.getHost() == null ? NO_HOST
+					: location.getHost().toLowerCase(Locale.ROOT);
+			return health.computeIfAbsent(host, h -> new TransportHealth(h, DEFAULT_HEALTH_WINDOW,
+					DEFAULT_HEALTH_BUCKETS, DEFAULT_MIN_ATTEMPTS, DEFAULT_MAX_FAILURE_RATIO, DEFAULT_REPROBE_INTERVAL));
+		}
+
+		private boolean tryPrimary(TransportHealth health) {
+			if (primaryTransport == null) {
+				return false;
+			}
+			//without a fallback, there's no point in avoiding the primary transport
+			return fallbackTransport == null || health.tryPrimary(System.currentTimeMillis());
+		}
+
+		private InputStream streamFallback(URI location, IProgressMonitor monitor)
 				throws FileNotFoundException, ServiceUnavailableException, CoreException {
-			connectionFailures++;
+			InputStream stream = fallbackTransport.stream(location, monitor);
+			fallbackCount.increment();
+			trace("{0} served by fallback transport {1}", location, fallbackTransport); //$NON-NLS-1$
+			return stream;
+		}
+
+		private void primarySucceeded(TransportHealth health, URI location) {
+			primaryCount.increment();
+			if (health.onSuccess(System.currentTimeMillis())) {
+				MarketplaceClientCore.getLog()
+				.log(new Status(IStatus.INFO, MarketplaceClientCore.BUNDLE_ID,
+						NLS.bind(Messages.FallbackTransportFactory_enablingTransport, primaryTransport,
+								health.getHost())));
+			}
+			trace("{0} served by primary transport {1}", location, primaryTransport); //$NON-NLS-1$
+		}
+
+		private InputStream primaryFailed(TransportHealth health, URI location, IProgressMonitor monitor,
+				Exception ex) throws FileNotFoundException, ServiceUnavailableException, CoreException {
+			ITransport fallbackTransport = this.fallbackTransport;
 			if (fallbackTransport != null) {
 				boolean fallbackSucceeded = false;
 				try {
@@ -132,6 +241,14 @@ public class FallbackTransportFactory implements ITransportFactory {
 					BufferedInputStream buffered = new BufferedInputStream(fallbackStream);
 					tryBuffer(buffered);
 					fallbackSucceeded = true;
+					primaryFailureCount.increment();
+					fallbackCount.increment();
+					if (health.onFailure(System.currentTimeMillis())) {
+						MarketplaceClientCore.getLog()
+						.log(new Status(IStatus.INFO, MarketplaceClientCore.BUNDLE_ID,
+								NLS.bind(Messages.FallbackTransportFactory_disablingTransport, primaryTransport,
+										health.getHost())));
+					}
 					String problemKey = ex.getClass().getName() + ": " + ex.getMessage() + "\n\t" //$NON-NLS-1$//$NON-NLS-2$
 							+ ex.getStackTrace()[0];
 					if (reportedProblems.add(problemKey)) {
@@ -140,6 +257,8 @@ public class FallbackTransportFactory implements ITransportFactory {
 								NLS.bind(Messages.FallbackTransportFactory_fallbackStream, primaryTransport,
 										fallbackTransport)));
 					}
+					trace("{0} served by fallback transport {1} after primary transport failed: {2}", location, //$NON-NLS-1$
+							fallbackTransport, ex);
 
 					return buffered;
 				} catch (Exception fallbackEx) {
@@ -147,13 +266,35 @@ public class FallbackTransportFactory implements ITransportFactory {
 				} finally {
 					if (!fallbackSucceeded) {
 						//fallback didn't work either - probably something unrelated to transport going on, so don't count this as a transport failure
-						connectionFailures--;
+						health.onAbort();
 					}
 				}
+			} else {
+				health.onAbort();
 			}
 			return null;
 		}
 
+		private static void trace(String message, Object... arguments) {
+			if (MarketplaceClientCorePlugin.DEBUG) {
+				MarketplaceClientCorePlugin.trace(MarketplaceClientCorePlugin.DEBUG_NETWORK_OPTION, message,
+						arguments);
+			}
+		}
+
+		FallbackTransportStatistics getStatistics() {
+			long probeCount = 0;
+			int disabledHosts = 0;
+			for (TransportHealth hostHealth : health.values()) {
+				probeCount += hostHealth.getProbeCount();
+				if (hostHealth.isDisabled()) {
+					disabledHosts++;
+				}
+			}
+			return new FallbackTransportStatistics(primaryCount.sum(), fallbackCount.sum(), primaryFailureCount.sum(),
+					probeCount, disabledHosts);
+		}
+
 		void setFallbackTransport(ITransport fallbackTransport) {
 			this.fallbackTransport = fallbackTransport;
 		}
@@ -195,6 +336,13 @@ public class FallbackTransportFactory implements ITransportFactory {
 		return transport;
 	}
 
+	/**
+	 * @return the counters of the current fallback transport, or null if no fallback transport has been created yet
+	 */
+	public synchronized FallbackTransportStatistics getStatistics() {
+		return transport == null ? null : transport.getStatistics();
+	}
+
 	public ITransportFactory getFallbackFactory() {
 		ITransportFactory delegateFactory = this.secondaryFactory;
 		if (delegateFactory == null) {
@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.internal.mpc.core.util;
+
+/**
+ * Immutable snapshot of a {@link FallbackTransportFactory}'s transport counters.
+ *
+ * @author Carsten Reckord
+ */
+public final class FallbackTransportStatistics {
+
+	private final long primaryCount;
+
+	private final long fallbackCount;
+
+	private final long primaryFailureCount;
+
+	private final long probeCount;
+
+	private final int disabledHostCount;
+
+	public FallbackTransportStatistics(long primaryCount, long fallbackCount, long primaryFailureCount,
+			long probeCount, int disabledHostCount) {
+		this.primaryCount = primaryCount;
+		this.fallbackCount = fallbackCount;
+		this.primaryFailureCount = primaryFailureCount;
+		this.probeCount = probeCount;
+		this.disabledHostCount = disabledHostCount;
+	}
+
+	/**
+	 * @return the number of requests served by the primary transport
+	 */
+	public long getPrimaryCount() {
+		return primaryCount;
+	}
+
+	/**
+	 * @return the number of requests served by the fallback transport
+	 */
+	public long getFallbackCount() {
+		return fallbackCount;
+	}
+
+	/**
+	 * @return the number of requests the primary transport failed to serve and the fallback transport took over
+	 */
+	public long getPrimaryFailureCount() {
+		return primaryFailureCount;
+	}
+
+	/**
+	 * @return the number of requests sent to a disabled primary transport to check if it works again
+	 */
+	public long getProbeCount() {
+		return probeCount;
+	}
+
+	/**
+	 * @return the number of hosts for which the primary transport is currently disabled
+	 */
+	public int getDisabledHostCount() {
+		return disabledHostCount;
+	}
+
+	@Override
+	public String toString() {
+		return "FallbackTransportStatistics [primary=" + primaryCount + ", fallback=" + fallbackCount //$NON-NLS-1$ //$NON-NLS-2$
+				+ ", primaryFailures=" + primaryFailureCount + ", probes=" + probeCount + ", disabledHosts=" //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				+ disabledHostCount + "]"; //$NON-NLS-1$
+	}
+}
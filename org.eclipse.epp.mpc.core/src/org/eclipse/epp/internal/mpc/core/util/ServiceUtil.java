@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2014, 2018 The Eclipse Foundation and others.
+ * Copyright (c) 2014, 2019 The Eclipse Foundation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v2.0
  * which accompanies this distribution, and is available at
@@ -189,7 +189,8 @@ public class ServiceUtil {
 	}
 
 	public static <T> T getService(Class<?> context, Class<T> serviceType) {
-		BundleContext bundleContext = FrameworkUtil.getBundle(context).getBundleContext();
+		Bundle bundle = FrameworkUtil.getBundle(context);
+		BundleContext bundleContext = bundle == null ? null : bundle.getBundleContext();
 		ServiceReference<T> serviceReference = bundleContext == null ? null
 				: bundleContext.getServiceReference(serviceType);
 		return serviceReference == null ? null : bundleContext.getService(serviceReference);
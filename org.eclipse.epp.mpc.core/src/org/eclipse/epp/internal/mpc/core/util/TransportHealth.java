@@ -0,0 +1,193 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.internal.mpc.core.util;
+
+/**
+ * Tracks how well a primary transport works for a single host. Attempts and failures are counted in a sliding time
+ * window, so old problems are forgotten over time. If enough attempts in the window failed, the primary transport is
+ * disabled for the host. After the re-probe interval, a single request is let through to the primary transport again.
+ * If it succeeds, the primary transport is re-enabled, otherwise it stays disabled for another interval.
+ * <p>
+ * Times are passed in by the caller, so they can be controlled in tests.
+ *
+ * @author Carsten Reckord
+ */
+public class TransportHealth {
+
+	private final String host;
+
+	private final long bucketDuration;
+
+	private final int minAttempts;
+
+	private final double maxFailureRatio;
+
+	private final long reprobeInterval;
+
+	private final long[] bucketStarts;
+
+	private final int[] bucketAttempts;
+
+	private final int[] bucketFailures;
+
+	private boolean disabled;
+
+	private long disabledAt;
+
+	private boolean probeInFlight;
+
+	private long probeCount;
+
+	/**
+	 * @param window
+	 *            time in milliseconds over which attempts and failures are counted
+	 * @param bucketCount
+	 *            number of slices the window is divided into. Counts expire one slice at a time.
+	 * @param minAttempts
+	 *            minimum number of attempts in the window before the primary transport can be disabled
+	 * @param maxFailureRatio
+	 *            ratio of failed attempts in the window above which the primary transport is disabled
+	 * @param reprobeInterval
+	 *            time in milliseconds after which a disabled primary transport is tried again
+	 */
+	public TransportHealth(String host, long window, int bucketCount, int minAttempts, double maxFailureRatio,
+			long reprobeInterval) {
+		if (bucketCount < 1 || window < bucketCount || minAttempts < 1 || maxFailureRatio < 0 || maxFailureRatio > 1
+				|| reprobeInterval < 0) {
+			throw new IllegalArgumentException();
+		}
+		this.host = host;
+		this.bucketDuration = window / bucketCount;
+		this.minAttempts = minAttempts;
+		this.maxFailureRatio = maxFailureRatio;
+		this.reprobeInterval = reprobeInterval;
+		this.bucketStarts = new long[bucketCount];
+		this.bucketAttempts = new int[bucketCount];
+		this.bucketFailures = new int[bucketCount];
+	}
+
+	public String getHost() {
+		return host;
+	}
+
+	public synchronized boolean isDisabled() {
+		return disabled;
+	}
+
+	/**
+	 * Check if the primary transport should be used. If this returns true for a disabled transport, the request is a
+	 * probe and must be followed by a call to {@link #onSuccess(long)}, {@link #onFailure(long)} or
+	 * {@link #onAbort()}.
+	 */
+	public synchronized boolean tryPrimary(long now) {
+		if (!disabled) {
+			return true;
+		}
+		if (probeInFlight || now - disabledAt < reprobeInterval) {
+			return false;
+		}
+		probeInFlight = true;
+		probeCount++;
+		return true;
+	}
+
+	/**
+	 * @return the number of requests let through to check if a disabled primary transport works again
+	 */
+	public synchronized long getProbeCount() {
+		return probeCount;
+	}
+
+	/**
+	 * Record that the primary transport delivered content.
+	 *
+	 * @return true if this re-enabled a disabled primary transport
+	 */
+	public synchronized boolean onSuccess(long now) {
+		record(now, false);
+		if (!disabled) {
+			return false;
+		}
+		disabled = false;
+		probeInFlight = false;
+		//start over, otherwise the failures that disabled the transport would immediately disable it again
+		clear();
+		return true;
+	}
+
+	/**
+	 * Record that the primary transport failed while the fallback transport worked.
+	 *
+	 * @return true if this disabled the primary transport
+	 */
+	public synchronized boolean onFailure(long now) {
+		record(now, true);
+		if (disabled) {
+			disabledAt = now;
+			probeInFlight = false;
+			return false;
+		}
+		int attempts = 0;
+		int failures = 0;
+		for (int i = 0; i < bucketStarts.length; i++) {
+			if (isCurrent(i, now)) {
+				attempts += bucketAttempts[i];
+				failures += bucketFailures[i];
+			}
+		}
+		if (attempts >= minAttempts && failures / (double) attempts > maxFailureRatio) {
+			disabled = true;
+			disabledAt = now;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Record that a request ended without telling anything about the primary transport, e.g. because the fallback
+	 * transport failed as well.
+	 */
+	public synchronized void onAbort() {
+		probeInFlight = false;
+	}
+
+	private void record(long now, boolean failure) {
+		long bucketStart = now - Math.floorMod(now, bucketDuration);
+		int bucket = (int) Math.floorMod(now / bucketDuration, (long) bucketStarts.length);
+		if (bucketStarts[bucket] != bucketStart) {
+			bucketStarts[bucket] = bucketStart;
+			bucketAttempts[bucket] = 0;
+			bucketFailures[bucket] = 0;
+		}
+		bucketAttempts[bucket]++;
+		if (failure) {
+			bucketFailures[bucket]++;
+		}
+	}
+
+	private boolean isCurrent(int bucket, long now) {
+		return now - bucketStarts[bucket] < bucketDuration * bucketStarts.length;
+	}
+
+	private void clear() {
+		for (int i = 0; i < bucketStarts.length; i++) {
+			bucketAttempts[i] = 0;
+			bucketFailures[i] = 0;
+		}
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "TransportHealth [host=" + host + ", disabled=" + disabled + "]"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+}
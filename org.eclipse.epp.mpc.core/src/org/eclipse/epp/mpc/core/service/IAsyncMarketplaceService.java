@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.mpc.core.service;
+
+import java.net.URI;
+import java.net.URL;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.epp.mpc.core.model.ICategory;
+import org.eclipse.epp.mpc.core.model.IMarket;
+import org.eclipse.epp.mpc.core.model.INews;
+import org.eclipse.epp.mpc.core.model.INode;
+import org.eclipse.epp.mpc.core.model.ISearchResult;
+
+/**
+ * Non-blocking companion of {@link IMarketplaceService}. All methods return immediately with a
+ * {@link CompletableFuture} for the result, so many requests can be outstanding without blocking a thread per request
+ * in the caller.
+ * <p>
+ * The returned futures complete exceptionally with a {@link org.eclipse.core.runtime.CoreException CoreException} if
+ * the request fails, under the same conditions as the corresponding {@link IMarketplaceService} method.
+ * <p>
+ * Cancellation works both ways: {@link CompletableFuture#cancel(boolean) cancelling} a returned future aborts the
+ * request, and cancelling the given progress monitor cancels the returned future. The monitor is only used for
+ * cancellation and may be null.
+ *
+ * @see IMarketplaceServiceLocator#getAsyncMarketplaceService(String)
+ * @noimplement This interface is not intended to be implemented by clients.
+ * @noextend This interface is not intended to be extended by clients.
+ * @author Carsten Reckord
+ */
+public interface IAsyncMarketplaceService {
+
+	/**
+	 * @return the base URL of the Marketplace REST API for this service instance
+	 * @see IMarketplaceService#getBaseUrl()
+	 */
+	URL getBaseUrl();
+
+	/**
+	 * @return the blocking service performing the actual requests
+	 */
+	IMarketplaceService getMarketplaceService();
+
+	/**
+	 * @see IMarketplaceService#listMarkets(IProgressMonitor)
+	 */
+	CompletableFuture<List<? extends IMarket>> listMarkets(IProgressMonitor monitor);
+
+	/**
+	 * @see IMarketplaceService#getMarket(IMarket, IProgressMonitor)
+	 */
+	CompletableFuture<IMarket> getMarket(IMarket market, IProgressMonitor monitor);
+
+	/**
+	 * @see IMarketplaceService#getCategory(ICategory, IProgressMonitor)
+	 */
+	CompletableFuture<ICategory> getCategory(ICategory category, IProgressMonitor monitor);
+
+	/**
+	 * @see IMarketplaceService#getNode(INode, IProgressMonitor)
+	 */
+	CompletableFuture<INode> getNode(INode node, IProgressMonitor monitor);
+
+	/**
+	 * @see IMarketplaceService#getNodes(Collection, IProgressMonitor)
+	 */
+	CompletableFuture<List<INode>> getNodes(Collection<? extends INode> nodes, IProgressMonitor monitor);
+
+	/**
+	 * @see IMarketplaceService#search(IMarket, ICategory, String, IProgressMonitor)
+	 */
+	CompletableFuture<ISearchResult> search(IMarket market, ICategory category, String queryText,
+			IProgressMonitor monitor);
+
+	/**
+	 * @see IMarketplaceService#tagged(String, IProgressMonitor)
+	 */
+	CompletableFuture<ISearchResult> tagged(String tag, IProgressMonitor monitor);
+
+	/**
+	 * @see IMarketplaceService#tagged(List, IProgressMonitor)
+	 */
+	CompletableFuture<ISearchResult> tagged(List<String> tags, IProgressMonitor monitor);
+
+	/**
+	 * @see IMarketplaceService#featured(IProgressMonitor)
+	 */
+	CompletableFuture<ISearchResult> featured(IProgressMonitor monitor);
+
+	/**
+	 * @see IMarketplaceService#featured(IMarket, ICategory, IProgressMonitor)
+	 */
+	CompletableFuture<ISearchResult> featured(IMarket market, ICategory category, IProgressMonitor monitor);
+
+	/**
+	 * @see IMarketplaceService#recent(IProgressMonitor)
+	 */
+	CompletableFuture<ISearchResult> recent(IProgressMonitor monitor);
+
+	/**
+	 * @see IMarketplaceService#topFavorites(IProgressMonitor)
+	 */
+	CompletableFuture<ISearchResult> topFavorites(IProgressMonitor monitor);
+
+	/**
+	 * @see IMarketplaceService#popular(IProgressMonitor)
+	 */
+	CompletableFuture<ISearchResult> popular(IProgressMonitor monitor);
+
+	/**
+	 * @see IMarketplaceService#related(List, IProgressMonitor)
+	 */
+	CompletableFuture<ISearchResult> related(List<? extends INode> basedOn, IProgressMonitor monitor);
+
+	/**
+	 * @see IMarketplaceService#userFavorites(URI, IProgressMonitor)
+	 */
+	CompletableFuture<ISearchResult> userFavorites(URI favoritesUri, IProgressMonitor monitor);
+
+	/**
+	 * @see IMarketplaceService#news(IProgressMonitor)
+	 */
+	CompletableFuture<INews> news(IProgressMonitor monitor);
+}
@@ -89,6 +89,20 @@ public interface IMarketplaceServiceLocator {
 	 */
 	IMarketplaceService getMarketplaceService(String baseUrl);
 
+	/**
+	 * Same as {@link #getAsyncMarketplaceService(String) getAsyncMarketplaceService(DEFAULT_MARKETPLACE_URL)}
+	 *
+	 * @return a non-blocking marketplace service for the {@link #DEFAULT_MARKETPLACE_URL default marketplace url}
+	 */
+	IAsyncMarketplaceService getDefaultAsyncMarketplaceService();
+
+	/**
+	 * Get a non-blocking marketplace service for the given base url. It performs its requests with the
+	 * {@link #getMarketplaceService(String) marketplace service} for the same url. The same instance is returned for
+	 * subsequent calls, as long as that marketplace service doesn't change.
+	 */
+	IAsyncMarketplaceService getAsyncMarketplaceService(String baseUrl);
+
 	/**
 	 * Get a catalog service for the default {@link #CATALOG_URL discovery url}.
 	 */
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2018 The Eclipse Foundation and others.
+ * Copyright (c) 2010, 2019 The Eclipse Foundation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v2.0
  * which accompanies this distribution, and is available at
@@ -12,13 +12,25 @@
  *******************************************************************************/
 package org.eclipse.epp.mpc.tests;
 
+import org.eclipse.epp.mpc.tests.service.AsyncMarketplaceServiceTest;
 import org.eclipse.epp.mpc.tests.service.CatalogServiceTest;
 import org.eclipse.epp.mpc.tests.service.DefaultMarketplaceServiceTest;
+import org.eclipse.epp.mpc.tests.service.FavoritesResponseParserTest;
+import org.eclipse.epp.mpc.tests.service.NodeResolutionTest;
 import org.eclipse.epp.mpc.tests.service.SolutionCompatibilityFilterTest;
+import org.eclipse.epp.mpc.tests.service.cache.ConcurrentMarketplaceCacheTest;
+import org.eclipse.epp.mpc.tests.service.cache.InFlightRequestsTest;
+import org.eclipse.epp.mpc.tests.service.cache.ResponseCacheTest;
+import org.eclipse.epp.mpc.tests.service.cache.ResponseRevalidationTest;
+import org.eclipse.epp.mpc.tests.service.resilience.RequestResilienceTest;
+import org.eclipse.epp.mpc.tests.service.xml.StripInvalidXMLCharsTest;
 import org.eclipse.epp.mpc.tests.service.xml.UnmarshallerTest;
+import org.eclipse.epp.mpc.tests.util.ConfigurableKeepAliveStrategyTest;
+import org.eclipse.epp.mpc.tests.util.HttpClientMetricsTest;
 import org.eclipse.epp.mpc.tests.util.ProxyConfigurationTest;
 import org.eclipse.epp.mpc.tests.util.TextUtilTest;
 import org.eclipse.epp.mpc.tests.util.TransportFactoryTest;
+import org.eclipse.epp.mpc.tests.util.TransportHealthTest;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite.SuiteClasses;
 
@@ -29,11 +41,23 @@ import org.junit.runners.Suite.SuiteClasses;
 @SuiteClasses({ //
 	ProxyConfigurationTest.class, //
 	UnmarshallerTest.class, //
+	StripInvalidXMLCharsTest.class, //
 	TextUtilTest.class, //
 	TransportFactoryTest.class, //
 	CatalogServiceTest.class, //
 	DefaultMarketplaceServiceTest.class, //
-	SolutionCompatibilityFilterTest.class
+	NodeResolutionTest.class, //
+	AsyncMarketplaceServiceTest.class, //
+	FavoritesResponseParserTest.class, //
+	SolutionCompatibilityFilterTest.class, //
+	ConcurrentMarketplaceCacheTest.class, //
+	ResponseCacheTest.class, //
+	ResponseRevalidationTest.class, //
+	InFlightRequestsTest.class, //
+	RequestResilienceTest.class, //
+	HttpClientMetricsTest.class, //
+	ConfigurableKeepAliveStrategyTest.class, //
+	TransportHealthTest.class
 })
 public class RestTests {
 }
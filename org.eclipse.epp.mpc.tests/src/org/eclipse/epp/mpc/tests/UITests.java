@@ -13,8 +13,16 @@
 package org.eclipse.epp.mpc.tests;
 
 import org.eclipse.epp.mpc.tests.ui.catalog.CatalogDescriptorTest;
+import org.eclipse.epp.mpc.tests.ui.catalog.ImageCacheTest;
 import org.eclipse.epp.mpc.tests.ui.catalog.MarketplaceInfoSerializationTest;
 import org.eclipse.epp.mpc.tests.ui.catalog.MarketplaceInfoTest;
+import org.eclipse.epp.mpc.tests.ui.catalog.ResourceCacheTest;
+import org.eclipse.epp.mpc.tests.ui.catalog.ResourceDownloadSchedulerTest;
+import org.eclipse.epp.mpc.tests.ui.catalog.UpdateIndexTest;
+import org.eclipse.epp.mpc.tests.ui.operations.AbstractProvisioningOperationTest;
+import org.eclipse.epp.mpc.tests.ui.operations.InstalledProfileCacheTest;
+import org.eclipse.epp.mpc.tests.ui.operations.ProfileChangeOperationResolverTest;
+import org.eclipse.epp.mpc.tests.ui.operations.RepositoryTransactionHelperTest;
 import org.eclipse.epp.mpc.tests.ui.wizard.MarketplaceUrlHandlerTest;
 import org.eclipse.epp.mpc.tests.ui.wizard.SelectionModelStateSerializerTest;
 import org.junit.runner.RunWith;
@@ -29,7 +37,15 @@ import org.junit.runners.Suite.SuiteClasses;
 	MarketplaceUrlHandlerTest.class, //
 	MarketplaceInfoTest.class, //
 	MarketplaceInfoSerializationTest.class, //
-	CatalogDescriptorTest.class //
+	CatalogDescriptorTest.class, //
+	UpdateIndexTest.class, //
+	ResourceDownloadSchedulerTest.class, //
+	ResourceCacheTest.class, //
+	ImageCacheTest.class, //
+	InstalledProfileCacheTest.class, //
+	AbstractProvisioningOperationTest.class, //
+	ProfileChangeOperationResolverTest.class, //
+	RepositoryTransactionHelperTest.class //
 
 })
 public class UITests {
@@ -0,0 +1,199 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.mpc.tests.service;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.epp.internal.mpc.core.MarketplaceClientCore;
+import org.eclipse.epp.internal.mpc.core.model.SearchResult;
+import org.eclipse.epp.internal.mpc.core.service.AsyncMarketplaceService;
+import org.eclipse.epp.mpc.core.model.INode;
+import org.eclipse.epp.mpc.core.model.ISearchResult;
+import org.eclipse.epp.mpc.core.service.IMarketplaceService;
+import org.eclipse.epp.mpc.core.service.QueryHelper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AsyncMarketplaceServiceTest {
+
+	private IMarketplaceService delegate;
+
+	private ExecutorService executor;
+
+	private AsyncMarketplaceService service;
+
+	@Before
+	public void setUp() {
+		delegate = mock(IMarketplaceService.class);
+		executor = Executors.newFixedThreadPool(2);
+		service = new AsyncMarketplaceService(delegate, executor);
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testResult() throws Exception {
+		SearchResult result = new SearchResult();
+		when(delegate.featured(any(IProgressMonitor.class))).thenReturn(result);
+
+		CompletableFuture<ISearchResult> future = service.featured(null);
+		assertSame(result, future.get(5, TimeUnit.SECONDS));
+		assertSame(result, AsyncMarketplaceService.join(service.featured(null), new NullProgressMonitor()));
+	}
+
+	@Test
+	public void testFailure() throws Exception {
+		INode node = QueryHelper.nodeById("123");
+		IStatus error = new Status(IStatus.ERROR, MarketplaceClientCore.BUNDLE_ID, "Not found");
+		when(delegate.getNode(any(INode.class), any(IProgressMonitor.class))).thenThrow(new CoreException(error));
+
+		CompletableFuture<INode> future = service.getNode(node, null);
+		try {
+			future.get(5, TimeUnit.SECONDS);
+			fail("Expected ExecutionException");
+		} catch (ExecutionException ex) {
+			assertTrue(ex.getCause() instanceof CoreException);
+		}
+		try {
+			AsyncMarketplaceService.join(future, null);
+			fail("Expected CoreException");
+		} catch (CoreException ex) {
+			assertSame(error, ex.getStatus());
+		}
+	}
+
+	@Test
+	public void testCancelFutureCancelsMonitor() throws Exception {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch finished = new CountDownLatch(1);
+		AtomicReference<IProgressMonitor> requestMonitor = new AtomicReference<>();
+		when(delegate.popular(any(IProgressMonitor.class))).thenAnswer(invocation -> {
+			try {
+				IProgressMonitor monitor = invocation.getArgument(0);
+				requestMonitor.set(monitor);
+				started.countDown();
+				while (!monitor.isCanceled()) {
+					Thread.sleep(10);
+				}
+				throw new CoreException(Status.CANCEL_STATUS);
+			} finally {
+				finished.countDown();
+			}
+		});
+
+		CompletableFuture<ISearchResult> future = service.popular(null);
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		future.cancel(true);
+		assertTrue(future.isCancelled());
+		assertTrue(requestMonitor.get().isCanceled());
+		assertTrue("Request did not stop after cancellation", finished.await(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testCancelMonitorCancelsFuture() throws Exception {
+		when(delegate.recent(any(IProgressMonitor.class))).thenAnswer(invocation -> {
+			IProgressMonitor monitor = invocation.getArgument(0);
+			while (!monitor.isCanceled()) {
+				Thread.sleep(10);
+			}
+			throw new CoreException(Status.CANCEL_STATUS);
+		});
+
+		NullProgressMonitor monitor = new NullProgressMonitor();
+		CompletableFuture<ISearchResult> future = service.recent(monitor);
+		monitor.setCanceled(true);
+		try {
+			AsyncMarketplaceService.join(future, null);
+			fail("Expected CoreException");
+		} catch (CoreException ex) {
+			assertEquals(IStatus.CANCEL, ex.getStatus().getSeverity());
+		}
+		assertTrue(future.isCancelled());
+	}
+
+	@Test
+	public void testCancelMonitorCancelsRequestIgnoringMonitor() throws Exception {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		when(delegate.news(any(IProgressMonitor.class))).thenAnswer(invocation -> {
+			started.countDown();
+			release.await(5, TimeUnit.SECONDS);
+			return null;
+		});
+
+		try {
+			NullProgressMonitor monitor = new NullProgressMonitor();
+			CompletableFuture<?> future = service.news(monitor);
+			assertTrue(started.await(5, TimeUnit.SECONDS));
+			monitor.setCanceled(true);
+			try {
+				future.get(5, TimeUnit.SECONDS);
+				fail("Expected CancellationException");
+			} catch (CancellationException ex) {
+				//expected
+			}
+		} finally {
+			release.countDown();
+		}
+	}
+
+	@Test
+	public void testCancelMonitorCancelsQueuedRequest() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		when(delegate.recent(any(IProgressMonitor.class))).thenAnswer(invocation -> {
+			release.await(5, TimeUnit.SECONDS);
+			return null;
+		});
+
+		try {
+			//occupy both threads of the executor
+			service.recent(null);
+			service.recent(null);
+			NullProgressMonitor monitor = new NullProgressMonitor();
+			CompletableFuture<ISearchResult> queued = service.featured(monitor);
+			monitor.setCanceled(true);
+			try {
+				queued.get(5, TimeUnit.SECONDS);
+				fail("Expected CancellationException");
+			} catch (CancellationException ex) {
+				//expected
+			}
+		} finally {
+			release.countDown();
+		}
+		verify(delegate, never()).featured(any(IProgressMonitor.class));
+	}
+}
@@ -0,0 +1,65 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.mpc.tests.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.epp.internal.mpc.core.service.FavoritesResponseParser;
+import org.junit.Test;
+
+public class FavoritesResponseParserTest {
+
+	private static final String FAVORITES = "{\"mpc_favorites\":[{\"content_id\":\"1\",\"created\":\"1500000000\"},"
+			+ " {\"content_id\":\"23\",\"created\":\"1500000001\"},{\"created\":\"1500000002\"}],"
+			+ "\"pagination\":{\"page\":1,\"pagesize\":20,\"result_start\":1,\"result_end\":2,\"result_size\":2,\"total_result_size\":2}}";
+
+	private static final String FAVORITE_LISTS = "{\"users\":[{\"uid\":\"10\",\"name\":\"jdoe\",\"full_name\":\"John Doe\","
+			+ "\"picture\":\"https://www.example.org/jdoe.png\",\"mpc_list_name\":\"Tools\","
+			+ "\"html_profile_url\":\"https://accounts.example.org/users/jdoe\","
+			+ "\"html_mpc_favorites_url\":\"https://marketplace.example.org/user/jdoe/favorites\"},"
+			+ "{\"uid\":\"11\",\"name\":\"anon\"}],"
+			+ "\"pagination\":{\"page\":1,\"pagesize\":20,\"result_start\":1,\"result_end\":2,\"result_size\":2,\"total_result_size\":2}}";
+
+	@Test
+	public void parseFavoriteIds() {
+		assertEquals(Arrays.asList("1", "23"), FavoritesResponseParser.parseFavoriteIds(FAVORITES));
+	}
+
+	@Test
+	public void parseEmptyBody() {
+		assertTrue(FavoritesResponseParser.parseFavoriteIds("").isEmpty());
+	}
+
+	@Test
+	public void parseMalformedBody() {
+		assertNull(FavoritesResponseParser.parseFavoriteIds("{\"error\":\"not found\"}"));
+		assertNull(FavoritesResponseParser.parseFavoriteLists(FAVORITES, entry -> entry));
+	}
+
+	@Test
+	public void parseFavoriteLists() {
+		List<String[]> lists = FavoritesResponseParser.parseFavoriteLists(FAVORITE_LISTS, entry -> new String[] {
+				FavoritesResponseParser.findFavoritesListId(entry), FavoritesResponseParser.findFavoritesListOwner(entry),
+				FavoritesResponseParser.findFavoritesListLabel(entry), FavoritesResponseParser.findFavoritesListUrl(entry),
+				FavoritesResponseParser.findOwnerIcon(entry), FavoritesResponseParser.findOwnerProfileUrl(entry) });
+		assertEquals(2, lists.size());
+		assertEquals(Arrays.asList("jdoe", "John Doe", "Tools", "https://marketplace.example.org/user/jdoe/favorites",
+				"https://www.example.org/jdoe.png", "https://accounts.example.org/users/jdoe"), Arrays.asList(lists.get(0)));
+		assertEquals(Arrays.asList("anon", "anon", null, null, null, null), Arrays.asList(lists.get(1)));
+	}
+}
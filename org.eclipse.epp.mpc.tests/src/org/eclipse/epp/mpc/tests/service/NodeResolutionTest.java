@@ -0,0 +1,168 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.mpc.tests.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.epp.internal.mpc.core.service.DefaultMarketplaceService;
+import org.eclipse.epp.mpc.core.model.INode;
+import org.eclipse.epp.mpc.core.service.ITransport;
+import org.eclipse.epp.mpc.core.service.QueryHelper;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the batched and parallel node resolution of {@link DefaultMarketplaceService#getNodes}
+ */
+public class NodeResolutionTest {
+
+	private static final String BASE_URL = "http://marketplace.example.org/";
+
+	private final List<String> requestedPaths = Collections.synchronizedList(new ArrayList<>());
+
+	private final AtomicInteger runningRequests = new AtomicInteger();
+
+	private final AtomicInteger maxRunningRequests = new AtomicInteger();
+
+	private DefaultMarketplaceService service;
+
+	@Before
+	public void setUp() throws Exception {
+		service = new DefaultMarketplaceService(new URL(BASE_URL), new NodeTransport());
+	}
+
+	@Test
+	public void resolveInBatches() throws Exception {
+		service.setNodeBatchSize(50);
+		List<INode> nodes = nodesById(1, 120);
+
+		List<INode> result = service.getNodes(nodes, new NullProgressMonitor());
+
+		assertResolved(nodes, result);
+		assertEquals(3, requestedPaths.size());
+		for (String path : requestedPaths) {
+			assertTrue(path, path.split(",").length <= 50);
+		}
+	}
+
+	@Test
+	public void limitParallelRequests() throws Exception {
+		service.setNodeBatchSize(1);
+		service.setNodeRequestParallelism(3);
+		List<INode> nodes = nodesById(1, 12);
+
+		List<INode> result = service.getNodes(nodes, new NullProgressMonitor());
+
+		assertResolved(nodes, result);
+		assertEquals(12, requestedPaths.size());
+		assertTrue(String.valueOf(maxRunningRequests.get()), maxRunningRequests.get() <= 3);
+		assertTrue(String.valueOf(maxRunningRequests.get()), maxRunningRequests.get() > 1);
+	}
+
+	@Test
+	public void resolveByUrl() throws Exception {
+		List<INode> nodes = new ArrayList<>(nodesById(1, 2));
+		nodes.add(1, QueryHelper.nodeByUrl(BASE_URL + "content/7"));
+		nodes.add(QueryHelper.nodeByUrl(BASE_URL + "content/8"));
+
+		List<INode> result = service.getNodes(nodes, new NullProgressMonitor());
+
+		assertEquals(4, result.size());
+		assertEquals("1", result.get(0).getId());
+		assertEquals("7", result.get(1).getId());
+		assertEquals("2", result.get(2).getId());
+		assertEquals("8", result.get(3).getId());
+		assertEquals(3, requestedPaths.size());
+	}
+
+	@Test
+	public void streamResolvedNodes() throws Exception {
+		service.setNodeBatchSize(5);
+		List<INode> nodes = nodesById(1, 20);
+		List<INode> streamedNodes = new ArrayList<>();
+		Thread callingThread = Thread.currentThread();
+
+		List<INode> result = service.getNodes(nodes, node -> {
+			assertSame(callingThread, Thread.currentThread());
+			streamedNodes.add(node);
+		}, new NullProgressMonitor());
+
+		assertResolved(nodes, result);
+		assertEquals(result.size(), streamedNodes.size());
+		assertTrue(streamedNodes.containsAll(result));
+	}
+
+	private static List<INode> nodesById(int first, int last) {
+		List<INode> nodes = new ArrayList<>();
+		for (int i = first; i <= last; i++) {
+			nodes.add(QueryHelper.nodeById(String.valueOf(i)));
+		}
+		return nodes;
+	}
+
+	private static void assertResolved(List<INode> nodes, List<INode> result) {
+		assertEquals(nodes.size(), result.size());
+		for (int i = 0; i < nodes.size(); i++) {
+			assertEquals(nodes.get(i).getId(), result.get(i).getId());
+			assertEquals("Node " + nodes.get(i).getId(), result.get(i).getName());
+		}
+	}
+
+	/**
+	 * Answers node requests by id (<code>node/1,2,3/api/p</code>) and url (<code>content/1/api/p</code>) with
+	 * generated nodes
+	 */
+	private class NodeTransport implements ITransport {
+
+		@Override
+		public InputStream stream(URI location, IProgressMonitor monitor) throws FileNotFoundException {
+			String path = URI.create(BASE_URL).relativize(location).getPath();
+			requestedPaths.add(path);
+			int running = runningRequests.incrementAndGet();
+			maxRunningRequests.accumulateAndGet(running, Math::max);
+			try {
+				Thread.sleep(20);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				runningRequests.decrementAndGet();
+			}
+			String[] segments = path.split("/");
+			if (segments.length != 4 || !"api".equals(segments[2])) {
+				throw new FileNotFoundException(location.toString());
+			}
+			StringBuilder response = new StringBuilder("<?xml version='1.0' encoding='UTF-8'?><marketplace>");
+			for (String id : segments[1].split(",")) {
+				response.append("<node id=\"").append(id).append("\" name=\"Node ").append(id).append("\" url=\"")
+				.append(BASE_URL).append("content/").append(id).append("\"/>");
+			}
+			response.append("</marketplace>");
+			return new ByteArrayInputStream(response.toString().getBytes(StandardCharsets.UTF_8));
+		}
+	}
+}
@@ -0,0 +1,141 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.mpc.tests.service.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.epp.internal.mpc.core.service.cache.CacheStatistics;
+import org.eclipse.epp.internal.mpc.core.service.cache.ConcurrentMarketplaceCache;
+import org.eclipse.epp.internal.mpc.core.service.cache.MarketplaceCache.EntryType;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConcurrentMarketplaceCacheTest {
+
+	private static class TestCache extends ConcurrentMarketplaceCache {
+
+		private long time = 1000;
+
+		public TestCache(long maximumWeight) {
+			super(maximumWeight, (type, value) -> 1);
+		}
+
+		@Override
+		protected long currentTimeMillis() {
+			return time;
+		}
+
+		void advance(long duration, TimeUnit unit) {
+			time += unit.toMillis(duration);
+		}
+	}
+
+	private TestCache cache;
+
+	@Before
+	public void setUp() {
+		cache = new TestCache(10);
+	}
+
+	@Test
+	public void testHitAndMiss() {
+		Object value = new Object();
+		cache.put("key", EntryType.NODE, value);
+		assertSame(value, cache.get("key", Object.class));
+		assertNull(cache.get("other", Object.class));
+
+		CacheStatistics statistics = cache.getStatistics();
+		assertEquals(1, statistics.getHitCount());
+		assertEquals(1, statistics.getMissCount());
+		assertEquals(1, statistics.getSize());
+	}
+
+	@Test
+	public void testWrongTypeIsMiss() {
+		cache.put("key", EntryType.NODE, "value");
+		assertNull(cache.get("key", Integer.class));
+		assertEquals("value", cache.get("key", String.class));
+	}
+
+	@Test
+	public void testExpiryPerEntryType() {
+		cache.put("search", EntryType.SEARCH, "search");
+		cache.put("market", EntryType.MARKET, "market");
+
+		cache.advance(EntryType.SEARCH.getDefaultTimeToLive() + 1, TimeUnit.MILLISECONDS);
+
+		assertNull(cache.get("search", String.class));
+		assertEquals("market", cache.get("market", String.class));
+		assertEquals(1, cache.getStatistics().getExpirationCount());
+		assertEquals(1, cache.getStatistics().getWeight());
+	}
+
+	@Test
+	public void testTimeToLiveOverride() {
+		cache.setTimeToLive(EntryType.NODE, 5, TimeUnit.SECONDS);
+		cache.put("node", EntryType.NODE, "node");
+		cache.advance(4, TimeUnit.SECONDS);
+		assertEquals("node", cache.get("node", String.class));
+		cache.advance(2, TimeUnit.SECONDS);
+		assertNull(cache.get("node", String.class));
+	}
+
+	@Test
+	public void testDisabledEntryType() {
+		cache.setTimeToLive(EntryType.NEWS, 0, TimeUnit.MILLISECONDS);
+		cache.put("news", EntryType.NEWS, "news");
+		assertNull(cache.get("news", String.class));
+		assertEquals(0, cache.getStatistics().getSize());
+	}
+
+	@Test
+	public void testEvictsLeastRecentlyUsed() {
+		for (int i = 0; i < 10; i++) {
+			cache.put("key" + i, EntryType.NODE, "value" + i);
+		}
+		//touch the oldest entry so it survives
+		assertEquals("value0", cache.get("key0", String.class));
+
+		cache.put("key10", EntryType.NODE, "value10");
+
+		CacheStatistics statistics = cache.getStatistics();
+		assertTrue(statistics.getWeight() <= 9);
+		assertTrue(statistics.getEvictionCount() >= 2);
+		assertEquals("value0", cache.get("key0", String.class));
+		assertEquals("value10", cache.get("key10", String.class));
+		assertNull(cache.get("key1", String.class));
+	}
+
+	@Test
+	public void testReplaceKeepsWeight() {
+		cache.put("key", EntryType.NODE, "value1");
+		cache.put("key", EntryType.NODE, "value2");
+		assertEquals(1, cache.getStatistics().getWeight());
+		assertEquals("value2", cache.get("key", String.class));
+	}
+
+	@Test
+	public void testClear() {
+		cache.put("key1", EntryType.NODE, "value1");
+		cache.put("key2", EntryType.NODE, "value2");
+		cache.clear();
+		assertEquals(0, cache.getStatistics().getSize());
+		assertEquals(0, cache.getStatistics().getWeight());
+		assertNull(cache.get("key1", String.class));
+	}
+}
@@ -0,0 +1,153 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.mpc.tests.service.cache;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.epp.internal.mpc.core.MarketplaceClientCore;
+import org.eclipse.epp.internal.mpc.core.service.cache.InFlightRequests;
+import org.eclipse.epp.internal.mpc.core.service.cache.InFlightRequests.Flight;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class InFlightRequestsTest {
+
+	private InFlightRequests requests;
+
+	private ExecutorService executor;
+
+	@Before
+	public void setUp() {
+		requests = new InFlightRequests();
+		executor = Executors.newCachedThreadPool();
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testConcurrentRequestsAreCoalesced() throws Exception {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger executions = new AtomicInteger();
+
+		Future<String> leader = executor.submit(() -> requests.execute("Node:1", String.class, () -> {
+			executions.incrementAndGet();
+			started.countDown();
+			awaitQuietly(release);
+			return "result";
+		}, new NullProgressMonitor()));
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+
+		Future<String> follower = executor.submit(() -> requests.execute("Node:1", String.class, () -> {
+			executions.incrementAndGet();
+			return "duplicate";
+		}, new NullProgressMonitor()));
+		waitForCoalesced(1);
+		release.countDown();
+
+		assertEquals("result", leader.get(5, TimeUnit.SECONDS));
+		assertEquals("result", follower.get(5, TimeUnit.SECONDS));
+		assertEquals(1, executions.get());
+		assertEquals(1, requests.getRequestCount());
+		assertEquals(1, requests.getCoalescedCount());
+		assertEquals(0, requests.getInFlightCount());
+	}
+
+	@Test
+	public void testSequentialRequestsAreNotCoalesced() throws Exception {
+		assertEquals("1", requests.execute("Node:1", String.class, () -> "1", null));
+		assertEquals("2", requests.execute("Node:1", String.class, () -> "2", null));
+		assertEquals(2, requests.getRequestCount());
+		assertEquals(0, requests.getCoalescedCount());
+	}
+
+	@Test
+	public void testFailureIsSharedWithFollowers() throws Exception {
+		Flight leader = requests.begin("Node:1");
+		Flight follower = requests.begin("Node:1");
+		assertTrue(leader.isLeader());
+		assertFalse(follower.isLeader());
+
+		IStatus error = new Status(IStatus.ERROR, MarketplaceClientCore.BUNDLE_ID, "Not found");
+		leader.fail(new CoreException(error));
+		try {
+			follower.await(String.class, null);
+			fail("Expected CoreException");
+		} catch (CoreException ex) {
+			assertSame(error, ex.getStatus());
+		}
+		assertTrue(requests.begin("Node:1").isLeader());
+	}
+
+	@Test
+	public void testFollowerRetriesIfLeaderIsCanceled() throws Exception {
+		Flight leader = requests.begin("Node:1");
+		Future<String> follower = executor.submit(
+				() -> requests.execute("Node:1", String.class, () -> "retried", new NullProgressMonitor()));
+		waitForCoalesced(1);
+
+		leader.fail(new CoreException(Status.CANCEL_STATUS));
+		assertEquals("retried", follower.get(5, TimeUnit.SECONDS));
+		assertEquals(2, requests.getRequestCount());
+	}
+
+	@Test
+	public void testFollowerCanBeCanceled() throws Exception {
+		requests.begin("Node:1");
+		NullProgressMonitor monitor = new NullProgressMonitor();
+		Future<String> follower = executor.submit(
+				() -> requests.execute("Node:1", String.class, () -> "unexpected", monitor));
+		waitForCoalesced(1);
+
+		monitor.setCanceled(true);
+		try {
+			follower.get(5, TimeUnit.SECONDS);
+			fail("Expected CoreException");
+		} catch (ExecutionException ex) {
+			assertTrue(ex.getCause() instanceof CoreException);
+			assertEquals(IStatus.CANCEL, ((CoreException) ex.getCause()).getStatus().getSeverity());
+		}
+	}
+
+	private static void awaitQuietly(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void waitForCoalesced(long count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (requests.getCoalescedCount() < count) {
+			assertTrue("Timed out waiting for coalesced request", System.currentTimeMillis() < deadline);
+			Thread.sleep(10);
+		}
+	}
+}
@@ -0,0 +1,183 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.mpc.tests.service.cache;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.epp.internal.mpc.core.service.cache.ResponseCache;
+import org.eclipse.epp.internal.mpc.core.service.cache.ResponseCache.Entry;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ResponseCacheTest {
+
+	private static final String KEY = "https://marketplace.eclipse.org/node/123/api/p";
+
+	private static final String VARIANT = "?client=org.eclipse.epp.mpc.core&os=linux";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private ResponseCache cache;
+
+	@Before
+	public void setUp() throws Exception {
+		cache = new ResponseCache(folder.newFolder("responses"), 1000);
+	}
+
+	@Test
+	public void testPutAndGet() throws Exception {
+		assertNull(cache.get(KEY, VARIANT));
+		cache.put(KEY, VARIANT, "\"abc\"", "Tue, 15 Nov 1994 08:12:31 GMT", content("<marketplace/>"));
+
+		Entry entry = cache.get(KEY, VARIANT);
+		assertNotNull(entry);
+		assertEquals("\"abc\"", entry.getETag());
+		assertEquals("Tue, 15 Nov 1994 08:12:31 GMT", entry.getLastModified());
+		assertTrue(entry.hasValidators());
+		assertEquals("<marketplace/>", read(entry));
+		assertEquals("<marketplace/>".length(), cache.getSize());
+	}
+
+	@Test
+	public void testSurvivesRestart() throws Exception {
+		cache.put(KEY, VARIANT, "\"abc\"", null, content("<marketplace/>"));
+
+		ResponseCache restarted = new ResponseCache(cache.getDirectory(), 1000);
+		Entry entry = restarted.get(KEY, VARIANT);
+		assertNotNull(entry);
+		assertEquals("<marketplace/>", read(entry));
+		assertEquals("<marketplace/>".length(), restarted.getSize());
+	}
+
+	@Test
+	public void testVariantMismatch() throws Exception {
+		cache.put(KEY, VARIANT, null, null, content("<marketplace/>"));
+		assertNull(cache.get(KEY, VARIANT + "&platform.version=4.14"));
+		assertNull(cache.get(KEY, null));
+		assertFalse(cache.get(KEY, VARIANT).hasValidators());
+	}
+
+	@Test
+	public void testReplace() throws Exception {
+		cache.put(KEY, VARIANT, "\"1\"", null, content("<marketplace/>"));
+		cache.put(KEY, VARIANT, "\"2\"", null, content("<marketplace><node/></marketplace>"));
+
+		Entry entry = cache.get(KEY, VARIANT);
+		assertEquals("\"2\"", entry.getETag());
+		assertEquals("<marketplace><node/></marketplace>", read(entry));
+		assertEquals("<marketplace><node/></marketplace>".length(), cache.getSize());
+	}
+
+	@Test
+	public void testRevalidated() throws Exception {
+		cache.put(KEY, VARIANT, "\"abc\"", null, content("<marketplace/>"));
+		Entry entry = cache.get(KEY, VARIANT);
+		Thread.sleep(20);
+		assertTrue(entry.getAge() >= 20);
+
+		Entry revalidated = cache.revalidated(entry);
+		assertTrue(revalidated.getAge() < entry.getAge());
+		assertTrue(cache.get(KEY, VARIANT).getAge() < entry.getAge());
+		assertEquals("\"abc\"", revalidated.getETag());
+		assertEquals("<marketplace/>", read(revalidated));
+	}
+
+	@Test
+	public void testRemoveAndClear() throws Exception {
+		cache.put(KEY, VARIANT, null, null, content("<marketplace/>"));
+		cache.put(KEY + "?page=2", VARIANT, null, null, content("<marketplace/>"));
+		cache.remove(KEY);
+		assertNull(cache.get(KEY, VARIANT));
+		assertNotNull(cache.get(KEY + "?page=2", VARIANT));
+
+		cache.clear();
+		assertNull(cache.get(KEY + "?page=2", VARIANT));
+		assertEquals(0, cache.getSize());
+	}
+
+	@Test
+	public void testEvictsLeastRecentlyUsed() throws Exception {
+		String body = new String(new char[300]).replace('\0', 'x');
+		cache.put(KEY + 1, VARIANT, null, null, content(body));
+		cache.put(KEY + 2, VARIANT, null, null, content(body));
+		cache.put(KEY + 3, VARIANT, null, null, content(body));
+		//file times might only have a resolution of seconds, so set them explicitly
+		setLastUsed(KEY + 1, 3000);
+		setLastUsed(KEY + 2, 1000);
+		setLastUsed(KEY + 3, 2000);
+
+		cache.put(KEY + 4, VARIANT, null, null, content(body));
+
+		assertTrue(cache.getSize() <= 1000);
+		assertNull(cache.get(KEY + 2, VARIANT));
+		assertNotNull(cache.get(KEY + 1, VARIANT));
+		assertNotNull(cache.get(KEY + 4, VARIANT));
+	}
+
+	@Test
+	public void testDeletesLeftoverTempFiles() throws Exception {
+		File directory = cache.getDirectory();
+		File stale = new File(directory, "stale.tmp");
+		File recent = new File(directory, "recent.tmp");
+		assertTrue(stale.createNewFile());
+		assertTrue(recent.createNewFile());
+		assertTrue(stale.setLastModified(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1)));
+
+		cache.put(KEY, VARIANT, null, null, content("<marketplace/>"));
+		assertFalse(stale.exists());
+		assertTrue("might belong to a concurrent write", recent.exists());
+	}
+
+	private void setLastUsed(String key, long time) {
+		//get() marks the entry's body as the most recently used one
+		assertNotNull(cache.get(key, VARIANT));
+		File mostRecent = null;
+		for (File file : cache.getDirectory().listFiles((dir, name) -> name.endsWith(".body"))) {
+			if (mostRecent == null || file.lastModified() > mostRecent.lastModified()) {
+				mostRecent = file;
+			}
+		}
+		assertTrue(mostRecent.setLastModified(time));
+	}
+
+	private static InputStream content(String content) {
+		return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static String read(Entry entry) throws IOException {
+		try (InputStream in = entry.openStream()) {
+			return read(in);
+		}
+	}
+
+	private static String read(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1024];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			out.write(buffer, 0, read);
+		}
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,249 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.mpc.tests.service.cache;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.protocol.HttpContext;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.epp.internal.mpc.core.model.Node;
+import org.eclipse.epp.internal.mpc.core.service.DefaultMarketplaceService;
+import org.eclipse.epp.internal.mpc.core.service.cache.ResponseCache;
+import org.eclipse.epp.internal.mpc.core.transport.httpclient.HttpClientService;
+import org.eclipse.epp.internal.mpc.core.transport.httpclient.HttpClientTransport;
+import org.eclipse.epp.mpc.core.service.QueryHelper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Runs a service with a response cache against a minimal local HTTP server, to check that cached responses are
+ * revalidated with conditional requests.
+ */
+public class ResponseRevalidationTest {
+
+	private static final String NODE_PATH = "/node/1/api/p";
+
+	/**
+	 * A minimal HTTP server that answers every request with the current {@link #body} and {@link #eTag}, or with
+	 * <code>304 Not Modified</code> if the request's <code>If-None-Match</code> header matches the current entity
+	 * tag.
+	 */
+	private static class StubServer implements Runnable {
+
+		private final ServerSocket socket;
+
+		private final List<String> requests = new CopyOnWriteArrayList<>();
+
+		private volatile String eTag;
+
+		private volatile String body;
+
+		StubServer() throws IOException {
+			socket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+			Thread thread = new Thread(this, "Stub marketplace server");
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		URL getUrl() throws IOException {
+			return new URL("http", socket.getInetAddress().getHostAddress(), socket.getLocalPort(), "/");
+		}
+
+		void setResponse(String eTag, String nodeName) {
+			this.eTag = eTag;
+			this.body = "<marketplace><node id=\"1\" name=\"" + nodeName + "\"/></marketplace>";
+		}
+
+		/**
+		 * @return the <code>If-None-Match</code> header sent with each request so far, or an empty string if it was
+		 *         missing
+		 */
+		List<String> getRequests() {
+			return requests;
+		}
+
+		@Override
+		public void run() {
+			while (!socket.isClosed()) {
+				try (Socket connection = socket.accept()) {
+					handle(connection);
+				} catch (IOException e) {
+					//closed or broken connection
+				}
+			}
+		}
+
+		private void handle(Socket connection) throws IOException {
+			BufferedReader in = new BufferedReader(
+					new InputStreamReader(connection.getInputStream(), StandardCharsets.ISO_8859_1));
+			String ifNoneMatch = "";
+			for (String line = in.readLine(); line != null && !line.isEmpty(); line = in.readLine()) {
+				if (line.regionMatches(true, 0, "If-None-Match:", 0, 14)) {
+					ifNoneMatch = line.substring(14).trim();
+				}
+			}
+			requests.add(ifNoneMatch);
+
+			String currentETag = eTag;
+			StringBuilder response = new StringBuilder();
+			byte[] content = new byte[0];
+			if (currentETag.equals(ifNoneMatch)) {
+				response.append("HTTP/1.1 304 Not Modified\r\n");
+			} else {
+				content = body.getBytes(StandardCharsets.UTF_8);
+				response.append("HTTP/1.1 200 OK\r\n");
+				response.append("Content-Type: application/xml; charset=UTF-8\r\n");
+			}
+			response.append("ETag: ").append(currentETag).append("\r\n");
+			response.append("Content-Length: ").append(content.length).append("\r\n");
+			response.append("Connection: close\r\n\r\n");
+			OutputStream out = connection.getOutputStream();
+			out.write(response.toString().getBytes(StandardCharsets.ISO_8859_1));
+			out.write(content);
+			out.flush();
+		}
+
+		void close() throws IOException {
+			socket.close();
+		}
+	}
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private StubServer server;
+
+	private CloseableHttpClient client;
+
+	private ResponseCache cache;
+
+	private DefaultMarketplaceService service;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new StubServer();
+		server.setResponse("\"1\"", "First");
+		client = HttpClients.createDefault();
+		HttpClientService clientService = new HttpClientService() {
+			@Override
+			public HttpResponse execute(HttpUriRequest request, HttpContext context) throws IOException {
+				return client.execute(request, context);
+			}
+		};
+		HttpClientTransport transport = new HttpClientTransport();
+		transport.bindHttpClientService(clientService);
+
+		cache = new ResponseCache(folder.newFolder("responses"));
+		service = new DefaultMarketplaceService(server.getUrl(), transport);
+		service.setResponseCache(cache);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		server.close();
+		client.close();
+	}
+
+	@Test
+	public void testFreshResponseIsNotRevalidated() throws Exception {
+		service.setResponseCacheTimes(1, 0, TimeUnit.DAYS);
+		assertEquals("First", getNodeName());
+		server.setResponse("\"2\"", "Second");
+		assertEquals("First", getNodeName());
+		assertEquals(1, server.getRequests().size());
+	}
+
+	@Test
+	public void testNotModified() throws Exception {
+		service.setResponseCacheTimes(0, 0, TimeUnit.MILLISECONDS);
+		assertEquals("First", getNodeName());
+		ResponseCache.Entry entry = getCacheEntry();
+		assertEquals("\"1\"", entry.getETag());
+		Thread.sleep(20);
+
+		assertEquals("First", getNodeName());
+		assertEquals(2, server.getRequests().size());
+		assertEquals("", server.getRequests().get(0));
+		assertEquals("\"1\"", server.getRequests().get(1));
+		assertTrue("revalidation resets the age", getCacheEntry().getAge() < entry.getAge());
+	}
+
+	@Test
+	public void testModified() throws Exception {
+		service.setResponseCacheTimes(0, 0, TimeUnit.MILLISECONDS);
+		assertEquals("First", getNodeName());
+		server.setResponse("\"2\"", "Second");
+
+		assertEquals("Second", getNodeName());
+		assertEquals("\"1\"", server.getRequests().get(1));
+		assertEquals("\"2\"", getCacheEntry().getETag());
+	}
+
+	@Test
+	public void testStaleWhileRevalidate() throws Exception {
+		service.setResponseCacheTimes(0, 1, TimeUnit.DAYS);
+		assertEquals("First", getNodeName());
+		server.setResponse("\"2\"", "Second");
+
+		//stale response is served right away and refreshed in the background
+		assertEquals("First", getNodeName());
+		long timeout = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+		while (!"\"2\"".equals(getCacheEntry().getETag()) && System.currentTimeMillis() < timeout) {
+			Thread.sleep(10);
+		}
+		assertEquals("\"2\"", getCacheEntry().getETag());
+		assertEquals("\"1\"", server.getRequests().get(1));
+		assertEquals("Second", getNodeName());
+	}
+
+	@Test
+	public void testUnwritableCacheFallsBackToNetwork() throws Exception {
+		File blocked = folder.newFile("blocked");
+		service.setResponseCache(new ResponseCache(new File(blocked, "responses")));
+		assertEquals("First", getNodeName());
+		assertEquals("First", getNodeName());
+		assertEquals(2, server.getRequests().size());
+	}
+
+	private String getNodeName() throws Exception {
+		Node node = service.getNode(QueryHelper.nodeById("1"), new NullProgressMonitor());
+		return node.getName();
+	}
+
+	private ResponseCache.Entry getCacheEntry() throws IOException {
+		ResponseCache.Entry entry = cache.get(new URL(server.getUrl(), NODE_PATH).toString(), "");
+		assertNotNull(entry);
+		return entry;
+	}
+}
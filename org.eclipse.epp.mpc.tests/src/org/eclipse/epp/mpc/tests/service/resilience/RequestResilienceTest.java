@@ -0,0 +1,256 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.mpc.tests.service.resilience;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.epp.internal.mpc.core.service.DefaultMarketplaceService;
+import org.eclipse.epp.internal.mpc.core.service.resilience.CircuitBreaker;
+import org.eclipse.epp.internal.mpc.core.service.resilience.RequestResilience;
+import org.eclipse.epp.internal.mpc.core.service.resilience.RequestResilience.Request;
+import org.eclipse.epp.internal.mpc.core.service.resilience.ResilienceStatistics;
+import org.eclipse.epp.internal.mpc.core.service.resilience.RetryBudget;
+import org.eclipse.epp.internal.mpc.core.service.resilience.RetryPolicy;
+import org.eclipse.epp.mpc.core.service.ITransport;
+import org.eclipse.epp.mpc.core.service.QueryHelper;
+import org.eclipse.epp.mpc.core.service.ServiceUnavailableException;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RequestResilienceTest {
+
+	private static final URI LOCATION = URI.create("http://marketplace.example.org/node/1/api/p");
+
+	private long time;
+
+	private RequestResilience resilience;
+
+	@Before
+	public void setUp() {
+		time = 1000;
+		resilience = createResilience(new RetryBudget(0.5, 2), 3);
+	}
+
+	private RequestResilience createResilience(RetryBudget budget, int failureThreshold) {
+		return new RequestResilience(new RetryPolicy(3, 100, 1000, 2.0), budget, failureThreshold, 10000) {
+			@Override
+			protected long currentTimeMillis() {
+				return time;
+			}
+		};
+	}
+
+	@Test
+	public void testBackoffGrowsWithinBounds() {
+		RetryPolicy policy = new RetryPolicy(5, 100, 1000, 2.0);
+		assertEquals(100, policy.computeBackoff(1, 0));
+		assertEquals(50, policy.computeBackoff(1, 0.999999));
+		assertEquals(200, policy.computeBackoff(2, 0));
+		assertEquals(400, policy.computeBackoff(3, 0));
+		assertEquals(1000, policy.computeBackoff(5, 0));
+		assertEquals(1000, policy.computeBackoff(20, 0));
+		for (int i = 0; i < 100; i++) {
+			long backoff = policy.computeBackoff(2);
+			assertTrue(String.valueOf(backoff), backoff >= 100 && backoff <= 200);
+		}
+	}
+
+	@Test
+	public void testRetryUntilMaxAttempts() {
+		Request request = resilience.begin(LOCATION);
+		assertTrue(request.tryAttempt());
+		assertTrue(request.failed(true) >= 0);
+		assertTrue(request.tryAttempt());
+		assertTrue(request.failed(true) >= 0);
+		assertTrue(request.tryAttempt());
+		assertEquals(-1, request.failed(true));
+		assertEquals(3, request.getAttempts());
+	}
+
+	@Test
+	public void testNoRetryIfNotRetryable() {
+		Request request = resilience.begin(LOCATION);
+		assertTrue(request.tryAttempt());
+		assertEquals(-1, request.failed(false));
+		assertEquals(0, resilience.getStatistics().getRetryCount());
+		assertEquals(1, resilience.getStatistics().getFailureCount());
+	}
+
+	@Test
+	public void testCircuitOpensAndRecovers() {
+		CircuitBreaker circuitBreaker = resilience.getCircuitBreaker(LOCATION.getHost());
+		for (int i = 0; i < 3; i++) {
+			Request request = resilience.begin(LOCATION);
+			assertTrue(request.tryAttempt());
+			request.failed(false);
+		}
+		assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+
+		Request rejected = resilience.begin(LOCATION);
+		assertFalse(rejected.tryAttempt());
+		assertEquals(10000, rejected.getRetryAfter());
+
+		time += 10000;
+		Request probe = resilience.begin(LOCATION);
+		assertTrue(probe.tryAttempt());
+		assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+		assertFalse("only a single probe is let through", resilience.begin(LOCATION).tryAttempt());
+
+		probe.succeeded();
+		assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+		assertTrue(resilience.begin(LOCATION).tryAttempt());
+
+		ResilienceStatistics statistics = resilience.getStatistics();
+		assertEquals(2, statistics.getShortCircuitCount());
+		assertEquals(0, statistics.getOpenCircuitCount());
+	}
+
+	@Test
+	public void testFailedProbeReopensCircuit() {
+		for (int i = 0; i < 3; i++) {
+			Request request = resilience.begin(LOCATION);
+			request.tryAttempt();
+			request.failed(false);
+		}
+		time += 10000;
+		Request probe = resilience.begin(LOCATION);
+		assertTrue(probe.tryAttempt());
+		assertEquals(-1, probe.failed(true));
+		assertEquals(CircuitBreaker.State.OPEN, resilience.getCircuitBreaker(LOCATION.getHost()).getState());
+		assertFalse(resilience.begin(LOCATION).tryAttempt());
+		assertEquals(1, resilience.getStatistics().getOpenCircuitCount());
+	}
+
+	@Test
+	public void testAbortedProbeReleasesCircuit() {
+		for (int i = 0; i < 3; i++) {
+			Request request = resilience.begin(LOCATION);
+			request.tryAttempt();
+			request.failed(false);
+		}
+		time += 10000;
+		Request probe = resilience.begin(LOCATION);
+		assertTrue(probe.tryAttempt());
+		probe.aborted();
+		assertTrue(resilience.begin(LOCATION).tryAttempt());
+	}
+
+	@Test
+	public void testRetryBudgetLimitsRetries() {
+		resilience = createResilience(new RetryBudget(0.5, 2), 100);
+		int retries = 0;
+		for (int i = 0; i < 10; i++) {
+			Request request = resilience.begin(URI.create("http://host" + i + ".example.org/"));
+			assertTrue(request.tryAttempt());
+			if (request.failed(true) >= 0) {
+				retries++;
+			}
+		}
+		//2 saved up retries, plus 0.5 per request
+		assertEquals(6, retries);
+		ResilienceStatistics statistics = resilience.getStatistics();
+		assertEquals(10, statistics.getRequestCount());
+		assertEquals(6, statistics.getRetryCount());
+		assertEquals(4, statistics.getBudgetExhaustedCount());
+	}
+
+	@Test
+	public void testConnectionFailureDetection() {
+		assertTrue(RequestResilience.isConnectionFailure(new IOException(new ConnectException())));
+		assertTrue(RequestResilience.isConnectionFailure(new IOException("Stream closed")));
+		assertFalse(RequestResilience.isConnectionFailure(new IOException("Something else")));
+		assertFalse(RequestResilience.isConnectionFailure(new IllegalStateException()));
+		assertTrue(RequestResilience.isConnectionFailure(new ServiceUnavailableException(
+				new Status(IStatus.ERROR, "org.eclipse.epp.mpc.tests", 503, "Service Unavailable", null))));
+		assertFalse(RequestResilience.isConnectionFailure(new FileNotFoundException()));
+	}
+
+	@Test
+	public void testBrokenResponseBodyIsRetried() throws Exception {
+		AtomicInteger requests = new AtomicInteger();
+		ITransport transport = new ITransport() {
+
+			@Override
+			public InputStream stream(URI location, IProgressMonitor monitor) {
+				if (requests.incrementAndGet() == 1) {
+					return new InputStream() {
+						@Override
+						public int read() throws IOException {
+							throw new IOException("Stream closed");
+						}
+					};
+				}
+				return new ByteArrayInputStream("<marketplace><node id=\"1\" name=\"Node\"/></marketplace>"
+						.getBytes(StandardCharsets.UTF_8));
+			}
+		};
+		DefaultMarketplaceService service = new DefaultMarketplaceService(new URL("http://marketplace.example.org"),
+				transport);
+		service.setRequestResilience(resilience);
+
+		assertEquals("Node", service.getNode(QueryHelper.nodeById("1"), new NullProgressMonitor()).getName());
+		assertEquals(2, requests.get());
+		ResilienceStatistics statistics = resilience.getStatistics();
+		assertEquals(2, statistics.getAttemptCount());
+		assertEquals(1, statistics.getFailureCount());
+		assertEquals(1, statistics.getRetryCount());
+	}
+
+	@Test
+	public void testServiceFailsFastOnOpenCircuit() throws Exception {
+		AtomicInteger requests = new AtomicInteger();
+		ITransport transport = new ITransport() {
+
+			@Override
+			public InputStream stream(URI location, IProgressMonitor monitor) throws CoreException {
+				requests.incrementAndGet();
+				throw new CoreException(new Status(IStatus.ERROR, "org.eclipse.epp.mpc.tests", "Connection failed",
+						new ConnectException("Connection refused")));
+			}
+		};
+		DefaultMarketplaceService service = new DefaultMarketplaceService(new URL("http://marketplace.example.org"),
+				transport);
+		service.setRequestResilience(createResilience(new RetryBudget(0.5, 2), 1));
+
+		try {
+			service.getNode(QueryHelper.nodeById("1"), new NullProgressMonitor());
+			fail("Expected CoreException");
+		} catch (CoreException ex) {
+			assertFalse(ex instanceof ServiceUnavailableException);
+		}
+		assertEquals(1, requests.get());
+
+		try {
+			service.getNode(QueryHelper.nodeById("1"), new NullProgressMonitor());
+			fail("Expected ServiceUnavailableException");
+		} catch (ServiceUnavailableException ex) {
+			assertEquals(503, ex.getStatus().getCode());
+		}
+		assertEquals(1, requests.get());
+	}
+}
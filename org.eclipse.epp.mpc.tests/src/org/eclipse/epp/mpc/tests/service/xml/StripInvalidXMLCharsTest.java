@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.mpc.tests.service.xml;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+import org.eclipse.epp.internal.mpc.core.service.xml.StripInvalidXMLCharsInputStream;
+import org.eclipse.epp.internal.mpc.core.service.xml.StripInvalidXMLCharsReader;
+import org.junit.Test;
+
+public class StripInvalidXMLCharsTest {
+
+	private static final String SUPPLEMENTARY = new String(Character.toChars(0x1F600));
+
+	@Test
+	public void stripControlChars() throws IOException {
+		assertStripped("a\tb\nc\rd", "a\u0000\tb\u0001\u0002\n\u001Fc\rd\u000B\u000C");
+	}
+
+	@Test
+	public void stripConsecutiveInvalidChars() throws IOException {
+		assertStripped("", "\u0001\u0002\u0003");
+		assertStripped("ab", "\u0001\u0002a\u0003\u0004\u0005b\u0006");
+	}
+
+	@Test
+	public void stripNoncharacters() throws IOException {
+		assertStripped("a\uFFFDb", "a\uFFFE\uFFFDb\uFFFF");
+	}
+
+	@Test
+	public void keepSurrogatePairs() throws IOException {
+		assertStripped("a" + SUPPLEMENTARY + "b" + SUPPLEMENTARY, "a" + SUPPLEMENTARY + "b" + SUPPLEMENTARY);
+	}
+
+	@Test
+	public void stripUnpairedSurrogates() throws IOException {
+		char high = SUPPLEMENTARY.charAt(0);
+		char low = SUPPLEMENTARY.charAt(1);
+		//not representable in UTF-8, so only for the reader
+		assertEquals("ab", readAll(new StripInvalidXMLCharsReader(new StringReader("a" + high + "b" + low)), 10));
+		assertEquals("a", readAll(new StripInvalidXMLCharsReader(new StringReader("a" + high)), 10));
+		assertEquals("a" + SUPPLEMENTARY,
+				readAll(new StripInvalidXMLCharsReader(new StringReader("a" + high + SUPPLEMENTARY + low)), 10));
+	}
+
+	@Test
+	public void surrogatePairSplitBetweenReads() throws IOException {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 50; i++) {
+			text.append("x\u0001").append(SUPPLEMENTARY);
+		}
+		String expected = text.toString().replace("\u0001", "");
+		for (int bufferSize = 2; bufferSize < 8; bufferSize++) {
+			for (int readSize = 1; readSize < 8; readSize++) {
+				Reader reader = new StripInvalidXMLCharsReader(new StringReader(text.toString()), bufferSize);
+				assertEquals("buffer " + bufferSize + ", read " + readSize, expected, readAll(reader, readSize));
+			}
+		}
+	}
+
+	@Test
+	public void singleCharRead() throws IOException {
+		String text = "a\u0001" + SUPPLEMENTARY + "\u0002";
+		try (Reader reader = new StripInvalidXMLCharsReader(new StringReader(text))) {
+			StringBuilder result = new StringBuilder();
+			for (int c = reader.read(); c != -1; c = reader.read()) {
+				result.append((char) c);
+			}
+			assertEquals("a" + SUPPLEMENTARY, result.toString());
+		}
+	}
+
+	@Test
+	public void largeInput() throws IOException {
+		StringBuilder text = new StringBuilder();
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 100000; i++) {
+			text.append('\u0001').append(i % 10);
+			expected.append(i % 10);
+		}
+		assertStripped(expected.toString(), text.toString());
+	}
+
+	@Test
+	public void streamNoncharacterSplitBetweenReads() throws IOException {
+		String text = "ab\uFFFF\uFFFEc\u00FF\uFFFD" + SUPPLEMENTARY + "\u0001\uFFFF";
+		String expected = "abc\u00FF\uFFFD" + SUPPLEMENTARY;
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		for (int bufferSize = 3; bufferSize < 8; bufferSize++) {
+			for (int readSize = 1; readSize < 8; readSize++) {
+				InputStream in = new StripInvalidXMLCharsInputStream(new ByteArrayInputStream(bytes), bufferSize);
+				assertEquals("buffer " + bufferSize + ", read " + readSize, expected, readAll(in, readSize));
+			}
+		}
+	}
+
+	private static void assertStripped(String expected, String text) throws IOException {
+		assertEquals(expected, readAll(new StripInvalidXMLCharsReader(new StringReader(text)), 8192));
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		assertEquals(expected, readAll(new StripInvalidXMLCharsInputStream(new ByteArrayInputStream(bytes)), 8192));
+	}
+
+	private static String readAll(Reader reader, int readSize) throws IOException {
+		try (Reader in = reader) {
+			StringBuilder result = new StringBuilder();
+			char[] buffer = new char[readSize + 2];
+			for (int read = in.read(buffer, 1, readSize); read != -1; read = in.read(buffer, 1, readSize)) {
+				result.append(buffer, 1, read);
+			}
+			return result.toString();
+		}
+	}
+
+	private static String readAll(InputStream stream, int readSize) throws IOException {
+		try (InputStream in = stream) {
+			ByteArrayOutputStream result = new ByteArrayOutputStream();
+			byte[] buffer = new byte[readSize + 2];
+			for (int read = in.read(buffer, 1, readSize); read != -1; read = in.read(buffer, 1, readSize)) {
+				result.write(buffer, 1, read);
+			}
+			return new String(result.toByteArray(), StandardCharsets.UTF_8);
+		}
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2018 The Eclipse Foundation and others.
+ * Copyright (c) 2010, 2019 The Eclipse Foundation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v2.0
  * which accompanies this distribution, and is available at
@@ -17,7 +17,9 @@ import static org.hamcrest.Matchers.containsString;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -29,6 +31,8 @@ import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.xml.parsers.ParserConfigurationException;
 
@@ -42,6 +46,7 @@ import org.eclipse.epp.internal.mpc.core.model.Recent;
 import org.eclipse.epp.internal.mpc.core.model.Related;
 import org.eclipse.epp.internal.mpc.core.model.Search;
 import org.eclipse.epp.internal.mpc.core.service.MarketplaceUnmarshaller;
+import org.eclipse.epp.internal.mpc.core.service.xml.Unmarshaller;
 import org.eclipse.epp.mpc.core.model.ICatalog;
 import org.eclipse.epp.mpc.core.model.ICatalogBranding;
 import org.eclipse.epp.mpc.core.model.ICatalogs;
@@ -54,6 +59,7 @@ import org.eclipse.epp.mpc.core.model.ITag;
 import org.eclipse.epp.mpc.core.service.UnmarshalException;
 import org.junit.Before;
 import org.junit.Test;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
 /**
@@ -259,6 +265,97 @@ public class UnmarshallerTest {
 		assertNull(lastNode.getInstallsRecent());
 	}
 
+	@Test
+	public void streamedSearch() throws IOException, UnmarshalException {
+		List<INode> streamed = new ArrayList<>();
+		Marketplace marketplace;
+		try (InputStream in = getResourceAsStream("resources/search.xml")) {
+			marketplace = unmarshaller.unmarshal(in, Marketplace.class, streamed::add, true,
+					new NullProgressMonitor());
+		}
+		Search search = marketplace.getSearch();
+		assertEquals(7, streamed.size());
+		assertEquals(7, search.getNode().size());
+		for (int i = 0; i < streamed.size(); i++) {
+			assertSame(search.getNode().get(i), streamed.get(i));
+		}
+	}
+
+	@Test
+	public void streamedSearchWithoutRetainingNodes() throws IOException, UnmarshalException {
+		List<INode> streamed = new ArrayList<>();
+		Marketplace marketplace;
+		try (InputStream in = getResourceAsStream("resources/search.xml")) {
+			marketplace = unmarshaller.unmarshal(in, Marketplace.class, streamed::add, false,
+					new NullProgressMonitor());
+		}
+		Search search = marketplace.getSearch();
+		assertEquals(Integer.valueOf(62), search.getCount());
+		assertTrue(search.getNode().isEmpty());
+		assertEquals(7, streamed.size());
+		assertEquals("983", streamed.get(0).getId());
+		assertEquals("Run All Tests", streamed.get(0).getName());
+		assertEquals("1011", streamed.get(6).getId());
+	}
+
+	@Test
+	public void streamedNodesArePublishedBeforeEndOfDocument() throws IOException {
+		String content = new String(readAll("resources/search.xml"), StandardCharsets.UTF_8);
+		//cut off the response in the middle of the second node
+		int secondNode = content.indexOf("<node", content.indexOf("</node>"));
+		byte[] truncated = content.substring(0, secondNode + 20).getBytes(StandardCharsets.UTF_8);
+
+		List<INode> streamed = new ArrayList<>();
+		try {
+			unmarshaller.unmarshal(new ByteArrayInputStream(truncated), Marketplace.class, streamed::add, true,
+					new NullProgressMonitor());
+			fail("Expected UnmarshalException");
+		} catch (UnmarshalException e) {
+			//expected
+		}
+		assertEquals(1, streamed.size());
+		assertEquals("983", streamed.get(0).getId());
+	}
+
+	@Test
+	public void reusedUnmarshaller() throws Exception {
+		Unmarshaller reused = new Unmarshaller();
+
+		Marketplace first = parse(reused, "resources/search.xml");
+		reused.reset();
+		assertNull(reused.getModel());
+		Marketplace node = parse(reused, "resources/node.xml");
+		reused.reset();
+		Marketplace second = parse(reused, "resources/search.xml");
+
+		assertNotSame(first, second);
+		assertEquals(1, node.getNode().size());
+		assertEquals(7, first.getSearch().getNode().size());
+		assertEquals(7, second.getSearch().getNode().size());
+		for (int i = 0; i < 7; i++) {
+			INode firstNode = first.getSearch().getNode().get(i);
+			INode secondNode = second.getSearch().getNode().get(i);
+			assertNotSame(firstNode, secondNode);
+			assertEquals(firstNode.getId(), secondNode.getId());
+			assertEquals(firstNode.getName(), secondNode.getName());
+			assertEquals(firstNode.getBody(), secondNode.getBody());
+			assertEquals(firstNode.getCategories().getCategory().size(),
+					secondNode.getCategories().getCategory().size());
+		}
+	}
+
+	@Test
+	public void unmarshalAfterFailure() throws Exception {
+		try {
+			invalidContent();
+			fail("Expected UnmarshalException");
+		} catch (UnmarshalException e) {
+			//expected
+		}
+		search();
+		search();
+	}
+
 	@Test
 	public void favorites() throws IOException, UnmarshalException {
 		// from http://www.eclipseplugincentral.net/favorites/top/api/p
@@ -478,12 +575,25 @@ public class UnmarshallerTest {
 	public void invalidLeadingBytes() throws Exception {
 		ByteBuffer buffer = ByteBuffer.allocate(4096);
 		buffer.put((byte) 0);
-		buffer.put((byte) 0);
+		buffer.put((byte) 'x');
 		buffer = readResource("resources/catalogs.xml", buffer);
 		buffer.flip();
 		process(buffer);
 	}
 
+	@Test
+	public void strippedLeadingControlChars() throws Exception {
+		ByteBuffer buffer = ByteBuffer.allocate(4096);
+		buffer.put((byte) 0);
+		buffer.put((byte) 0);
+		buffer.put((byte) 0x1B);
+		buffer = readResource("resources/catalogs.xml", buffer);
+		buffer.flip();
+		Object model = process(buffer);
+		assertTrue(model instanceof ICatalogs);
+		assertEquals(3, ((ICatalogs) model).getCatalogs().size());
+	}
+
 	@Test(expected = UnmarshalException.class)
 	public void invalidBytes() throws Exception {
 		ByteBuffer buffer = readResource("resources/catalogs.xml", null);
@@ -567,6 +677,14 @@ public class UnmarshallerTest {
 		return buffer;
 	}
 
+	private static byte[] readAll(String resource) throws IOException {
+		ByteBuffer buffer = readResource(resource, null);
+		buffer.flip();
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+		return bytes;
+	}
+
 	private static InputStream getResourceAsStream(String resource) {
 		InputStream in = UnmarshallerTest.class.getResourceAsStream(resource);
 		if (in == null) {
@@ -575,6 +693,13 @@ public class UnmarshallerTest {
 		return in;
 	}
 
+	private static Marketplace parse(Unmarshaller unmarshaller, String resource) throws IOException, SAXException {
+		try (InputStream in = getResourceAsStream(resource)) {
+			unmarshaller.getXMLReader().parse(new InputSource(in));
+		}
+		return (Marketplace) unmarshaller.getModel();
+	}
+
 	private Object processResource(String resource) throws IOException, UnmarshalException {
 		InputStream in = getResourceAsStream(resource);
 		return process(in);
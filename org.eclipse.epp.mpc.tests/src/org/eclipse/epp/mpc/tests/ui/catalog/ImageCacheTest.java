@@ -0,0 +1,278 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.mpc.tests.ui.catalog;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.epp.internal.mpc.ui.catalog.ImageCache;
+import org.eclipse.epp.internal.mpc.ui.catalog.ImageCache.ImageReference;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.ImageLoader;
+import org.eclipse.swt.graphics.PaletteData;
+import org.eclipse.swt.graphics.RGB;
+import org.eclipse.swt.graphics.Rectangle;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.Shell;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ImageCacheTest {
+
+	private static final PaletteData RGB_PALETTE = new PaletteData(0xFF0000, 0xFF00, 0xFF);
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Display display;
+
+	private ImageCache cache;
+
+	private Shell shell;
+
+	@After
+	public void tearDown() {
+		if (shell != null) {
+			shell.dispose();
+		}
+		if (cache != null && !cache.isDisposed()) {
+			cache.dispose();
+		}
+	}
+
+	@Test
+	public void testDownscaleKeepsAspectRatio() {
+		ImageData scaled = ImageCache.downscale(image(400, 100, 0x808080), 200, 200);
+		assertEquals(200, scaled.width);
+		assertEquals(50, scaled.height);
+
+		scaled = ImageCache.downscale(image(100, 400, 0x808080), 200, 50);
+		assertEquals(13, scaled.width);
+		assertEquals(50, scaled.height);
+	}
+
+	@Test
+	public void testImageThatFitsIsNotScaled() {
+		ImageData source = image(32, 32, 0x808080);
+		assertSame(source, ImageCache.downscale(source, 32, 32));
+		assertSame(source, ImageCache.downscale(source, 64, 48));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidSize() {
+		ImageCache.downscale(image(32, 32, 0x808080), 0, 32);
+	}
+
+	@Test
+	public void testDownscaleAveragesColors() {
+		ImageData source = image(2, 2, 0x000000);
+		source.setPixel(0, 0, 0xFF0000);
+		source.setPixel(1, 0, 0xFF0000);
+		source.setPixel(0, 1, 0x0000FF);
+		source.setPixel(1, 1, 0x0000FF);
+
+		ImageData scaled = ImageCache.downscale(source, 1, 1);
+		assertEquals(1, scaled.width);
+		assertEquals(1, scaled.height);
+		assertEquals(new RGB(127, 0, 127), scaled.palette.getRGB(scaled.getPixel(0, 0)));
+		assertEquals(SWT.TRANSPARENCY_NONE, scaled.getTransparencyType());
+	}
+
+	@Test
+	public void testDownscaleIgnoresColorOfTransparentPixels() {
+		ImageData source = image(2, 1, 0x00FF00);
+		source.setPixel(1, 0, 0xFF0000);
+		source.alphaData = new byte[] { 0, (byte) 255 };
+
+		ImageData scaled = ImageCache.downscale(source, 1, 1);
+		assertEquals(SWT.TRANSPARENCY_ALPHA, scaled.getTransparencyType());
+		assertEquals(new RGB(255, 0, 0), scaled.palette.getRGB(scaled.getPixel(0, 0)));
+		assertEquals(127, scaled.getAlpha(0, 0));
+	}
+
+	@Test
+	public void testDownscaleTransparentPixel() {
+		ImageData source = new ImageData(4, 4, 8,
+				new PaletteData(new RGB[] { new RGB(255, 255, 255), new RGB(0, 0, 255) }));
+		for (int x = 0; x < 4; x++) {
+			for (int y = 0; y < 4; y++) {
+				source.setPixel(x, y, x < 2 ? 0 : 1);
+			}
+		}
+		source.transparentPixel = 0;
+
+		ImageData scaled = ImageCache.downscale(source, 2, 2);
+		assertEquals(2, scaled.width);
+		assertEquals(2, scaled.height);
+		assertEquals(SWT.TRANSPARENCY_ALPHA, scaled.getTransparencyType());
+		assertEquals(0, scaled.getAlpha(0, 0));
+		assertEquals(255, scaled.getAlpha(1, 1));
+		assertEquals(new RGB(0, 0, 255), scaled.palette.getRGB(scaled.getPixel(1, 1)));
+	}
+
+	@Test
+	public void testReferenceCounting() throws Exception {
+		createCache(ImageCache.DEFAULT_MAXIMUM_PIXELS);
+		URL url = imageFile("icon", 16, 16);
+		ImageReference first = load(url);
+		ImageReference second = load(url);
+		assertSame(first.getImage(), second.getImage());
+		assertEquals(1, cache.getSize());
+		assertEquals(16 * 16, cache.getPixelCount());
+
+		first.release();
+		first.release();
+		second.release();
+		assertFalse("unreferenced images stay cached within the budget", second.getImage().isDisposed());
+		assertEquals(1, cache.getSize());
+
+		ImageReference third = load(url);
+		assertSame(first.getImage(), third.getImage());
+		third.release();
+	}
+
+	@Test
+	public void testReferencedImagesAreKeptOverBudget() throws Exception {
+		createCache(0);
+		ImageReference reference = load(imageFile("icon", 16, 16));
+		assertFalse(reference.getImage().isDisposed());
+		assertEquals(1, cache.getSize());
+		assertEquals(16 * 16, cache.getPixelCount());
+
+		reference.release();
+		assertTrue(reference.getImage().isDisposed());
+		assertEquals(0, cache.getSize());
+		assertEquals(0, cache.getPixelCount());
+	}
+
+	@Test
+	public void testReleaseOnDispose() throws Exception {
+		createCache(0);
+		shell = new Shell(display);
+		Label label = new Label(shell, SWT.NONE);
+		ImageReference reference = load(imageFile("icon", 16, 16));
+		assertTrue(reference.releaseOnDispose(label));
+		label.setImage(reference.getImage());
+		assertFalse(reference.getImage().isDisposed());
+
+		label.dispose();
+		assertTrue(reference.getImage().isDisposed());
+		assertEquals(0, cache.getSize());
+
+		reference = load(imageFile("other", 16, 16));
+		assertFalse(reference.releaseOnDispose(label));
+		assertTrue(reference.getImage().isDisposed());
+	}
+
+	@Test
+	public void testEvictsLeastRecentlyUsed() throws Exception {
+		createCache(2 * 16 * 16);
+		URL first = imageFile("first", 16, 16);
+		URL second = imageFile("second", 16, 16);
+		ImageReference firstReference = load(first);
+		ImageReference secondReference = load(second);
+		firstReference.release();
+		secondReference.release();
+		//use the first image again, so the second one is the least recently used
+		load(first).release();
+
+		ImageReference thirdReference = load(imageFile("third", 16, 16));
+		assertEquals(2, cache.getSize());
+		assertEquals(2 * 16 * 16, cache.getPixelCount());
+		assertTrue(secondReference.getImage().isDisposed());
+		assertFalse(firstReference.getImage().isDisposed());
+		assertFalse(thirdReference.getImage().isDisposed());
+		thirdReference.release();
+	}
+
+	@Test
+	public void testScalesDownLargeImages() throws Exception {
+		createCache(ImageCache.DEFAULT_MAXIMUM_PIXELS);
+		ImageReference reference = load(imageFile("screenshot", 400, 100), 200, 200);
+		Rectangle bounds = reference.getImage().getBounds();
+		assertEquals(200, bounds.width);
+		assertEquals(50, bounds.height);
+		assertEquals(200 * 50, cache.getPixelCount());
+		reference.release();
+	}
+
+	@Test
+	public void testDispose() throws Exception {
+		createCache(ImageCache.DEFAULT_MAXIMUM_PIXELS);
+		ImageReference reference = load(imageFile("icon", 16, 16));
+		cache.dispose();
+		assertTrue(cache.isDisposed());
+		assertTrue("referenced images are disposed with the cache", reference.getImage().isDisposed());
+		assertEquals(0, cache.getSize());
+		assertEquals(0, cache.getPixelCount());
+
+		ImageReference[] loaded = new ImageReference[] { reference };
+		cache.load(imageFile("other", 16, 16), 32, 32, r -> loaded[0] = r);
+		assertNull(loaded[0]);
+	}
+
+	private void createCache(long maximumPixels) {
+		display = Display.getDefault();
+		cache = new ImageCache(display, maximumPixels);
+	}
+
+	private URL imageFile(String name, int width, int height) throws IOException {
+		File file = new File(folder.getRoot(), name + ".png");
+		if (!file.exists()) {
+			ImageLoader loader = new ImageLoader();
+			loader.data = new ImageData[] { image(width, height, 0x808080) };
+			loader.save(file.getAbsolutePath(), SWT.IMAGE_PNG);
+		}
+		return file.toURI().toURL();
+	}
+
+	private ImageReference load(URL url) throws InterruptedException {
+		return load(url, 32, 32);
+	}
+
+	private ImageReference load(URL url, int maxWidth, int maxHeight) throws InterruptedException {
+		ImageReference[] loaded = new ImageReference[1];
+		boolean[] delivered = new boolean[1];
+		cache.load(url, maxWidth, maxHeight, reference -> {
+			loaded[0] = reference;
+			delivered[0] = true;
+		});
+		long timeout = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+		while (!delivered[0] && System.currentTimeMillis() < timeout) {
+			if (!display.readAndDispatch()) {
+				Thread.sleep(10);
+			}
+		}
+		assertTrue("image was not delivered", delivered[0]);
+		assertNotNull(loaded[0]);
+		return loaded[0];
+	}
+
+	private static ImageData image(int width, int height, int rgb) {
+		ImageData image = new ImageData(width, height, 24, RGB_PALETTE);
+		for (int x = 0; x < width; x++) {
+			for (int y = 0; y < height; y++) {
+				image.setPixel(x, y, rgb);
+			}
+		}
+		return image;
+	}
+}
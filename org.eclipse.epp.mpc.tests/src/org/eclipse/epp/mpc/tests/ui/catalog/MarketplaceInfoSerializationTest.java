@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2018 The Eclipse Foundation and others.
+ * Copyright (c) 2010, 2019 The Eclipse Foundation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v2.0
  * which accompanies this distribution, and is available at
@@ -13,6 +13,7 @@
  *******************************************************************************/
 package org.eclipse.epp.mpc.tests.ui.catalog;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
@@ -26,6 +27,8 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.when;
 
+import java.beans.XMLEncoder;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -35,6 +38,8 @@ import java.net.URLConnection;
 import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.text.MessageFormat;
 
 import org.eclipse.core.runtime.FileLocator;
@@ -217,9 +222,10 @@ public class MarketplaceInfoSerializationTest {
 	@Before
 	@After
 	public void clearTestBundleRegistry() {
-		File dataFile = Platform.getBundle(MarketplaceClientUi.BUNDLE_ID).getBundleContext().getDataFile(
-				"MarketplaceInfo.xml");
-		assertTrue(dataFile == null || !dataFile.isFile() || dataFile.delete());
+		for (String name : new String[] { "MarketplaceInfo.bin", "MarketplaceInfo.xml" }) {
+			File dataFile = Platform.getBundle(MarketplaceClientUi.BUNDLE_ID).getBundleContext().getDataFile(name);
+			assertTrue(dataFile == null || !dataFile.isFile() || dataFile.delete());
+		}
 	}
 
 	@Test
@@ -252,7 +258,7 @@ public class MarketplaceInfoSerializationTest {
 	@Test
 	public void testResolveConfigurationAreaRegistryFile() throws MalformedURLException {
 		File configurationAreaRegistryFile = catalogRegistry.computeConfigurationAreaRegistryFile();
-		assertEquals(new File(configurationDirectory, "org.eclipse.epp.mpc.ui/MarketplaceInfo.xml"),
+		assertEquals(new File(configurationDirectory, "org.eclipse.epp.mpc.ui/MarketplaceInfo.bin"),
 				configurationAreaRegistryFile);
 	}
 
@@ -368,7 +374,7 @@ public class MarketplaceInfoSerializationTest {
 
 	@Test
 	public void load() throws Exception {
-		File registryFile = getUserHomeRegistryFile();
+		File registryFile = getXmlRegistryFile(getUserHomeRegistryFile());
 		copyRegistryFile(registryFile, 100);
 
 		MarketplaceInfo loaded = loadMarketplaceInfo();
@@ -381,6 +387,38 @@ public class MarketplaceInfoSerializationTest {
 		assertEquals(catalogRegistry.getNodeKeyToIU(), loaded.getNodeKeyToIU());
 	}
 
+	@Test
+	public void migrateFromXml() throws Exception {
+		File registryFile = getUserHomeRegistryFile();
+		File xmlRegistryFile = getXmlRegistryFile(registryFile);
+		copyRegistryFile(xmlRegistryFile, 100);
+		byte[] xmlContent = Files.readAllBytes(xmlRegistryFile.toPath());
+
+		TestMarketplaceInfo loaded = catalogRegistry.load();
+		assertNotNull(loaded);
+		assertEquals(xmlRegistryFile, loaded.loadedFrom);
+		new MarketplaceInfo(loaded).save(registryFile);
+		assertFalse("Registry file in XML format",
+				new String(Files.readAllBytes(registryFile.toPath()), StandardCharsets.UTF_8).startsWith("<?xml"));
+		assertArrayEquals("XML registry file was changed", xmlContent, Files.readAllBytes(xmlRegistryFile.toPath()));
+
+		TestMarketplaceInfo migrated = catalogRegistry.load();
+		assertNotNull(migrated);
+		assertEquals(registryFile, migrated.loadedFrom);
+		assertEquals(loaded.getIuToNodeKey(), migrated.getIuToNodeKey());
+		assertEquals(loaded.getNodeKeyToIU(), migrated.getNodeKeyToIU());
+	}
+
+	@Test
+	public void loadIncompleteXmlKeepsFile() throws Exception {
+		File xmlRegistryFile = getXmlRegistryFile(getUserHomeRegistryFile());
+		copyRegistryFile(xmlRegistryFile, 20);
+
+		MarketplaceInfo loaded = loadMarketplaceInfo();
+		assertNull("Unexpectedly loaded from " + loadPath(loaded), loaded);
+		assertTrue("XML registry file was deleted", xmlRegistryFile.exists());
+	}
+
 	@Test
 	public void saveAndLoad() throws Exception {
 		MarketplaceNodeCatalogItem item = MarketplaceInfoTest.createTestItem();
@@ -403,6 +441,29 @@ public class MarketplaceInfoSerializationTest {
 		assertEquals(catalogRegistry.getNodeKeyToIU(), loaded.getNodeKeyToIU());
 	}
 
+	@Test
+	public void saveAndLoadLargeRegistry() throws Exception {
+		MarketplaceInfoTest.mapLargeRegistry(catalogRegistry, 2000);
+
+		File registryFile = getUserHomeRegistryFile();
+		new MarketplaceInfo(catalogRegistry).save(registryFile);
+		File xmlRegistryFile = getXmlRegistryFile(registryFile);
+		try (XMLEncoder encoder = new XMLEncoder(new BufferedOutputStream(new FileOutputStream(xmlRegistryFile)))) {
+			//the old bean-based format
+			encoder.writeObject(new MarketplaceInfo(catalogRegistry));
+		}
+
+		MarketplaceInfo loaded = catalogRegistry.doLoad(registryFile);
+		assertNotNull(loaded);
+		assertEquals(catalogRegistry.getIuToNodeKey(), loaded.getIuToNodeKey());
+		assertEquals(catalogRegistry.getNodeKeyToIU(), loaded.getNodeKeyToIU());
+
+		MarketplaceInfo migrated = catalogRegistry.doLoad(xmlRegistryFile);
+		assertNotNull(migrated);
+		assertEquals(catalogRegistry.getIuToNodeKey(), migrated.getIuToNodeKey());
+		assertEquals(catalogRegistry.getNodeKeyToIU(), migrated.getNodeKeyToIU());
+	}
+
 	@Test
 	public void loadNonExisting() {
 		MarketplaceInfo loaded = loadMarketplaceInfo();
@@ -506,10 +567,14 @@ public class MarketplaceInfoSerializationTest {
 	}
 
 	private File getUserHomeRegistryFile() {
-		return new File(userHome, ".eclipse/mpc/MarketplaceInfo.xml");
+		return new File(userHome, ".eclipse/mpc/MarketplaceInfo.bin");
 	}
 
 	private File getLegacyUserHomeRegistryFile() {
-		return new File(userHome, ".eclipse_mpc/MarketplaceInfo.xml");
+		return new File(userHome, ".eclipse_mpc/MarketplaceInfo.bin");
+	}
+
+	private static File getXmlRegistryFile(File registryFile) {
+		return new File(registryFile.getParentFile(), "MarketplaceInfo.xml");
 	}
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2018 The Eclipse Foundation and others.
+ * Copyright (c) 2010, 2019 The Eclipse Foundation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v2.0
  * which accompanies this distribution, and is available at
@@ -18,8 +18,10 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
+import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -74,6 +76,23 @@ public class MarketplaceInfoTest {
 		node.getIus().getIuElements().add(new Iu(iuId));
 	}
 
+	/**
+	 * Map the given number of nodes, alternating between two marketplaces. Each node shares two of its IUs with its
+	 * neighbours, only its first IU "org.example.node&lt;id&gt;.iu0" is unique.
+	 */
+	public static void mapLargeRegistry(MarketplaceInfo registry, int nodes) throws MalformedURLException {
+		URL[] marketplaces = { new URL("http://marketplace.eclipse.org"), new URL("http://marketplace.example.org") };
+		for (int i = 0; i < nodes; i++) {
+			Node node = new Node();
+			node.setId(String.valueOf(i));
+			node.setIus(new Ius());
+			for (int j = 0; j < 3; j++) {
+				addIu(node, "org.example.node" + (i - j) + ".iu" + j);
+			}
+			registry.map(marketplaces[i % marketplaces.length], node);
+		}
+	}
+
 	@Test
 	public void addMapCatalogNode() {
 		assertEquals(0, catalogRegistry.getNodeKeyToIU().size());
@@ -164,6 +183,94 @@ public class MarketplaceInfoTest {
 		return installableUnit;
 	}
 
+	@Test
+	public void remapCatalogNode() {
+		catalogRegistry.map(item.getMarketplaceUrl(), item.getData());
+
+		Node node = (Node) item.getData();
+		node.setIus(new Ius());
+		addIu(node, "com.example.test.a2");
+		addIu(node, "com.example.test.b1");
+		catalogRegistry.map(item.getMarketplaceUrl(), node);
+
+		assertEquals(1, catalogRegistry.getNodeKeyToIU().size());
+		assertEquals(Arrays.asList("com.example.test.a2", "com.example.test.b1"),
+				catalogRegistry.getNodeKeyToIU().values().iterator().next());
+		assertFalse(catalogRegistry.getIuToNodeKey().containsKey("com.example.test.a1"));
+		assertEquals(1, catalogRegistry.getIuToNodeKey().get("com.example.test.b1").size());
+
+		node.setIus(new Ius());
+		catalogRegistry.map(item.getMarketplaceUrl(), node);
+		assertTrue(catalogRegistry.getNodeKeyToIU().isEmpty());
+		assertTrue(catalogRegistry.getIuToNodeKey().isEmpty());
+	}
+
+	@Test
+	public void computeInstalledNodesPerMarketplace() throws Exception {
+		catalogRegistry.map(item.getMarketplaceUrl(), item.getData());
+
+		URL otherMarketplace = new URL("http://marketplace.example.org");
+		Node otherNode = new Node();
+		otherNode.setId("456");
+		otherNode.setIus(new Ius());
+		addIu(otherNode, "com.example.test.a1");
+		catalogRegistry.map(otherMarketplace, otherNode);
+		for (int i = 0; i < 10; i++) {
+			Node node = new Node();
+			node.setId("other" + i);
+			node.setIus(new Ius());
+			addIu(node, "com.example.other" + i);
+			catalogRegistry.map(otherMarketplace, node);
+		}
+
+		Map<String, IInstallableUnit> installedIus = new HashMap<>();
+		addIU(installedIus, item.getInstallableUnits().get(0) + ".feature.group");
+
+		Set<? extends INode> installedNodes = catalogRegistry.computeInstalledNodes(item.getMarketplaceUrl(),
+				installedIus);
+		assertEquals(1, installedNodes.size());
+		assertEquals(item.getId(), installedNodes.iterator().next().getId());
+
+		installedNodes = catalogRegistry.computeInstalledNodes(otherMarketplace, installedIus);
+		assertEquals(1, installedNodes.size());
+		assertEquals("456", installedNodes.iterator().next().getId());
+
+		for (int i = 0; i < 20; i++) {
+			addIU(installedIus, "com.example.unrelated" + i);
+		}
+		installedNodes = catalogRegistry.computeInstalledNodes(otherMarketplace, installedIus);
+		assertEquals(1, installedNodes.size());
+		assertEquals("456", installedNodes.iterator().next().getId());
+
+		installedNodes = catalogRegistry.computeInstalledNodes(new URL("http://unknown.example.org"), installedIus);
+		assertTrue(installedNodes.isEmpty());
+	}
+
+	@Test
+	public void computeInstalledNodesLargeRegistry() throws Exception {
+		mapLargeRegistry(catalogRegistry, 5000);
+
+		Map<String, IInstallableUnit> installedIus = new HashMap<>();
+		Set<String> expectedIds = new HashSet<>();
+		for (int i = 0; i < 3000; i++) {
+			if (i % 10 == 0) {
+				addIU(installedIus, "org.example.node" + i + ".iu0.feature.group");
+				expectedIds.add(String.valueOf(i));
+			} else {
+				addIU(installedIus, "org.example.other" + i);
+			}
+		}
+
+		Set<String> installedIds = new HashSet<>();
+		for (INode node : catalogRegistry.computeInstalledNodes(new URL("http://marketplace.eclipse.org"),
+				installedIus)) {
+			installedIds.add(node.getId());
+		}
+		assertEquals(expectedIds, installedIds);
+		assertTrue(catalogRegistry.computeInstalledNodes(new URL("http://marketplace.example.org"), installedIus)
+				.isEmpty());
+	}
+
 	@Test
 	public void computeInstalled() {
 		assertTrue(item.getInstallableUnits().size() > 1);
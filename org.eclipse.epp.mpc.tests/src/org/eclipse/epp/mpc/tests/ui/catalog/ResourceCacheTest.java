@@ -0,0 +1,198 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.mpc.tests.ui.catalog;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.eclipse.epp.internal.mpc.ui.catalog.ResourceCache;
+import org.eclipse.epp.internal.mpc.ui.catalog.ResourceCache.Entry;
+import org.eclipse.epp.internal.mpc.ui.catalog.ResourceProvider;
+import org.eclipse.epp.internal.mpc.ui.catalog.ResourceProvider.ResourceFuture;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ResourceCacheTest {
+
+	private static final String URL = "https://marketplace.eclipse.org/sites/default/files/logo.png";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private ResourceCache cache;
+
+	@Before
+	public void setUp() throws Exception {
+		cache = new ResourceCache(folder.newFolder("resources"), 1000);
+	}
+
+	@Test
+	public void testPutAndGet() throws Exception {
+		assertNull(cache.get(URL));
+		cache.put(URL, "\"abc\"", "Tue, 15 Nov 1994 08:12:31 GMT", content("PNG"));
+
+		Entry entry = cache.get(URL);
+		assertNotNull(entry);
+		assertEquals("\"abc\"", entry.getETag());
+		assertEquals("Tue, 15 Nov 1994 08:12:31 GMT", entry.getLastModified());
+		assertTrue(entry.hasValidators());
+		assertEquals("PNG", read(entry));
+		assertEquals(3, cache.getSize());
+	}
+
+	@Test
+	public void testSurvivesRestart() throws Exception {
+		cache.put(URL, "\"abc\"", null, content("PNG"));
+
+		ResourceCache restarted = new ResourceCache(cache.getDirectory(), 1000);
+		Entry entry = restarted.get(URL);
+		assertNotNull(entry);
+		assertEquals("\"abc\"", entry.getETag());
+		assertEquals("PNG", read(entry));
+		assertEquals(3, restarted.getSize());
+	}
+
+	@Test
+	public void testSameContentIsStoredOnce() throws Exception {
+		Entry first = cache.put(URL, null, null, content("PNG"));
+		Entry second = cache.put(URL + "?v=2", null, null, content("PNG"));
+
+		assertEquals(first.getContentHash(), second.getContentHash());
+		assertEquals(first.getFile(), second.getFile());
+		assertEquals(3, cache.getSize());
+		assertNotNull(cache.get(URL));
+		assertNotNull(cache.get(URL + "?v=2"));
+	}
+
+	@Test
+	public void testReplace() throws Exception {
+		cache.put(URL, "\"1\"", null, content("PNG"));
+		cache.put(URL, "\"2\"", null, content("GIF89a"));
+
+		Entry entry = cache.get(URL);
+		assertEquals("\"2\"", entry.getETag());
+		assertEquals("GIF89a", read(entry));
+	}
+
+	@Test
+	public void testRevalidated() throws Exception {
+		cache.put(URL, "\"abc\"", null, content("PNG"));
+		Entry entry = cache.get(URL);
+		Thread.sleep(20);
+		assertTrue(entry.getAge() >= 20);
+
+		Entry revalidated = cache.revalidated(entry);
+		assertTrue(revalidated.getAge() < entry.getAge());
+		assertTrue(cache.get(URL).getAge() < entry.getAge());
+		assertEquals("\"abc\"", revalidated.getETag());
+		assertEquals("PNG", read(revalidated));
+	}
+
+	@Test
+	public void testRemoveAndClear() throws Exception {
+		cache.put(URL, null, null, content("PNG"));
+		cache.put(URL + "?v=2", null, null, content("GIF89a"));
+		cache.remove(URL);
+		assertNull(cache.get(URL));
+		assertNotNull(cache.get(URL + "?v=2"));
+
+		cache.clear();
+		assertNull(cache.get(URL + "?v=2"));
+		assertEquals(0, cache.getSize());
+	}
+
+	@Test
+	public void testEvictsLeastRecentlyUsed() throws Exception {
+		cache.put(URL + 1, null, null, content(body('1')));
+		cache.put(URL + 2, null, null, content(body('2')));
+		cache.put(URL + 3, null, null, content(body('3')));
+		//file times might only have a resolution of seconds, so set them explicitly
+		setLastUsed(URL + 1, 3000);
+		setLastUsed(URL + 2, 1000);
+		setLastUsed(URL + 3, 2000);
+
+		cache.put(URL + 4, null, null, content(body('4')));
+
+		assertTrue(cache.getSize() <= 1000);
+		assertNull(cache.get(URL + 2));
+		assertNotNull(cache.get(URL + 1));
+		assertNotNull(cache.get(URL + 4));
+		assertEquals("evicted URL was forgotten", 3,
+				cache.getDirectory().listFiles((dir, name) -> name.endsWith(".properties")).length);
+	}
+
+	@Test
+	public void testRetainedContentIsNotEvicted() throws Exception {
+		cache.put(URL + 1, null, null, content(body('1')));
+		cache.put(URL + 2, null, null, content(body('2')));
+		cache.put(URL + 3, null, null, content(body('3')));
+		setLastUsed(URL + 1, 1000);
+		setLastUsed(URL + 2, 2000);
+		setLastUsed(URL + 3, 3000);
+		Entry retained = cache.get(URL + 1);
+		cache.retain(retained);
+		assertTrue(retained.getFile().setLastModified(1000));
+
+		cache.put(URL + 4, null, null, content(body('4')));
+
+		assertTrue(cache.getSize() <= 1000);
+		assertTrue(retained.getFile().isFile());
+		assertNotNull(cache.get(URL + 1));
+		assertNull(cache.get(URL + 2));
+	}
+
+	@Test
+	public void testProviderServesCachedResource() throws Exception {
+		Entry entry = cache.put(URL, "\"abc\"", null, content("PNG"));
+		ResourceProvider provider = new ResourceProvider(cache);
+		try {
+			ResourceFuture resource = provider.retrieveResource("test", URL);
+			assertTrue(resource.isDone());
+			URL localURL = resource.getLocalURL();
+			assertNotNull(localURL);
+			assertEquals(entry.getFile(), new File(localURL.toURI()));
+			assertSame(resource, provider.retrieveResource("test", new URI(URL)));
+		} finally {
+			provider.dispose();
+		}
+		assertTrue("cache is kept after dispose", entry.getFile().isFile());
+	}
+
+	private void setLastUsed(String url, long time) {
+		Entry entry = cache.get(url);
+		assertNotNull(entry);
+		assertTrue(entry.getFile().setLastModified(time));
+	}
+
+	private static String body(char c) {
+		return new String(new char[300]).replace('\0', c);
+	}
+
+	private static InputStream content(String content) {
+		return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static String read(Entry entry) throws IOException {
+		return new String(Files.readAllBytes(entry.getFile().toPath()), StandardCharsets.UTF_8);
+	}
+}
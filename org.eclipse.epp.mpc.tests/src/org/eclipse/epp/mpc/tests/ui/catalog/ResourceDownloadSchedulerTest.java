@@ -0,0 +1,206 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.mpc.tests.ui.catalog;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.epp.internal.mpc.ui.catalog.ResourceDownloadScheduler;
+import org.eclipse.epp.internal.mpc.ui.catalog.ResourceDownloadScheduler.Priority;
+import org.junit.After;
+import org.junit.Test;
+
+public class ResourceDownloadSchedulerTest {
+
+	private final List<String> downloaded = Collections.synchronizedList(new ArrayList<String>());
+
+	private final CountDownLatch blocker = new CountDownLatch(1);
+
+	private ResourceDownloadScheduler scheduler;
+
+	@After
+	public void tearDown() {
+		blocker.countDown();
+		if (scheduler != null) {
+			scheduler.cancelAll();
+		}
+	}
+
+	private void block(String resourceName) throws InterruptedException {
+		CountDownLatch started = new CountDownLatch(1);
+		scheduler.schedule(resourceName, Priority.PREFETCH, monitor -> {
+			started.countDown();
+			await(blocker);
+			downloaded.add(resourceName);
+		});
+		assertTrue(started.await(10, TimeUnit.SECONDS));
+	}
+
+	private void schedule(String resourceName, Priority priority, CountDownLatch done) {
+		scheduler.schedule(resourceName, priority, monitor -> {
+			downloaded.add(resourceName);
+			done.countDown();
+		});
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Test
+	public void testVisibleBeforePrefetch() throws Exception {
+		scheduler = new ResourceDownloadScheduler(1);
+		block("blocker");
+		CountDownLatch done = new CountDownLatch(3);
+		schedule("a", Priority.PREFETCH, done);
+		schedule("b", Priority.PREFETCH, done);
+		schedule("c", Priority.VISIBLE, done);
+		assertEquals(3, scheduler.getQueuedCount());
+		assertEquals(1, scheduler.getRunningCount());
+
+		blocker.countDown();
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		assertEquals(Arrays.asList("blocker", "c", "a", "b"), downloaded);
+	}
+
+	@Test
+	public void testDuplicateIsNotQueuedTwice() throws Exception {
+		scheduler = new ResourceDownloadScheduler(1);
+		block("blocker");
+		CountDownLatch done = new CountDownLatch(2);
+		schedule("a", Priority.PREFETCH, done);
+		schedule("b", Priority.PREFETCH, done);
+		schedule("b", Priority.VISIBLE, done);
+		assertEquals(2, scheduler.getQueuedCount());
+
+		blocker.countDown();
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		assertEquals(Arrays.asList("blocker", "b", "a"), downloaded);
+	}
+
+	@Test
+	public void testSetVisible() throws Exception {
+		scheduler = new ResourceDownloadScheduler(1);
+		block("blocker");
+		CountDownLatch done = new CountDownLatch(3);
+		schedule("a", Priority.VISIBLE, done);
+		schedule("b", Priority.PREFETCH, done);
+		schedule("c", Priority.PREFETCH, done);
+		scheduler.setVisible(Arrays.asList("c"));
+
+		blocker.countDown();
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		assertEquals(Arrays.asList("blocker", "c", "a", "b"), downloaded);
+	}
+
+	@Test
+	public void testCancelQueued() throws Exception {
+		scheduler = new ResourceDownloadScheduler(1);
+		block("blocker");
+		CountDownLatch done = new CountDownLatch(1);
+		schedule("a", Priority.PREFETCH, done);
+		schedule("b", Priority.VISIBLE, done);
+		List<String> canceled = scheduler.cancelQueued();
+		assertEquals(2, canceled.size());
+		assertTrue(canceled.containsAll(Arrays.asList("a", "b")));
+		assertFalse(scheduler.isQueued("a"));
+		assertEquals(0, scheduler.getQueuedCount());
+
+		//canceled resources can be scheduled again
+		schedule("a", Priority.PREFETCH, done);
+		blocker.countDown();
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		assertEquals(Arrays.asList("blocker", "a"), downloaded);
+	}
+
+	@Test
+	public void testCancelQueuedByOwner() throws Exception {
+		scheduler = new ResourceDownloadScheduler(1);
+		block("blocker");
+		Object owner = new Object();
+		Object otherOwner = new Object();
+		CountDownLatch done = new CountDownLatch(3);
+		scheduler.schedule("a", owner, Priority.PREFETCH, monitor -> done.countDown());
+		scheduler.schedule("b", owner, Priority.PREFETCH, monitor -> {
+			downloaded.add("b");
+			done.countDown();
+		});
+		scheduler.schedule("b", otherOwner, Priority.PREFETCH, monitor -> fail("Scheduled twice"));
+		scheduler.schedule("c", owner, Priority.PREFETCH, monitor -> {
+			downloaded.add("c");
+			done.countDown();
+		});
+		scheduler.addOwner("c", null);
+		schedule("d", Priority.PREFETCH, done);
+
+		List<String> canceled = scheduler.cancelQueued(owner);
+		assertEquals(Arrays.asList("a"), canceled);
+		assertFalse(scheduler.isQueued("a"));
+		assertEquals(3, scheduler.getQueuedCount());
+
+		blocker.countDown();
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		assertEquals(Arrays.asList("blocker", "b", "c", "d"), downloaded);
+	}
+
+	@Test
+	public void testConcurrencyIsBounded() throws Exception {
+		scheduler = new ResourceDownloadScheduler(2);
+		AtomicInteger concurrent = new AtomicInteger();
+		AtomicInteger maxConcurrent = new AtomicInteger();
+		CountDownLatch done = new CountDownLatch(10);
+		for (int i = 0; i < 10; i++) {
+			scheduler.schedule("resource" + i, Priority.PREFETCH, monitor -> {
+				int current = concurrent.incrementAndGet();
+				maxConcurrent.accumulateAndGet(current, Math::max);
+				try {
+					Thread.sleep(10);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				concurrent.decrementAndGet();
+				done.countDown();
+			});
+		}
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		assertTrue(maxConcurrent.get() <= 2);
+	}
+
+	@Test
+	public void testCancelAllCancelsRunning() throws Exception {
+		scheduler = new ResourceDownloadScheduler(1);
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch done = new CountDownLatch(1);
+		scheduler.schedule("a", Priority.PREFETCH, monitor -> {
+			started.countDown();
+			while (!monitor.isCanceled()) {
+				Thread.yield();
+			}
+			done.countDown();
+		});
+		assertTrue(started.await(10, TimeUnit.SECONDS));
+		scheduler.cancelAll();
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+	}
+}
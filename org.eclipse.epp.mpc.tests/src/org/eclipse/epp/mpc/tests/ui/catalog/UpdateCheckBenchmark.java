@@ -0,0 +1,196 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.mpc.tests.ui.catalog;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.epp.internal.mpc.core.model.Iu;
+import org.eclipse.epp.internal.mpc.core.model.Ius;
+import org.eclipse.epp.internal.mpc.core.model.Node;
+import org.eclipse.epp.internal.mpc.ui.MarketplaceClientUiPlugin;
+import org.eclipse.epp.internal.mpc.ui.catalog.MarketplaceCatalog;
+import org.eclipse.epp.internal.mpc.ui.catalog.MarketplaceNodeCatalogItem;
+import org.eclipse.epp.internal.mpc.ui.catalog.MarketplaceNodeInstallableUnitItem;
+import org.eclipse.equinox.internal.p2.metadata.InstallableUnit;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.metadata.Version;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Measures the wall time of {@link MarketplaceCatalog#checkForUpdates(IProgressMonitor) update checks} for a number of
+ * installed solutions, each with its own local update site, with and without loading the sites' artifact
+ * repositories.
+ * <p>
+ * This is a benchmark, not part of the regular test suites. Run it as a JUnit Plug-in Test with the
+ * "org.eclipse.epp.mpc.ui/debug/updates" trace option enabled to get the timings.
+ *
+ * @author Carsten Reckord
+ */
+public class UpdateCheckBenchmark {
+
+	private static final int SOLUTIONS = Integer.getInteger("updateCheckBenchmark.solutions", 20);
+
+	private static final int ARTIFACTS_PER_SITE = Integer.getInteger("updateCheckBenchmark.artifacts", 2000);
+
+	private static final int ITERATIONS = Integer.getInteger("updateCheckBenchmark.iterations", 5);
+
+	private File tempDir;
+
+	private int siteCount;
+
+	@Before
+	public void setUp() throws IOException {
+		tempDir = Files.createTempDirectory("mpc-update-check").toFile();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		try (Stream<java.nio.file.Path> files = Files.walk(tempDir.toPath())) {
+			files.sorted(Comparator.reverseOrder()).map(java.nio.file.Path::toFile).forEach(File::delete);
+		}
+	}
+
+	@Test
+	public void benchmarkUpdateCheck() throws Exception {
+		//warm up
+		runUpdateCheck(true);
+		runUpdateCheck(false);
+
+		long withArtifacts = 0;
+		long metadataOnly = 0;
+		for (int i = 0; i < ITERATIONS; i++) {
+			withArtifacts += runUpdateCheck(true);
+			metadataOnly += runUpdateCheck(false);
+		}
+		MarketplaceClientUiPlugin.trace(MarketplaceClientUiPlugin.UPDATES_DEBUG_OPTION,
+				"Average update check for {0} solutions: {1} ms with artifact repositories, {2} ms metadata only",
+				SOLUTIONS, TimeUnit.NANOSECONDS.toMillis(withArtifacts / ITERATIONS),
+				TimeUnit.NANOSECONDS.toMillis(metadataOnly / ITERATIONS));
+	}
+
+	private long runUpdateCheck(boolean loadArtifactRepositories) throws IOException {
+		List<MarketplaceNodeCatalogItem> items = new ArrayList<>();
+		Map<String, IInstallableUnit> installedIUs = new HashMap<>();
+		for (int i = 0; i < SOLUTIONS; i++) {
+			//fresh sites for each run, so nothing is served from p2's repository cache
+			File site = createSite(siteCount++);
+			String featureId = "org.example.solution" + i + ".feature.group";
+			items.add(createCatalogItem(i, site, featureId));
+
+			InstallableUnit installed = new InstallableUnit();
+			installed.setId(featureId);
+			installed.setVersion(Version.create("1.0.0"));
+			installedIUs.put(featureId, installed);
+		}
+
+		BenchmarkCatalog catalog = new BenchmarkCatalog();
+		catalog.setLoadArtifactRepositories(loadArtifactRepositories);
+		long start = System.nanoTime();
+		IStatus status = catalog.checkForUpdates(items, installedIUs, new NullProgressMonitor());
+		long time = System.nanoTime() - start;
+
+		assertTrue(status.toString(), status.isOK());
+		for (MarketplaceNodeCatalogItem item : items) {
+			assertEquals(item.getName(), Boolean.TRUE, item.getUpdateAvailable());
+		}
+		return time;
+	}
+
+	private static MarketplaceNodeCatalogItem createCatalogItem(int index, File site, String featureId) {
+		Node node = new Node();
+		node.setId(String.valueOf(1000 + index));
+		node.setName("Solution " + index);
+		node.setUpdateurl(site.toURI().toString());
+		node.setIus(new Ius());
+		node.getIus().getIuElements().add(new Iu(featureId));
+
+		MarketplaceNodeCatalogItem item = new MarketplaceNodeCatalogItem();
+		item.setId(node.getId());
+		item.setName(node.getName());
+		item.setData(node);
+		item.setSiteUrl(node.getUpdateurl());
+		List<MarketplaceNodeInstallableUnitItem> iuItems = new ArrayList<>();
+		MarketplaceNodeInstallableUnitItem iuItem = new MarketplaceNodeInstallableUnitItem();
+		iuItem.setId(featureId);
+		iuItems.add(iuItem);
+		item.setInstallableUnitItems(iuItems);
+		return item;
+	}
+
+	private File createSite(int index) throws IOException {
+		File site = new File(tempDir, "site" + index);
+		site.mkdirs();
+		try (Writer out = Files.newBufferedWriter(new File(site, "content.xml").toPath(), StandardCharsets.UTF_8)) {
+			out.write("<?xml version='1.0' encoding='UTF-8'?>\n");
+			out.write("<?metadataRepository version='1.1.0'?>\n");
+			out.write("<repository name='Site " + index
+					+ "' type='org.eclipse.equinox.internal.p2.metadata.repository.LocalMetadataRepository' version='1'>\n");
+			out.write("<units size='1'>\n");
+			String featureId = "org.example.solution" + (index % SOLUTIONS) + ".feature.group";
+			out.write("<unit id='" + featureId + "' version='2.0.0'>\n");
+			out.write("<properties size='1'><property name='org.eclipse.equinox.p2.type.group' value='true'/></properties>\n");
+			out.write("<provides size='1'><provided namespace='org.eclipse.equinox.p2.iu' name='" + featureId
+					+ "' version='2.0.0'/></provides>\n");
+			out.write("</unit>\n");
+			out.write("</units>\n");
+			out.write("</repository>\n");
+		}
+		try (Writer out = Files.newBufferedWriter(new File(site, "artifacts.xml").toPath(), StandardCharsets.UTF_8)) {
+			out.write("<?xml version='1.0' encoding='UTF-8'?>\n");
+			out.write("<?artifactRepository version='1.1.0'?>\n");
+			out.write("<repository name='Site " + index
+					+ "' type='org.eclipse.equinox.p2.artifact.repository.simpleRepository' version='1'>\n");
+			out.write("<mappings size='2'>\n");
+			out.write("<rule filter='(&amp; (classifier=osgi.bundle))' output='${repoUrl}/plugins/${id}_${version}.jar'/>\n");
+			out.write("<rule filter='(&amp; (classifier=org.eclipse.update.feature))' output='${repoUrl}/features/${id}_${version}.jar'/>\n");
+			out.write("</mappings>\n");
+			out.write("<artifacts size='" + ARTIFACTS_PER_SITE + "'>\n");
+			for (int i = 0; i < ARTIFACTS_PER_SITE; i++) {
+				out.write("<artifact classifier='osgi.bundle' id='org.example.site" + index + ".bundle" + i
+						+ "' version='2.0.0'>");
+				out.write("<properties size='2'><property name='artifact.size' value='1024'/>"
+						+ "<property name='download.size' value='1024'/></properties></artifact>\n");
+			}
+			out.write("</artifacts>\n");
+			out.write("</repository>\n");
+		}
+		return site;
+	}
+
+	private static class BenchmarkCatalog extends MarketplaceCatalog {
+
+		@Override
+		public IStatus checkForUpdates(List<MarketplaceNodeCatalogItem> updateCheckNeeded,
+				Map<String, IInstallableUnit> installedIUs, IProgressMonitor monitor) {
+			return super.checkForUpdates(updateCheckNeeded, installedIUs, monitor);
+		}
+	}
+}
@@ -0,0 +1,201 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.mpc.tests.ui.catalog;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.epp.internal.mpc.ui.catalog.UpdateIndex;
+import org.eclipse.epp.internal.mpc.ui.catalog.UpdateIndex.IndexEntry;
+import org.eclipse.equinox.p2.metadata.Version;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class UpdateIndexTest {
+
+	private static final String SITE = "http://update.example.org/releases";
+
+	private static final String FEATURE = "org.example.feature.group";
+
+	private long time;
+
+	private File file;
+
+	@Before
+	public void setUp() throws IOException {
+		time = 1000;
+		file = File.createTempFile("updateIndex", ".bin");
+		file.delete();
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	private UpdateIndex createIndex() {
+		return new UpdateIndex(file) {
+			@Override
+			protected long currentTimeMillis() {
+				return time;
+			}
+		};
+	}
+
+	private static Map<String, Version> versions(String featureId, String version) {
+		Map<String, Version> versions = new HashMap<>();
+		versions.put(featureId, version == null ? null : Version.create(version));
+		return versions;
+	}
+
+	@Test
+	public void testSaveAndLoad() {
+		UpdateIndex index = createIndex();
+		Map<String, Version> versions = versions(FEATURE, "2.0.0");
+		versions.put("org.example.missing.feature.group", null);
+		index.update(SITE, "12345", versions);
+		index.update("http://other.example.org", null, versions("org.example.other.feature.group", "1.0.0"));
+		index.save();
+		assertTrue(file.exists());
+
+		UpdateIndex loaded = createIndex();
+		loaded.load();
+		assertEquals(2, loaded.size());
+
+		IndexEntry entry = loaded.get(SITE, FEATURE);
+		assertNotNull(entry);
+		assertEquals(Version.create("2.0.0"), entry.getVersion());
+		assertEquals("12345", entry.getRepositoryTimestamp());
+		assertEquals(1000, entry.getLastChecked());
+
+		IndexEntry missing = loaded.get(SITE, "org.example.missing.feature.group");
+		assertNotNull(missing);
+		assertNull(missing.getVersion());
+
+		IndexEntry other = loaded.get("http://other.example.org", "org.example.other.feature.group");
+		assertNotNull(other);
+		assertNull(other.getRepositoryTimestamp());
+
+		assertNull(loaded.get(SITE, "org.example.unknown.feature.group"));
+		assertNull(loaded.get("http://unknown.example.org", FEATURE));
+	}
+
+	@Test
+	public void testNeedsRefresh() {
+		UpdateIndex index = createIndex();
+		assertTrue(index.needsRefresh(SITE));
+
+		index.update(SITE, "1", versions(FEATURE, "2.0.0"));
+		assertFalse(index.needsRefresh(SITE));
+
+		time += UpdateIndex.MIN_TTL - 1;
+		assertFalse(index.needsRefresh(SITE));
+		time += 1;
+		assertTrue(index.needsRefresh(SITE));
+	}
+
+	@Test
+	public void testTtlGrowsForUnchangedSite() {
+		UpdateIndex index = createIndex();
+		index.update(SITE, "1", versions(FEATURE, "2.0.0"));
+		time += UpdateIndex.MIN_TTL;
+		index.update(SITE, "1", versions(FEATURE, "2.0.0"));
+
+		time += UpdateIndex.MIN_TTL;
+		assertFalse(index.needsRefresh(SITE));
+		time += UpdateIndex.MIN_TTL;
+		assertTrue(index.needsRefresh(SITE));
+
+		for (int i = 0; i < 10; i++) {
+			index.update(SITE, "1", versions(FEATURE, "2.0.0"));
+		}
+		time += UpdateIndex.MAX_TTL - 1;
+		assertFalse(index.needsRefresh(SITE));
+		time += 1;
+		assertTrue(index.needsRefresh(SITE));
+	}
+
+	@Test
+	public void testTtlResetsForChangedSite() {
+		UpdateIndex index = createIndex();
+		index.update(SITE, "1", versions(FEATURE, "2.0.0"));
+		index.update(SITE, "1", versions(FEATURE, "2.0.0"));
+		index.update(SITE, "2", versions(FEATURE, "3.0.0"));
+
+		time += UpdateIndex.MIN_TTL;
+		assertTrue(index.needsRefresh(SITE));
+		assertEquals(Version.create("3.0.0"), index.get(SITE, FEATURE).getVersion());
+	}
+
+	@Test
+	public void testUnchangedSiteKeepsOtherFeatures() {
+		UpdateIndex index = createIndex();
+		index.update(SITE, "1", versions(FEATURE, "2.0.0"));
+		index.update(SITE, "1", versions("org.example.other.feature.group", "1.0.0"));
+		assertNotNull(index.get(SITE, FEATURE));
+
+		index.update(SITE, "2", versions("org.example.other.feature.group", "1.0.0"));
+		assertNull(index.get(SITE, FEATURE));
+	}
+
+	@Test
+	public void testSitesToRefreshOldestFirst() {
+		UpdateIndex index = createIndex();
+		index.update("http://second.example.org", "1", versions(FEATURE, "1.0.0"));
+		time -= 100;
+		index.update("http://first.example.org", "1", versions(FEATURE, "1.0.0"));
+		time += 200;
+		index.update(SITE, "1", versions(FEATURE, "1.0.0"));
+		assertTrue(index.getSitesToRefresh().isEmpty());
+
+		time += UpdateIndex.MIN_TTL - 50;
+		assertEquals(Arrays.asList("http://first.example.org", "http://second.example.org"),
+				index.getSitesToRefresh());
+	}
+
+	@Test
+	public void testFeatureIds() {
+		UpdateIndex index = createIndex();
+		Map<String, Version> versions = versions(FEATURE, "2.0.0");
+		versions.put("org.example.missing.feature.group", null);
+		index.update(SITE, "1", versions);
+		assertEquals(versions.keySet(), index.getFeatureIds(SITE));
+		assertTrue(index.getFeatureIds("http://unknown.example.org").isEmpty());
+	}
+
+	@Test
+	public void testInvalidate() {
+		UpdateIndex index = createIndex();
+		index.update(SITE, "1", versions(FEATURE, "2.0.0"));
+		index.invalidate(SITE);
+		assertNull(index.get(SITE, FEATURE));
+		assertTrue(index.needsRefresh(SITE));
+		assertEquals(0, index.size());
+	}
+
+	@Test
+	public void testBrokenFileIsIgnored() throws IOException {
+		Files.write(file.toPath(), new byte[] { 0, 0, 0, 1, 0, 0, 0, 5, 42 });
+		UpdateIndex index = createIndex();
+		index.load();
+		assertEquals(0, index.size());
+		assertFalse(file.exists());
+	}
+}
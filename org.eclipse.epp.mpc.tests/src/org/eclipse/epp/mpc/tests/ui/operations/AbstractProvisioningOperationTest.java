@@ -0,0 +1,154 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.mpc.tests.ui.operations;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.epp.internal.mpc.ui.operations.AbstractProvisioningOperation;
+import org.eclipse.equinox.internal.p2.discovery.model.CatalogItem;
+import org.eclipse.equinox.p2.core.ProvisionException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AbstractProvisioningOperationTest {
+
+	private static final long TIMEOUT = 10;
+
+	private ExecutorService executor;
+
+	private TestOperation operation;
+
+	private interface Task {
+		Object call(int input, IProgressMonitor monitor) throws Exception;
+	}
+
+	private static class TestOperation extends AbstractProvisioningOperation {
+
+		TestOperation() {
+			super(Collections.singleton(new CatalogItem()));
+		}
+
+		@Override
+		public void run(IProgressMonitor monitor) {
+		}
+
+		List<Object> run(List<Integer> inputs, Task task, IProgressMonitor monitor, ExecutorService executor)
+				throws Exception {
+			return runConcurrently(inputs, (input, taskMonitor) -> {
+				try {
+					return task.call(input, taskMonitor);
+				} catch (ProvisionException | RuntimeException e) {
+					throw e;
+				} catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+			}, SubMonitor.convert(monitor), executor);
+		}
+	}
+
+	@Before
+	public void setUp() {
+		executor = Executors.newFixedThreadPool(3);
+		operation = new TestOperation();
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testResultsInInputOrder() throws Exception {
+		//later inputs complete first
+		List<Object> results = operation.run(Arrays.asList(3, 2, 1), (input, monitor) -> {
+			Thread.sleep(input * 20L);
+			return "result " + input;
+		}, new NullProgressMonitor(), executor);
+		assertEquals(Arrays.<Object> asList("result 3", "result 2", "result 1"), results);
+	}
+
+	@Test
+	public void testFailureCancelsRemainingTasks() throws Exception {
+		CountDownLatch started = new CountDownLatch(2);
+		CountDownLatch canceled = new CountDownLatch(2);
+		try {
+			operation.run(Arrays.asList(0, 1, 2), (input, monitor) -> {
+				if (input == 0) {
+					assertTrue(started.await(TIMEOUT, TimeUnit.SECONDS));
+					throw new ProvisionException(new Status(IStatus.ERROR, "org.eclipse.epp.mpc.tests", "failed"));
+				}
+				started.countDown();
+				awaitCancellation(monitor, canceled);
+				return input;
+			}, new NullProgressMonitor(), executor);
+			fail("Expected ProvisionException");
+		} catch (ProvisionException ex) {
+			assertEquals("failed", ex.getMessage());
+		}
+		assertTrue("remaining tasks were not canceled", canceled.await(TIMEOUT, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testCallerCancellation() throws Exception {
+		NullProgressMonitor callerMonitor = new NullProgressMonitor();
+		CountDownLatch canceled = new CountDownLatch(2);
+		executor.execute(() -> {
+			try {
+				Thread.sleep(50);
+			} catch (InterruptedException e) {
+				//cancel right away
+			}
+			callerMonitor.setCanceled(true);
+		});
+		try {
+			operation.run(Arrays.asList(0, 1), (input, monitor) -> {
+				awaitCancellation(monitor, canceled);
+				return input;
+			}, callerMonitor, executor);
+			fail("Expected OperationCanceledException");
+		} catch (OperationCanceledException ex) {
+			//expected
+		}
+		assertTrue("tasks were not canceled", canceled.await(TIMEOUT, TimeUnit.SECONDS));
+	}
+
+	private static void awaitCancellation(IProgressMonitor monitor, CountDownLatch canceled) {
+		long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT);
+		while (!monitor.isCanceled() && System.nanoTime() < end) {
+			try {
+				Thread.sleep(10);
+			} catch (InterruptedException e) {
+				//tasks must be stopped through their monitor, not by interrupting them
+				return;
+			}
+		}
+		if (monitor.isCanceled()) {
+			canceled.countDown();
+		}
+	}
+}
@@ -0,0 +1,157 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.mpc.tests.ui.operations;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+import java.util.Arrays;
+import java.util.EventObject;
+import java.util.Map;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.epp.internal.mpc.ui.operations.InstalledProfileCache;
+import org.eclipse.equinox.internal.p2.metadata.InstallableUnit;
+import org.eclipse.equinox.internal.provisional.p2.core.eventbus.IProvisioningEventBus;
+import org.eclipse.equinox.internal.provisional.p2.core.eventbus.ProvisioningListener;
+import org.eclipse.equinox.p2.core.IProvisioningAgent;
+import org.eclipse.equinox.p2.engine.IProfile;
+import org.eclipse.equinox.p2.engine.IProfileEvent;
+import org.eclipse.equinox.p2.engine.IProfileRegistry;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.query.Collector;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+public class InstalledProfileCacheTest {
+
+	private static final String PROFILE_ID = "TestProfile";
+
+	private IProvisioningAgent agent;
+
+	private IProfileRegistry profileRegistry;
+
+	private IProfile profile;
+
+	private InstalledProfileCache cache;
+
+	@Before
+	public void setUp() {
+		agent = mock(IProvisioningAgent.class);
+		profileRegistry = mock(IProfileRegistry.class);
+		profile = mock(IProfile.class);
+		when(agent.getService(IProfileRegistry.SERVICE_NAME)).thenReturn(profileRegistry);
+		when(profileRegistry.getProfile(PROFILE_ID)).thenReturn(profile);
+		when(profile.getTimestamp()).thenReturn(1L);
+		givenInstalled("org.example.a.feature.group", "org.example.b.feature.group");
+		cache = new InstalledProfileCache();
+	}
+
+	private void givenInstalled(String... ids) {
+		Collector<IInstallableUnit> result = new Collector<>();
+		for (String id : ids) {
+			InstallableUnit iu = new InstallableUnit();
+			iu.setId(id);
+			result.accept(iu);
+		}
+		doReturn(result).when(profile).available(any(), any());
+	}
+
+	private Map<String, IInstallableUnit> getInstalledIUs() {
+		return cache.getInstalledIUs(agent, PROFILE_ID, new NullProgressMonitor());
+	}
+
+	@Test
+	public void testSnapshotReusedWhileTimestampUnchanged() {
+		Map<String, IInstallableUnit> installed = getInstalledIUs();
+		assertEquals(2, installed.size());
+		assertSame(installed, getInstalledIUs());
+		verify(profile, times(1)).available(any(), any());
+
+		when(profile.getTimestamp()).thenReturn(2L);
+		givenInstalled("org.example.a.feature.group");
+		Map<String, IInstallableUnit> changed = getInstalledIUs();
+		assertEquals(1, changed.size());
+		verify(profile, times(2)).available(any(), any());
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testSnapshotImmutable() {
+		getInstalledIUs().clear();
+	}
+
+	@Test
+	public void testSnapshotInvalidatedByProfileEvent() {
+		IProvisioningEventBus eventBus = mock(IProvisioningEventBus.class);
+		when(agent.getService(IProvisioningEventBus.SERVICE_NAME)).thenReturn(eventBus);
+
+		Map<String, IInstallableUnit> installed = getInstalledIUs();
+		ArgumentCaptor<ProvisioningListener> listener = ArgumentCaptor.forClass(ProvisioningListener.class);
+		verify(eventBus).addListener(listener.capture());
+
+		//no need to look at the profile while we get profile events
+		reset(profileRegistry);
+		assertSame(installed, getInstalledIUs());
+
+		when(profileRegistry.getProfile(PROFILE_ID)).thenReturn(profile);
+		listener.getValue().notify(new TestProfileEvent("OtherProfile"));
+		assertSame(installed, getInstalledIUs());
+
+		givenInstalled("org.example.c.feature.group");
+		listener.getValue().notify(new TestProfileEvent(PROFILE_ID));
+		Map<String, IInstallableUnit> changed = getInstalledIUs();
+		assertEquals(Arrays.asList("org.example.c.feature.group"), Arrays.asList(changed.keySet().toArray()));
+
+		cache.dispose();
+		verify(eventBus).removeListener(listener.getValue());
+	}
+
+	@Test
+	public void testCanceledQueryNotCached() {
+		NullProgressMonitor monitor = new NullProgressMonitor();
+		monitor.setCanceled(true);
+		cache.getInstalledIUs(agent, PROFILE_ID, monitor);
+		getInstalledIUs();
+		verify(profile, times(2)).available(any(), any());
+	}
+
+	@Test
+	public void testMissingProfile() {
+		when(profileRegistry.getProfile(PROFILE_ID)).thenReturn(null);
+		assertTrue(getInstalledIUs().isEmpty());
+	}
+
+	private static class TestProfileEvent extends EventObject implements IProfileEvent {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String profileId;
+
+		public TestProfileEvent(String profileId) {
+			super(profileId);
+			this.profileId = profileId;
+		}
+
+		@Override
+		public int getReason() {
+			return CHANGED;
+		}
+
+		@Override
+		public String getProfileId() {
+			return profileId;
+		}
+	}
+}
@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.mpc.tests.ui.operations;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.epp.internal.mpc.ui.operations.ProfileChangeOperationComputer;
+import org.eclipse.epp.internal.mpc.ui.operations.ProfileChangeOperationComputer.OperationType;
+import org.eclipse.epp.internal.mpc.ui.operations.ProfileChangeOperationComputer.ResolutionStrategy;
+import org.eclipse.epp.internal.mpc.ui.operations.ProfileChangeOperationResolver;
+import org.eclipse.epp.internal.mpc.ui.operations.ProfileChangeOperationResolver.Resolution;
+import org.eclipse.epp.internal.mpc.ui.wizards.SelectionModel.FeatureEntry;
+import org.eclipse.epp.mpc.ui.Operation;
+import org.eclipse.equinox.internal.p2.discovery.model.CatalogItem;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ProfileChangeOperationResolverTest {
+
+	private ProfileChangeOperationResolver resolver;
+
+	private CatalogItem item;
+
+	private FeatureEntry featureEntry;
+
+	private AtomicInteger runs;
+
+	@Before
+	public void setUp() {
+		resolver = new ProfileChangeOperationResolver();
+		item = new CatalogItem();
+		item.setId("123");
+		featureEntry = mock(FeatureEntry.class);
+		when(featureEntry.computeChangeOperation()).thenReturn(Operation.INSTALL);
+		runs = new AtomicInteger();
+	}
+
+	@After
+	public void tearDown() {
+		resolver.cancel();
+	}
+
+	private ProfileChangeOperationComputer createComputer(final boolean failNonInteractive) {
+		return new ProfileChangeOperationComputer(OperationType.INSTALL, Collections.singleton(item),
+				Collections.singleton(featureEntry), null, ResolutionStrategy.SELECTED_REPOSITORIES, false) {
+			@Override
+			public void run(IProgressMonitor progressMonitor) throws InvocationTargetException, InterruptedException {
+				runs.incrementAndGet();
+				if (failNonInteractive && !isInteractive()) {
+					throw new InvocationTargetException(
+							new CoreException(new Status(IStatus.ERROR, "org.eclipse.epp.mpc.tests", "unavailable")));
+				}
+			}
+		};
+	}
+
+	@Test
+	public void testPreResolvedOperationReused() throws Exception {
+		ProfileChangeOperationComputer preResolved = createComputer(false);
+		resolver.preResolve(preResolved);
+
+		ProfileChangeOperationComputer computer = createComputer(false);
+		assertTrue(computer.isSameRequest(preResolved));
+		Resolution resolution = resolver.resolve(computer, new NullProgressMonitor());
+		assertSame(preResolved, resolution.getComputer());
+		assertEquals(1, runs.get());
+	}
+
+	@Test
+	public void testChangedSelectionDiscardsPreResolution() throws Exception {
+		resolver.preResolve(createComputer(false));
+
+		when(featureEntry.computeChangeOperation()).thenReturn(Operation.UPDATE);
+		ProfileChangeOperationComputer computer = createComputer(false);
+		Resolution resolution = resolver.resolve(computer, new NullProgressMonitor());
+		assertSame(computer, resolution.getComputer());
+		assertTrue(computer.isInteractive());
+	}
+
+	@Test
+	public void testFailedPreResolutionResolvedInteractively() throws Exception {
+		resolver.preResolve(createComputer(true));
+
+		ProfileChangeOperationComputer computer = createComputer(true);
+		Resolution resolution = resolver.resolve(computer, new NullProgressMonitor());
+		assertSame(computer, resolution.getComputer());
+		assertEquals(2, runs.get());
+	}
+}
@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.mpc.tests.ui.operations;
+
+import static org.mockito.Mockito.*;
+
+import java.net.URI;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.eclipse.epp.internal.mpc.ui.operations.RepositoryTransactionHelper;
+import org.eclipse.equinox.p2.repository.IRepository;
+import org.eclipse.equinox.p2.repository.IRepositoryManager;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactRepositoryManager;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepositoryManager;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RepositoryTransactionHelperTest {
+
+	private static final URI INITIAL = URI.create("http://example.org/initial");
+
+	private static final URI COMPOSITE = URI.create("http://example.org/composite");
+
+	private static final URI CHILD = URI.create("http://example.org/composite/child");
+
+	private final Set<URI> enabledMetadataRepositories = new LinkedHashSet<>();
+
+	private final Set<URI> disabledMetadataRepositories = new LinkedHashSet<>();
+
+	private IMetadataRepositoryManager metadataManager;
+
+	private IArtifactRepositoryManager artifactManager;
+
+	@Before
+	public void setUp() {
+		metadataManager = mock(IMetadataRepositoryManager.class);
+		artifactManager = mock(IArtifactRepositoryManager.class);
+		when(metadataManager.getKnownRepositories(anyInt())).thenAnswer(invocation -> {
+			int flags = invocation.getArgument(0);
+			Set<URI> known = (flags & IRepositoryManager.REPOSITORIES_DISABLED) != 0 ? disabledMetadataRepositories
+					: enabledMetadataRepositories;
+			return known.toArray(new URI[known.size()]);
+		});
+		when(metadataManager.isEnabled(any(URI.class)))
+				.thenAnswer(invocation -> enabledMetadataRepositories.contains(invocation.getArgument(0)));
+		when(artifactManager.getKnownRepositories(anyInt())).thenReturn(new URI[0]);
+
+		enabledMetadataRepositories.add(INITIAL);
+	}
+
+	@Test
+	public void testAddsArtifactRepositoriesForNewMetadataRepositories() {
+		RepositoryTransactionHelper helper = new RepositoryTransactionHelper(metadataManager, artifactManager);
+
+		//loading the composite leaves a disabled system child behind
+		enabledMetadataRepositories.add(COMPOSITE);
+		disabledMetadataRepositories.add(CHILD);
+		when(metadataManager.getRepositoryProperty(CHILD, IRepository.PROP_SYSTEM)).thenReturn("true");
+
+		helper.addMissingArtifactRepositories();
+
+		verify(artifactManager).addRepository(COMPOSITE);
+		verify(artifactManager, never()).setEnabled(eq(COMPOSITE), anyBoolean());
+		verify(artifactManager, never()).setRepositoryProperty(eq(COMPOSITE), anyString(), anyString());
+
+		verify(artifactManager).addRepository(CHILD);
+		verify(artifactManager).setRepositoryProperty(CHILD, IRepository.PROP_SYSTEM, "true");
+		verify(artifactManager).setEnabled(CHILD, false);
+
+		verify(artifactManager, never()).addRepository(INITIAL);
+	}
+
+	@Test
+	public void testKeepsExistingArtifactRepositories() {
+		RepositoryTransactionHelper helper = new RepositoryTransactionHelper(metadataManager, artifactManager);
+
+		enabledMetadataRepositories.add(COMPOSITE);
+		when(artifactManager.contains(COMPOSITE)).thenReturn(true);
+
+		helper.addMissingArtifactRepositories();
+
+		verify(artifactManager, never()).addRepository(any(URI.class));
+	}
+
+	@Test
+	public void testInitResetsKnownRepositories() {
+		RepositoryTransactionHelper helper = new RepositoryTransactionHelper(metadataManager, artifactManager);
+
+		enabledMetadataRepositories.add(COMPOSITE);
+		helper.init();
+		helper.addMissingArtifactRepositories();
+
+		verify(artifactManager, never()).addRepository(any(URI.class));
+	}
+
+	@Test
+	public void testWithoutArtifactRepositoryManager() {
+		RepositoryTransactionHelper helper = new RepositoryTransactionHelper(metadataManager, null);
+
+		enabledMetadataRepositories.add(COMPOSITE);
+		helper.addMissingArtifactRepositories();
+
+		verify(metadataManager, never()).getRepositoryProperty(any(URI.class), anyString());
+	}
+}
@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.mpc.tests.util;
+
+import static org.junit.Assert.assertEquals;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.BasicHttpContext;
+import org.eclipse.epp.internal.mpc.core.transport.httpclient.ConfigurableKeepAliveStrategy;
+import org.junit.Test;
+
+public class ConfigurableKeepAliveStrategyTest {
+
+	private static HttpResponse response(String keepAlive) {
+		BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+		if (keepAlive != null) {
+			response.addHeader("Keep-Alive", keepAlive);
+		}
+		return response;
+	}
+
+	private static long keepAlive(long maxKeepAlive, String header) {
+		return new ConfigurableKeepAliveStrategy(maxKeepAlive).getKeepAliveDuration(response(header),
+				new BasicHttpContext());
+	}
+
+	@Test
+	public void testDefaultWithoutServerHint() {
+		assertEquals(30000, keepAlive(30000, null));
+		assertEquals(30000, keepAlive(30000, "max=100"));
+		assertEquals(30000, keepAlive(30000, "timeout=abc"));
+		assertEquals(-1, keepAlive(-1, null));
+	}
+
+	@Test
+	public void testHonorsShorterServerHint() {
+		assertEquals(5000, keepAlive(30000, "timeout=5, max=100"));
+		assertEquals(5000, keepAlive(30000, "max=100, Timeout=5"));
+		assertEquals(0, keepAlive(30000, "timeout=0"));
+		assertEquals(120000, keepAlive(-1, "timeout=120"));
+	}
+
+	@Test
+	public void testCapsLongerServerHint() {
+		assertEquals(30000, keepAlive(30000, "timeout=120"));
+	}
+}
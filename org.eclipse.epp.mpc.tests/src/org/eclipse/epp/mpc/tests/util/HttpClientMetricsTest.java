@@ -0,0 +1,172 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.mpc.tests.util;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.client.protocol.ResponseContentEncoding;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.util.EntityUtils;
+import org.eclipse.epp.internal.mpc.core.transport.httpclient.HttpClientMetrics;
+import org.eclipse.epp.internal.mpc.core.transport.httpclient.HttpClientStatistics;
+import org.eclipse.epp.internal.mpc.core.transport.httpclient.HttpClientStatistics.HostStatistics;
+import org.eclipse.epp.internal.mpc.core.transport.httpclient.LatencyHistogram;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HttpClientMetricsTest {
+
+	private static final URI API_URI = URI.create("https://marketplace.eclipse.org/api/p");
+
+	private HttpClientMetrics metrics;
+
+	@Before
+	public void setUp() {
+		metrics = new HttpClientMetrics();
+	}
+
+	private static HttpResponse response(int statusCode, String body) throws IOException {
+		BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, statusCode, null);
+		if (body != null) {
+			response.setEntity(new StringEntity(body, "UTF-8"));
+		}
+		return response;
+	}
+
+	@Test
+	public void testRequestsByHost() throws Exception {
+		metrics.requestCompleted(API_URI, response(200, null), TimeUnit.MILLISECONDS.toNanos(20));
+		metrics.requestCompleted(API_URI, response(200, null), TimeUnit.MILLISECONDS.toNanos(80));
+		metrics.requestCompleted(URI.create("https://Marketplace.Eclipse.org/node/123"), response(404, null),
+				TimeUnit.MILLISECONDS.toNanos(3));
+		metrics.requestFailed(URI.create("http://example.org"), new SocketTimeoutException(),
+				TimeUnit.SECONDS.toNanos(30));
+
+		HttpClientStatistics statistics = metrics.getStatistics();
+		assertEquals(2, statistics.getHosts().size());
+
+		HostStatistics marketplace = statistics.getHosts().get("marketplace.eclipse.org");
+		assertEquals(3, marketplace.getRequestCount());
+		assertEquals(0, marketplace.getFailureCount());
+		assertEquals(Long.valueOf(2), marketplace.getStatusCodeCounts().get(200));
+		assertEquals(Long.valueOf(1), marketplace.getStatusCodeCounts().get(404));
+		assertEquals(3, marketplace.getLatency().getCount());
+		assertEquals(80, marketplace.getLatency().getMax());
+
+		HostStatistics example = statistics.getHosts().get("example.org");
+		assertEquals(1, example.getRequestCount());
+		assertEquals(1, example.getFailureCount());
+		assertTrue(example.getStatusCodeCounts().isEmpty());
+
+		metrics.reset();
+		assertTrue(metrics.getStatistics().getHosts().isEmpty());
+	}
+
+	@Test
+	public void testResponseSize() throws Exception {
+		HttpResponse response = response(200, "0123456789");
+		metrics.instrument(API_URI, response);
+		assertEquals(0, metrics.getStatistics().getHosts().size());
+
+		try (InputStream content = response.getEntity().getContent()) {
+			assertEquals('0', content.read());
+		}
+		assertEquals(1, metrics.getStatistics().getHosts().get("marketplace.eclipse.org").getBytesReceived());
+
+		response = response(200, "0123456789");
+		metrics.instrument(API_URI, response);
+		assertEquals("0123456789", EntityUtils.toString(response.getEntity()));
+		assertEquals(11, metrics.getStatistics().getHosts().get("marketplace.eclipse.org").getBytesReceived());
+	}
+
+	@Test
+	public void testCompressedResponseSize() throws Exception {
+		StringBuilder body = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			body.append("<node id=\"").append(i).append("\"/>\n");
+		}
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+			gzip.write(body.toString().getBytes("UTF-8"));
+		}
+		HttpResponse response = response(200, null);
+		ByteArrayEntity entity = new ByteArrayEntity(compressed.toByteArray());
+		entity.setContentEncoding("gzip");
+		response.setEntity(entity);
+
+		HttpClientContext context = HttpClientContext.create();
+		context.setAttribute(HttpClientContext.HTTP_TARGET_HOST, new HttpHost("marketplace.eclipse.org", 443, "https"));
+		metrics.createTransferInterceptor().process(response, context);
+		new ResponseContentEncoding().process(response, context);
+		metrics.instrument(API_URI, response);
+
+		assertEquals(body.toString(), EntityUtils.toString(response.getEntity(), "UTF-8"));
+		HostStatistics statistics = metrics.getStatistics().getHosts().get("marketplace.eclipse.org");
+		assertEquals(compressed.size(), statistics.getBytesTransferred());
+		assertEquals(body.length(), statistics.getBytesReceived());
+		assertTrue(statistics.getBytesTransferred() < statistics.getBytesReceived());
+	}
+
+	@Test
+	public void testRetriesAndLeaseWaits() {
+		HttpHost host = new HttpHost("marketplace.eclipse.org", 443, "https");
+		HttpClientContext context = HttpClientContext.create();
+		context.setAttribute(HttpClientContext.HTTP_TARGET_HOST, host);
+		assertTrue(metrics.instrument((exception, executionCount, ctx) -> executionCount < 2)
+				.retryRequest(new IOException(), 1, context));
+		assertFalse(metrics.instrument((exception, executionCount, ctx) -> executionCount < 2)
+				.retryRequest(new IOException(), 2, context));
+
+		metrics.connectionLeased(new HttpRoute(host), TimeUnit.MILLISECONDS.toNanos(300));
+
+		HostStatistics statistics = metrics.getStatistics().getHosts().get("marketplace.eclipse.org");
+		assertEquals(1, statistics.getRetryCount());
+		assertEquals(1, statistics.getLeaseWait().getCount());
+		assertEquals(300, statistics.getLeaseWait().getMax());
+		assertNull(metrics.getStatistics().getPoolStats());
+	}
+
+	@Test
+	public void testHistogramPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getSnapshot().getPercentile(50));
+		for (int i = 1; i <= 100; i++) {
+			histogram.record(i);
+		}
+		histogram.record(45000);
+		LatencyHistogram.Snapshot snapshot = histogram.getSnapshot();
+		assertEquals(101, snapshot.getCount());
+		assertEquals(5, snapshot.getPercentile(1));
+		assertEquals(50, snapshot.getPercentile(25));
+		assertEquals(100, snapshot.getPercentile(50));
+		assertEquals(100, snapshot.getPercentile(99));
+		assertEquals(45000, snapshot.getPercentile(100));
+		assertEquals(45000, snapshot.getMax());
+		assertEquals((5050 + 45000) / 101, snapshot.getMean());
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2018 The Eclipse Foundation and others.
+ * Copyright (c) 2010, 2019 The Eclipse Foundation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v2.0
  * which accompanies this distribution, and is available at
@@ -61,6 +61,7 @@ import org.eclipse.epp.internal.mpc.core.transport.httpclient.HttpClientTranspor
 import org.eclipse.epp.internal.mpc.core.transport.httpclient.HttpClientTransportFactory;
 import org.eclipse.epp.internal.mpc.core.transport.httpclient.SynchronizedCredentialsProvider;
 import org.eclipse.epp.internal.mpc.core.util.FallbackTransportFactory;
+import org.eclipse.epp.internal.mpc.core.util.FallbackTransportStatistics;
 import org.eclipse.epp.internal.mpc.core.util.ServiceUtil;
 import org.eclipse.epp.internal.mpc.core.util.TransportFactory;
 import org.eclipse.epp.mpc.core.service.ITransport;
@@ -273,6 +274,12 @@ public class TransportFactoryTest {
 		int read = stream.read(resultBytes);
 		String actualMessage = new String(resultBytes, 0, read, StandardCharsets.UTF_8);
 		assertEquals(expectedMessage, actualMessage);
+
+		FallbackTransportStatistics statistics = fallbackTransportFactory.getStatistics();
+		assertEquals(0, statistics.getPrimaryCount());
+		assertEquals(1, statistics.getFallbackCount());
+		assertEquals(1, statistics.getPrimaryFailureCount());
+		assertEquals(0, statistics.getDisabledHostCount());
 	}
 
 	@Test
@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.mpc.tests.util;
+
+import static org.junit.Assert.*;
+
+import org.eclipse.epp.internal.mpc.core.util.TransportHealth;
+import org.junit.Test;
+
+public class TransportHealthTest {
+
+	private static final long WINDOW = 10000;
+
+	private static final long REPROBE_INTERVAL = 5000;
+
+	private final TransportHealth health = new TransportHealth("marketplace.eclipse.org", WINDOW, 10, 4, 0.5,
+			REPROBE_INTERVAL);
+
+	@Test
+	public void testDisableAfterFailureRatio() {
+		long now = 100000;
+		assertTrue(health.tryPrimary(now));
+		assertFalse(health.onFailure(now));
+		assertFalse(health.onFailure(now));
+		assertFalse(health.onFailure(now));
+		assertFalse(health.isDisabled());
+		assertTrue(health.onFailure(now));
+		assertTrue(health.isDisabled());
+		assertFalse(health.tryPrimary(now + 1));
+	}
+
+	@Test
+	public void testSuccessesKeepPrimaryEnabled() {
+		long now = 100000;
+		for (int i = 0; i < 5; i++) {
+			health.onSuccess(now);
+			assertFalse(health.onFailure(now));
+		}
+		assertFalse(health.isDisabled());
+	}
+
+	@Test
+	public void testOldFailuresExpire() {
+		long now = 100000;
+		health.onFailure(now);
+		health.onFailure(now);
+		health.onFailure(now);
+		now += WINDOW;
+		assertFalse(health.onFailure(now));
+		assertFalse(health.isDisabled());
+	}
+
+	@Test
+	public void testReprobe() {
+		long now = 100000;
+		for (int i = 0; i < 4; i++) {
+			health.onFailure(now);
+		}
+		assertTrue(health.isDisabled());
+		assertFalse(health.tryPrimary(now + REPROBE_INTERVAL - 1));
+
+		now += REPROBE_INTERVAL;
+		assertTrue(health.tryPrimary(now));
+		assertFalse("only one probe at a time", health.tryPrimary(now));
+		assertFalse(health.onFailure(now));
+		assertTrue(health.isDisabled());
+		assertFalse(health.tryPrimary(now + 1));
+
+		now += REPROBE_INTERVAL;
+		assertTrue(health.tryPrimary(now));
+		health.onAbort();
+		assertTrue(health.tryPrimary(now));
+		assertTrue(health.onSuccess(now));
+		assertFalse(health.isDisabled());
+		assertTrue(health.tryPrimary(now));
+		assertFalse("re-enabled transport starts over", health.onFailure(now));
+		assertEquals(3, health.getProbeCount());
+	}
+}
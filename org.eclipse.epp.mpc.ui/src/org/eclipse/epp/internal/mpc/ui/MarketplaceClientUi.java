@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2018 The Eclipse Foundation and others.
+ * Copyright (c) 2010, 2019 The Eclipse Foundation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v2.0
  * which accompanies this distribution, and is available at
@@ -13,7 +13,6 @@
  *******************************************************************************/
 package org.eclipse.epp.internal.mpc.ui;
 
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
@@ -29,13 +28,8 @@ import org.eclipse.core.runtime.preferences.IPreferencesService;
 import org.eclipse.core.runtime.preferences.IScopeContext;
 import org.eclipse.core.runtime.preferences.InstanceScope;
 import org.eclipse.epp.internal.mpc.core.MarketplaceClientCore;
-import org.eclipse.equinox.p2.core.IProvisioningAgent;
-import org.eclipse.equinox.p2.engine.IProfile;
-import org.eclipse.equinox.p2.engine.IProfileRegistry;
+import org.eclipse.epp.internal.mpc.ui.operations.InstalledProfileCache;
 import org.eclipse.equinox.p2.metadata.IInstallableUnit;
-import org.eclipse.equinox.p2.query.IQueryResult;
-import org.eclipse.equinox.p2.query.QueryUtil;
-import org.eclipse.equinox.p2.ui.ProvisioningUI;
 import org.eclipse.osgi.util.NLS;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.SWTException;
@@ -46,7 +40,6 @@ import org.eclipse.ui.PlatformUI;
 import org.eclipse.ui.statushandlers.StatusManager;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.FrameworkUtil;
-import org.osgi.framework.ServiceReference;
 
 /**
  * @author Steffen Pingel
@@ -139,29 +132,12 @@ public class MarketplaceClientUi {
 		return FrameworkUtil.getBundle(MarketplaceClientUiPlugin.class).getBundleContext();
 	}
 
+	/**
+	 * @return the installed feature groups by id. The returned map is an immutable snapshot shared by all callers.
+	 * @see InstalledProfileCache
+	 */
 	public static Map<String, IInstallableUnit> computeInstalledIUsById(IProgressMonitor monitor) {
-		Map<String, IInstallableUnit> iUs = new HashMap<>();
-		BundleContext bundleContext = MarketplaceClientUi.getBundleContext();
-		ServiceReference<IProvisioningAgent> serviceReference = bundleContext.getServiceReference(IProvisioningAgent.class);
-		if (serviceReference != null) {
-			IProvisioningAgent agent = bundleContext.getService(serviceReference);
-			try {
-				IProfileRegistry profileRegistry = (IProfileRegistry) agent.getService(IProfileRegistry.SERVICE_NAME);
-				if (profileRegistry != null) {
-					IProfile profile = profileRegistry.getProfile(ProvisioningUI.getDefaultUI().getProfileId());
-					if (profile != null) {
-						IQueryResult<IInstallableUnit> result = profile.available(QueryUtil.createIUGroupQuery(),
-								monitor);
-						for (IInstallableUnit unit : result) {
-							iUs.put(unit.getId(), unit);
-						}
-					}
-				}
-			} finally {
-				bundleContext.ungetService(serviceReference);
-			}
-		}
-		return iUs;
+		return InstalledProfileCache.getDefault().getInstalledIUs(monitor);
 	}
 
 	public static Set<String> computeInstalledFeatures(IProgressMonitor monitor) {
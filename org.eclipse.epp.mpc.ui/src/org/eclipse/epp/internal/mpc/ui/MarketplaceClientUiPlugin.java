@@ -15,6 +15,7 @@ package org.eclipse.epp.internal.mpc.ui;
 
 import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.epp.internal.mpc.core.util.DebugTraceUtil;
+import org.eclipse.epp.internal.mpc.ui.operations.InstalledProfileCache;
 import org.eclipse.osgi.service.debug.DebugOptions;
 import org.eclipse.osgi.service.debug.DebugOptionsListener;
 import org.eclipse.osgi.service.debug.DebugTrace;
@@ -93,6 +94,12 @@ public class MarketplaceClientUiPlugin implements BundleActivator {
 
 	public static final String DROP_ADAPTER_DEBUG_OPTION = DEBUG_OPTION + "/dnd"; //$NON-NLS-1$
 
+	public static final String RESOLUTION_DEBUG_OPTION = DEBUG_OPTION + "/resolution"; //$NON-NLS-1$
+
+	public static final String RESOURCES_DEBUG_OPTION = DEBUG_OPTION + "/resources"; //$NON-NLS-1$
+
+	public static final String UPDATES_DEBUG_OPTION = DEBUG_OPTION + "/updates"; //$NON-NLS-1$
+
 	public static boolean DEBUG = false;
 
 	private static DebugTrace debugTrace;
@@ -107,6 +114,7 @@ public class MarketplaceClientUiPlugin implements BundleActivator {
 	@Override
 	public void stop(BundleContext context) throws Exception {
 		Job.getJobManager().cancel(context.getBundle());
+		InstalledProfileCache.disposeDefault();
 		debugTrace = null;
 	}
 
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2018 The Eclipse Foundation and others.
+ * Copyright (c) 2018, 2019 The Eclipse Foundation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v2.0
  * which accompanies this distribution, and is available at
@@ -14,6 +14,11 @@ package org.eclipse.epp.internal.mpc.ui;
 
 import static org.eclipse.jface.resource.ResourceLocator.imageDescriptorFromBundle;
 
+import java.io.File;
+
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.epp.internal.mpc.ui.catalog.ImageCache;
+import org.eclipse.epp.internal.mpc.ui.catalog.ResourceCache;
 import org.eclipse.epp.internal.mpc.ui.catalog.ResourceProvider;
 import org.eclipse.jface.dialogs.IDialogSettings;
 import org.eclipse.jface.preference.IPreferenceStore;
@@ -21,7 +26,9 @@ import org.eclipse.jface.resource.ImageDescriptor;
 import org.eclipse.jface.resource.ImageRegistry;
 import org.eclipse.jface.viewers.DecorationOverlayIcon;
 import org.eclipse.jface.viewers.IDecoration;
+import org.eclipse.osgi.util.NLS;
 import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.widgets.Display;
 import org.eclipse.ui.ISharedImages;
 import org.eclipse.ui.PlatformUI;
 import org.eclipse.ui.plugin.AbstractUIPlugin;
@@ -40,6 +47,8 @@ public class MarketplaceClientUiResources {
 
 	private ResourceProvider resourceProvider;
 
+	private ImageCache imageCache;
+
 	private Bundle bundle;
 
 	private AbstractUIPlugin delegate;
@@ -55,7 +64,7 @@ public class MarketplaceClientUiResources {
 			}
 		};
 		delegate.start(context.getBundleContext());
-		resourceProvider = new ResourceProvider();
+		resourceProvider = new ResourceProvider(createResourceCache(context.getBundleContext()));
 		synchronized (MarketplaceClientUiResources.class) {
 			if (instance == null) {
 				instance = this;
@@ -63,6 +72,33 @@ public class MarketplaceClientUiResources {
 		}
 	}
 
+	private static ResourceCache createResourceCache(BundleContext bundleContext) {
+		if (Boolean.parseBoolean(bundleContext.getProperty(ResourceCache.DISABLED_PROPERTY))) {
+			return null;
+		}
+		File cacheDirectory;
+		try {
+			cacheDirectory = Platform.getStateLocation(bundleContext.getBundle()).append("resources").toFile(); //$NON-NLS-1$
+		} catch (RuntimeException ex) {
+			//no writable instance location
+			return null;
+		}
+		long maximumSize = ResourceCache.DEFAULT_MAXIMUM_SIZE;
+		String maximumSizeValue = bundleContext.getProperty(ResourceCache.MAXIMUM_SIZE_PROPERTY);
+		if (maximumSizeValue != null && !"".equals(maximumSizeValue)) { //$NON-NLS-1$
+			try {
+				maximumSize = Long.parseLong(maximumSizeValue);
+			} catch (NumberFormatException ex) {
+				MarketplaceClientUi.error(NLS.bind("Invalid value for {0}: {1}", ResourceCache.MAXIMUM_SIZE_PROPERTY, //$NON-NLS-1$
+						maximumSizeValue), ex);
+			}
+		}
+		if (maximumSize <= 0) {
+			return null;
+		}
+		return new ResourceCache(cacheDirectory, maximumSize);
+	}
+
 	@Deactivate
 	protected void deactivate(ComponentContext context) throws Exception {
 		synchronized (MarketplaceClientUiResources.class) {
@@ -74,6 +110,7 @@ public class MarketplaceClientUiResources {
 			resourceProvider.dispose();
 			resourceProvider = null;
 		}
+		disposeImageCache();
 		if (delegate != null) {
 			delegate.stop(context.getBundleContext());
 		}
@@ -97,6 +134,31 @@ public class MarketplaceClientUiResources {
 		return resourceProvider;
 	}
 
+	/**
+	 * Get the shared cache for decoded images. Must be called on the workbench display thread.
+	 */
+	public synchronized ImageCache getImageCache() {
+		if (imageCache == null || imageCache.isDisposed()) {
+			Display display = PlatformUI.getWorkbench().getDisplay();
+			final ImageCache cache = new ImageCache(display);
+			display.disposeExec(() -> cache.dispose());
+			imageCache = cache;
+		}
+		return imageCache;
+	}
+
+	private synchronized void disposeImageCache() {
+		final ImageCache cache = imageCache;
+		imageCache = null;
+		if (cache != null && !cache.getDisplay().isDisposed()) {
+			cache.getDisplay().asyncExec(() -> {
+				if (!cache.isDisposed()) {
+					cache.dispose();
+				}
+			});
+		}
+	}
+
 	public IDialogSettings getDialogSettings() {
 		return delegate == null ? null : delegate.getDialogSettings();
 	}
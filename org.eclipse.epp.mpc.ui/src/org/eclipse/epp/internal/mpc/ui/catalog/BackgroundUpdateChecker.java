@@ -0,0 +1,317 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.internal.mpc.ui.catalog;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.epp.internal.mpc.core.util.ConcurrentTasks;
+import org.eclipse.epp.internal.mpc.ui.MarketplaceClientUi;
+import org.eclipse.epp.internal.mpc.ui.MarketplaceClientUiResources;
+import org.eclipse.epp.internal.mpc.ui.operations.RepositoryTransactionHelper;
+import org.eclipse.epp.internal.mpc.ui.util.ConcurrentTaskManager;
+import org.eclipse.equinox.p2.core.ProvisionException;
+import org.eclipse.equinox.p2.metadata.Version;
+import org.eclipse.equinox.p2.operations.ProvisioningSession;
+import org.eclipse.equinox.p2.repository.IRepository;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactRepositoryManager;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepositoryManager;
+import org.eclipse.equinox.p2.ui.ProvisioningUI;
+import org.eclipse.jface.preference.IPreferenceStore;
+import org.eclipse.jface.util.IPropertyChangeListener;
+import org.eclipse.jface.util.PropertyChangeEvent;
+import org.eclipse.ui.IStartup;
+import org.osgi.framework.BundleContext;
+
+/**
+ * Periodically refreshes the {@link UpdateIndex} in the background, so the update state of installed solutions is
+ * already known when the Marketplace wizard opens.
+ * <p>
+ * The first check runs a randomized delay after workbench startup, so it neither competes with startup itself nor
+ * hits all update sites at the same time as other workbenches started together. Each check only loads the metadata
+ * of update sites whose index entries have expired, least recently checked first, with a limited number of
+ * concurrent repository loads. The index is saved after each site, so partial results are available right away.
+ * <p>
+ * No checks start while a Marketplace wizard is open, because a check removes the repositories it added when it is
+ * done, which the wizard might be using by then. Instead, the wizard waits for a running check before it adds
+ * repositories of its own (see {@link #awaitRunningCheck(IProgressMonitor)}), and takes the results from the index.
+ * This way, the updates found by the check are shown in the wizard's update notification.
+ *
+ * @author Carsten Reckord
+ */
+public class BackgroundUpdateChecker implements IStartup, IPropertyChangeListener {
+
+	public static final String ENABLEMENT_PROPERTY = "org.eclipse.epp.mpc.updatecheck"; //$NON-NLS-1$
+
+	/**
+	 * Preference for the time between background update checks in minutes
+	 */
+	public static final String INTERVAL_PROPERTY = "org.eclipse.epp.mpc.updatecheck.interval"; //$NON-NLS-1$
+
+	public static final int DEFAULT_INTERVAL = 360;
+
+	/**
+	 * Minimum delay of the first update check after startup. The actual delay is between this and twice as much.
+	 */
+	public static final long INITIAL_DELAY = Long.getLong(BackgroundUpdateChecker.class.getName() + ".initialDelay", //$NON-NLS-1$
+			TimeUnit.MINUTES.toMillis(2));
+
+	/**
+	 * Maximum number of update sites loaded at the same time
+	 */
+	public static final int MAX_CONCURRENT_LOADS = Integer
+			.getInteger(BackgroundUpdateChecker.class.getName() + ".maxConcurrentLoads", 2); //$NON-NLS-1$
+
+	private static final AtomicInteger openWizards = new AtomicInteger();
+
+	private final Random random = new Random();
+
+	private UpdateCheckJob job;
+
+	private long lastCheck;
+
+	@Override
+	public void earlyStartup() {
+		IPreferenceStore preferenceStore = MarketplaceClientUiResources.getInstance().getPreferenceStore();
+		preferenceStore.addPropertyChangeListener(this);
+		if (preferenceStore.getBoolean(ENABLEMENT_PROPERTY)) {
+			schedule(INITIAL_DELAY + (long) (random.nextDouble() * INITIAL_DELAY));
+		}
+	}
+
+	@Override
+	public void propertyChange(PropertyChangeEvent event) {
+		if (ENABLEMENT_PROPERTY.equals(event.getProperty())) {
+			boolean enabled;
+			if (event.getNewValue() instanceof String) {
+				enabled = Boolean.parseBoolean((String) event.getNewValue());
+			} else {
+				enabled = Boolean.TRUE.equals(event.getNewValue());
+			}
+			if (enabled) {
+				schedule(INITIAL_DELAY);
+			} else {
+				cancel();
+			}
+		} else if (INTERVAL_PROPERTY.equals(event.getProperty())) {
+			reschedule();
+		}
+	}
+
+	/**
+	 * Move a pending check according to a changed interval. A running check schedules the next one with the new
+	 * interval when it is done, and the first check after startup keeps its delay.
+	 */
+	private synchronized void reschedule() {
+		if (job == null || lastCheck == 0 || job.getState() != Job.SLEEPING) {
+			return;
+		}
+		long delay = Math.max(0, lastCheck + getInterval() - System.currentTimeMillis());
+		job.cancel();
+		job.schedule(delay);
+	}
+
+	private synchronized void schedule(long delay) {
+		if (job == null) {
+			job = new UpdateCheckJob();
+		}
+		job.schedule(delay);
+	}
+
+	private synchronized void cancel() {
+		if (job != null) {
+			job.cancel();
+			job = null;
+		}
+	}
+
+	private synchronized void checkFinished() {
+		lastCheck = System.currentTimeMillis();
+	}
+
+	/**
+	 * Suspend background update checks while a Marketplace wizard is open. Must be paired with a call to
+	 * {@link #wizardClosed()}.
+	 */
+	public static void wizardOpened() {
+		openWizards.incrementAndGet();
+	}
+
+	public static void wizardClosed() {
+		openWizards.decrementAndGet();
+	}
+
+	/**
+	 * Wait for a running background update check to finish and remove the repositories it added. This needs to be
+	 * called before adding and loading repositories while a wizard is open, so they are not removed while the wizard
+	 * uses them. If the given monitor is canceled, the check is canceled as well.
+	 */
+	public static void awaitRunningCheck(IProgressMonitor monitor) {
+		Job currentJob = Job.getJobManager().currentJob();
+		for (Job job : Job.getJobManager().find(BackgroundUpdateChecker.class)) {
+			if (job == currentJob) {
+				//a check that loads repositories itself
+				continue;
+			}
+			while (job.getState() == Job.RUNNING || job.getState() == Job.WAITING) {
+				if (monitor != null && monitor.isCanceled()) {
+					job.cancel();
+				}
+				try {
+					Thread.sleep(ConcurrentTasks.CANCEL_POLL_INTERVAL);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+
+	private static boolean isEnabled() {
+		return MarketplaceClientUiResources.getInstance().getPreferenceStore().getBoolean(ENABLEMENT_PROPERTY);
+	}
+
+	private static long getInterval() {
+		int interval = MarketplaceClientUiResources.getInstance().getPreferenceStore().getInt(INTERVAL_PROPERTY);
+		return TimeUnit.MINUTES.toMillis(interval > 0 ? interval : DEFAULT_INTERVAL);
+	}
+
+	private class UpdateCheckJob extends Job {
+
+		public UpdateCheckJob() {
+			super(Messages.BackgroundUpdateChecker_checkingForUpdates);
+			setSystem(true);
+			setPriority(DECORATE);
+			setUser(false);
+		}
+
+		@Override
+		public boolean belongsTo(Object family) {
+			BundleContext bundleContext = MarketplaceClientUi.getBundleContext();
+			return family == BackgroundUpdateChecker.this || family == BackgroundUpdateChecker.class
+					|| (bundleContext != null && (family == bundleContext || family == bundleContext.getBundle()));
+		}
+
+		@Override
+		public boolean shouldSchedule() {
+			return isEnabled();
+		}
+
+		@Override
+		protected IStatus run(IProgressMonitor monitor) {
+			if (openWizards.get() > 0) {
+				//try again after the wizard is closed
+				schedule(INITIAL_DELAY);
+				return Status.OK_STATUS;
+			}
+			try {
+				checkForUpdates(UpdateIndex.getDefault(), monitor);
+			} catch (OperationCanceledException e) {
+				return Status.CANCEL_STATUS;
+			}
+			if (monitor.isCanceled()) {
+				return Status.CANCEL_STATUS;
+			}
+			checkFinished();
+			schedule(getInterval());
+			return Status.OK_STATUS;
+		}
+	}
+
+	private static void checkForUpdates(final UpdateIndex index, final IProgressMonitor monitor) {
+		List<String> sites = index.getSitesToRefresh();
+		if (sites.isEmpty()) {
+			return;
+		}
+
+		ProvisioningSession session = ProvisioningUI.getDefaultUI().getSession();
+		final IMetadataRepositoryManager metadataRepositoryManager = (IMetadataRepositoryManager) session
+				.getProvisioningAgent()
+				.getService(IMetadataRepositoryManager.SERVICE_NAME);
+		IArtifactRepositoryManager artifactRepositoryManager = (IArtifactRepositoryManager) session
+				.getProvisioningAgent()
+				.getService(IArtifactRepositoryManager.SERVICE_NAME);
+
+		ConcurrentTaskManager executor = new ConcurrentTaskManager(
+				Executors.newFixedThreadPool(Math.max(1, Math.min(sites.size(), MAX_CONCURRENT_LOADS))),
+				Messages.BackgroundUpdateChecker_checkingForUpdates);
+		try (RepositoryTransactionHelper repositories = new RepositoryTransactionHelper(metadataRepositoryManager,
+				artifactRepositoryManager)) {
+			final IProgressMonitor pm = new NullProgressMonitor() {
+				@Override
+				public boolean isCanceled() {
+					return super.isCanceled() || monitor.isCanceled();
+				}
+			};
+			for (final String site : sites) {
+				final URI uri;
+				try {
+					uri = new URI(site);
+				} catch (URISyntaxException e) {
+					index.invalidate(site);
+					continue;
+				}
+				repositories.addRepository(uri);
+				executor.submit(() -> {
+					if (pm.isCanceled()) {
+						return;
+					}
+					try {
+						IMetadataRepository repository;
+						try {
+							repository = metadataRepositoryManager.loadRepository(uri, pm);
+						} finally {
+							repositories.addMissingArtifactRepositories();
+						}
+						if (pm.isCanceled()) {
+							return;
+						}
+						Map<String, Version> featureVersions = MarketplaceCatalog.queryFeatureVersions(repository, pm);
+						Map<String, Version> indexedVersions = new HashMap<>();
+						for (String featureId : index.getFeatureIds(site)) {
+							indexedVersions.put(featureId, featureVersions.get(featureId));
+						}
+						index.update(site, repository.getProperty(IRepository.PROP_TIMESTAMP), indexedVersions);
+					} catch (ProvisionException e) {
+						//leave it to the next interactive update check to report this
+						index.invalidate(site);
+					} catch (OperationCanceledException e) {
+						return;
+					}
+					index.save();
+				});
+			}
+			executor.waitUntilFinished(monitor);
+		} catch (CoreException e) {
+			MarketplaceClientUi.log(IStatus.INFO, Messages.BackgroundUpdateChecker_checkFailed, e);
+		} finally {
+			executor.shutdownNow();
+			index.save();
+		}
+	}
+}
@@ -157,12 +157,11 @@ public class FavoritesDiscoveryStrategy extends MarketplaceDiscoveryStrategy {
 			item.setId(favoriteList.getId());
 			item.setName(favoriteList.getName());
 			item.setProvider(favoriteList.getOwner());
+			item.setSource(source);
 
 			String iconUrl = favoriteList.getIcon();
 			if (iconUrl != null) {
-				if (!source.getResourceProvider().containsResource(iconUrl)) {
-					cacheResource(source.getResourceProvider(), item, iconUrl);
-				}
+				cacheResource(source.getResourceProvider(), item, iconUrl);
 				createIcon(item, favoriteList);
 			}
 			addItem(catalogCategory, item);
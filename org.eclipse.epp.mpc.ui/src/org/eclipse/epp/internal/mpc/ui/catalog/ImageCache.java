@@ -0,0 +1,445 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.internal.mpc.ui.catalog;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.epp.internal.mpc.ui.MarketplaceClientUi;
+import org.eclipse.epp.internal.mpc.ui.MarketplaceClientUiPlugin;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.SWTException;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.ImageLoader;
+import org.eclipse.swt.graphics.PaletteData;
+import org.eclipse.swt.graphics.RGB;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Widget;
+
+/**
+ * Shared cache of decoded images, keyed by URL and the maximum size they are shown at. Images are decoded and scaled
+ * down to that size once, on a background thread, so the same logo shown in several tabs only takes up memory once,
+ * and large screenshots are never kept at full resolution just to show a thumbnail.
+ * <p>
+ * Users {@link #load(URL, int, int, Consumer) load} an image and get a reference to it, which they must
+ * {@link ImageReference#release() release} once they no longer show the image. Released images stay cached until the
+ * total number of cached pixels exceeds the maximum, then the least recently used unreferenced images are disposed.
+ * <p>
+ * Except for {@link #downscale(ImageData, int, int)}, all methods must be called on the cache's display thread.
+ *
+ * @author Carsten Reckord
+ */
+public class ImageCache {
+
+	/**
+	 * Default maximum number of cached pixels, about 16MB of image memory. Images that are still referenced are kept
+	 * even if this is exceeded.
+	 */
+	public static final long DEFAULT_MAXIMUM_PIXELS = Long
+			.getLong(ImageCache.class.getName() + ".maximumPixels", 4L * 1024 * 1024); //$NON-NLS-1$
+
+	private static final int DECODER_THREADS = 2;
+
+	/**
+	 * A counted reference to a cached image. The image must not be disposed by the holder of the reference.
+	 */
+	public final class ImageReference {
+
+		private final Entry entry;
+
+		private boolean released;
+
+		private ImageReference(Entry entry) {
+			this.entry = entry;
+		}
+
+		/**
+		 * @return the cached image, which is disposed if the reference has been released or the cache has been
+		 *         disposed
+		 */
+		public Image getImage() {
+			return entry.image;
+		}
+
+		/**
+		 * Release this reference. Releasing a reference more than once has no effect.
+		 */
+		public void release() {
+			checkThread();
+			if (released) {
+				return;
+			}
+			released = true;
+			entry.refCount--;
+			if (entry.refCount == 0) {
+				evictIfNecessary();
+			}
+		}
+
+		/**
+		 * Release this reference once the given widget, usually the one showing the image, is disposed.
+		 *
+		 * @return true if the image can be used, false if the widget is already disposed and the reference has been
+		 *         released right away
+		 */
+		public boolean releaseOnDispose(Widget widget) {
+			if (widget.isDisposed()) {
+				release();
+				return false;
+			}
+			widget.addDisposeListener(e -> release());
+			return true;
+		}
+	}
+
+	private static final class Entry {
+
+		private final String key;
+
+		private Image image;
+
+		private long pixels;
+
+		private int refCount;
+
+		private List<Consumer<ImageReference>> waiters = new ArrayList<>();
+
+		Entry(String key) {
+			this.key = key;
+		}
+	}
+
+	private final Display display;
+
+	private final long maximumPixels;
+
+	private final Map<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+
+	private final ThreadPoolExecutor decoder;
+
+	private long pixels;
+
+	private boolean disposed;
+
+	public ImageCache(Display display) {
+		this(display, DEFAULT_MAXIMUM_PIXELS);
+	}
+
+	public ImageCache(Display display, long maximumPixels) {
+		if (display == null || maximumPixels < 0) {
+			throw new IllegalArgumentException();
+		}
+		this.display = display;
+		this.maximumPixels = maximumPixels;
+		decoder = new ThreadPoolExecutor(DECODER_THREADS, DECODER_THREADS, 30, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), r -> {
+					Thread thread = new Thread(r, "Marketplace image decoder"); //$NON-NLS-1$
+					thread.setDaemon(true);
+					return thread;
+				});
+		decoder.allowCoreThreadTimeOut(true);
+	}
+
+	public Display getDisplay() {
+		return display;
+	}
+
+	/**
+	 * Get a reference to the image at the given URL, scaled down to fit the given size. If the image is already
+	 * cached, the receiver is called immediately. Otherwise it is called on the display thread once the image has
+	 * been decoded. If the image can't be loaded, the receiver is called with null.
+	 * <p>
+	 * The receiver must {@link ImageReference#release() release} the reference once it doesn't need the image
+	 * anymore.
+	 */
+	public void load(final URL url, final int maxWidth, final int maxHeight, Consumer<ImageReference> receiver) {
+		checkThread();
+		if (disposed) {
+			receiver.accept(null);
+			return;
+		}
+		final String key = url.toExternalForm() + '@' + maxWidth + 'x' + maxHeight;
+		Entry entry = entries.get(key);
+		if (entry != null) {
+			if (entry.waiters != null) {
+				entry.waiters.add(receiver);
+			} else {
+				deliver(receiver, acquire(entry));
+			}
+			return;
+		}
+		final Entry newEntry = new Entry(key);
+		newEntry.waiters.add(receiver);
+		entries.put(key, newEntry);
+		decoder.execute(() -> {
+			ImageData imageData = null;
+			try {
+				imageData = decode(url, maxWidth, maxHeight);
+			} catch (IOException | SWTException ex) {
+				MarketplaceClientUi.log(IStatus.WARNING, Messages.ImageCache_loadImageError, url, ex);
+			}
+			final ImageData decoded = imageData;
+			if (!display.isDisposed()) {
+				try {
+					display.asyncExec(() -> loaded(newEntry, decoded));
+				} catch (SWTException ex) {
+					//display disposed concurrently
+				}
+			}
+		});
+	}
+
+	private void loaded(Entry entry, ImageData imageData) {
+		List<Consumer<ImageReference>> waiters = entry.waiters;
+		entry.waiters = null;
+		if (disposed || entries.get(entry.key) != entry || imageData == null) {
+			if (!disposed && entries.get(entry.key) == entry) {
+				//forget failed images, so they are tried again next time
+				entries.remove(entry.key);
+			}
+			for (Consumer<ImageReference> waiter : waiters) {
+				deliver(waiter, null);
+			}
+			return;
+		}
+		try {
+			entry.image = new Image(display, imageData);
+		} catch (SWTException ex) {
+			entries.remove(entry.key);
+			MarketplaceClientUi.log(IStatus.WARNING, Messages.ImageCache_loadImageError, entry.key, ex);
+			for (Consumer<ImageReference> waiter : waiters) {
+				deliver(waiter, null);
+			}
+			return;
+		}
+		entry.pixels = (long) imageData.width * imageData.height;
+		pixels += entry.pixels;
+		for (Consumer<ImageReference> waiter : waiters) {
+			deliver(waiter, acquire(entry));
+		}
+		evictIfNecessary();
+	}
+
+	private static void deliver(Consumer<ImageReference> receiver, ImageReference reference) {
+		try {
+			receiver.accept(reference);
+		} catch (RuntimeException ex) {
+			if (reference != null) {
+				reference.release();
+			}
+			MarketplaceClientUi.error(ex);
+		}
+	}
+
+	private ImageReference acquire(Entry entry) {
+		entry.refCount++;
+		return new ImageReference(entry);
+	}
+
+	private void evictIfNecessary() {
+		if (disposed || pixels <= maximumPixels) {
+			return;
+		}
+		int evicted = 0;
+		//iteration order is least recently used first
+		for (Iterator<Entry> i = entries.values().iterator(); i.hasNext() && pixels > maximumPixels;) {
+			Entry entry = i.next();
+			if (entry.refCount == 0 && entry.image != null) {
+				i.remove();
+				entry.image.dispose();
+				pixels -= entry.pixels;
+				evicted++;
+			}
+		}
+		if (MarketplaceClientUiPlugin.DEBUG && evicted > 0) {
+			MarketplaceClientUiPlugin.trace(MarketplaceClientUiPlugin.RESOURCES_DEBUG_OPTION,
+					"Disposed {0} cached images, {1} pixels remaining", evicted, pixels); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * @return the number of pixels of all cached images, including those still referenced
+	 */
+	public long getPixelCount() {
+		checkThread();
+		return pixels;
+	}
+
+	/**
+	 * @return the number of cached images, including those still being decoded
+	 */
+	public int getSize() {
+		checkThread();
+		return entries.size();
+	}
+
+	/**
+	 * Dispose all cached images, including those that are still referenced.
+	 */
+	public void dispose() {
+		checkThread();
+		disposed = true;
+		decoder.shutdownNow();
+		for (Entry entry : entries.values()) {
+			if (entry.image != null) {
+				entry.image.dispose();
+			}
+		}
+		entries.clear();
+		pixels = 0;
+	}
+
+	public boolean isDisposed() {
+		return disposed;
+	}
+
+	private void checkThread() {
+		if (display.getThread() != Thread.currentThread()) {
+			SWT.error(SWT.ERROR_THREAD_INVALID_ACCESS);
+		}
+	}
+
+	private static ImageData decode(URL url, int maxWidth, int maxHeight) throws IOException {
+		ImageData[] frames;
+		try (InputStream in = url.openStream()) {
+			frames = new ImageLoader().load(in);
+		}
+		if (frames == null || frames.length == 0) {
+			return null;
+		}
+		return downscale(frames[0], maxWidth, maxHeight);
+	}
+
+	/**
+	 * Scale the given image data down to fit the given size, keeping its aspect ratio. Each target pixel is the
+	 * average of the source pixels it covers, weighted by their opacity. Image data that already fits is returned as
+	 * is.
+	 *
+	 * @return the scaled image data with 24 bit direct color and, if the source has any transparency, alpha data
+	 */
+	public static ImageData downscale(ImageData source, int maxWidth, int maxHeight) {
+		if (maxWidth <= 0 || maxHeight <= 0) {
+			throw new IllegalArgumentException();
+		}
+		int sourceWidth = source.width;
+		int sourceHeight = source.height;
+		if (sourceWidth <= maxWidth && sourceHeight <= maxHeight) {
+			return source;
+		}
+		double ratio = Math.min(maxWidth / (double) sourceWidth, maxHeight / (double) sourceHeight);
+		int width = Math.max(1, Math.min(maxWidth, (int) Math.round(sourceWidth * ratio)));
+		int height = Math.max(1, Math.min(maxHeight, (int) Math.round(sourceHeight * ratio)));
+
+		int transparencyType = source.getTransparencyType();
+		boolean hasAlphaData = transparencyType == SWT.TRANSPARENCY_ALPHA && source.alphaData != null;
+		ImageData mask = transparencyType == SWT.TRANSPARENCY_MASK || transparencyType == SWT.TRANSPARENCY_PIXEL
+				? source.getTransparencyMask()
+						: null;
+		boolean transparent = transparencyType != SWT.TRANSPARENCY_NONE;
+		int[] colors = source.palette.isDirect ? null : toRGB(source.palette.getRGBs());
+
+		ImageData target = new ImageData(width, height, 24, new PaletteData(0xFF0000, 0xFF00, 0xFF));
+		byte[] targetAlpha = transparent ? new byte[width * height] : null;
+
+		int[] sourcePixels = new int[sourceWidth];
+		byte[] sourceAlphas = hasAlphaData ? new byte[sourceWidth] : null;
+		int[] maskPixels = mask != null ? new int[sourceWidth] : null;
+		long[] red = new long[width];
+		long[] green = new long[width];
+		long[] blue = new long[width];
+		long[] alpha = new long[width];
+		int[] count = new int[width];
+		int[] targetPixels = new int[width];
+
+		for (int y = 0; y < height; y++) {
+			int fromY = (int) ((long) y * sourceHeight / height);
+			int toY = Math.max(fromY + 1, (int) ((long) (y + 1) * sourceHeight / height));
+			for (int x = 0; x < width; x++) {
+				red[x] = green[x] = blue[x] = alpha[x] = count[x] = 0;
+			}
+			for (int sourceY = fromY; sourceY < toY; sourceY++) {
+				source.getPixels(0, sourceY, sourceWidth, sourcePixels, 0);
+				if (sourceAlphas != null) {
+					source.getAlphas(0, sourceY, sourceWidth, sourceAlphas, 0);
+				}
+				if (maskPixels != null) {
+					mask.getPixels(0, sourceY, sourceWidth, maskPixels, 0);
+				}
+				for (int sourceX = 0; sourceX < sourceWidth; sourceX++) {
+					int x = (int) ((long) sourceX * width / sourceWidth);
+					int pixel = sourcePixels[sourceX];
+					int rgb = colors == null ? toRGB(source.palette, pixel) : pixel < colors.length ? colors[pixel] : 0;
+					int a;
+					if (sourceAlphas != null) {
+						a = sourceAlphas[sourceX] & 0xFF;
+					} else if (maskPixels != null) {
+						a = maskPixels[sourceX] == 0 ? 0 : 255;
+					} else if (source.alpha != -1) {
+						a = source.alpha;
+					} else {
+						a = 255;
+					}
+					red[x] += ((rgb >> 16) & 0xFF) * a;
+					green[x] += ((rgb >> 8) & 0xFF) * a;
+					blue[x] += (rgb & 0xFF) * a;
+					alpha[x] += a;
+					count[x]++;
+				}
+			}
+			for (int x = 0; x < width; x++) {
+				long a = alpha[x];
+				int r = a == 0 ? 0 : (int) (red[x] / a);
+				int g = a == 0 ? 0 : (int) (green[x] / a);
+				int b = a == 0 ? 0 : (int) (blue[x] / a);
+				targetPixels[x] = (r << 16) | (g << 8) | b;
+				if (targetAlpha != null) {
+					targetAlpha[y * width + x] = (byte) (count[x] == 0 ? 0 : a / count[x]);
+				}
+			}
+			target.setPixels(0, y, width, targetPixels, 0);
+		}
+		target.alphaData = targetAlpha;
+		return target;
+	}
+
+	private static int[] toRGB(RGB[] rgbs) {
+		int[] colors = new int[rgbs.length];
+		for (int i = 0; i < rgbs.length; i++) {
+			colors[i] = (rgbs[i].red << 16) | (rgbs[i].green << 8) | rgbs[i].blue;
+		}
+		return colors;
+	}
+
+	private static int toRGB(PaletteData palette, int pixel) {
+		int red = shift(pixel & palette.redMask, palette.redShift);
+		int green = shift(pixel & palette.greenMask, palette.greenShift);
+		int blue = shift(pixel & palette.blueMask, palette.blueShift);
+		return (red << 16) | (green << 8) | blue;
+	}
+
+	private static int shift(int value, int shift) {
+		return shift < 0 ? value >>> -shift : value << shift;
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2018 The Eclipse Foundation and others.
+ * Copyright (c) 2010, 2019 The Eclipse Foundation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v2.0
  * which accompanies this distribution, and is available at
@@ -17,10 +17,13 @@ package org.eclipse.epp.internal.mpc.ui.catalog;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
@@ -30,8 +33,10 @@ import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.epp.internal.mpc.core.MarketplaceClientCore;
 import org.eclipse.epp.internal.mpc.ui.MarketplaceClientUi;
+import org.eclipse.epp.internal.mpc.ui.MarketplaceClientUiPlugin;
 import org.eclipse.epp.internal.mpc.ui.catalog.MarketplaceCategory.Contents;
 import org.eclipse.epp.internal.mpc.ui.operations.RepositoryTransactionHelper;
 import org.eclipse.epp.internal.mpc.ui.util.ConcurrentTaskManager;
@@ -54,11 +59,13 @@ import org.eclipse.equinox.p2.operations.ProvisioningSession;
 import org.eclipse.equinox.p2.query.IQuery;
 import org.eclipse.equinox.p2.query.IQueryResult;
 import org.eclipse.equinox.p2.query.QueryUtil;
+import org.eclipse.equinox.p2.repository.IRepository;
 import org.eclipse.equinox.p2.repository.artifact.IArtifactRepositoryManager;
 import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
 import org.eclipse.equinox.p2.repository.metadata.IMetadataRepositoryManager;
 import org.eclipse.equinox.p2.ui.ProvisioningUI;
 import org.eclipse.osgi.util.NLS;
+import org.osgi.framework.BundleContext;
 
 /**
  * @author David Green
@@ -66,11 +73,29 @@ import org.eclipse.osgi.util.NLS;
  */
 public class MarketplaceCatalog extends Catalog {
 
-	private final Map<String, Version> repositoryIuVersionById = new HashMap<>();
+	/**
+	 * Whether update checks fully load the artifact repositories of update sites as well, although they only need the
+	 * metadata. Off by default; see {@link #setLoadArtifactRepositories(boolean)}.
+	 */
+	public static final boolean DEFAULT_LOAD_ARTIFACT_REPOSITORIES = Boolean
+			.getBoolean(MarketplaceCatalog.class.getName() + ".loadArtifactRepositories"); //$NON-NLS-1$
+
+	private boolean loadArtifactRepositories = DEFAULT_LOAD_ARTIFACT_REPOSITORIES;
+
+	private final Map<String, Version> repositoryIuVersionById = Collections.synchronizedMap(new HashMap<>());
 
 	private INews news;
 
-	private List<MarketplaceNodeCatalogItem> availableUpdates = new ArrayList<>();
+	private volatile List<MarketplaceNodeCatalogItem> availableUpdates = new ArrayList<>();
+
+	/**
+	 * Guards replacing {@link #availableUpdates}, which is never modified in place once published
+	 */
+	private final Object availableUpdatesLock = new Object();
+
+	private final List<Runnable> updatesListeners = new CopyOnWriteArrayList<>();
+
+	private UpdateIndex updateIndex;
 
 	private interface DiscoveryOperation {
 		public void run(MarketplaceDiscoveryStrategy strategy, IProgressMonitor monitor) throws CoreException;
@@ -143,10 +168,13 @@ public class MarketplaceCatalog extends Catalog {
 	public IStatus checkForUpdates(final IProgressMonitor monitor) {
 		SubMonitor progress = SubMonitor.convert(monitor, Messages.MarketplaceCatalog_checkingForUpdates, 10000000);
 		try {
+			//a running background check is about to publish its results to the update index
+			BackgroundUpdateChecker.awaitRunningCheck(monitor);
 			Map<String, IInstallableUnit> installedIUs = calculateInstalledIUs(progress.newChild(100000));
 			List<MarketplaceNodeCatalogItem> updateCheckNeeded = new ArrayList<>();
 			List<CatalogItem> updateCheckItems = getUpdateCheckItems(progress.newChild(100000));
 			List<MarketplaceNodeCatalogItem> updateableItems = new ArrayList<>();
+			List<MarketplaceNodeCatalogItem> refreshNeeded = new ArrayList<>();
 			for (CatalogItem item : updateCheckItems) {
 				if (monitor.isCanceled()) {
 					return Status.CANCEL_STATUS;
@@ -158,9 +186,15 @@ public class MarketplaceCatalog extends Catalog {
 				if (catalogItem.isInstalled()) {
 					if (setUpdatesAvailable(installedIUs, catalogItem)) {
 						updateCheckNeeded.add(catalogItem);
-					} else if (Boolean.TRUE.equals(catalogItem.getUpdateAvailable())) {
+						continue;
+					}
+					if (Boolean.TRUE.equals(catalogItem.getUpdateAvailable())) {
 						updateableItems.add(catalogItem);
 					}
+					if (isRefreshNeeded(catalogItem)) {
+						//show what we know from the update index now, and refresh it in the background
+						refreshNeeded.add(catalogItem);
+					}
 				}
 			}
 			if (!updateCheckNeeded.isEmpty()) {
@@ -172,7 +206,12 @@ public class MarketplaceCatalog extends Catalog {
 				}
 			}
 
-			availableUpdates = updateableItems;
+			synchronized (availableUpdatesLock) {
+				availableUpdates = updateableItems;
+			}
+			if (!refreshNeeded.isEmpty() && !monitor.isCanceled()) {
+				scheduleUpdateRefresh(refreshNeeded, installedIUs);
+			}
 
 			return monitor.isCanceled() ? Status.CANCEL_STATUS : Status.OK_STATUS;
 		} finally {
@@ -180,6 +219,68 @@ public class MarketplaceCatalog extends Catalog {
 		}
 	}
 
+	private void scheduleUpdateRefresh(final List<MarketplaceNodeCatalogItem> items,
+			final Map<String, IInstallableUnit> installedIUs) {
+		new Job(Messages.MarketplaceCatalog_refreshingUpdates) {
+
+			{
+				setSystem(true);
+				setPriority(DECORATE);
+				setUser(false);
+			}
+
+			@Override
+			public boolean belongsTo(Object family) {
+				//like a background update check, this adds and removes repositories, so provisioning waits for it
+				BundleContext bundleContext = MarketplaceClientUi.getBundleContext();
+				return family == MarketplaceCatalog.this || family == BackgroundUpdateChecker.class
+						|| (bundleContext != null && (family == bundleContext || family == bundleContext.getBundle()));
+			}
+
+			@Override
+			protected IStatus run(IProgressMonitor monitor) {
+				checkForUpdates(items, installedIUs, monitor);
+				if (monitor.isCanceled()) {
+					return Status.CANCEL_STATUS;
+				}
+				synchronized (availableUpdatesLock) {
+					List<MarketplaceNodeCatalogItem> updateableItems = new ArrayList<>(availableUpdates);
+					updateableItems.removeAll(items);
+					for (MarketplaceNodeCatalogItem item : items) {
+						if (Boolean.TRUE.equals(item.getUpdateAvailable())) {
+							updateableItems.add(item);
+						}
+					}
+					availableUpdates = updateableItems;
+				}
+				for (Runnable listener : updatesListeners) {
+					listener.run();
+				}
+				return Status.OK_STATUS;
+			}
+		}.schedule();
+	}
+
+	/**
+	 * Cancel the background refresh of available updates started by {@link #checkForUpdates(IProgressMonitor)}, e.g.
+	 * because the wizard is closed.
+	 */
+	public void cancelUpdateRefresh() {
+		Job.getJobManager().cancel(this);
+	}
+
+	/**
+	 * Add a listener that is notified when the {@link #getAvailableUpdates() available updates} have been refreshed
+	 * in the background. Listeners are called from a background thread.
+	 */
+	public void addUpdatesListener(Runnable listener) {
+		updatesListeners.add(listener);
+	}
+
+	public void removeUpdatesListener(Runnable listener) {
+		updatesListeners.remove(listener);
+	}
+
 	private List<CatalogItem> getUpdateCheckItems(IProgressMonitor monitor) {
 		List<CatalogItem> updateCheckItems = getItems();
 
@@ -298,8 +399,12 @@ public class MarketplaceCatalog extends Catalog {
 			return Status.OK_STATUS;
 		}
 
+		//a running background check removes the repositories it added when it is done
+		BackgroundUpdateChecker.awaitRunningCheck(monitor);
+		long start = System.nanoTime();
 		ConcurrentTaskManager executor = new ConcurrentTaskManager(installedCatalogItemsByUpdateUri.size(),
 				Messages.MarketplaceCatalog_checkingForUpdates);
+		final UpdateIndex index = getUpdateIndex();
 
 		ProvisioningSession session = ProvisioningUI.getDefaultUI().getSession();
 		IMetadataRepositoryManager metadataRepositoryManager = (IMetadataRepositoryManager) session
@@ -331,52 +436,52 @@ public class MarketplaceCatalog extends Catalog {
 								item1.setAvailable(null);
 							}
 						}
-						//bug 560062 - to be safe load the artifact repo as well, even though we don't need it here - and do it first because
-						//it's better to have artifact without meta than the other way around.
-						//see comments in RepositoryTransactionHelper.RepositoryTracker.init() for why we fully load artifact repos as well.
-						//TODO this needs a closer look - can we do without this without retriggering bug 560062? It's a serious performance killer...
-						artifactRepositoryManager.loadRepository(uri, pm);
-						if (pm.isCanceled()) {
-							return;
+						if (loadArtifactRepositories) {
+							//bug 560062 - load the artifact repo first, because it's better to have artifact without meta
+							//than the other way around. See comments in RepositoryTransactionHelper.RepositoryTracker.init()
+							artifactRepositoryManager.loadRepository(uri, pm);
+							if (pm.isCanceled()) {
+								return;
+							}
+						}
+						IMetadataRepository repository;
+						try {
+							repository = metadataRepositoryManager.loadRepository(uri, pm);
+						} finally {
+							if (!loadArtifactRepositories) {
+								//bug 560062 - we only need the metadata here, but loading it might have added child
+								//repositories, which need an artifact counterpart. The artifact repos are loaded on install.
+								repositories.addMissingArtifactRepositories();
+							}
 						}
-						IMetadataRepository repository = metadataRepositoryManager.loadRepository(uri, pm);
 						if (pm.isCanceled()) {
 							return;
 						}
 
-						IQuery<IInstallableUnit> query = QueryUtil.createMatchQuery( //
-								"id ~= /*.feature.group/ && " + //$NON-NLS-1$
-								"properties['org.eclipse.equinox.p2.type.group'] == true ");//$NON-NLS-1$
-						IQueryResult<IInstallableUnit> result = repository.query(query, pm);
-
-						// compute highest version for all available IUs.
-						Map<String, Version> repositoryIuVersionById = new HashMap<>();
-						for (IInstallableUnit iu : result) {
-							String key1 = createRepositoryIuKey(uri.toString(), iu.getId());
-							Version version = iu.getVersion();
-							Version priorVersion = repositoryIuVersionById.put(key1, version);
-							if (priorVersion != null && priorVersion.compareTo(version) > 0) {
-								repositoryIuVersionById.put(key1, priorVersion);
-							}
-						}
+						Map<String, Version> featureVersions = queryFeatureVersions(repository, pm);
 
+						Map<String, Version> indexedVersions = new HashMap<>();
 						for (MarketplaceNodeCatalogItem item2 : catalogItemsThisSite) {
 							List<MarketplaceNodeInstallableUnitItem> installableUnitItems = item2
 									.getInstallableUnitItems();
 							for (MarketplaceNodeInstallableUnitItem iuItem : installableUnitItems) {
 								String key2 = createRepositoryIuKey(uri.toString(), iuItem.getId());
-								Version availableVersion = repositoryIuVersionById.get(key2);
+								Version availableVersion = featureVersions.get(iuItem.getId());
 								MarketplaceCatalog.this.repositoryIuVersionById.put(key2, availableVersion);
+								indexedVersions.put(iuItem.getId(), availableVersion);
 								if (availableVersion != null) {
 									item2.setAvailable(true);
 								}
 							}
 						}
+						index.update(uri.toString(), repository.getProperty(IRepository.PROP_TIMESTAMP),
+								indexedVersions);
 						for (MarketplaceNodeCatalogItem item3 : catalogItemsThisSite) {
 							setUpdatesAvailable(installedIUs, item3);
 						}
 
 					} catch (ProvisionException e1) {
+						index.invalidate(uri.toString());
 						MultiStatus errorStatus = new MultiStatus(MarketplaceClientUi.BUNDLE_ID, IStatus.WARNING,
 								NLS.bind(Messages.MarketplaceCatalog_ErrorReadingRepository, uri), e1);
 						for (MarketplaceNodeCatalogItem item4 : catalogItemsThisSite) {
@@ -395,10 +500,56 @@ public class MarketplaceCatalog extends Catalog {
 				MarketplaceClientUi.error(e);
 				return e.getStatus();
 			}
+			traceUpdateCheck(installedCatalogItemsByUpdateUri.size(), updateCheckNeeded.size(), start);
 			return Status.OK_STATUS;
 		} finally {
 			executor.shutdownNow();
+			index.save();
+		}
+	}
+
+	private void traceUpdateCheck(int sites, int items, long start) {
+		if (MarketplaceClientUiPlugin.DEBUG) {
+			MarketplaceClientUiPlugin.trace(MarketplaceClientUiPlugin.UPDATES_DEBUG_OPTION,
+					"Checked {0} update sites for {1} solutions in {2} ms, artifact repositories loaded: {3}", sites, //$NON-NLS-1$
+					items, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), loadArtifactRepositories);
+		}
+	}
+
+	/**
+	 * @return the highest version of each feature in the given repository, by feature group id
+	 */
+	static Map<String, Version> queryFeatureVersions(IMetadataRepository repository, IProgressMonitor monitor) {
+		IQuery<IInstallableUnit> query = QueryUtil.createMatchQuery( //
+				"id ~= /*.feature.group/ && " + //$NON-NLS-1$
+				"properties['org.eclipse.equinox.p2.type.group'] == true ");//$NON-NLS-1$
+		IQueryResult<IInstallableUnit> result = repository.query(query, monitor);
+
+		// compute highest version for all available IUs.
+		Map<String, Version> versionById = new HashMap<>();
+		for (IInstallableUnit iu : result) {
+			Version version = iu.getVersion();
+			Version priorVersion = versionById.put(iu.getId(), version);
+			if (priorVersion != null && priorVersion.compareTo(version) > 0) {
+				versionById.put(iu.getId(), priorVersion);
+			}
 		}
+		return versionById;
+	}
+
+	public boolean isLoadArtifactRepositories() {
+		return loadArtifactRepositories;
+	}
+
+	/**
+	 * Set whether update checks fully load the artifact repositories of update sites in addition to their metadata.
+	 * Update checks only need the metadata, and loading the artifact repositories can take longer than the metadata
+	 * itself. Without it, only artifact repository references are added for repositories that appeared while loading
+	 * the metadata (see {@link RepositoryTransactionHelper#addMissingArtifactRepositories()}), and the artifact
+	 * repositories are loaded when something is actually installed.
+	 */
+	public void setLoadArtifactRepositories(boolean loadArtifactRepositories) {
+		this.loadArtifactRepositories = loadArtifactRepositories;
 	}
 
 	private String createRepositoryIuKey(String uri, String id) {
@@ -411,6 +562,15 @@ public class MarketplaceCatalog extends Catalog {
 		for (MarketplaceNodeInstallableUnitItem iuItem : installableUnitItems) {
 			String key = createRepositoryIuKey(item.getSiteUrl(), iuItem.getId());
 			Version availableVersion = repositoryIuVersionById.get(key);
+			if (availableVersion == null && !repositoryIuVersionById.containsKey(key)) {
+				//not checked in this session - use the last known state
+				UpdateIndex.IndexEntry indexEntry = getUpdateIndex().get(item.getSiteUrl(), iuItem.getId());
+				if (indexEntry != null) {
+					availableVersion = indexEntry.getVersion();
+				} else {
+					needOnlineCheck = true;
+				}
+			}
 			iuItem.setUpdateAvailable(false);
 			iuItem.setAvailable(false);
 			if (availableVersion != null) {
@@ -419,13 +579,35 @@ public class MarketplaceCatalog extends Catalog {
 				if (installedIu != null && installedIu.getVersion().compareTo(availableVersion) < 0) {
 					iuItem.setUpdateAvailable(true);
 				}
-			} else if (!repositoryIuVersionById.containsKey(key)) {
-				needOnlineCheck = true;
 			}
 		}
 		return needOnlineCheck;
 	}
 
+	/**
+	 * @return true if the update state of the given item was taken from the {@link UpdateIndex} and its update site
+	 *         should be checked again
+	 */
+	private boolean isRefreshNeeded(MarketplaceNodeCatalogItem item) {
+		for (MarketplaceNodeInstallableUnitItem iuItem : item.getInstallableUnitItems()) {
+			if (repositoryIuVersionById.containsKey(createRepositoryIuKey(item.getSiteUrl(), iuItem.getId()))) {
+				return false;
+			}
+		}
+		return getUpdateIndex().needsRefresh(item.getSiteUrl());
+	}
+
+	public synchronized UpdateIndex getUpdateIndex() {
+		if (updateIndex == null) {
+			updateIndex = UpdateIndex.getDefault();
+		}
+		return updateIndex;
+	}
+
+	public synchronized void setUpdateIndex(UpdateIndex updateIndex) {
+		this.updateIndex = updateIndex;
+	}
+
 	@Override
 	public IStatus performDiscovery(IProgressMonitor monitor) {
 		SubMonitor progress = SubMonitor.convert(monitor, 200000);
@@ -628,6 +810,22 @@ public class MarketplaceCatalog extends Catalog {
 		}
 	}
 
+	/**
+	 * Cancel the queued resource downloads for this catalog's items, e.g. because they are about to be replaced by the
+	 * results of a new query. Downloads that were also requested elsewhere are kept.
+	 */
+	public void cancelQueuedDownloads() {
+		for (AbstractDiscoveryStrategy discoveryStrategy : getDiscoveryStrategies()) {
+			if (discoveryStrategy instanceof MarketplaceDiscoveryStrategy) {
+				MarketplaceCatalogSource catalogSource = ((MarketplaceDiscoveryStrategy) discoveryStrategy)
+						.getCatalogSource();
+				if (catalogSource != null) {
+					catalogSource.cancelQueuedDownloads();
+				}
+			}
+		}
+	}
+
 	public INews getNews() {
 		return news;
 	}
@@ -658,7 +856,13 @@ public class MarketplaceCatalog extends Catalog {
 	public void removeItem(CatalogItem item) {
 		getItems().remove(item);
 		getFilteredItems().remove(item);
-		getAvailableUpdates().remove(item);
+		synchronized (availableUpdatesLock) {
+			if (availableUpdates.contains(item)) {
+				List<MarketplaceNodeCatalogItem> updateableItems = new ArrayList<>(availableUpdates);
+				updateableItems.remove(item);
+				availableUpdates = updateableItems;
+			}
+		}
 		for (CatalogCategory category : getCategories()) {
 			category.getItems().remove(item);
 		}
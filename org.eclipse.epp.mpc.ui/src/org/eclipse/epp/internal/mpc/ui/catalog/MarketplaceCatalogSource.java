@@ -60,6 +60,13 @@ public class MarketplaceCatalogSource extends AbstractCatalogSource {
 		return marketplaceService;
 	}
 
+	/**
+	 * Cancel the queued downloads for this source's items, e.g. because the items are being replaced.
+	 */
+	public void cancelQueuedDownloads() {
+		resourceProvider.cancelQueuedDownloads(this);
+	}
+
 	public void dispose() {
 	}
 }
@@ -21,12 +21,14 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -34,6 +36,7 @@ import java.util.stream.Collectors;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.core.runtime.jobs.Job;
@@ -44,6 +47,7 @@ import org.eclipse.epp.internal.mpc.core.model.Node;
 import org.eclipse.epp.internal.mpc.core.model.SearchResult;
 import org.eclipse.epp.internal.mpc.core.service.AbstractDataStorageService.NotAuthorizedException;
 import org.eclipse.epp.internal.mpc.core.service.DefaultMarketplaceService;
+import org.eclipse.epp.internal.mpc.core.service.StreamingMarketplaceService;
 import org.eclipse.epp.internal.mpc.core.util.URLUtil;
 import org.eclipse.epp.internal.mpc.ui.MarketplaceClientUi;
 import org.eclipse.epp.internal.mpc.ui.catalog.MarketplaceCategory.Contents;
@@ -95,8 +99,6 @@ public class MarketplaceDiscoveryStrategy extends AbstractDiscoveryStrategy {
 
 	private MarketplaceInfo marketplaceInfo;
 
-	private Map<String, IInstallableUnit> featureIUById;
-
 	private List<LoginListener> loginListeners;
 
 	private IShellProvider shellProvider;
@@ -255,8 +257,68 @@ public class MarketplaceDiscoveryStrategy extends AbstractDiscoveryStrategy {
 		catalogCategory.setContents(Contents.FEATURED);
 	}
 
+	/**
+	 * Search result with catalog items that have already been created while the result was streamed from the
+	 * marketplace server.
+	 */
+	private static class StreamedSearchResult implements ISearchResult {
+
+		private final ISearchResult result;
+
+		private final Map<INode, CatalogItem> catalogItems;
+
+		public StreamedSearchResult(ISearchResult result, Map<INode, CatalogItem> catalogItems) {
+			this.result = result;
+			this.catalogItems = catalogItems;
+		}
+
+		@Override
+		public Integer getMatchCount() {
+			return result.getMatchCount();
+		}
+
+		@Override
+		public List<? extends INode> getNodes() {
+			return result.getNodes();
+		}
+	}
+
+	private interface StreamingQuery {
+		ISearchResult execute(StreamingMarketplaceService service, Consumer<INode> nodeConsumer,
+				IProgressMonitor monitor) throws CoreException;
+	}
+
+	private interface Query {
+		ISearchResult execute(IProgressMonitor monitor) throws CoreException;
+	}
+
+	/**
+	 * Run a query, creating catalog items for the returned nodes as soon as they have been received. This way, the
+	 * work for the first items - like computing their install state and requesting their icons - overlaps with reading
+	 * the rest of the response. The items are only added to the catalog in
+	 * {@link #handleSearchResult(MarketplaceCategory, ISearchResult, IProgressMonitor)}, so their order and favorite
+	 * state are the same as without streaming.
+	 */
+	private ISearchResult query(MarketplaceCategory catalogCategory, StreamingQuery streamingQuery, Query query,
+			IProgressMonitor monitor) throws CoreException {
+		if (!(marketplaceService instanceof StreamingMarketplaceService) || getItems() == null) {
+			return query.execute(monitor);
+		}
+		Map<INode, CatalogItem> catalogItems = new IdentityHashMap<>();
+		ISearchResult result = streamingQuery.execute((StreamingMarketplaceService) marketplaceService, node -> {
+			if (!monitor.isCanceled()) {
+				catalogItems.put(node,
+						createCatalogItem(node, catalogCategory.getId(), false, new NullProgressMonitor()));
+			}
+		}, monitor);
+		return result == null ? null : new StreamedSearchResult(result, catalogItems);
+	}
+
 	protected void handleSearchResult(MarketplaceCategory catalogCategory, ISearchResult result,
 			final IProgressMonitor monitor) {
+		Map<INode, CatalogItem> streamedItems = result instanceof StreamedSearchResult
+				? ((StreamedSearchResult) result).catalogItems
+						: Collections.<INode, CatalogItem> emptyMap();
 		List<CatalogItem> items = getItems();
 		if (items != null && !result.getNodes().isEmpty()) {
 			int nodeWork = 1000;
@@ -283,8 +345,17 @@ public class MarketplaceDiscoveryStrategy extends AbstractDiscoveryStrategy {
 					}
 				}
 				for (final INode node : result.getNodes()) {
-					CatalogItem catalogItem = createCatalogItem(node, catalogCategory.getId(), userFavoritesSupported,
-							progress.newChild(nodeWork));
+					CatalogItem catalogItem;
+					if (streamedItems.containsKey(node)) {
+						catalogItem = streamedItems.get(node);
+						if (userFavoritesSupported && catalogItem instanceof MarketplaceNodeCatalogItem) {
+							((MarketplaceNodeCatalogItem) catalogItem).setUserFavorite(node.getUserFavorite());
+						}
+						progress.worked(nodeWork);
+					} else {
+						catalogItem = createCatalogItem(node, catalogCategory.getId(), userFavoritesSupported,
+								progress.newChild(nodeWork));
+					}
 					items.add(catalogItem);
 				}
 			} finally {
@@ -367,9 +438,7 @@ public class MarketplaceDiscoveryStrategy extends AbstractDiscoveryStrategy {
 				catalogItem.setAvailable(false);
 			}
 			if (node.getImage() != null) {
-				if (!source.getResourceProvider().containsResource(node.getImage())) {
-					cacheResource(source.getResourceProvider(), catalogItem, node.getImage());
-				}
+				cacheResource(source.getResourceProvider(), catalogItem, node.getImage());
 				createIcon(catalogItem, node);
 			}
 			if (node.getBody() != null || node.getScreenshot() != null) {
@@ -380,9 +449,7 @@ public class MarketplaceDiscoveryStrategy extends AbstractDiscoveryStrategy {
 				catalogItem.setOverview(overview);
 
 				if (node.getScreenshot() != null) {
-					if (!source.getResourceProvider().containsResource(node.getScreenshot())) {
-						cacheResource(source.getResourceProvider(), catalogItem, node.getScreenshot());
-					}
+					cacheResource(source.getResourceProvider(), catalogItem, node.getScreenshot());
 					overview.setScreenshot(node.getScreenshot());
 				}
 			}
@@ -400,21 +467,24 @@ public class MarketplaceDiscoveryStrategy extends AbstractDiscoveryStrategy {
 		}
 	}
 
+	/**
+	 * Download a resource for the given item on behalf of the item's {@link CatalogItem#getSource() source}, which can
+	 * cancel the download while it is still queued. Resources that were already requested are not downloaded again,
+	 * but the item's source is added as an owner of a pending download.
+	 */
 	public static void cacheResource(ResourceProvider resourceProvider, CatalogItem catalogItem,
 			String resource) {
-		if (!resourceProvider.containsResource(resource)) {
-			String requestSource = NLS.bind(Messages.MarketplaceDiscoveryStrategy_requestSource, catalogItem.getName(), catalogItem.getId());
-			try {
-				resourceProvider.retrieveResource(requestSource, resource);
-			} catch (URISyntaxException e) {
-				MarketplaceClientUi.log(IStatus.WARNING, Messages.MarketplaceDiscoveryStrategy_badUri,
-						catalogItem.getName(),
-						catalogItem.getId(), resource, e);
-			} catch (IOException e) {
-				MarketplaceClientUi.log(IStatus.WARNING, Messages.MarketplaceDiscoveryStrategy_downloadError,
-						catalogItem.getName(),
-						catalogItem.getId(), resource, e);
-			}
+		String requestSource = NLS.bind(Messages.MarketplaceDiscoveryStrategy_requestSource, catalogItem.getName(), catalogItem.getId());
+		try {
+			resourceProvider.retrieveResource(requestSource, catalogItem.getSource(), resource);
+		} catch (URISyntaxException e) {
+			MarketplaceClientUi.log(IStatus.WARNING, Messages.MarketplaceDiscoveryStrategy_badUri,
+					catalogItem.getName(),
+					catalogItem.getId(), resource, e);
+		} catch (IOException e) {
+			MarketplaceClientUi.log(IStatus.WARNING, Messages.MarketplaceDiscoveryStrategy_downloadError,
+					catalogItem.getName(),
+					catalogItem.getId(), resource, e);
 		}
 	}
 
@@ -495,7 +565,8 @@ public class MarketplaceDiscoveryStrategy extends AbstractDiscoveryStrategy {
 			catalogCategory.setContents(Contents.QUERY);
 
 			//resolve market and category if necessary
-			result = marketplaceService.tagged(tag, progress.newChild(500));
+			result = query(catalogCategory, (service, consumer, m) -> service.tagged(tag, consumer, m),
+					m -> marketplaceService.tagged(tag, m), progress.newChild(500));
 
 			handleSearchResult(catalogCategory, result, progress.newChild(500));
 			if (result.getNodes().isEmpty()) {
@@ -543,7 +614,11 @@ public class MarketplaceDiscoveryStrategy extends AbstractDiscoveryStrategy {
 					throw new CoreException(MarketplaceClientCore.computeStatus(ex, Messages.MarketplaceDiscoveryStrategy_unknownFilter));
 				}
 				progress.setWorkRemaining(totalWork - 1);
-				result = marketplaceService.search(resolvedMarket, resolvedCategory, queryText, progress.newChild(500));
+				result = query(catalogCategory,
+						(service, consumer, m) -> service.search(resolvedMarket, resolvedCategory, queryText, consumer,
+								m),
+						m -> marketplaceService.search(resolvedMarket, resolvedCategory, queryText, m),
+						progress.newChild(500));
 			}
 
 			handleSearchResult(catalogCategory, result, progress.newChild(500));
@@ -630,7 +705,8 @@ public class MarketplaceDiscoveryStrategy extends AbstractDiscoveryStrategy {
 		try {
 			MarketplaceCategory catalogCategory = findMarketplaceCategory(progress.newChild(1));
 			catalogCategory.setContents(Contents.RECENT);
-			ISearchResult result = marketplaceService.recent(progress.newChild(500));
+			ISearchResult result = query(catalogCategory, (service, consumer, m) -> service.recent(consumer, m),
+					m -> marketplaceService.recent(m), progress.newChild(500));
 			handleSearchResult(catalogCategory, result, progress.newChild(500));
 			maybeAddCatalogItem(catalogCategory);
 		} finally {
@@ -662,7 +738,9 @@ public class MarketplaceDiscoveryStrategy extends AbstractDiscoveryStrategy {
 		try {
 			MarketplaceCategory catalogCategory = findMarketplaceCategory(progress.newChild(1));
 			catalogCategory.setContents(Contents.FEATURED);
-			ISearchResult result = marketplaceService.featured(market, category, progress.newChild(500));
+			ISearchResult result = query(catalogCategory,
+					(service, consumer, m) -> service.featured(market, category, consumer, m),
+					m -> marketplaceService.featured(market, category, m), progress.newChild(500));
 			handleSearchResult(catalogCategory, result, progress.newChild(500));
 			maybeAddCatalogItem(catalogCategory);
 		} finally {
@@ -676,7 +754,8 @@ public class MarketplaceDiscoveryStrategy extends AbstractDiscoveryStrategy {
 		try {
 			MarketplaceCategory catalogCategory = findMarketplaceCategory(progress.newChild(1));
 			catalogCategory.setContents(Contents.POPULAR);
-			ISearchResult result = marketplaceService.popular(progress.newChild(500));
+			ISearchResult result = query(catalogCategory, (service, consumer, m) -> service.popular(consumer, m),
+					m -> marketplaceService.popular(m), progress.newChild(500));
 			handleSearchResult(catalogCategory, result, progress.newChild(500));
 			maybeAddCatalogItem(catalogCategory);
 		} finally {
@@ -869,18 +948,16 @@ public class MarketplaceDiscoveryStrategy extends AbstractDiscoveryStrategy {
 		try {
 			MarketplaceCategory catalogCategory = findMarketplaceCategory(progress.newChild(1));
 			catalogCategory.setContents(Contents.QUERY);
-			SearchResult result = new SearchResult();
-			result.setNodes(new ArrayList<Node>());
 			if (!monitor.isCanceled()) {
+				ISearchResult result;
 				if (!nodes.isEmpty()) {
-					List<INode> resolvedNodes = marketplaceService.getNodes(nodes, progress.newChild(500));
-					for (INode node : resolvedNodes) {
-						result.getNodes().add((Node) node);
-					}
+					result = query(catalogCategory,
+							(service, consumer, m) -> createSearchResult(service.getNodes(nodes, consumer, m)),
+							m -> createSearchResult(marketplaceService.getNodes(nodes, m)), progress.newChild(500));
 				} else {
+					result = createSearchResult(Collections.<INode> emptyList());
 					progress.setWorkRemaining(500);
 				}
-				result.setMatchCount(result.getNodes().size());
 				handleSearchResult(catalogCategory, result, progress.newChild(500));
 			}
 		} finally {
@@ -888,6 +965,16 @@ public class MarketplaceDiscoveryStrategy extends AbstractDiscoveryStrategy {
 		}
 	}
 
+	private static SearchResult createSearchResult(List<INode> nodes) {
+		SearchResult result = new SearchResult();
+		result.setNodes(new ArrayList<Node>(nodes.size()));
+		for (INode node : nodes) {
+			result.getNodes().add((Node) node);
+		}
+		result.setMatchCount(result.getNodes().size());
+		return result;
+	}
+
 	/**
 	 * @deprecated use {@link #computeInstalledIUs(IProgressMonitor)} instead
 	 */
@@ -896,11 +983,8 @@ public class MarketplaceDiscoveryStrategy extends AbstractDiscoveryStrategy {
 		return computeInstalledIUs(monitor).keySet();
 	}
 
-	protected synchronized Map<String, IInstallableUnit> computeInstalledIUs(IProgressMonitor monitor) {
-		if (featureIUById == null) {
-			featureIUById = MarketplaceClientUi.computeInstalledIUsById(monitor);
-		}
-		return featureIUById;
+	protected Map<String, IInstallableUnit> computeInstalledIUs(IProgressMonitor monitor) {
+		return MarketplaceClientUi.computeInstalledIUsById(monitor);
 	}
 
 	protected MarketplaceCategory findMarketplaceCategory(IProgressMonitor monitor) throws CoreException {
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2018 The Eclipse Foundation and others.
+ * Copyright (c) 2010, 2019 The Eclipse Foundation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v2.0
  * which accompanies this distribution, and is available at
@@ -14,25 +14,33 @@
 package org.eclipse.epp.internal.mpc.ui.catalog;
 
 import java.beans.XMLDecoder;
-import java.beans.XMLEncoder;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLDecoder;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 
 import org.eclipse.core.runtime.FileLocator;
@@ -51,8 +59,14 @@ import org.eclipse.osgi.service.datalocation.Location;
 /**
  * A means of knowing about how nodes map to IUs and visa versa. Can handle nodes from multiple marketplaces, and does a
  * best-effort job at persisting information across sessions.
+ * <p>
+ * Nodes are indexed per marketplace, with a reverse index from IUs to the nodes containing them, so installed nodes
+ * can be computed without scanning the whole registry. The registry is persisted in a compact binary format. If there
+ * is no such registry yet, it is migrated from a registry file in the {@link XMLDecoder XML format} of older versions.
+ * The XML file is left alone, since older versions might still use it (e.g. the shared one in the user's home).
  *
  * @author David Green
+ * @author Carsten Reckord
  */
 public class MarketplaceInfo {
 
@@ -66,35 +80,73 @@ public class MarketplaceInfo {
 
 	private static final String P2_FEATURE_GROUP_SUFFIX = ".feature.group"; //$NON-NLS-1$
 
-	private static final String PERSISTENT_FILE = MarketplaceInfo.class.getSimpleName() + ".xml"; //$NON-NLS-1$
+	private static final String PERSISTENT_FILE = MarketplaceInfo.class.getSimpleName() + ".bin"; //$NON-NLS-1$
 
-	private Map<String, List<String>> nodeKeyToIU = new HashMap<>();
+	private static final String XML_PERSISTENT_FILE = MarketplaceInfo.class.getSimpleName() + ".xml"; //$NON-NLS-1$
 
-	private Map<String, List<String>> iuToNodeKey = new HashMap<>();
+	private static final int FORMAT_MAGIC = 0x4d504349; // "MPCI"
+
+	private static final int FORMAT_VERSION = 1;
+
+	private static final char NODE_KEY_SEPARATOR = '#';
+
+	private static final class MarketIndex {
+
+		private final Map<String, List<String>> iusByNode = new LinkedHashMap<>();
+
+		private final Map<String, List<String>> nodesByIu = new HashMap<>();
+	}
+
+	private final Map<String, MarketIndex> markets = new LinkedHashMap<>();
+
+	private final Map<String, String> iuIds = new HashMap<>();
 
 	public MarketplaceInfo() {
 	}
 
 	public MarketplaceInfo(MarketplaceInfo info) {
 		this();
-		nodeKeyToIU.putAll(info.getNodeKeyToIU());
-		iuToNodeKey.putAll(info.getIuToNodeKey());
+		synchronized (info) {
+			for (Entry<String, MarketIndex> market : info.markets.entrySet()) {
+				for (Entry<String, List<String>> node : market.getValue().iusByNode.entrySet()) {
+					mapNode(market.getKey(), node.getKey(), node.getValue());
+				}
+			}
+		}
 	}
 
+	/**
+	 * @return a view of all known nodes, keyed by <code>marketplace url#node id</code>. Adding entries to the view maps
+	 *         the given nodes, but the returned entries can't be modified.
+	 */
 	public Map<String, List<String>> getNodeKeyToIU() {
-		return nodeKeyToIU;
+		return new NodeKeyToIuMap();
 	}
 
-	public void setNodeKeyToIU(Map<String, List<String>> nodeKeyToIU) {
-		this.nodeKeyToIU = nodeKeyToIU;
+	/**
+	 * @deprecated the registry can't be replaced anymore. Use {@link #map(URL, INode)} instead.
+	 */
+	@Deprecated
+	public synchronized void setNodeKeyToIU(Map<String, List<String>> nodeKeyToIU) {
+		markets.clear();
+		iuIds.clear();
+		getNodeKeyToIU().putAll(nodeKeyToIU);
 	}
 
+	/**
+	 * @return a read-only view of the IU to node mapping, with the nodes keyed by <code>marketplace url#node id</code>
+	 */
 	public Map<String, List<String>> getIuToNodeKey() {
-		return iuToNodeKey;
+		return new IuToNodeKeyMap();
 	}
 
+	/**
+	 * @deprecated the IU to node mapping is derived from the {@link #getNodeKeyToIU() node mapping}. This method does
+	 *             nothing.
+	 */
+	@Deprecated
 	public void setIuToNodeKey(Map<String, List<String>> iuToNodeKey) {
-		this.iuToNodeKey = iuToNodeKey;
+		//derived from nodeKeyToIU
 	}
 
 	/**
@@ -111,20 +163,11 @@ public class MarketplaceInfo {
 	@Deprecated
 	public synchronized Set<INode> computeInstalledNodes(URL repositoryUrl, Set<String> installedIus) {
 		Set<INode> nodes = new HashSet<>();
-
-		String keyPrefix = computeUrlKey(repositoryUrl) + '#';
-		for (Map.Entry<String, List<String>> entry : nodeKeyToIU.entrySet()) {
-			if (entry.getKey().startsWith(keyPrefix)) {
-				List<String> ius = nodeKeyToIU.get(entry.getKey());
-				if (computeInstalled(installedIus, ius, false)) {
-					String nodeId = entry.getKey().substring(keyPrefix.length());
-					Node node = new Node();
-					node.setId(nodeId);
-					nodes.add(node);
-				}
-			}
+		for (String nodeId : computeInstalledNodeIds(repositoryUrl, installedIus)) {
+			Node node = new Node();
+			node.setId(nodeId);
+			nodes.add(node);
 		}
-
 		return nodes;
 	}
 
@@ -140,17 +183,9 @@ public class MarketplaceInfo {
 	 */
 	public synchronized Set<INode> computeInstalledNodes(URL repositoryUrl, Map<String, IInstallableUnit> installedIus) {
 		Set<INode> nodes = new HashSet<>();
-
-		String keyPrefix = computeUrlKey(repositoryUrl) + '#';
-		for (Map.Entry<String, List<String>> entry : nodeKeyToIU.entrySet()) {
-			if (entry.getKey().startsWith(keyPrefix)) {
-				List<String> ius = nodeKeyToIU.get(entry.getKey());
-				if (computeInstalled(installedIus.keySet(), ius, false)) {
-					String nodeId = entry.getKey().substring(keyPrefix.length());
-					INode node = QueryHelper.nodeById(nodeId);
-					nodes.add(node);
-				}
-			}
+		for (String nodeId : computeInstalledNodeIds(repositoryUrl, installedIus.keySet())) {
+			INode node = QueryHelper.nodeById(nodeId);
+			nodes.add(node);
 		}
 		for (IInstallableUnit iu : installedIus.values()) {
 			String nodeUrlsValue = iu.getProperty(MPC_NODE_IU_PROPERTY);
@@ -169,6 +204,37 @@ public class MarketplaceInfo {
 		return nodes;
 	}
 
+	private Set<String> computeInstalledNodeIds(URL repositoryUrl, Set<String> installedIus) {
+		MarketIndex market = markets.get(computeUrlKey(repositoryUrl));
+		if (market == null) {
+			return Collections.emptySet();
+		}
+		Set<String> nodeIds = new LinkedHashSet<>();
+		if (installedIus.size() < market.nodesByIu.size()) {
+			for (String installedIu : installedIus) {
+				addNodes(market, installedIu, nodeIds);
+				if (installedIu.endsWith(P2_FEATURE_GROUP_SUFFIX)) {
+					addNodes(market,
+							installedIu.substring(0, installedIu.length() - P2_FEATURE_GROUP_SUFFIX.length()), nodeIds);
+				}
+			}
+		} else {
+			for (Entry<String, List<String>> entry : market.nodesByIu.entrySet()) {
+				if (computeInstalled(installedIus, entry.getKey())) {
+					nodeIds.addAll(entry.getValue());
+				}
+			}
+		}
+		return nodeIds;
+	}
+
+	private static void addNodes(MarketIndex market, String iu, Set<String> nodeIds) {
+		List<String> nodes = market.nodesByIu.get(iu);
+		if (nodes != null) {
+			nodeIds.addAll(nodes);
+		}
+	}
+
 	/**
 	 * Compute if the given node is installed. The given node must be fully realized, including its
 	 * {@link INode#getIus() ius}.
@@ -262,47 +328,51 @@ public class MarketplaceInfo {
 	}
 
 	public synchronized void map(URL marketUrl, INode node) {
-		String itemKey = computeItemKey(marketUrl, node);
-		if (node.getIus() != null && !node.getIus().getIuElements().isEmpty()) {
-			List<String> ius = new ArrayList<>();
-			Set<String> uniqueIus = new HashSet<>();
-			List<IIu> iuElements = node.getIus().getIuElements();
-			for (IIu iIu : iuElements) {
-				if (uniqueIus.add(iIu.getId())) {
-					ius.add(iIu.getId());
-				}
+		List<String> ius = new ArrayList<>();
+		if (node.getIus() != null) {
+			for (IIu iIu : node.getIus().getIuElements()) {
+				ius.add(iIu.getId());
 			}
-			nodeKeyToIU.put(itemKey, ius);
-			for (String iu : ius) {
-				List<String> catalogNodes = iuToNodeKey.get(iu);
-				if (catalogNodes != null) {
-					if (!catalogNodes.contains(itemKey)) {
-						catalogNodes.add(itemKey);
+		}
+		mapNode(computeUrlKey(marketUrl), node.getId(), ius);
+	}
+
+	private synchronized void mapNode(String marketKey, String nodeId, List<String> ius) {
+		MarketIndex market = markets.get(marketKey);
+		if (market != null) {
+			List<String> previousIus = market.iusByNode.remove(nodeId);
+			if (previousIus != null) {
+				for (String iu : previousIus) {
+					List<String> nodes = market.nodesByIu.get(iu);
+					if (nodes != null && nodes.remove(nodeId) && nodes.isEmpty()) {
+						market.nodesByIu.remove(iu);
 					}
-				} else {
-					catalogNodes = new ArrayList<>(1);
-					catalogNodes.add(itemKey);
-					iuToNodeKey.put(iu, catalogNodes);
 				}
 			}
-		} else {
-			List<String> ius = nodeKeyToIU.remove(itemKey);
-			if (ius != null) {
-				for (String iu : ius) {
-					List<String> catalogNodes = iuToNodeKey.get(iu);
-					if (catalogNodes != null) {
-						catalogNodes.remove(itemKey);
-						if (catalogNodes.isEmpty()) {
-							iuToNodeKey.remove(iu);
-						}
-					}
-				}
+		}
+		if (ius == null || ius.isEmpty()) {
+			if (market != null && market.iusByNode.isEmpty()) {
+				markets.remove(marketKey);
 			}
+			return;
+		}
+		if (market == null) {
+			market = new MarketIndex();
+			markets.put(marketKey, market);
+		}
+		Set<String> uniqueIus = new LinkedHashSet<>();
+		for (String iu : ius) {
+			uniqueIus.add(internIu(iu));
+		}
+		market.iusByNode.put(nodeId, new ArrayList<>(uniqueIus));
+		for (String iu : uniqueIus) {
+			market.nodesByIu.computeIfAbsent(iu, k -> new ArrayList<>(1)).add(nodeId);
 		}
 	}
 
-	private String computeItemKey(URL marketUrl, INode item) {
-		return computeUrlKey(marketUrl) + '#' + item.getId();
+	private String internIu(String iu) {
+		String interned = iuIds.putIfAbsent(iu, iu);
+		return interned == null ? iu : interned;
 	}
 
 	private String computeUrlKey(URL url) {
@@ -341,7 +411,15 @@ public class MarketplaceInfo {
 			RegistryFile registryFile = createRegistryFile();
 			File loadFile = registryFile.load();
 			if (loadFile != null && loadFile.canRead()) {
-				return doLoad(loadFile);
+				MarketplaceInfo loaded = doLoad(loadFile);
+				if (loaded != null) {
+					return loaded;
+				}
+			}
+			//migrate from the XML registry of older versions
+			File xmlFile = createXmlRegistryFile(registryFile).load();
+			if (xmlFile != null && xmlFile.canRead()) {
+				return doLoad(xmlFile);
 			}
 		} catch (Exception ex) {
 			//Never fail due to this
@@ -351,18 +429,27 @@ public class MarketplaceInfo {
 	}
 
 	protected MarketplaceInfo doLoad(File loadFile) {
+		boolean xmlFile = XML_PERSISTENT_FILE.equals(loadFile.getName());
 		synchronized (MarketplaceInfo.class) {
-			try (InputStream in = new BufferedInputStream(new FileInputStream(loadFile));
-					XMLDecoder decoder = new XMLDecoder(in)) {
-				Object object = decoder.readObject();
-				return (MarketplaceInfo) object;
+			try (InputStream in = new BufferedInputStream(new FileInputStream(loadFile))) {
+				if (!xmlFile) {
+					MarketplaceInfo info = new MarketplaceInfo();
+					info.read(new DataInputStream(in));
+					return info;
+				}
+				try (XMLDecoder decoder = new XMLDecoder(in)) {
+					Object object = decoder.readObject();
+					return (MarketplaceInfo) object;
+				}
 			} catch (Throwable t) {
 				// ignore, fallback
 				IStatus status = new Status(IStatus.WARNING, MarketplaceClientUi.BUNDLE_ID,
 						Messages.MarketplaceInfo_LoadError, t);
 				MarketplaceClientUi.getLog().log(status);
-				//try to delete broken file
-				loadFile.delete();
+				//try to delete broken file, unless it's an XML registry that still belongs to an older version
+				if (!xmlFile) {
+					loadFile.delete();
+				}
 				return null;
 			}
 		}
@@ -384,13 +471,17 @@ public class MarketplaceInfo {
 			if (container != null && !container.exists()) {
 				container.mkdirs();
 			}
-			OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(registryFile));
+			//write to a temporary file first, so a failed save doesn't destroy the existing registry
+			File tempFile = new File(registryFile.getPath() + ".tmp"); //$NON-NLS-1$
+			try (DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+				write(out);
+			}
 			try {
-				XMLEncoder encoder = new XMLEncoder(outputStream);
-				encoder.writeObject(this);
-				encoder.close();
-			} finally {
-				outputStream.close();
+				Files.move(tempFile.toPath(), registryFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException ex) {
+				Files.move(tempFile.toPath(), registryFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
 			}
 		} catch (Throwable t) {
 			// fail safe
@@ -398,6 +489,178 @@ public class MarketplaceInfo {
 		}
 	}
 
+	private synchronized void write(DataOutputStream out) throws IOException {
+		out.writeInt(FORMAT_MAGIC);
+		out.writeInt(FORMAT_VERSION);
+
+		//table of all IUs, referenced by index from the nodes
+		Map<String, Integer> iuIndex = new HashMap<>();
+		for (MarketIndex market : markets.values()) {
+			for (String iu : market.nodesByIu.keySet()) {
+				iuIndex.putIfAbsent(iu, iuIndex.size());
+			}
+		}
+		String[] iuTable = new String[iuIndex.size()];
+		for (Entry<String, Integer> iu : iuIndex.entrySet()) {
+			iuTable[iu.getValue()] = iu.getKey();
+		}
+		out.writeInt(iuTable.length);
+		for (String iu : iuTable) {
+			out.writeUTF(iu);
+		}
+
+		out.writeInt(markets.size());
+		for (Entry<String, MarketIndex> market : markets.entrySet()) {
+			out.writeUTF(market.getKey());
+			Map<String, List<String>> iusByNode = market.getValue().iusByNode;
+			out.writeInt(iusByNode.size());
+			for (Entry<String, List<String>> node : iusByNode.entrySet()) {
+				out.writeUTF(node.getKey());
+				out.writeInt(node.getValue().size());
+				for (String iu : node.getValue()) {
+					out.writeInt(iuIndex.get(iu));
+				}
+			}
+		}
+	}
+
+	private synchronized void read(DataInputStream in) throws IOException {
+		if (in.readInt() != FORMAT_MAGIC) {
+			throw new IOException("Not a marketplace registry"); //$NON-NLS-1$
+		}
+		int formatVersion = in.readInt();
+		if (formatVersion != FORMAT_VERSION) {
+			throw new IOException("Unsupported marketplace registry version " + formatVersion); //$NON-NLS-1$
+		}
+		String[] iuTable = new String[in.readInt()];
+		for (int i = 0; i < iuTable.length; i++) {
+			iuTable[i] = in.readUTF();
+		}
+		for (int marketCount = in.readInt(); marketCount > 0; marketCount--) {
+			String marketKey = in.readUTF();
+			for (int nodeCount = in.readInt(); nodeCount > 0; nodeCount--) {
+				String nodeId = in.readUTF();
+				List<String> ius = new ArrayList<>();
+				for (int iuCount = in.readInt(); iuCount > 0; iuCount--) {
+					ius.add(iuTable[in.readInt()]);
+				}
+				mapNode(marketKey, nodeId, ius);
+			}
+		}
+	}
+
+	/**
+	 * Legacy view of the registry, also used to read the old XML format
+	 */
+	private final class NodeKeyToIuMap extends AbstractMap<String, List<String>> {
+
+		@Override
+		public Set<Entry<String, List<String>>> entrySet() {
+			Set<Entry<String, List<String>>> entries = new LinkedHashSet<>();
+			synchronized (MarketplaceInfo.this) {
+				for (Entry<String, MarketIndex> market : markets.entrySet()) {
+					for (Entry<String, List<String>> node : market.getValue().iusByNode.entrySet()) {
+						entries.add(new SimpleImmutableEntry<>(market.getKey() + NODE_KEY_SEPARATOR + node.getKey(),
+								Collections.unmodifiableList(new ArrayList<>(node.getValue()))));
+					}
+				}
+			}
+			return Collections.unmodifiableSet(entries);
+		}
+
+		@Override
+		public List<String> get(Object key) {
+			if (!(key instanceof String)) {
+				return null;
+			}
+			int separator = ((String) key).lastIndexOf(NODE_KEY_SEPARATOR);
+			if (separator == -1) {
+				return null;
+			}
+			synchronized (MarketplaceInfo.this) {
+				List<String> ius = getNodeIus(((String) key).substring(0, separator),
+						((String) key).substring(separator + 1));
+				return ius == null ? null : Collections.unmodifiableList(new ArrayList<>(ius));
+			}
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return get(key) != null;
+		}
+
+		@Override
+		public List<String> put(String key, List<String> value) {
+			int separator = key.lastIndexOf(NODE_KEY_SEPARATOR);
+			if (separator == -1) {
+				throw new IllegalArgumentException(key);
+			}
+			String marketKey = key.substring(0, separator);
+			String nodeId = key.substring(separator + 1);
+			synchronized (MarketplaceInfo.this) {
+				List<String> previous = getNodeIus(marketKey, nodeId);
+				mapNode(marketKey, nodeId, value);
+				return previous;
+			}
+		}
+
+		private List<String> getNodeIus(String marketKey, String nodeId) {
+			MarketIndex market = markets.get(marketKey);
+			return market == null ? null : market.iusByNode.get(nodeId);
+		}
+	}
+
+	/**
+	 * Legacy read-only view of the reverse index. Puts are ignored, so the old XML format can still be read.
+	 */
+	private final class IuToNodeKeyMap extends AbstractMap<String, List<String>> {
+
+		@Override
+		public Set<Entry<String, List<String>>> entrySet() {
+			Map<String, List<String>> nodeKeysByIu = new LinkedHashMap<>();
+			synchronized (MarketplaceInfo.this) {
+				for (Entry<String, MarketIndex> market : markets.entrySet()) {
+					for (Entry<String, List<String>> iu : market.getValue().nodesByIu.entrySet()) {
+						List<String> nodeKeys = nodeKeysByIu.computeIfAbsent(iu.getKey(), k -> new ArrayList<>(1));
+						for (String nodeId : iu.getValue()) {
+							nodeKeys.add(market.getKey() + NODE_KEY_SEPARATOR + nodeId);
+						}
+					}
+				}
+			}
+			return Collections.unmodifiableMap(nodeKeysByIu).entrySet();
+		}
+
+		@Override
+		public List<String> get(Object key) {
+			List<String> nodeKeys = null;
+			synchronized (MarketplaceInfo.this) {
+				for (Entry<String, MarketIndex> market : markets.entrySet()) {
+					List<String> nodeIds = market.getValue().nodesByIu.get(key);
+					if (nodeIds != null) {
+						if (nodeKeys == null) {
+							nodeKeys = new ArrayList<>(nodeIds.size());
+						}
+						for (String nodeId : nodeIds) {
+							nodeKeys.add(market.getKey() + NODE_KEY_SEPARATOR + nodeId);
+						}
+					}
+				}
+			}
+			return nodeKeys;
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return get(key) != null;
+		}
+
+		@Override
+		public List<String> put(String key, List<String> value) {
+			return get(key);
+		}
+	}
+
 	/**
 	 * compute the registry file
 	 * <p>
@@ -534,6 +797,15 @@ public class MarketplaceInfo {
 		return new File(mpcConfigLocation, PERSISTENT_FILE);
 	}
 
+	private static RegistryFile createXmlRegistryFile(RegistryFile registryFile) {
+		File[] locations = registryFile.getLocations();
+		File[] xmlLocations = new File[locations.length];
+		for (int i = 0; i < locations.length; i++) {
+			xmlLocations[i] = new File(locations[i].getParentFile(), XML_PERSISTENT_FILE);
+		}
+		return new RegistryFile(xmlLocations);
+	}
+
 	/**
 	 * This is only non-private for testing purposes
 	 *
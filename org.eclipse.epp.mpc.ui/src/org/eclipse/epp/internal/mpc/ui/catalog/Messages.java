@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2018 The Eclipse Foundation and others.
+ * Copyright (c) 2010, 2019 The Eclipse Foundation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v2.0
  * which accompanies this distribution, and is available at
@@ -17,6 +17,10 @@ import org.eclipse.osgi.util.NLS;
 class Messages extends NLS {
 	private static final String BUNDLE_NAME = "org.eclipse.epp.internal.mpc.ui.catalog.messages"; //$NON-NLS-1$
 
+	public static String BackgroundUpdateChecker_checkFailed;
+
+	public static String BackgroundUpdateChecker_checkingForUpdates;
+
 	public static String FavoriteListCatalogItem_defaultListName;
 
 	public static String FavoritesDiscoveryStrategy_enterFavoritesUrlMessage;
@@ -31,6 +35,8 @@ class Messages extends NLS {
 
 	public static String FavoritesDiscoveryStrategy_noFavoritesTitle;
 
+	public static String ImageCache_loadImageError;
+
 	public static String MarketplaceCatalog_addedNullEntry;
 
 	public static String MarketplaceCatalog_Checking_News;
@@ -49,6 +55,8 @@ class Messages extends NLS {
 
 	public static String MarketplaceCatalog_queryingMarketplace;
 
+	public static String MarketplaceCatalog_refreshingUpdates;
+
 	public static String MarketplaceCatalog_UpdateCheckDiscoveryError;
 
 	public static String MarketplaceDiscoveryStrategy_badUri;
@@ -105,9 +113,7 @@ class Messages extends NLS {
 
 	public static String ResourceProvider_FailedCreatingTempDir;
 
-	public static String ResourceProvider_retrievingResource;
-
-	public static String ResourceProvider_waitingForDownload;
+	public static String UpdateIndex_saveError;
 	
 	static {
 		// initialize resource bundle
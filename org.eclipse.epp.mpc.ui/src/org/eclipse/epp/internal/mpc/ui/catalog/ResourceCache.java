@@ -0,0 +1,286 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.internal.mpc.ui.catalog;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.epp.internal.mpc.core.service.cache.LruFileStore;
+import org.eclipse.epp.internal.mpc.ui.MarketplaceClientUiPlugin;
+
+/**
+ * A size-bounded on-disk store for downloaded resources like solution logos and screenshots, shared by all
+ * {@link ResourceProvider} users and kept across sessions. Content files are named after a hash of their content, so
+ * the same image served under different URLs is only stored once. For each URL, a small properties file records which
+ * content it resolved to, along with the entity tag and modification date to revalidate it with the server. Once the
+ * maximum size is exceeded, the least recently used content is deleted, except for content that has been
+ * {@link #retain(Entry) handed out} in the current session.
+ *
+ * @author Carsten Reckord
+ */
+public class ResourceCache {
+
+	/**
+	 * Default maximum total size of all cached content in bytes
+	 */
+	public static final long DEFAULT_MAXIMUM_SIZE = 64L * 1024 * 1024;
+
+	/**
+	 * Default time after which cached resources are revalidated with the server
+	 */
+	public static final long DEFAULT_MAX_AGE = TimeUnit.DAYS.toMillis(1);
+
+	/**
+	 * Framework property to disable the resource cache
+	 */
+	public static final String DISABLED_PROPERTY = ResourceCache.class.getName() + ".disabled"; //$NON-NLS-1$
+
+	/**
+	 * Framework property to override the maximum total size of the resource cache in bytes
+	 */
+	public static final String MAXIMUM_SIZE_PROPERTY = ResourceCache.class.getName() + ".maximumSize"; //$NON-NLS-1$
+
+	private static final String CONTENT_SUFFIX = ".res"; //$NON-NLS-1$
+
+	private static final String META_SUFFIX = ".properties"; //$NON-NLS-1$
+
+	private static final String META_URL = "url"; //$NON-NLS-1$
+
+	private static final String META_CONTENT = "content"; //$NON-NLS-1$
+
+	private static final String META_ETAG = "etag"; //$NON-NLS-1$
+
+	private static final String META_LAST_MODIFIED = "lastModified"; //$NON-NLS-1$
+
+	private static final String META_VALIDATED = "validated"; //$NON-NLS-1$
+
+	/**
+	 * A cached resource
+	 */
+	public static final class Entry {
+
+		private final String url;
+
+		private final String contentHash;
+
+		private final String eTag;
+
+		private final String lastModified;
+
+		private final long validated;
+
+		private final File file;
+
+		private Entry(String url, String contentHash, String eTag, String lastModified, long validated, File file) {
+			this.url = url;
+			this.contentHash = contentHash;
+			this.eTag = eTag;
+			this.lastModified = lastModified;
+			this.validated = validated;
+			this.file = file;
+		}
+
+		public String getUrl() {
+			return url;
+		}
+
+		/**
+		 * @return the SHA-256 hash of the content
+		 */
+		public String getContentHash() {
+			return contentHash;
+		}
+
+		public String getETag() {
+			return eTag;
+		}
+
+		public String getLastModified() {
+			return lastModified;
+		}
+
+		/**
+		 * @return true if the entry has an entity tag or modification date to revalidate it with the server
+		 */
+		public boolean hasValidators() {
+			return eTag != null || lastModified != null;
+		}
+
+		/**
+		 * @return the time in milliseconds since the entry was last retrieved or revalidated
+		 */
+		public long getAge() {
+			return Math.max(0, System.currentTimeMillis() - validated);
+		}
+
+		/**
+		 * @return the local file holding the content. It might be deleted by a later eviction, unless the entry has
+		 *         been {@link ResourceCache#retain(Entry) retained}.
+		 */
+		public File getFile() {
+			return file;
+		}
+	}
+
+	private final LruFileStore store;
+
+	public ResourceCache(File directory) {
+		this(directory, DEFAULT_MAXIMUM_SIZE);
+	}
+
+	public ResourceCache(File directory, long maximumSize) {
+		this.store = new LruFileStore(directory, maximumSize, CONTENT_SUFFIX);
+	}
+
+	public File getDirectory() {
+		return store.getDirectory();
+	}
+
+	public long getMaximumSize() {
+		return store.getMaximumSize();
+	}
+
+	/**
+	 * @return the cached resource for the given URL, or null if there is none or its content has been evicted
+	 */
+	public Entry get(String url) {
+		String id = LruFileStore.id(url);
+		File metaFile = store.getFile(id + META_SUFFIX);
+		if (!metaFile.isFile()) {
+			return null;
+		}
+		Properties meta;
+		try {
+			meta = store.readProperties(metaFile.getName());
+		} catch (IOException e) {
+			return null;
+		}
+		String contentHash = meta.getProperty(META_CONTENT);
+		if (!url.equals(meta.getProperty(META_URL)) || contentHash == null) {
+			return null;
+		}
+		long validated;
+		try {
+			validated = Long.parseLong(meta.getProperty(META_VALIDATED, "0")); //$NON-NLS-1$
+		} catch (NumberFormatException e) {
+			return null;
+		}
+		//mark as recently used for eviction
+		if (!store.touch(contentHash)) {
+			metaFile.delete();
+			return null;
+		}
+		return new Entry(url, contentHash, meta.getProperty(META_ETAG), meta.getProperty(META_LAST_MODIFIED),
+				validated, store.getContentFile(contentHash));
+	}
+
+	/**
+	 * Store the content retrieved for the given URL, replacing any previous content for the same URL. If the same
+	 * content is already stored, it is reused. The content is fully consumed and closed.
+	 *
+	 * @return the new cache entry
+	 */
+	public Entry put(String url, String eTag, String lastModified, InputStream content) throws IOException {
+		MessageDigest digest = LruFileStore.digest("SHA-256"); //$NON-NLS-1$
+		File tempContent = store.write("res", new DigestInputStream(content, digest)); //$NON-NLS-1$
+		String contentHash = LruFileStore.toHex(digest.digest());
+		File contentFile = store.commit(tempContent, contentHash, false);
+		long validated = System.currentTimeMillis();
+		writeMeta(url, contentHash, eTag, lastModified, validated);
+		evictIfNecessary();
+		return new Entry(url, contentHash, eTag, lastModified, validated, contentFile);
+	}
+
+	/**
+	 * Mark an entry as successfully revalidated with the server, resetting its age.
+	 *
+	 * @return the updated entry
+	 */
+	public Entry revalidated(Entry entry) throws IOException {
+		long validated = System.currentTimeMillis();
+		writeMeta(entry.url, entry.contentHash, entry.eTag, entry.lastModified, validated);
+		return new Entry(entry.url, entry.contentHash, entry.eTag, entry.lastModified, validated, entry.file);
+	}
+
+	/**
+	 * Keep the entry's content file until the end of the session, because it has been handed out and might be read
+	 * again later.
+	 */
+	public void retain(Entry entry) {
+		store.retain(entry.contentHash);
+	}
+
+	/**
+	 * Forget the given URL. Its content is kept until it is evicted, since other URLs might share it.
+	 */
+	public void remove(String url) {
+		store.getFile(LruFileStore.id(url) + META_SUFFIX).delete();
+	}
+
+	public void clear() {
+		store.clear();
+	}
+
+	/**
+	 * @return the total size of all cached content in bytes
+	 */
+	public long getSize() {
+		return store.getSize();
+	}
+
+	private void evictIfNecessary() {
+		List<String> evicted = store.evictIfNecessary();
+		if (evicted.isEmpty()) {
+			return;
+		}
+		removeOrphanedMeta();
+		if (MarketplaceClientUiPlugin.DEBUG) {
+			MarketplaceClientUiPlugin.trace(MarketplaceClientUiPlugin.RESOURCES_DEBUG_OPTION,
+					"Evicted {0} resources from {1}, {2} bytes remaining", evicted.size(), getDirectory(), getSize()); //$NON-NLS-1$
+		}
+	}
+
+	private void removeOrphanedMeta() {
+		for (File metaFile : store.listFiles(META_SUFFIX)) {
+			try {
+				String contentHash = store.readProperties(metaFile.getName()).getProperty(META_CONTENT);
+				if (contentHash == null || !store.getContentFile(contentHash).isFile()) {
+					metaFile.delete();
+				}
+			} catch (IOException e) {
+				metaFile.delete();
+			}
+		}
+	}
+
+	private void writeMeta(String url, String contentHash, String eTag, String lastModified, long validated)
+			throws IOException {
+		Properties meta = new Properties();
+		meta.setProperty(META_URL, url);
+		meta.setProperty(META_CONTENT, contentHash);
+		if (eTag != null) {
+			meta.setProperty(META_ETAG, eTag);
+		}
+		if (lastModified != null) {
+			meta.setProperty(META_LAST_MODIFIED, lastModified);
+		}
+		meta.setProperty(META_VALIDATED, Long.toString(validated));
+		store.writeProperties(LruFileStore.id(url) + META_SUFFIX, meta);
+	}
+}
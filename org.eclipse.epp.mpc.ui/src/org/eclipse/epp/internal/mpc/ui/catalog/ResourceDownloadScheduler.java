@@ -0,0 +1,272 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.internal.mpc.ui.catalog;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+
+/**
+ * Runs resource downloads on a small, bounded pool of threads, so opening a catalog tab doesn't start dozens of
+ * concurrent downloads that compete with the marketplace API requests. Queued downloads of resources that are currently
+ * {@link #setVisible(Collection) visible} run before prefetched ones, otherwise downloads run in the order they were
+ * scheduled.
+ * <p>
+ * Scheduling a resource that is already queued doesn't queue it again, it only raises the priority if needed.
+ * <p>
+ * Downloads can be scheduled on behalf of an owner, so the owner can {@link #cancelQueued(Object) cancel} the downloads
+ * it no longer needs without affecting those that others are still waiting for.
+ *
+ * @author Carsten Reckord
+ */
+public class ResourceDownloadScheduler {
+
+	public enum Priority {
+		/**
+		 * The resource is needed for something currently shown to the user
+		 */
+		VISIBLE,
+		/**
+		 * The resource is downloaded ahead of time
+		 */
+		PREFETCH
+	}
+
+	public static final int DEFAULT_MAX_CONCURRENT_DOWNLOADS = Integer
+			.getInteger(ResourceDownloadScheduler.class.getName() + ".maxConcurrentDownloads", 4); //$NON-NLS-1$
+
+	private final class Download implements Runnable, Comparable<Download> {
+
+		private final String resourceName;
+
+		private final long sequence;
+
+		private final Consumer<IProgressMonitor> task;
+
+		private final IProgressMonitor monitor = new NullProgressMonitor();
+
+		private final Set<Object> owners = new HashSet<>();
+
+		private Priority priority;
+
+		Download(String resourceName, long sequence, Priority priority, Consumer<IProgressMonitor> task) {
+			this.resourceName = resourceName;
+			this.sequence = sequence;
+			this.priority = priority;
+			this.task = task;
+		}
+
+		@Override
+		public void run() {
+			synchronized (ResourceDownloadScheduler.this) {
+				if (queued.get(resourceName) != this) {
+					//canceled in the meantime
+					return;
+				}
+				queued.remove(resourceName);
+				running.add(this);
+			}
+			try {
+				task.accept(monitor);
+			} finally {
+				synchronized (ResourceDownloadScheduler.this) {
+					running.remove(this);
+				}
+			}
+		}
+
+		@Override
+		public int compareTo(Download o) {
+			int result = priority.compareTo(o.priority);
+			return result != 0 ? result : Long.compare(sequence, o.sequence);
+		}
+	}
+
+	private final ThreadPoolExecutor executor;
+
+	private final Map<String, Download> queued = new LinkedHashMap<>();
+
+	private final Set<Download> running = new HashSet<>();
+
+	private long sequence;
+
+	public ResourceDownloadScheduler() {
+		this(DEFAULT_MAX_CONCURRENT_DOWNLOADS);
+	}
+
+	public ResourceDownloadScheduler(int maxConcurrentDownloads) {
+		if (maxConcurrentDownloads < 1) {
+			throw new IllegalArgumentException();
+		}
+		executor = new ThreadPoolExecutor(maxConcurrentDownloads, maxConcurrentDownloads, 30, TimeUnit.SECONDS,
+				new PriorityBlockingQueue<Runnable>(), r -> {
+					Thread thread = new Thread(r, "Marketplace resource download"); //$NON-NLS-1$
+					thread.setDaemon(true);
+					return thread;
+				});
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Queue a download for the given resource, unless it is already queued.
+	 *
+	 * @param task
+	 *            the download, which should stop when the passed monitor is canceled
+	 */
+	public void schedule(String resourceName, Priority priority, Consumer<IProgressMonitor> task) {
+		schedule(resourceName, null, priority, task);
+	}
+
+	/**
+	 * Queue a download for the given resource on behalf of the given owner, unless it is already queued. If it is, the
+	 * owner is added to the queued download.
+	 *
+	 * @param owner
+	 *            the owner that can {@link #cancelQueued(Object) cancel} the download, or null if the download should
+	 *            only be canceled together with all others
+	 * @param task
+	 *            the download, which should stop when the passed monitor is canceled
+	 */
+	public synchronized void schedule(String resourceName, Object owner, Priority priority,
+			Consumer<IProgressMonitor> task) {
+		Download download = queued.get(resourceName);
+		if (download != null) {
+			download.owners.add(owner);
+			if (priority.compareTo(download.priority) < 0) {
+				reschedule(download, priority);
+			}
+			return;
+		}
+		download = new Download(resourceName, sequence++, priority, task);
+		download.owners.add(owner);
+		queued.put(resourceName, download);
+		executor.execute(download);
+	}
+
+	/**
+	 * Add an owner to the queued download for the given resource, if there is one.
+	 *
+	 * @see #schedule(String, Object, Priority, Consumer)
+	 */
+	public synchronized void addOwner(String resourceName, Object owner) {
+		Download download = queued.get(resourceName);
+		if (download != null) {
+			download.owners.add(owner);
+		}
+	}
+
+	/**
+	 * Raise the priority of a queued download to {@link Priority#VISIBLE}.
+	 */
+	public synchronized void prioritize(String resourceName) {
+		Download download = queued.get(resourceName);
+		if (download != null && download.priority != Priority.VISIBLE) {
+			reschedule(download, Priority.VISIBLE);
+		}
+	}
+
+	/**
+	 * Set the resources that are currently visible. Queued downloads for these resources are run next, while queued
+	 * downloads for all other resources fall back to {@link Priority#PREFETCH}.
+	 */
+	public synchronized void setVisible(Collection<String> resourceNames) {
+		Set<String> visible = new HashSet<>(resourceNames);
+		for (Download download : new ArrayList<>(queued.values())) {
+			Priority priority = visible.contains(download.resourceName) ? Priority.VISIBLE : Priority.PREFETCH;
+			if (priority != download.priority) {
+				reschedule(download, priority);
+			}
+		}
+	}
+
+	private void reschedule(Download download, Priority priority) {
+		//the queue orders on insertion, so we need to re-insert to change the order
+		if (executor.remove(download)) {
+			download.priority = priority;
+			executor.execute(download);
+		} else {
+			//already taken by a worker
+			download.priority = priority;
+		}
+	}
+
+	/**
+	 * Cancel all downloads that haven't started yet. Running downloads are left to finish.
+	 *
+	 * @return the names of the canceled resources
+	 */
+	public synchronized List<String> cancelQueued() {
+		List<String> canceled = new ArrayList<>(queued.keySet());
+		for (Download download : queued.values()) {
+			executor.remove(download);
+		}
+		queued.clear();
+		return canceled;
+	}
+
+	/**
+	 * Cancel the given owner's downloads that haven't started yet. Downloads that other owners have scheduled as well
+	 * remain queued for them.
+	 *
+	 * @return the names of the canceled resources
+	 */
+	public synchronized List<String> cancelQueued(Object owner) {
+		List<String> canceled = new ArrayList<>();
+		for (Iterator<Download> i = queued.values().iterator(); i.hasNext();) {
+			Download download = i.next();
+			if (download.owners.remove(owner) && download.owners.isEmpty()) {
+				executor.remove(download);
+				i.remove();
+				canceled.add(download.resourceName);
+			}
+		}
+		return canceled;
+	}
+
+	public synchronized boolean isQueued(String resourceName) {
+		return queued.containsKey(resourceName);
+	}
+
+	public synchronized int getQueuedCount() {
+		return queued.size();
+	}
+
+	public synchronized int getRunningCount() {
+		return running.size();
+	}
+
+	/**
+	 * Cancel all queued downloads and ask running downloads to stop.
+	 *
+	 * @return the names of the resources whose downloads were queued
+	 */
+	public synchronized List<String> cancelAll() {
+		List<String> canceled = cancelQueued();
+		for (Download download : running) {
+			download.monitor.setCanceled(true);
+		}
+		return canceled;
+	}
+}
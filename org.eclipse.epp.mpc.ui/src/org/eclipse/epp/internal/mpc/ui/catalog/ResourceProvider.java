@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2018 The Eclipse Foundation and others.
+ * Copyright (c) 2010, 2019 The Eclipse Foundation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v2.0
  * which accompanies this distribution, and is available at
@@ -24,7 +24,12 @@ import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
@@ -37,10 +42,13 @@ import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.Status;
-import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.epp.internal.mpc.core.util.ConditionalTransport;
 import org.eclipse.epp.internal.mpc.core.util.TransportFactory;
 import org.eclipse.epp.internal.mpc.core.util.URLUtil;
 import org.eclipse.epp.internal.mpc.ui.MarketplaceClientUi;
+import org.eclipse.epp.internal.mpc.ui.MarketplaceClientUiPlugin;
+import org.eclipse.epp.internal.mpc.ui.catalog.ResourceDownloadScheduler.Priority;
+import org.eclipse.epp.mpc.core.service.ITransport;
 import org.eclipse.osgi.util.NLS;
 
 /**
@@ -59,10 +67,28 @@ public class ResourceProvider {
 
 		private InputStream input;
 
-		private final FutureTask<URL> delegate;
+		private final class ResourceTask extends FutureTask<URL> {
+
+			ResourceTask(Callable<URL> callable) {
+				super(callable);
+			}
+
+			void complete(URL url) {
+				set(url);
+			}
+
+			@Override
+			protected void done() {
+				notifyDone();
+			}
+		}
+
+		private final ResourceTask delegate;
+
+		private List<Runnable> doneListeners = new ArrayList<>();
 
 		ResourceFuture(final File dir, final String resourceName) {
-			delegate = new FutureTask<>(() -> {
+			delegate = new ResourceTask(() -> {
 				if (input == null) {
 					throw new IllegalStateException();
 				}
@@ -107,6 +133,35 @@ public class ResourceProvider {
 			});
 		}
 
+		/**
+		 * Run the given listener once this resource is done, either on the thread that finished it, or immediately if
+		 * it is already done.
+		 */
+		public void addDoneListener(Runnable listener) {
+			synchronized (this) {
+				if (doneListeners != null) {
+					doneListeners.add(listener);
+					return;
+				}
+			}
+			listener.run();
+		}
+
+		private void notifyDone() {
+			List<Runnable> listeners;
+			synchronized (this) {
+				listeners = doneListeners;
+				doneListeners = null;
+			}
+			for (Runnable listener : listeners) {
+				try {
+					listener.run();
+				} catch (RuntimeException ex) {
+					MarketplaceClientUi.error(ex);
+				}
+			}
+		}
+
 		@Override
 		public boolean cancel(boolean mayInterruptIfRunning) {
 			return delegate.cancel(mayInterruptIfRunning);
@@ -157,6 +212,21 @@ public class ResourceProvider {
 			}
 		}
 
+		/**
+		 * Complete this resource with content that is already available locally, e.g. from the {@link ResourceCache}.
+		 *
+		 * @return false if this resource is already done or being retrieved
+		 */
+		boolean complete(URL localUrl) {
+			synchronized (this) {
+				if (this.isDone() || this.input != null) {
+					return false;
+				}
+			}
+			delegate.complete(localUrl);
+			return true;
+		}
+
 		public URL getURL() throws IOException {
 			try {
 				return get();
@@ -173,7 +243,7 @@ public class ResourceProvider {
 					ioException.initCause(cause);
 					throw ioException;
 				}
-			} catch (InterruptedException e) {
+			} catch (InterruptedException | CancellationException e) {
 				return null;
 			}
 		}
@@ -195,6 +265,27 @@ public class ResourceProvider {
 
 	private final Map<String, ResourceFuture> resources = new ConcurrentHashMap<>();
 
+	private final ResourceDownloadScheduler downloadScheduler = new ResourceDownloadScheduler();
+
+	private final ResourceCache cache;
+
+	public ResourceProvider() {
+		this(null);
+	}
+
+	/**
+	 * @param cache
+	 *            persistent cache to serve resources from and store downloaded resources in, or null to only keep
+	 *            resources in a temporary directory for the lifetime of this provider
+	 */
+	public ResourceProvider(ResourceCache cache) {
+		this.cache = cache;
+	}
+
+	public ResourceCache getCache() {
+		return cache;
+	}
+
 	public synchronized void init() throws IOException {
 		if (dir != null) {
 			return;
@@ -274,16 +365,37 @@ public class ResourceProvider {
 
 	public ResourceFuture retrieveResource(String requestSource, String resourceUrl) throws IOException,
 	URISyntaxException {
+		return retrieveResource(requestSource, null, resourceUrl);
+	}
+
+	/**
+	 * Retrieve a resource on behalf of the given owner, which can {@link #cancelQueuedDownloads(Object) cancel} it
+	 * again while it is still queued.
+	 */
+	public ResourceFuture retrieveResource(String requestSource, Object owner, String resourceUrl)
+			throws IOException, URISyntaxException {
 		URI resourceUri = URLUtil.toURI(resourceUrl);
-		return retrieveResource(requestSource, resourceUrl, resourceUri);
+		return retrieveResource(requestSource, owner, resourceUrl, resourceUri);
 	}
 
 	public ResourceFuture retrieveResource(String requestSource, URI resourceUrl) throws IOException {
 		return retrieveResource(requestSource, resourceUrl.toString(), resourceUrl);
 	}
 
-	public ResourceFuture retrieveResource(final String requestSource, final String resourceName, final URI resourceUrl)
+	public ResourceFuture retrieveResource(String requestSource, String resourceName, URI resourceUrl)
 			throws IOException {
+		return retrieveResource(requestSource, null, resourceName, resourceUrl);
+	}
+
+	/**
+	 * Retrieve a resource on behalf of the given owner, which can {@link #cancelQueuedDownloads(Object) cancel} it
+	 * again while it is still queued.
+	 *
+	 * @param owner
+	 *            the owner of the download, or null if it should only be canceled together with all other downloads
+	 */
+	public ResourceFuture retrieveResource(final String requestSource, Object owner, final String resourceName,
+			final URI resourceUrl) throws IOException {
 		ResourceFuture resourceFuture;
 		boolean retrieve = false;
 		synchronized (this) {
@@ -293,43 +405,126 @@ public class ResourceProvider {
 				retrieve = true;
 			}
 		}
-		if (retrieve) {
+		if (!retrieve) {
+			//keep a shared download alive until all its owners have canceled it
+			downloadScheduler.addOwner(resourceName, owner);
+		} else {
 			final ResourceFuture finalResourceFuture = resourceFuture;
-			new Job(Messages.ResourceProvider_retrievingResource) {
-
-				{
-					setPriority(INTERACTIVE);
-					setUser(false);
-					setSystem(true);
+			final ResourceCache.Entry cached = cache == null ? null : cache.get(resourceUrl.toString());
+			if (cached != null) {
+				//the file is handed out for the rest of the session, so don't let eviction delete it
+				cache.retain(cached);
+			}
+			if (cached != null && finalResourceFuture.complete(cached.getFile().toURI().toURL())) {
+				if (MarketplaceClientUiPlugin.DEBUG) {
+					MarketplaceClientUiPlugin.trace(MarketplaceClientUiPlugin.RESOURCES_DEBUG_OPTION,
+							"Serving {0} from cache, age {1} ms", resourceUrl, cached.getAge()); //$NON-NLS-1$
 				}
-
-				@Override
-				protected IStatus run(IProgressMonitor monitor) {
-					try {
-						InputStream in = TransportFactory.createTransport().stream(resourceUrl, monitor);
-						finalResourceFuture.retrieve(in);
-					} catch (FileNotFoundException e) {
-						//MarketplaceClientUi.error(NLS.bind(Messages.AbstractResourceRunnable_resourceNotFound, new Object[] { catalogItem.getName(),
-						//catalogItem.getId(), resourceUrl }), e);
-					} catch (IOException e) {
-						if (e.getCause() instanceof OperationCanceledException) {
-							// canceled, nothing we want to do here
-						} else {
-							MarketplaceClientUi.log(IStatus.WARNING, Messages.ResourceProvider_downloadError, requestSource,
-									resourceUrl, e);
-						}
-					} catch (CoreException e) {
+				if (cached.getAge() < ResourceCache.DEFAULT_MAX_AGE) {
+					return resourceFuture;
+				}
+			}
+			downloadScheduler.schedule(resourceName, owner, Priority.PREFETCH, monitor -> {
+				try {
+					download(resourceUrl, finalResourceFuture, cached, monitor);
+				} catch (FileNotFoundException e) {
+					//MarketplaceClientUi.error(NLS.bind(Messages.AbstractResourceRunnable_resourceNotFound, new Object[] { catalogItem.getName(),
+					//catalogItem.getId(), resourceUrl }), e);
+				} catch (IOException e) {
+					if (e.getCause() instanceof OperationCanceledException) {
+						// canceled, nothing we want to do here
+					} else {
 						MarketplaceClientUi.log(IStatus.WARNING, Messages.ResourceProvider_downloadError, requestSource,
 								resourceUrl, e);
 					}
-					return Status.OK_STATUS;
+				} catch (CoreException e) {
+					MarketplaceClientUi.log(IStatus.WARNING, Messages.ResourceProvider_downloadError, requestSource,
+							resourceUrl, e);
+				} finally {
+					//make sure waiters are released if the download failed before retrieve() was reached
+					finalResourceFuture.cancel(false);
 				}
-			}.schedule();
+			});
 		}
 		return resourceFuture;
 	}
 
+	/**
+	 * Download a resource, or revalidate it if a cached copy exists. Without a cache, the resource is copied to the
+	 * temporary directory. Otherwise it is stored in the cache and the resource completes with the cached file. A
+	 * resource already completed from the cache keeps the old content for this session, updated content is only used
+	 * the next time the resource is requested.
+	 */
+	private void download(URI resourceUrl, ResourceFuture resource, ResourceCache.Entry cached,
+			IProgressMonitor monitor) throws IOException, CoreException {
+		ITransport transport = TransportFactory.createTransport();
+		if (cache == null) {
+			resource.retrieve(transport.stream(resourceUrl, monitor));
+			return;
+		}
+		String cacheKey = resourceUrl.toString();
+		ResourceCache.Entry entry;
+		boolean notModified = false;
+		if (transport instanceof ConditionalTransport) {
+			ConditionalTransport.Response response = ((ConditionalTransport) transport).stream(resourceUrl,
+					cached == null ? null : cached.getETag(), cached == null ? null : cached.getLastModified(),
+					monitor);
+			notModified = response.isNotModified();
+			if (notModified) {
+				entry = cached == null ? null : cache.revalidated(cached);
+			} else {
+				entry = cache.put(cacheKey, response.getETag(), response.getLastModified(), response.getContent());
+			}
+		} else {
+			entry = cache.put(cacheKey, null, null, transport.stream(resourceUrl, monitor));
+		}
+		if (MarketplaceClientUiPlugin.DEBUG) {
+			MarketplaceClientUiPlugin.trace(MarketplaceClientUiPlugin.RESOURCES_DEBUG_OPTION, "{0} {1}", //$NON-NLS-1$
+					cached == null ? "Downloaded" : notModified ? "Revalidated" : "Updated", resourceUrl); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		}
+		if (entry != null) {
+			cache.retain(entry);
+			resource.complete(entry.getFile().toURI().toURL());
+		}
+	}
+
+	/**
+	 * Download the given resource before other queued resources, because it is needed right now.
+	 */
+	public void prioritize(String resourceName) {
+		downloadScheduler.prioritize(resourceName);
+	}
+
+	/**
+	 * Set the resources that are currently visible to the user. Their downloads are run before other queued downloads.
+	 */
+	public void setVisibleResources(Collection<String> resourceNames) {
+		downloadScheduler.setVisible(resourceNames);
+	}
+
+	/**
+	 * Cancel the given owner's downloads that haven't started yet, e.g. because the content they were requested for
+	 * was replaced. Downloads that were also requested by others are kept. Canceled resources are forgotten, so they
+	 * will be downloaded again when they are requested the next time.
+	 */
+	public void cancelQueuedDownloads(Object owner) {
+		forget(downloadScheduler.cancelQueued(owner));
+	}
+
+	private void forget(Collection<String> resourceNames) {
+		for (String resourceName : resourceNames) {
+			ResourceFuture resource;
+			synchronized (this) {
+				resource = resources.remove(resourceName);
+			}
+			if (resource != null) {
+				resource.cancel(false);
+			}
+		}
+	}
+
 	public void dispose() {
+		forget(downloadScheduler.cancelAll());
 		File dir;
 		synchronized (this) {
 			dir = this.dir;
@@ -357,19 +552,8 @@ public class ResourceProvider {
 			if (fallbackResource != null) {
 				receiver.setResource(fallbackResource);
 			}
-			new Job(Messages.ResourceProvider_waitingForDownload) {
-
-				{
-					setPriority(INTERACTIVE);
-					setUser(false);
-					setSystem(true);
-				}
-
-				@Override
-				protected IStatus run(IProgressMonitor monitor) {
-					return setResource(receiver, resourcePath, resource);
-				}
-			}.schedule();
+			prioritize(resourcePath);
+			resource.addDoneListener(() -> setResource(receiver, resourcePath, resource));
 		} else if (fallbackResource != null) {
 			receiver.setResource(fallbackResource);
 		}
@@ -383,7 +567,7 @@ public class ResourceProvider {
 				T processedResource = receiver.processResource(resourceUrl);
 				receiver.setResource(processedResource);
 			}
-		} catch (InterruptedException e) {
+		} catch (InterruptedException | CancellationException e) {
 			return Status.CANCEL_STATUS;
 		} catch (ExecutionException e) {
 			// already logged during download
@@ -0,0 +1,331 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.internal.mpc.ui.catalog;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.epp.internal.mpc.ui.MarketplaceClientUi;
+import org.eclipse.equinox.p2.metadata.Version;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.FrameworkUtil;
+
+/**
+ * Persistent index of the feature versions available from update sites, so update availability of installed solutions
+ * can be shown right away, without loading all their update sites first.
+ * <p>
+ * Each update site has its own time to live. It starts at {@link #MIN_TTL} and doubles with each refresh that finds
+ * the site's repository unchanged, up to {@link #MAX_TTL}. Sites that change often are checked more often than sites
+ * that are rarely updated.
+ *
+ * @author Carsten Reckord
+ */
+public class UpdateIndex {
+
+	/**
+	 * Time to live for sites that changed since their last check
+	 */
+	public static final long MIN_TTL = TimeUnit.HOURS.toMillis(1);
+
+	/**
+	 * Maximum time to live for sites that didn't change between checks
+	 */
+	public static final long MAX_TTL = TimeUnit.DAYS.toMillis(1);
+
+	private static final String PERSISTENT_FILE = "updateIndex.bin"; //$NON-NLS-1$
+
+	private static final int FORMAT_VERSION = 1;
+
+	private static UpdateIndex defaultIndex;
+
+	/**
+	 * Cached availability of a feature on an update site
+	 */
+	public static final class IndexEntry {
+
+		private final Version version;
+
+		private final long lastChecked;
+
+		private final String repositoryTimestamp;
+
+		IndexEntry(Version version, long lastChecked, String repositoryTimestamp) {
+			this.version = version;
+			this.lastChecked = lastChecked;
+			this.repositoryTimestamp = repositoryTimestamp;
+		}
+
+		/**
+		 * @return the highest version of the feature on the update site, or null if the site doesn't have it
+		 */
+		public Version getVersion() {
+			return version;
+		}
+
+		public long getLastChecked() {
+			return lastChecked;
+		}
+
+		public String getRepositoryTimestamp() {
+			return repositoryTimestamp;
+		}
+	}
+
+	private static final class SiteRecord {
+
+		private final long lastChecked;
+
+		private final long ttl;
+
+		private final String repositoryTimestamp;
+
+		private final Map<String, Version> versions;
+
+		SiteRecord(long lastChecked, long ttl, String repositoryTimestamp, Map<String, Version> versions) {
+			this.lastChecked = lastChecked;
+			this.ttl = ttl;
+			this.repositoryTimestamp = repositoryTimestamp;
+			this.versions = versions;
+		}
+	}
+
+	private final File file;
+
+	private final Map<String, SiteRecord> sites = new HashMap<>();
+
+	private boolean dirty;
+
+	/**
+	 * @param file
+	 *            the file to persist the index to, or null for a transient index
+	 */
+	public UpdateIndex(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * @return the shared index, persisted in the bundle's data area
+	 */
+	public static synchronized UpdateIndex getDefault() {
+		if (defaultIndex == null) {
+			UpdateIndex index = new UpdateIndex(computeDefaultFile());
+			index.load();
+			defaultIndex = index;
+		}
+		return defaultIndex;
+	}
+
+	private static File computeDefaultFile() {
+		Bundle bundle = FrameworkUtil.getBundle(UpdateIndex.class);
+		BundleContext bundleContext = bundle == null ? null : bundle.getBundleContext();
+		return bundleContext == null ? null : bundleContext.getDataFile(PERSISTENT_FILE);
+	}
+
+	/**
+	 * @return the cached availability of the given feature, or null if it has never been checked on the given site
+	 */
+	public synchronized IndexEntry get(String site, String featureId) {
+		SiteRecord record = site == null ? null : sites.get(site);
+		if (record == null || !record.versions.containsKey(featureId)) {
+			return null;
+		}
+		return new IndexEntry(record.versions.get(featureId), record.lastChecked, record.repositoryTimestamp);
+	}
+
+	/**
+	 * @return true if the given site has never been checked, or its last check is older than its time to live
+	 */
+	public synchronized boolean needsRefresh(String site) {
+		SiteRecord record = site == null ? null : sites.get(site);
+		return record == null || currentTimeMillis() - record.lastChecked >= record.ttl;
+	}
+
+	/**
+	 * @return all sites that {@link #needsRefresh(String) need a refresh}, least recently checked first
+	 */
+	public synchronized List<String> getSitesToRefresh() {
+		long now = currentTimeMillis();
+		List<String> result = new ArrayList<>();
+		for (Entry<String, SiteRecord> site : sites.entrySet()) {
+			if (now - site.getValue().lastChecked >= site.getValue().ttl) {
+				result.add(site.getKey());
+			}
+		}
+		result.sort(Comparator.comparingLong(site -> sites.get(site).lastChecked));
+		return result;
+	}
+
+	/**
+	 * @return the ids of all features recorded for the given site
+	 */
+	public synchronized Set<String> getFeatureIds(String site) {
+		SiteRecord record = site == null ? null : sites.get(site);
+		return record == null ? Collections.<String> emptySet() : new HashSet<>(record.versions.keySet());
+	}
+
+	/**
+	 * Record the result of checking an update site.
+	 *
+	 * @param repositoryTimestamp
+	 *            the timestamp of the site's repository if known, used to detect if it changed since the last check
+	 * @param versions
+	 *            the highest version of each checked feature, or null for features the site doesn't have
+	 */
+	public synchronized void update(String site, String repositoryTimestamp, Map<String, Version> versions) {
+		SiteRecord previous = sites.get(site);
+		long ttl = MIN_TTL;
+		Map<String, Version> mergedVersions = new HashMap<>();
+		if (previous != null) {
+			if (repositoryTimestamp != null && repositoryTimestamp.equals(previous.repositoryTimestamp)) {
+				ttl = Math.min(MAX_TTL, previous.ttl * 2);
+				//unchanged repository - keep results for features not checked this time
+				mergedVersions.putAll(previous.versions);
+			}
+		}
+		mergedVersions.putAll(versions);
+		sites.put(site, new SiteRecord(currentTimeMillis(), ttl, repositoryTimestamp, mergedVersions));
+		dirty = true;
+	}
+
+	/**
+	 * Remove the given site, e.g. because it could not be read.
+	 */
+	public synchronized void invalidate(String site) {
+		if (sites.remove(site) != null) {
+			dirty = true;
+		}
+	}
+
+	public synchronized int size() {
+		return sites.size();
+	}
+
+	protected long currentTimeMillis() {
+		return System.currentTimeMillis();
+	}
+
+	/**
+	 * Save the index if it changed since it was last loaded or saved.
+	 */
+	public synchronized void save() {
+		if (file == null || !dirty) {
+			return;
+		}
+		try {
+			File container = file.getParentFile();
+			if (container != null && !container.exists()) {
+				container.mkdirs();
+			}
+			File tempFile = new File(file.getPath() + ".tmp"); //$NON-NLS-1$
+			try (DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+				write(out);
+			}
+			Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			dirty = false;
+		} catch (Exception e) {
+			// fail safe
+			MarketplaceClientUi.getLog()
+					.log(new Status(IStatus.WARNING, MarketplaceClientUi.BUNDLE_ID, Messages.UpdateIndex_saveError, e));
+		}
+	}
+
+	/**
+	 * Replace the index contents with the persisted index, if there is one.
+	 */
+	public synchronized void load() {
+		if (file == null || !file.canRead()) {
+			return;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			read(in);
+			dirty = false;
+		} catch (Exception e) {
+			// ignore broken index, it will be rebuilt
+			sites.clear();
+			file.delete();
+		}
+	}
+
+	private void write(DataOutputStream out) throws IOException {
+		out.writeInt(FORMAT_VERSION);
+		out.writeInt(sites.size());
+		for (Entry<String, SiteRecord> site : sites.entrySet()) {
+			SiteRecord record = site.getValue();
+			out.writeUTF(site.getKey());
+			out.writeLong(record.lastChecked);
+			out.writeLong(record.ttl);
+			writeNullable(out, record.repositoryTimestamp);
+			out.writeInt(record.versions.size());
+			for (Entry<String, Version> version : record.versions.entrySet()) {
+				out.writeUTF(version.getKey());
+				writeNullable(out, version.getValue() == null ? null : version.getValue().toString());
+			}
+		}
+	}
+
+	private void read(DataInputStream in) throws IOException {
+		int formatVersion = in.readInt();
+		if (formatVersion != FORMAT_VERSION) {
+			throw new IOException("Unsupported update index version " + formatVersion); //$NON-NLS-1$
+		}
+		Map<String, SiteRecord> sites = new HashMap<>();
+		for (int siteCount = in.readInt(); siteCount > 0; siteCount--) {
+			String site = in.readUTF();
+			long lastChecked = in.readLong();
+			long ttl = in.readLong();
+			String repositoryTimestamp = readNullable(in);
+			Map<String, Version> versions = new HashMap<>();
+			for (int versionCount = in.readInt(); versionCount > 0; versionCount--) {
+				String featureId = in.readUTF();
+				String version = readNullable(in);
+				versions.put(featureId, version == null ? null : Version.create(version));
+			}
+			sites.put(site, new SiteRecord(lastChecked, ttl, repositoryTimestamp, versions));
+		}
+		this.sites.clear();
+		this.sites.putAll(sites);
+	}
+
+	private static void writeNullable(DataOutputStream out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeUTF(value);
+		}
+	}
+
+	private static String readNullable(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2018 The Eclipse Foundation and others.
+ * Copyright (c) 2010, 2019 The Eclipse Foundation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v2.0
  * which accompanies this distribution, and is available at
@@ -20,11 +20,20 @@ import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.epp.internal.mpc.core.util.ConcurrentTasks;
+import org.eclipse.epp.internal.mpc.core.util.ConcurrentTasks.CancellationMonitor;
 import org.eclipse.epp.internal.mpc.core.util.URLUtil;
+import org.eclipse.epp.internal.mpc.ui.catalog.BackgroundUpdateChecker;
 import org.eclipse.equinox.internal.p2.discovery.model.CatalogItem;
 import org.eclipse.equinox.p2.core.ProvisionException;
 import org.eclipse.equinox.p2.metadata.IInstallableUnit;
@@ -42,6 +51,22 @@ public abstract class AbstractProvisioningOperation implements IRunnableWithProg
 
 	protected static final String P2_FEATURE_GROUP_SUFFIX = ".feature.group"; //$NON-NLS-1$
 
+	/**
+	 * Maximum number of repositories loaded or queried at the same time
+	 */
+	protected static final int MAX_CONCURRENT_REPOSITORY_REQUESTS = 4;
+
+	private static final class RepositoryExecutor {
+
+		private static final ExecutorService INSTANCE = ConcurrentTasks
+				.createExecutor("Marketplace repository loading", MAX_CONCURRENT_REPOSITORY_REQUESTS); //$NON-NLS-1$
+	}
+
+	@FunctionalInterface
+	protected interface RepositoryTask<T, R> {
+		R call(T input, IProgressMonitor monitor) throws ProvisionException, URISyntaxException;
+	}
+
 	protected final List<CatalogItem> items;
 
 	protected final ProvisioningUI provisioningUI;
@@ -60,6 +85,9 @@ public abstract class AbstractProvisioningOperation implements IRunnableWithProg
 
 	protected List<IMetadataRepository> addRepositories(SubMonitor monitor) throws
 	URISyntaxException, ProvisionException {
+		//a running background update check removes the repositories it added when it is done
+		BackgroundUpdateChecker.awaitRunningCheck(monitor);
+
 		// tell p2 that it's okay to use these repositories
 		ProvisioningSession session = ProvisioningUI.getDefaultUI().getSession();
 		RepositoryTracker repositoryTracker = ProvisioningUI.getDefaultUI().getRepositoryTracker();
@@ -85,16 +113,10 @@ public abstract class AbstractProvisioningOperation implements IRunnableWithProg
 		}
 
 		// fetch meta-data for these repositories
-		ArrayList<IMetadataRepository> repositories = new ArrayList<>();
-		monitor.setWorkRemaining(repositories.size());
 		IMetadataRepositoryManager manager = (IMetadataRepositoryManager) session.getProvisioningAgent().getService(
 				IMetadataRepositoryManager.SERVICE_NAME);
-		for (URI uri : repositoryLocations) {
-			checkCancelled(monitor);
-			IMetadataRepository repository = manager.loadRepository(uri, monitor.newChild(1));
-			repositories.add(repository);
-		}
-		return repositories;
+		return runConcurrently(new ArrayList<>(repositoryLocations),
+				(uri, progress) -> manager.loadRepository(uri, progress), monitor);
 	}
 
 	/**
@@ -105,26 +127,105 @@ public abstract class AbstractProvisioningOperation implements IRunnableWithProg
 	 */
 	protected List<IInstallableUnit> queryInstallableUnits(SubMonitor monitor, List<IMetadataRepository> repositories)
 			throws URISyntaxException {
-		final List<IInstallableUnit> installableUnits = new ArrayList<>();
+		List<List<IInstallableUnit>> resultsByRepository;
+		try {
+			resultsByRepository = runConcurrently(repositories, (repository, progress) -> {
+				final Set<String> installableUnitIdsThisRepository = getDescriptorIds(repository);
 
-		monitor.setWorkRemaining(repositories.size());
-		for (final IMetadataRepository repository : repositories) {
-			checkCancelled(monitor);
-			final Set<String> installableUnitIdsThisRepository = getDescriptorIds(repository);
+				IQuery<IInstallableUnit> query = QueryUtil.createLatestQuery(QueryUtil.createIUGroupQuery());
+				IQueryResult<IInstallableUnit> result = repository.query(query, progress);
 
-			IQuery<IInstallableUnit> query = QueryUtil.createLatestQuery(QueryUtil.createIUGroupQuery());
-			IQueryResult<IInstallableUnit> result = repository.query(query, monitor.newChild(1));
-
-			for (IInstallableUnit iu : result) {
-				String id = iu.getId();
-				if (installableUnitIdsThisRepository.contains(id)) {
-					installableUnits.add(iu);
+				List<IInstallableUnit> installableUnits = new ArrayList<>();
+				for (IInstallableUnit iu : result) {
+					String id = iu.getId();
+					if (installableUnitIdsThisRepository.contains(id)) {
+						installableUnits.add(iu);
+					}
 				}
-			}
+				return installableUnits;
+			}, monitor);
+		} catch (ProvisionException e) {
+			//not thrown by queries
+			throw new IllegalStateException(e);
+		}
+
+		final List<IInstallableUnit> installableUnits = new ArrayList<>();
+		for (List<IInstallableUnit> result : resultsByRepository) {
+			installableUnits.addAll(result);
 		}
 		return installableUnits;
 	}
 
+	/**
+	 * Run the given task for all inputs, using up to {@link #MAX_CONCURRENT_REPOSITORY_REQUESTS} threads, so the
+	 * latencies of different update sites add up to their maximum instead of their sum. The first failure cancels all
+	 * remaining tasks and is rethrown.
+	 *
+	 * @return the task results in the order of the inputs
+	 */
+	private <T, R> List<R> runConcurrently(List<T> inputs, RepositoryTask<T, R> task, SubMonitor monitor)
+			throws ProvisionException, URISyntaxException {
+		if (inputs.size() <= 1) {
+			monitor.setWorkRemaining(inputs.size());
+			List<R> results = new ArrayList<>(inputs.size());
+			for (T input : inputs) {
+				checkCancelled(monitor);
+				results.add(task.call(input, monitor.newChild(1)));
+			}
+			return results;
+		}
+		return runConcurrently(inputs, task, monitor, RepositoryExecutor.INSTANCE);
+	}
+
+	/**
+	 * Run the task for all inputs on the given executor. If a task fails or the monitor is canceled, the remaining
+	 * tasks are canceled through their monitors and the failure is rethrown.
+	 */
+	protected <T, R> List<R> runConcurrently(List<T> inputs, RepositoryTask<T, R> task, SubMonitor monitor,
+			Executor executor) throws ProvisionException, URISyntaxException {
+		monitor.setWorkRemaining(inputs.size());
+		List<R> results = new ArrayList<>(inputs.size());
+		CompletionService<R> completionService = new ExecutorCompletionService<>(executor);
+		List<Future<R>> futures = new ArrayList<>(inputs.size());
+		List<CancellationMonitor> taskMonitors = new ArrayList<>(inputs.size());
+		try {
+			for (T input : inputs) {
+				CancellationMonitor taskMonitor = new CancellationMonitor(monitor);
+				taskMonitors.add(taskMonitor);
+				futures.add(completionService.submit(() -> task.call(input, taskMonitor)));
+			}
+			for (int done = 0; done < futures.size(); done++) {
+				ConcurrentTasks.awaitNext(completionService, monitor).get();
+				monitor.worked(1);
+			}
+			for (Future<R> future : futures) {
+				results.add(future.get());
+			}
+			return results;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new OperationCanceledException();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof ProvisionException) {
+				throw (ProvisionException) cause;
+			} else if (cause instanceof URISyntaxException) {
+				throw (URISyntaxException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IllegalStateException(cause);
+		} finally {
+			//let running tasks stop at their next cancellation check instead of interrupting their I/O
+			for (int i = 0; i < futures.size(); i++) {
+				taskMonitors.get(i).setCanceled(true);
+				futures.get(i).cancel(false);
+			}
+		}
+	}
+
 	private Set<String> getDescriptorIds(final IMetadataRepository repository) throws URISyntaxException {
 		final Set<String> installableUnitIdsThisRepository = new HashSet<>();
 		// determine all installable units for this repository
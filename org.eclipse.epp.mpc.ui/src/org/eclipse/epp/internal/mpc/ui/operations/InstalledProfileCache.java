@@ -0,0 +1,184 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.internal.mpc.ui.operations;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.epp.internal.mpc.ui.MarketplaceClientUi;
+import org.eclipse.equinox.internal.provisional.p2.core.eventbus.IProvisioningEventBus;
+import org.eclipse.equinox.internal.provisional.p2.core.eventbus.ProvisioningListener;
+import org.eclipse.equinox.p2.core.IProvisioningAgent;
+import org.eclipse.equinox.p2.engine.IProfile;
+import org.eclipse.equinox.p2.engine.IProfileEvent;
+import org.eclipse.equinox.p2.engine.IProfileRegistry;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.query.IQueryResult;
+import org.eclipse.equinox.p2.query.QueryUtil;
+import org.eclipse.equinox.p2.ui.ProvisioningUI;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceReference;
+
+/**
+ * Shared snapshot of the installed feature groups of a profile, so the different parts of the wizard don't query the
+ * profile over and over again.
+ * <p>
+ * Snapshots are keyed by profile id and profile timestamp. While the provisioning agent's event bus is available, a
+ * snapshot is reused until a profile event for its profile invalidates it, without looking at the profile at all.
+ * Otherwise the profile's timestamp is compared to the snapshot's on each access.
+ *
+ * @author Carsten Reckord
+ */
+public class InstalledProfileCache {
+
+	private static InstalledProfileCache defaultCache;
+
+	private static final class Snapshot {
+
+		private final String profileId;
+
+		private final long timestamp;
+
+		private final Map<String, IInstallableUnit> iusById;
+
+		Snapshot(String profileId, long timestamp, Map<String, IInstallableUnit> iusById) {
+			this.profileId = profileId;
+			this.timestamp = timestamp;
+			this.iusById = Collections.unmodifiableMap(iusById);
+		}
+	}
+
+	private final ProvisioningListener profileListener = event -> {
+		if (event instanceof IProfileEvent) {
+			invalidate(((IProfileEvent) event).getProfileId());
+		}
+	};
+
+	private Snapshot snapshot;
+
+	private long generation;
+
+	private IProvisioningEventBus eventBus;
+
+	public static synchronized InstalledProfileCache getDefault() {
+		if (defaultCache == null) {
+			defaultCache = new InstalledProfileCache();
+		}
+		return defaultCache;
+	}
+
+	public static synchronized void disposeDefault() {
+		if (defaultCache != null) {
+			defaultCache.dispose();
+			defaultCache = null;
+		}
+	}
+
+	/**
+	 * @return the installed feature groups of the current {@link ProvisioningUI#getProfileId() profile} by id, or an
+	 *         empty map if there is no such profile. The returned map is immutable.
+	 */
+	public Map<String, IInstallableUnit> getInstalledIUs(IProgressMonitor monitor) {
+		BundleContext bundleContext = MarketplaceClientUi.getBundleContext();
+		ServiceReference<IProvisioningAgent> serviceReference = bundleContext.getServiceReference(IProvisioningAgent.class);
+		if (serviceReference == null) {
+			return Collections.emptyMap();
+		}
+		IProvisioningAgent agent = bundleContext.getService(serviceReference);
+		try {
+			return getInstalledIUs(agent, ProvisioningUI.getDefaultUI().getProfileId(), monitor);
+		} finally {
+			bundleContext.ungetService(serviceReference);
+		}
+	}
+
+	/**
+	 * @return the installed feature groups of the given profile by id, or an empty map if there is no such profile.
+	 *         The returned map is immutable.
+	 */
+	public Map<String, IInstallableUnit> getInstalledIUs(IProvisioningAgent agent, String profileId,
+			IProgressMonitor monitor) {
+		Snapshot current;
+		long currentGeneration;
+		boolean listening;
+		synchronized (this) {
+			listening = listenTo(agent);
+			current = snapshot != null && snapshot.profileId.equals(profileId) ? snapshot : null;
+			currentGeneration = generation;
+		}
+		if (current != null && listening) {
+			return current.iusById;
+		}
+
+		IProfileRegistry profileRegistry = (IProfileRegistry) agent.getService(IProfileRegistry.SERVICE_NAME);
+		IProfile profile = profileRegistry == null ? null : profileRegistry.getProfile(profileId);
+		if (profile == null) {
+			return Collections.emptyMap();
+		}
+		if (current != null && current.timestamp == profile.getTimestamp()) {
+			return current.iusById;
+		}
+
+		Map<String, IInstallableUnit> iUs = new HashMap<>();
+		IQueryResult<IInstallableUnit> result = profile.available(QueryUtil.createIUGroupQuery(), monitor);
+		for (IInstallableUnit unit : result) {
+			iUs.put(unit.getId(), unit);
+		}
+		Snapshot computed = new Snapshot(profileId, profile.getTimestamp(), iUs);
+		if (monitor == null || !monitor.isCanceled()) {
+			synchronized (this) {
+				//don't cache results that were already outdated while computing them
+				if (generation == currentGeneration) {
+					snapshot = computed;
+				}
+			}
+		}
+		return computed.iusById;
+	}
+
+	/**
+	 * Discard the snapshot of the given profile.
+	 */
+	public synchronized void invalidate(String profileId) {
+		generation++;
+		if (snapshot != null && (profileId == null || snapshot.profileId.equals(profileId))) {
+			snapshot = null;
+		}
+	}
+
+	public synchronized void dispose() {
+		if (eventBus != null) {
+			eventBus.removeListener(profileListener);
+			eventBus = null;
+		}
+		invalidate(null);
+	}
+
+	private boolean listenTo(IProvisioningAgent agent) {
+		IProvisioningEventBus agentEventBus = (IProvisioningEventBus) agent.getService(IProvisioningEventBus.SERVICE_NAME);
+		if (agentEventBus != eventBus) {
+			if (eventBus != null) {
+				eventBus.removeListener(profileListener);
+			}
+			eventBus = agentEventBus;
+			if (eventBus != null) {
+				eventBus.addListener(profileListener);
+			}
+			//can't know what happened before we started listening
+			invalidate(null);
+		}
+		return eventBus != null;
+	}
+}
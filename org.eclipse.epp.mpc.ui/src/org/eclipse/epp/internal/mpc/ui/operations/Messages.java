@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2018 The Eclipse Foundation and others.
+ * Copyright (c) 2010, 2019 The Eclipse Foundation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v2.0
  * which accompanies this distribution, and is available at
@@ -21,6 +21,8 @@ class Messages extends NLS {
 
 	public static String ProfileChangeOperationComputer_unknownOperation;
 
+	public static String ProfileChangeOperationResolver_preResolving;
+
 	public static String ProvisioningOperation_commaSeparator;
 
 	public static String ProvisioningOperation_configuringProvisioningOperation;
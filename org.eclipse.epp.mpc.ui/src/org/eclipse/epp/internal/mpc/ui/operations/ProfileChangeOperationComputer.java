@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2009, 2018 Tasktop Technologies and others.
+ * Copyright (c) 2009, 2019 Tasktop Technologies and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v2.0
  * which accompanies this distribution, and is available at
@@ -22,9 +22,17 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
@@ -34,7 +42,10 @@ import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.core.runtime.SubProgressMonitor;
+import org.eclipse.epp.internal.mpc.core.util.ConcurrentTasks;
+import org.eclipse.epp.internal.mpc.core.util.ConcurrentTasks.CancellationMonitor;
 import org.eclipse.epp.internal.mpc.ui.MarketplaceClientUi;
+import org.eclipse.epp.internal.mpc.ui.MarketplaceClientUiPlugin;
 import org.eclipse.epp.internal.mpc.ui.wizards.SelectionModel.FeatureEntry;
 import org.eclipse.epp.mpc.ui.Operation;
 import org.eclipse.equinox.internal.p2.discovery.model.CatalogItem;
@@ -108,9 +119,22 @@ public class ProfileChangeOperationComputer extends AbstractProvisioningOperatio
 		}
 	}
 
+	/**
+	 * Resolve all {@link ResolutionStrategy#FALLBACK_STRATEGY fallback strategies} at the same time instead of one
+	 * after the other
+	 */
+	static final boolean PARALLEL_RESOLUTION = Boolean
+			.getBoolean(ProfileChangeOperationComputer.class.getName() + ".parallelResolution"); //$NON-NLS-1$
+
+	private static final class ResolutionExecutor {
+
+		private static final ExecutorService INSTANCE = ConcurrentTasks
+				.createExecutor("Marketplace provisioning resolution", 2); //$NON-NLS-1$
+	}
+
 	private final OperationType operationType;
 
-	private final List<FeatureEntry> featureEntries;
+	private final Map<FeatureEntry, Operation> featureEntries;
 
 	private ProfileChangeOperation operation;
 
@@ -124,6 +148,8 @@ public class ProfileChangeOperationComputer extends AbstractProvisioningOperatio
 
 	private String errorMessage;
 
+	private boolean interactive = true;
+
 	/**
 	 * @param operationType
 	 *            the type of operation to perform
@@ -147,7 +173,11 @@ public class ProfileChangeOperationComputer extends AbstractProvisioningOperatio
 		if (resolutionStrategy == null) {
 			throw new IllegalArgumentException();
 		}
-		this.featureEntries = new ArrayList<>(featureEntries);
+		//snapshot the selected operations, so this can run in the background while the selection changes
+		this.featureEntries = new LinkedHashMap<>();
+		for (FeatureEntry featureEntry : featureEntries) {
+			this.featureEntries.put(featureEntry, featureEntry.computeChangeOperation());
+		}
 		this.operationType = operationType;
 		this.resolutionStrategy = resolutionStrategy;
 		this.dependenciesRepository = dependenciesRepository;
@@ -219,8 +249,7 @@ public class ProfileChangeOperationComputer extends AbstractProvisioningOperatio
 		case UNINSTALL:
 			return false;
 		case CHANGE:
-			for (FeatureEntry entry : featureEntries) {
-				Operation operation = entry.computeChangeOperation();
+			for (Operation operation : featureEntries.values()) {
 				if (operation == Operation.INSTALL || operation == Operation.UPDATE) {
 					return true;
 				}
@@ -239,10 +268,8 @@ public class ProfileChangeOperationComputer extends AbstractProvisioningOperatio
 		case UNINSTALL:
 			return true;
 		case CHANGE:
-			for (FeatureEntry entry : featureEntries) {
-				if (entry.computeChangeOperation() == Operation.UNINSTALL) {
-					return true;
-				}
+			if (featureEntries.containsValue(Operation.UNINSTALL)) {
+				return true;
 			}
 			//$fall-through$
 		default:
@@ -254,6 +281,38 @@ public class ProfileChangeOperationComputer extends AbstractProvisioningOperatio
 		return errorMessage;
 	}
 
+	public OperationType getOperationType() {
+		return operationType;
+	}
+
+	public boolean isInteractive() {
+		return interactive;
+	}
+
+	/**
+	 * @param interactive
+	 *            false to fail instead of asking the user how to proceed, e.g. when running speculatively in the
+	 *            background
+	 */
+	public void setInteractive(boolean interactive) {
+		this.interactive = interactive;
+	}
+
+	/**
+	 * @return true if the given computer would compute the same operation as this one, so the result of one can be
+	 *         used for the other
+	 */
+	public boolean isSameRequest(ProfileChangeOperationComputer other) {
+		if (other == this) {
+			return true;
+		}
+		return other != null && operationType == other.operationType
+				&& resolutionStrategy == other.resolutionStrategy && withRemediation == other.withRemediation
+				&& Objects.equals(dependenciesRepository, other.dependenciesRepository)
+				&& new HashSet<>(items).equals(new HashSet<>(other.items))
+				&& featureEntries.equals(other.featureEntries);
+	}
+
 	private IInstallableUnit[] computeInstalledIus(IInstallableUnit[] ius) {
 		List<IInstallableUnit> installedIus = new ArrayList<>(ius.length);
 		Map<String, IInstallableUnit> iUsById = MarketplaceClientUi.computeInstalledIUsById(new NullProgressMonitor());
@@ -329,9 +388,9 @@ public class ProfileChangeOperationComputer extends AbstractProvisioningOperatio
 
 		URI[] knownRepositories = repositoryTracker.getKnownRepositories(session);
 
-		ProfileChangeOperation operation = null;
-		final int workPerStrategy = 1000;
-		SubMonitor subMonitor = SubMonitor.convert(monitor, strategies.size() * workPerStrategy + workPerStrategy);
+		//each strategy gets its own operation and provisioning context, so they can be resolved independently
+		List<ResolutionStrategy> operationStrategies = new ArrayList<>(strategies.size());
+		List<ProfileChangeOperation> operations = new ArrayList<>(strategies.size());
 		Set<URI> previousRepositoryLocations = null;
 		for (ResolutionStrategy strategy : strategies) {
 			Set<URI> repositoryLocations = new HashSet<>(Arrays.asList(repositories));
@@ -347,22 +406,109 @@ public class ProfileChangeOperationComputer extends AbstractProvisioningOperatio
 			if (repositoryLocations.equals(previousRepositoryLocations)) {
 				continue;
 			}
-			operation = operationFactory.create(installableUnits);
+			ProfileChangeOperation operation = operationFactory.create(installableUnits);
 			if (!repositoryLocations.isEmpty()) {
 				URI[] locations = repositoryLocations.toArray(new URI[repositoryLocations.size()]);
 				operation.getProvisioningContext().setMetadataRepositories(locations);
 				operation.getProvisioningContext().setArtifactRepositories(locations);
 			}
+			operationStrategies.add(strategy);
+			operations.add(operation);
+			previousRepositoryLocations = repositoryLocations;
+		}
+
+		final int workPerStrategy = 1000;
+		SubMonitor subMonitor = SubMonitor.convert(monitor, operations.size() * workPerStrategy);
+		if (PARALLEL_RESOLUTION && operations.size() > 1) {
+			return resolveConcurrently(subMonitor, operationStrategies, operations);
+		}
+		ProfileChangeOperation operation = null;
+		for (int i = 0; i < operations.size(); i++) {
+			operation = operations.get(i);
+			long start = System.nanoTime();
 			resolveModal(subMonitor.newChild(workPerStrategy), operation);
-			if (operation.getResolutionResult() != null
-					&& operation.getResolutionResult().getSeverity() != IStatus.ERROR) {
+			traceResolution(operationStrategies.get(i), operation, start);
+			if (isResolved(operation)) {
 				break;
 			}
-			previousRepositoryLocations = repositoryLocations;
 		}
 		return operation;
 	}
 
+	/**
+	 * Resolve the operations of all strategies at the same time. The result of the first strategy that resolves
+	 * without errors is used as soon as all preferred strategies have failed, and all others are canceled. This keeps
+	 * the preference order of the sequential resolution, but a failing strategy doesn't delay its fallback.
+	 */
+	private ProfileChangeOperation resolveConcurrently(SubMonitor monitor, List<ResolutionStrategy> strategies,
+			List<ProfileChangeOperation> operations) throws CoreException {
+		int count = operations.size();
+		monitor.setWorkRemaining(count);
+		CompletionService<Integer> completionService = new ExecutorCompletionService<>(ResolutionExecutor.INSTANCE);
+		List<Future<Integer>> futures = new ArrayList<>(count);
+		List<CancellationMonitor> monitors = new ArrayList<>(count);
+		boolean[] resolved = new boolean[count];
+		try {
+			for (int i = 0; i < count; i++) {
+				final int index = i;
+				CancellationMonitor strategyMonitor = new CancellationMonitor(monitor);
+				monitors.add(strategyMonitor);
+				futures.add(completionService.submit(() -> {
+					long start = System.nanoTime();
+					ProfileChangeOperation operation = operations.get(index);
+					resolveModal(strategyMonitor, operation);
+					traceResolution(strategies.get(index), operation, start);
+					return index;
+				}));
+			}
+			for (int done = 0; done < count; done++) {
+				resolved[ConcurrentTasks.awaitNext(completionService, monitor).get()] = true;
+				monitor.worked(1);
+				for (int i = 0; i < count && resolved[i]; i++) {
+					if (isResolved(operations.get(i))) {
+						return operations.get(i);
+					}
+				}
+			}
+			//all failed - report the last fallback's problems, like the sequential resolution
+			return operations.get(count - 1);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new OperationCanceledException();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof CoreException) {
+				throw (CoreException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IllegalStateException(cause);
+		} finally {
+			//cancel the strategies that are still resolving - this doesn't affect the already resolved ones
+			for (int i = 0; i < count; i++) {
+				if (!resolved[i]) {
+					monitors.get(i).setCanceled(true);
+					futures.get(i).cancel(false);
+				}
+			}
+		}
+	}
+
+	private static boolean isResolved(ProfileChangeOperation operation) {
+		return operation.getResolutionResult() != null
+				&& operation.getResolutionResult().getSeverity() != IStatus.ERROR;
+	}
+
+	private static void traceResolution(ResolutionStrategy strategy, ProfileChangeOperation operation, long start) {
+		if (MarketplaceClientUiPlugin.DEBUG) {
+			MarketplaceClientUiPlugin.trace(MarketplaceClientUiPlugin.RESOLUTION_DEBUG_OPTION,
+					"Resolved {0} using strategy {1} in {2} ms: {3}", operation.getClass().getSimpleName(), strategy, //$NON-NLS-1$
+					TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), operation.getResolutionResult());
+		}
+	}
+
 	public void resolveModal(IProgressMonitor monitor, ProfileChangeOperation operation) throws CoreException {
 		operation.resolveModal(new SubProgressMonitor(monitor, items.size()));
 	}
@@ -435,10 +581,10 @@ public class ProfileChangeOperationComputer extends AbstractProvisioningOperatio
 
 	private void pruneNonInstall(List<IInstallableUnit> installableUnits) {
 		Set<String> installableFeatureIds = new HashSet<>();
-		for (FeatureEntry featureEntry : featureEntries) {
-			Operation operation = featureEntry.computeChangeOperation();
+		for (Map.Entry<FeatureEntry, Operation> featureEntry : featureEntries.entrySet()) {
+			Operation operation = featureEntry.getValue();
 			if (operation == Operation.INSTALL || operation == Operation.UPDATE) {
-				installableFeatureIds.add(featureEntry.getFeatureDescriptor().getId());
+				installableFeatureIds.add(featureEntry.getKey().getFeatureDescriptor().getId());
 			}
 		}
 		Iterator<IInstallableUnit> it = installableUnits.iterator();
@@ -452,9 +598,9 @@ public class ProfileChangeOperationComputer extends AbstractProvisioningOperatio
 
 	private void pruneNonUninstall(List<IInstallableUnit> installableUnits) {
 		Set<String> installableFeatureIds = new HashSet<>();
-		for (FeatureEntry featureEntry : featureEntries) {
-			if (featureEntry.computeChangeOperation() == Operation.UNINSTALL) {
-				installableFeatureIds.add(featureEntry.getFeatureDescriptor().getId());
+		for (Map.Entry<FeatureEntry, Operation> featureEntry : featureEntries.entrySet()) {
+			if (featureEntry.getValue() == Operation.UNINSTALL) {
+				installableFeatureIds.add(featureEntry.getKey().getFeatureDescriptor().getId());
 			}
 		}
 		Iterator<IInstallableUnit> it = installableUnits.iterator();
@@ -479,10 +625,10 @@ public class ProfileChangeOperationComputer extends AbstractProvisioningOperatio
 		}
 
 		Set<String> installFeatureIds = new HashSet<>();
-		for (FeatureEntry entry : featureEntries) {
-			Operation operation = entry.computeChangeOperation();
+		for (Map.Entry<FeatureEntry, Operation> entry : featureEntries.entrySet()) {
+			Operation operation = entry.getValue();
 			if (operation == Operation.INSTALL || operation == Operation.UPDATE) {
-				installFeatureIds.add(entry.getFeatureDescriptor().getId());
+				installFeatureIds.add(entry.getKey().getFeatureDescriptor().getId());
 			}
 		}
 
@@ -514,7 +660,10 @@ public class ProfileChangeOperationComputer extends AbstractProvisioningOperatio
 			}
 		}
 
-		if (message.length() > 0) {
+		if (message.length() > 0 && !interactive) {
+			throw new CoreException(new Status(IStatus.ERROR, MarketplaceClientUi.BUNDLE_ID,
+					NLS.bind(Messages.ProvisioningOperation_unavailableSolutions, detailedMessage), null));
+		} else if (message.length() > 0) {
 			// instead of aborting here we ask the user if they wish to proceed anyways
 			final boolean[] okayToProceed = new boolean[1];
 			final String finalMessage = message;
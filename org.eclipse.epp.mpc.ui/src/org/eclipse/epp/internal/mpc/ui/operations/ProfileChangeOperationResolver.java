@@ -0,0 +1,293 @@
+/*******************************************************************************
+ * Copyright (c) 2019 The Eclipse Foundation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     The Eclipse Foundation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.epp.internal.mpc.ui.operations;
+
+import java.lang.reflect.InvocationTargetException;
+import java.net.URI;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.epp.internal.mpc.ui.MarketplaceClientUi;
+import org.eclipse.equinox.internal.p2.ui.ProvUI;
+import org.eclipse.equinox.p2.engine.IProvisioningPlan;
+import org.eclipse.equinox.p2.operations.ProfileChangeOperation;
+import org.eclipse.equinox.p2.operations.RemediationOperation;
+import org.eclipse.equinox.p2.ui.ProvisioningUI;
+
+/**
+ * Resolves {@link ProfileChangeOperationComputer provisioning operations}, optionally speculatively in the background
+ * while the user is still making a selection.
+ * <p>
+ * A {@link #preResolve(ProfileChangeOperationComputer) pre-resolution} is replaced (and canceled) by the next one for
+ * a different request. When the operation is finally needed, {@link #resolve(ProfileChangeOperationComputer, IProgressMonitor)}
+ * picks up the pre-resolved result if it was computed for the same request, or waits for it to complete. Otherwise,
+ * or if the background resolution failed, the operation is resolved in the calling thread, so any problems can be
+ * reported to the user.
+ *
+ * @author Carsten Reckord
+ */
+public class ProfileChangeOperationResolver {
+
+	/**
+	 * Delay in milliseconds before a pre-resolution starts, so quick successive selection changes don't start
+	 * resolutions that will be discarded right away
+	 */
+	static final long PRE_RESOLVE_DELAY = Long.getLong(ProfileChangeOperationResolver.class.getName() + ".delay", //$NON-NLS-1$
+			500);
+
+	static final boolean PRE_RESOLVE_ENABLED = Boolean.parseBoolean(
+			System.getProperty(ProfileChangeOperationResolver.class.getName() + ".enabled", "true")); //$NON-NLS-1$//$NON-NLS-2$
+
+	private static final long CANCEL_POLL_INTERVAL = 100;
+
+	/**
+	 * A resolved operation and its plan against the running JRE, if the provisioning policy requires one.
+	 */
+	public static final class Resolution {
+
+		private final ProfileChangeOperationComputer computer;
+
+		private final IProvisioningPlan currentJREPlan;
+
+		Resolution(ProfileChangeOperationComputer computer, IProvisioningPlan currentJREPlan) {
+			this.computer = computer;
+			this.currentJREPlan = currentJREPlan;
+		}
+
+		public ProfileChangeOperationComputer getComputer() {
+			return computer;
+		}
+
+		public IProvisioningPlan getCurrentJREPlan() {
+			return currentJREPlan;
+		}
+	}
+
+	private static final ISchedulingRule PRE_RESOLVE_RULE = new ISchedulingRule() {
+
+		@Override
+		public boolean isConflicting(ISchedulingRule rule) {
+			return rule == this;
+		}
+
+		@Override
+		public boolean contains(ISchedulingRule rule) {
+			return rule == this;
+		}
+	};
+
+	private final class PreResolveJob extends Job {
+
+		private final ProfileChangeOperationComputer computer;
+
+		private Resolution resolution;
+
+		private boolean done;
+
+		private boolean discarded;
+
+		PreResolveJob(ProfileChangeOperationComputer computer) {
+			super(Messages.ProfileChangeOperationResolver_preResolving);
+			this.computer = computer;
+			computer.setInteractive(false);
+			setSystem(true);
+			setPriority(LONG);
+			//don't let discarded resolutions compete with their successors for repositories
+			setRule(PRE_RESOLVE_RULE);
+		}
+
+		@Override
+		protected IStatus run(IProgressMonitor monitor) {
+			Resolution result = null;
+			try {
+				if (!isDiscarded()) {
+					result = doResolve(computer, monitor);
+				}
+			} catch (InvocationTargetException e) {
+				//ignore - this will be re-resolved and reported when it's actually needed
+			} catch (InterruptedException e) {
+				//canceled
+			} catch (RuntimeException e) {
+				MarketplaceClientUi.error(e);
+			} finally {
+				synchronized (this) {
+					resolution = result;
+					done = true;
+					notifyAll();
+				}
+				if (isDiscarded()) {
+					AbstractProvisioningOperation.removeRepositoryLocations(computer.getAddedRepositoryLocations());
+				}
+			}
+			return monitor.isCanceled() ? Status.CANCEL_STATUS : Status.OK_STATUS;
+		}
+
+		@Override
+		public boolean belongsTo(Object family) {
+			return family == ProfileChangeOperationResolver.this;
+		}
+
+		synchronized boolean isDiscarded() {
+			return discarded;
+		}
+
+		void discard() {
+			boolean finished;
+			synchronized (this) {
+				discarded = true;
+				finished = done;
+			}
+			cancel();
+			if (finished) {
+				AbstractProvisioningOperation.removeRepositoryLocations(computer.getAddedRepositoryLocations());
+			}
+		}
+
+		/**
+		 * Wait until this job is done
+		 *
+		 * @return the pre-resolved operation, or null if the pre-resolution failed or was canceled
+		 */
+		Resolution waitFor(IProgressMonitor monitor) throws InterruptedException {
+			synchronized (this) {
+				while (!done) {
+					if (monitor.isCanceled()) {
+						throw new InterruptedException();
+					}
+					if (getState() == Job.NONE) {
+						//canceled before it started running
+						return null;
+					}
+					wait(CANCEL_POLL_INTERVAL);
+				}
+				return resolution;
+			}
+		}
+	}
+
+	private PreResolveJob pending;
+
+	/**
+	 * Start resolving the operation computed by the given computer in the background. This is a no-op if the same
+	 * request is already being pre-resolved, and cancels any pending pre-resolution of a different request.
+	 */
+	public void preResolve(ProfileChangeOperationComputer computer) {
+		if (!PRE_RESOLVE_ENABLED) {
+			return;
+		}
+		PreResolveJob job;
+		PreResolveJob obsolete;
+		synchronized (this) {
+			if (pending != null && pending.computer.isSameRequest(computer)) {
+				return;
+			}
+			obsolete = pending;
+			job = pending = new PreResolveJob(computer);
+		}
+		if (obsolete != null) {
+			obsolete.discard();
+		}
+		job.schedule(PRE_RESOLVE_DELAY);
+	}
+
+	/**
+	 * Cancel and discard any pending pre-resolution.
+	 */
+	public void cancel() {
+		PreResolveJob obsolete;
+		synchronized (this) {
+			obsolete = pending;
+			pending = null;
+		}
+		if (obsolete != null) {
+			obsolete.discard();
+		}
+	}
+
+	/**
+	 * Resolve the operation computed by the given computer. If there is a matching pre-resolution, its result is used
+	 * instead.
+	 *
+	 * @return the resolution, whose {@link Resolution#getComputer() computer} is either the given computer or the one
+	 *         used for the matching pre-resolution.
+	 */
+	public Resolution resolve(ProfileChangeOperationComputer computer, IProgressMonitor monitor)
+			throws InvocationTargetException, InterruptedException {
+		PreResolveJob job;
+		synchronized (this) {
+			job = pending;
+			pending = null;
+		}
+		if (job != null) {
+			if (job.computer.isSameRequest(computer)) {
+				Resolution resolution;
+				try {
+					//start right away if it's still waiting for the selection to settle
+					job.wakeUp();
+					resolution = job.waitFor(monitor);
+				} catch (InterruptedException e) {
+					job.discard();
+					throw e;
+				}
+				if (resolution != null) {
+					return resolution;
+				}
+				//take over the repositories added so far, so the caller can clean them up
+				Set<URI> addedRepositoryLocations = job.computer.getAddedRepositoryLocations();
+				if (addedRepositoryLocations != null && !addedRepositoryLocations.isEmpty()) {
+					computer.addedRepositoryLocations = new HashSet<>(addedRepositoryLocations);
+				}
+			} else {
+				job.discard();
+				//don't compete with it for the same repositories
+				job.waitFor(monitor);
+			}
+		}
+		return doResolve(computer, monitor);
+	}
+
+	private static Resolution doResolve(ProfileChangeOperationComputer computer, IProgressMonitor monitor)
+			throws InvocationTargetException, InterruptedException {
+		boolean checkCurrentJRE = ProvisioningUI.getDefaultUI().getPolicy().getCheckAgainstCurrentExecutionEnvironment();
+		SubMonitor progress = SubMonitor.convert(monitor, checkCurrentJRE ? 100 : 80);
+		computer.run(progress.newChild(80));
+		IProvisioningPlan currentJREPlan = null;
+		ProfileChangeOperation operation = computer.getOperation();
+		if (checkCurrentJRE && operation != null) {
+			if ((operation instanceof RemediationOperation)
+					&& ((RemediationOperation) operation).getCurrentRemedy() == null) {
+				// "Dirty" workaround, see bug 561865: To be able to calculate a plan while checking compatibility to the running JRE, we set the current remedy to the best solution found, here.
+				// This is reset afterwards, but not reresolved since this costs extra time and does not seem to be needed.
+				RemediationOperation remediationOperation = (RemediationOperation) operation;
+				try {
+					remediationOperation.setCurrentRemedy(remediationOperation.bestSolutionChangingTheRequest());
+					remediationOperation.resolveModal(progress.newChild(10));
+				} finally {
+					remediationOperation.setCurrentRemedy(null);
+				}
+			}
+			progress.setWorkRemaining(10);
+			currentJREPlan = ProvUI.toCompabilityWithCurrentJREProvisioningPlan(operation, progress.newChild(10));
+		}
+		if (progress.isCanceled()) {
+			throw new InterruptedException();
+		}
+		return new Resolution(computer, currentJREPlan);
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2018 The Eclipse Foundation and others.
+ * Copyright (c) 2018, 2019 The Eclipse Foundation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v2.0
  * which accompanies this distribution, and is available at
@@ -13,11 +13,15 @@
 package org.eclipse.epp.internal.mpc.ui.operations;
 
 import java.net.URI;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 
+import org.eclipse.equinox.p2.repository.IRepository;
 import org.eclipse.equinox.p2.repository.IRepositoryManager;
 import org.eclipse.equinox.p2.repository.artifact.IArtifactRepositoryManager;
 import org.eclipse.equinox.p2.repository.metadata.IMetadataRepositoryManager;
@@ -28,8 +32,17 @@ public class RepositoryTransactionHelper implements AutoCloseable {
 
 	private final RepositoryTracker artifactRepositoryTracker;
 
+	private final IMetadataRepositoryManager metadataRepositoryManager;
+
+	private final IArtifactRepositoryManager artifactRepositoryManager;
+
+	private final Set<URI> initialMetadataRepositories = new HashSet<>();
+
 	public RepositoryTransactionHelper(IMetadataRepositoryManager metadataRepositoryManager,
 			IArtifactRepositoryManager artifactRepositoryManager) {
+		this.metadataRepositoryManager = metadataRepositoryManager;
+		this.artifactRepositoryManager = artifactRepositoryManager;
+		initMetadataRepositories();
 		metadataRepositoryTracker = metadataRepositoryManager == null ? null
 				: new RepositoryTracker(metadataRepositoryManager);
 		artifactRepositoryTracker = artifactRepositoryManager == null ? null
@@ -43,6 +56,47 @@ public class RepositoryTransactionHelper implements AutoCloseable {
 		if (artifactRepositoryTracker != null) {
 			artifactRepositoryTracker.init();
 		}
+		initMetadataRepositories();
+	}
+
+	private synchronized void initMetadataRepositories() {
+		initialMetadataRepositories.clear();
+		if (metadataRepositoryManager != null) {
+			initialMetadataRepositories.addAll(getAllKnownRepositories(metadataRepositoryManager));
+		}
+	}
+
+	/**
+	 * Add an artifact repository for each metadata repository that appeared since this helper was initialized, but has
+	 * no artifact counterpart. This is meant for metadata-only loads: loading a metadata repository - especially a
+	 * composite - can leave child repositories behind, which would break later installs if they only existed on the
+	 * metadata side (bug 560062). The artifact repositories are only added, not loaded, so this is cheap. Like the child
+	 * metadata repositories, they are not cleaned up (see {@link RepositoryTracker#init()}).
+	 */
+	public synchronized void addMissingArtifactRepositories() {
+		if (metadataRepositoryManager == null || artifactRepositoryManager == null) {
+			return;
+		}
+		for (URI uri : getAllKnownRepositories(metadataRepositoryManager)) {
+			if (initialMetadataRepositories.contains(uri) || artifactRepositoryManager.contains(uri)) {
+				continue;
+			}
+			artifactRepositoryManager.addRepository(uri);
+			String system = metadataRepositoryManager.getRepositoryProperty(uri, IRepository.PROP_SYSTEM);
+			if (system != null) {
+				artifactRepositoryManager.setRepositoryProperty(uri, IRepository.PROP_SYSTEM, system);
+			}
+			if (!metadataRepositoryManager.isEnabled(uri)) {
+				artifactRepositoryManager.setEnabled(uri, false);
+			}
+		}
+	}
+
+	private static Set<URI> getAllKnownRepositories(IRepositoryManager<?> manager) {
+		Set<URI> repositories = new HashSet<>();
+		repositories.addAll(Arrays.asList(manager.getKnownRepositories(IRepositoryManager.REPOSITORIES_ALL)));
+		repositories.addAll(Arrays.asList(manager.getKnownRepositories(IRepositoryManager.REPOSITORIES_DISABLED)));
+		return repositories;
 	}
 
 	public void addRepository(URI uri) {
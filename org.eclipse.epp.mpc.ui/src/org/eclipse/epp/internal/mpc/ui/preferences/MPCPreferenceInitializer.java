@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2017, 2018 Red Hat Inc. and others.
+ * Copyright (c) 2017, 2019 Red Hat Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v2.0
  * which accompanies this distribution, and is available at
@@ -14,7 +14,9 @@ package org.eclipse.epp.internal.mpc.ui.preferences;
 
 import org.eclipse.core.runtime.preferences.AbstractPreferenceInitializer;
 import org.eclipse.epp.internal.mpc.ui.MarketplaceClientUiResources;
+import org.eclipse.epp.internal.mpc.ui.catalog.BackgroundUpdateChecker;
 import org.eclipse.epp.internal.mpc.ui.discovery.MissingNatureDetector;
+import org.eclipse.jface.preference.IPreferenceStore;
 
 public class MPCPreferenceInitializer extends AbstractPreferenceInitializer {
 
@@ -23,8 +25,10 @@ public class MPCPreferenceInitializer extends AbstractPreferenceInitializer {
 
 	@Override
 	public void initializeDefaultPreferences() {
-		MarketplaceClientUiResources.getInstance().getPreferenceStore().setDefault(
-				MissingNatureDetector.ENABLEMENT_PROPERTY, true);
+		IPreferenceStore preferenceStore = MarketplaceClientUiResources.getInstance().getPreferenceStore();
+		preferenceStore.setDefault(MissingNatureDetector.ENABLEMENT_PROPERTY, true);
+		preferenceStore.setDefault(BackgroundUpdateChecker.ENABLEMENT_PROPERTY, true);
+		preferenceStore.setDefault(BackgroundUpdateChecker.INTERVAL_PROPERTY, BackgroundUpdateChecker.DEFAULT_INTERVAL);
 	}
 
 }
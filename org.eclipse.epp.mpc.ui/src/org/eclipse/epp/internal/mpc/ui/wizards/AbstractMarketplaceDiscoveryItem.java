@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010,, 2018 Tasktop Technologies and others.
+ * Copyright (c) 2010,, 2019 Tasktop Technologies and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v2.0
  * which accompanies this distribution, and is available at
@@ -24,7 +24,6 @@ import org.eclipse.epp.internal.mpc.ui.MarketplaceClientUiPlugin;
 import org.eclipse.epp.internal.mpc.ui.MarketplaceClientUiResources;
 import org.eclipse.epp.internal.mpc.ui.catalog.MarketplaceCatalogSource;
 import org.eclipse.epp.internal.mpc.ui.css.StyleHelper;
-import org.eclipse.epp.internal.mpc.ui.util.Util;
 import org.eclipse.epp.internal.mpc.ui.wizards.MarketplaceDiscoveryResources.ImageReceiver;
 import org.eclipse.epp.mpc.core.model.INode;
 import org.eclipse.epp.mpc.core.model.ITag;
@@ -45,14 +44,11 @@ import org.eclipse.jface.window.ToolTip;
 import org.eclipse.osgi.util.NLS;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.SWTError;
-import org.eclipse.swt.SWTException;
 import org.eclipse.swt.accessibility.AccessibleAdapter;
 import org.eclipse.swt.accessibility.AccessibleEvent;
 import org.eclipse.swt.browser.Browser;
 import org.eclipse.swt.custom.StyleRange;
 import org.eclipse.swt.custom.StyledText;
-import org.eclipse.swt.events.PaintEvent;
-import org.eclipse.swt.events.PaintListener;
 import org.eclipse.swt.events.TypedEvent;
 import org.eclipse.swt.graphics.Color;
 import org.eclipse.swt.graphics.Image;
@@ -443,50 +439,10 @@ public abstract class AbstractMarketplaceDiscoveryItem<T extends CatalogItem> ex
 		if (iconLabel == null) {
 			return;
 		}
-		final Color background = iconLabel.getBackground();
 		ImageReceiver receiver = image -> {
-			if (image == null || image.isDisposed() || iconLabel.isDisposed()) {
-				return;
-			}
-			try {
-				Rectangle bounds = image.getBounds();
-				if (bounds.width < 0.8 * MAX_IMAGE_WIDTH || bounds.width > MAX_IMAGE_WIDTH
-						|| bounds.height > MAX_IMAGE_HEIGHT) {
-					final Image[] scaledImage = new Image[] {
-							Util.scaleImage(image, MAX_IMAGE_WIDTH, MAX_IMAGE_HEIGHT, background) };
-					if (image.getImageData().getTransparencyType() != SWT.TRANSPARENCY_NONE) {
-						//Need to repaint on background color change
-						final Image sourceImage = image;
-						iconLabel.addPaintListener(new PaintListener() {
-
-							Color lastBackground = background;
-
-							@Override
-							public void paintControl(PaintEvent e) {
-								Control control = (Control) e.widget;
-								if ((lastBackground != null && (lastBackground.isDisposed()
-										|| !lastBackground.equals(control.getBackground())))
-										|| (lastBackground == null && control.getBackground() != null)) {
-									lastBackground = control.getBackground();
-									Image newScaledImage = Util.scaleImage(sourceImage, MAX_IMAGE_WIDTH,
-											MAX_IMAGE_HEIGHT, lastBackground);
-									Image oldScaledImage = scaledImage[0];
-									iconLabel.setImage(newScaledImage);
-									if (oldScaledImage != null && !oldScaledImage.isDisposed()) {
-										oldScaledImage.dispose();
-									}
-								}
-							}
-						});
-					}
-					image = scaledImage[0];
-					iconLabel.addDisposeListener(e -> scaledImage[0].dispose());
-				}
+			//shared images from the image cache are already scaled down to fit, so they are shown as they are
+			if (image != null && !image.isDisposed() && !iconLabel.isDisposed()) {
 				iconLabel.setImage(image);
-			} catch (SWTException e) {
-				// ignore, probably a bad image format
-//							MarketplaceClientUi.error(NLS.bind(Messages.DiscoveryItem_cannotRenderImage_reason, connector.getIcon()
-//									.getImage32(), e.getMessage()), e);
 			}
 		};
 		String iconPath = getResources().getIconPath(icon, size, fallback);
@@ -495,12 +451,10 @@ public abstract class AbstractMarketplaceDiscoveryItem<T extends CatalogItem> ex
 			Image image = MarketplaceClientUiResources.getInstance().getImageRegistry().get(key);
 			receiver.setImage(image);
 		} else {
-			getResources().setImage(
-					receiver,
-					source,
-					iconPath,
-					MarketplaceClientUiResources.getInstance().getImageRegistry()
-					.get(getDefaultIconResourceId()));
+			//decoded and scaled down to fit once, shared with other items showing the same icon
+			getResources().setImage(receiver, source, iconPath,
+					MarketplaceClientUiResources.getInstance().getImageRegistry().get(getDefaultIconResourceId()),
+					iconLabel, MAX_IMAGE_WIDTH, MAX_IMAGE_HEIGHT);
 		}
 	}
 
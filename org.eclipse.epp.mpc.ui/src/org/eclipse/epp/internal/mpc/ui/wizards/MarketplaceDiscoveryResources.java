@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2018 The Eclipse Foundation and others.
+ * Copyright (c) 2010, 2019 The Eclipse Foundation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v2.0
  * which accompanies this distribution, and is available at
@@ -23,7 +23,10 @@ import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.epp.internal.mpc.ui.MarketplaceClientUi;
+import org.eclipse.epp.internal.mpc.ui.MarketplaceClientUiResources;
+import org.eclipse.epp.internal.mpc.ui.catalog.ImageCache;
 import org.eclipse.epp.internal.mpc.ui.catalog.MarketplaceCatalogSource;
+import org.eclipse.epp.internal.mpc.ui.catalog.ResourceProvider;
 import org.eclipse.epp.internal.mpc.ui.catalog.ResourceProvider.ResourceFuture;
 import org.eclipse.equinox.internal.p2.discovery.AbstractCatalogSource;
 import org.eclipse.equinox.internal.p2.discovery.model.Icon;
@@ -36,6 +39,7 @@ import org.eclipse.jface.resource.ResourceManager;
 import org.eclipse.swt.SWTException;
 import org.eclipse.swt.graphics.Image;
 import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Widget;
 
 /**
  * @author Carsten Reckord
@@ -46,6 +50,16 @@ public class MarketplaceDiscoveryResources extends DiscoveryResources {
 		void setImage(Image image);
 	}
 
+	private static interface ImageFactory {
+		/**
+		 * Create the image for the given local URL and pass it to the receiver, either right away or later on the UI
+		 * thread.
+		 *
+		 * @return true if the receiver already got the image
+		 */
+		boolean createImage(String imagePath, URL url, ImageReceiver receiver);
+	}
+
 	private final Display display;
 
 	private final ResourceManager resourceManager;
@@ -108,29 +122,48 @@ public class MarketplaceDiscoveryResources extends DiscoveryResources {
 
 	public void setImage(final ImageReceiver receiver, final AbstractCatalogSource discoverySource,
 			final String imagePath, Image fallbackImage) {
+		setImage(receiver, discoverySource, imagePath, fallbackImage, (path, url, imageReceiver) -> {
+			Image image = safeCreateImage(path, url);
+			if (image != null) {
+				imageReceiver.setImage(image);
+				return true;
+			}
+			return false;
+		});
+	}
+
+	/**
+	 * Like {@link #setImage(ImageReceiver, AbstractCatalogSource, String, Image)}, but the image is taken from the
+	 * shared {@link ImageCache}, scaled down to fit the given size. The image is kept at least until the given owner is
+	 * disposed.
+	 */
+	public void setImage(final ImageReceiver receiver, final AbstractCatalogSource discoverySource,
+			final String imagePath, Image fallbackImage, final Widget owner, final int maxWidth, final int maxHeight) {
+		final ImageCache imageCache = MarketplaceClientUiResources.getInstance().getImageCache();
+		setImage(receiver, discoverySource, imagePath, fallbackImage, (path, url, imageReceiver) -> {
+			final boolean[] delivered = new boolean[1];
+			imageCache.load(url, maxWidth, maxHeight, reference -> {
+				if (reference == null) {
+					return;
+				}
+				if (reference.releaseOnDispose(owner)) {
+					imageReceiver.setImage(reference.getImage());
+					delivered[0] = true;
+				}
+			});
+			return delivered[0];
+		});
+	}
+
+	private void setImage(final ImageReceiver receiver, final AbstractCatalogSource discoverySource,
+			final String imagePath, Image fallbackImage, final ImageFactory imageFactory) {
 		if (imagePath != null && imagePath.length() > 0) {
-			Image image = null;
 			if (discoverySource instanceof MarketplaceCatalogSource) {
-				MarketplaceCatalogSource marketplaceSource = (MarketplaceCatalogSource) discoverySource;
-				ResourceFuture resource = marketplaceSource.getResourceProvider().getResource(imagePath);
-				if (resource != null) {
-					URL localURL = resource.getLocalURL();
-					if (localURL != null) {
-						try {
-							File imageFile = new File(
-									new URI(localURL.getProtocol(), null, localURL.getPath(), null, null));
-							if (imageFile.exists()) {
-								image = safeCreateImage(imagePath, localURL);
-							}
-						} catch (URISyntaxException e) {
-							logFailedLoadingImage(imagePath, localURL, e);
-						}
-					}
-				}
+				setImage(receiver, ((MarketplaceCatalogSource) discoverySource).getResourceProvider(), imagePath,
+						fallbackImage, imageFactory);
+				return;
 			}
-			if (image != null) {
-				receiver.setImage(image);
-			} else if (fallbackImage != null) {
+			if (fallbackImage != null) {
 				receiver.setImage(fallbackImage);
 			}
 			new Job(Messages.MarketplaceDiscoveryResources_retrievingImage) {
@@ -145,16 +178,9 @@ public class MarketplaceDiscoveryResources extends DiscoveryResources {
 				protected IStatus run(IProgressMonitor monitor) {
 					if (!display.isDisposed()) {
 						try {
-							if (imagePath != null && imagePath.length() > 0) {
-								final URL resource = discoverySource.getResource(imagePath);
-								if (resource != null) {
-									display.asyncExec(() -> {
-										final Image image1 = safeCreateImage(imagePath, resource);
-										if (image1 != null) {
-											receiver.setImage(image1);
-										}
-									});
-								}
+							final URL resource = discoverySource.getResource(imagePath);
+							if (resource != null) {
+								setImage(receiver, imagePath, resource, imageFactory);
 							}
 						} catch (Exception e) {
 							MarketplaceClientUi.log(IStatus.WARNING,
@@ -171,6 +197,45 @@ public class MarketplaceDiscoveryResources extends DiscoveryResources {
 		}
 	}
 
+	private void setImage(final ImageReceiver receiver, final ResourceProvider resourceProvider,
+			final String imagePath, Image fallbackImage, final ImageFactory imageFactory) {
+		final ResourceFuture resource = resourceProvider.getResource(imagePath);
+		if (resource != null) {
+			URL localURL = resource.getLocalURL();
+			if (localURL != null) {
+				try {
+					File imageFile = new File(new URI(localURL.getProtocol(), null, localURL.getPath(), null, null));
+					if (imageFile.exists() && imageFactory.createImage(imagePath, localURL, receiver)) {
+						return;
+					}
+				} catch (URISyntaxException e) {
+					logFailedLoadingImage(imagePath, localURL, e);
+				}
+			}
+		}
+		if (fallbackImage != null) {
+			receiver.setImage(fallbackImage);
+		}
+		if (resource != null && !resource.isDone()) {
+			//wait for the download without blocking a thread and make sure it's next in line
+			resourceProvider.prioritize(imagePath);
+			resource.addDoneListener(() -> {
+				URL localURL = resource.getLocalURL();
+				if (localURL != null) {
+					setImage(receiver, imagePath, localURL, imageFactory);
+				}
+			});
+		}
+	}
+
+	private void setImage(final ImageReceiver receiver, final String imagePath, final URL resource,
+			final ImageFactory imageFactory) {
+		if (display.isDisposed()) {
+			return;
+		}
+		display.asyncExec(() -> imageFactory.createImage(imagePath, resource, receiver));
+	}
+
 	private Image safeCreateImage(String imagePath, URL url) {
 		try {
 			ImageDescriptor descriptor = ImageDescriptor.createFromURL(url);
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2018 The Eclipse Foundation and others.
+ * Copyright (c) 2010, 2019 The Eclipse Foundation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v2.0
  * which accompanies this distribution, and is available at
@@ -34,6 +34,7 @@ import org.eclipse.core.runtime.Status;
 import org.eclipse.epp.internal.mpc.core.MarketplaceClientCore;
 import org.eclipse.epp.internal.mpc.core.model.Identifiable;
 import org.eclipse.epp.internal.mpc.ui.MarketplaceClientUi;
+import org.eclipse.epp.internal.mpc.ui.MarketplaceClientUiResources;
 import org.eclipse.epp.internal.mpc.ui.catalog.MarketplaceCatalog;
 import org.eclipse.epp.internal.mpc.ui.catalog.MarketplaceCategory;
 import org.eclipse.epp.internal.mpc.ui.catalog.MarketplaceCategory.Contents;
@@ -76,6 +77,8 @@ import org.eclipse.jface.viewers.StructuredViewer;
 import org.eclipse.jface.viewers.ViewerFilter;
 import org.eclipse.jface.window.IShellProvider;
 import org.eclipse.swt.SWT;
+import org.eclipse.swt.SWTException;
+import org.eclipse.swt.custom.ScrolledComposite;
 import org.eclipse.swt.events.SelectionAdapter;
 import org.eclipse.swt.events.SelectionEvent;
 import org.eclipse.swt.graphics.Rectangle;
@@ -85,6 +88,8 @@ import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Control;
 import org.eclipse.swt.widgets.Display;
 import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.Listener;
+import org.eclipse.swt.widgets.ScrollBar;
 import org.eclipse.swt.widgets.Text;
 import org.eclipse.ui.statushandlers.StatusManager;
 import org.osgi.framework.BundleContext;
@@ -254,6 +259,22 @@ public class MarketplaceViewer extends CatalogViewer {
 		}
 	};
 
+	private final Runnable updatesListener = () -> {
+		final Control control = MarketplaceViewer.this.getControl();
+		if (control != null && !control.isDisposed()) {
+			try {
+				//show the refreshed update badges and notification
+				control.getDisplay().asyncExec(() -> {
+					if (!control.isDisposed()) {
+						catalogUpdated(false, false);
+					}
+				});
+			} catch (SWTException ex) {
+				//display disposed concurrently
+			}
+		}
+	};
+
 	public MarketplaceViewer(Catalog catalog, IShellProvider shellProvider, MarketplaceWizard wizard) {
 		super(catalog, shellProvider, wizard.getContainer(), wizard.getConfiguration());
 		this.browser = wizard;
@@ -665,6 +686,8 @@ public class MarketplaceViewer extends CatalogViewer {
 		try {
 			final ContentType queryType = contentType;
 			queryContentType = queryType;
+			//downloads for the previous results are no longer needed
+			getCatalog().cancelQueuedDownloads();
 			final IStatus[] result = new IStatus[1];
 			context.run(true, true, monitor -> {
 				switch (queryType) {
@@ -755,6 +778,12 @@ public class MarketplaceViewer extends CatalogViewer {
 			MarketplaceViewer.super.doFind(queryText);
 			// bug 305274: scrollbars don't always appear after switching tabs, so we re-do the layout
 			getViewer().getControl().getParent().layout(true, true);
+			final Control control = getViewer().getControl();
+			control.getDisplay().asyncExec(() -> {
+				if (!control.isDisposed()) {
+					updateVisibleResources(control);
+				}
+			});
 		});
 	}
 
@@ -979,6 +1008,10 @@ public class MarketplaceViewer extends CatalogViewer {
 
 		discoveryResources = new MarketplaceDiscoveryResources(container.getDisplay());
 		viewer.getControl().addDisposeListener(e -> discoveryResources.dispose());
+		final MarketplaceCatalog catalog = getCatalog();
+		catalog.addUpdatesListener(updatesListener);
+		viewer.getControl().addDisposeListener(e -> catalog.removeUpdatesListener(updatesListener));
+		trackVisibleResources(viewer.getControl());
 
 		super.getResources().dispose();
 
@@ -990,6 +1023,48 @@ public class MarketplaceViewer extends CatalogViewer {
 		return viewer;
 	}
 
+	private void trackVisibleResources(final Control control) {
+		if (!(control instanceof ScrolledComposite)) {
+			return;
+		}
+		Listener listener = e -> updateVisibleResources(control);
+		control.addListener(SWT.Resize, listener);
+		ScrollBar verticalBar = ((ScrolledComposite) control).getVerticalBar();
+		if (verticalBar != null) {
+			verticalBar.addListener(SWT.Selection, listener);
+		}
+	}
+
+	/**
+	 * Tell the resource provider which item icons are currently scrolled into view, so their downloads are run first.
+	 */
+	private void updateVisibleResources(Control control) {
+		if (!(control instanceof ScrolledComposite) || discoveryResources == null) {
+			return;
+		}
+		ScrolledComposite scrolled = (ScrolledComposite) control;
+		Control content = scrolled.getContent();
+		if (!(content instanceof Composite) || content.isDisposed()) {
+			return;
+		}
+		int top = scrolled.getOrigin().y;
+		int bottom = top + scrolled.getClientArea().height;
+		List<String> visibleResources = new ArrayList<>();
+		for (Control child : ((Composite) content).getChildren()) {
+			Rectangle bounds = child.getBounds();
+			if (child instanceof ControlListItem<?> && bounds.y < bottom && bounds.y + bounds.height > top) {
+				Object data = ((ControlListItem<?>) child).getData();
+				if (data instanceof CatalogItem && ((CatalogItem) data).getIcon() != null) {
+					String iconPath = discoveryResources.getIconPath(((CatalogItem) data).getIcon(), 64, true);
+					if (iconPath != null) {
+						visibleResources.add(iconPath);
+					}
+				}
+			}
+		}
+		MarketplaceClientUiResources.getInstance().getResourceProvider().setVisibleResources(visibleResources);
+	}
+
 	/**
 	 * not supported, instead usee {@link #modifySelection(CatalogItem, Operation)}
 	 */
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2018 The Eclipse Foundation and others.
+ * Copyright (c) 2010, 2019 The Eclipse Foundation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v2.0
  * which accompanies this distribution, and is available at
@@ -54,6 +54,7 @@ import org.eclipse.epp.internal.mpc.ui.CatalogRegistry;
 import org.eclipse.epp.internal.mpc.ui.MarketplaceClientUi;
 import org.eclipse.epp.internal.mpc.ui.MarketplaceClientUiPlugin;
 import org.eclipse.epp.internal.mpc.ui.MarketplaceClientUiResources;
+import org.eclipse.epp.internal.mpc.ui.catalog.BackgroundUpdateChecker;
 import org.eclipse.epp.internal.mpc.ui.catalog.FavoritesCatalog;
 import org.eclipse.epp.internal.mpc.ui.catalog.FavoritesDiscoveryStrategy;
 import org.eclipse.epp.internal.mpc.ui.catalog.MarketplaceCatalog;
@@ -62,6 +63,8 @@ import org.eclipse.epp.internal.mpc.ui.commands.MarketplaceWizardCommand;
 import org.eclipse.epp.internal.mpc.ui.operations.AbstractProvisioningOperation;
 import org.eclipse.epp.internal.mpc.ui.operations.ProfileChangeOperationComputer;
 import org.eclipse.epp.internal.mpc.ui.operations.ProfileChangeOperationComputer.OperationType;
+import org.eclipse.epp.internal.mpc.ui.operations.ProfileChangeOperationResolver;
+import org.eclipse.epp.internal.mpc.ui.operations.ProfileChangeOperationResolver.Resolution;
 import org.eclipse.epp.internal.mpc.ui.wizards.MarketplaceViewer.ContentType;
 import org.eclipse.epp.internal.mpc.ui.wizards.SelectionModel.CatalogItemEntry;
 import org.eclipse.epp.internal.mpc.ui.wizards.SelectionModel.FeatureEntry;
@@ -205,6 +208,8 @@ public class MarketplaceWizard extends DiscoveryWizard implements InstallProfile
 
 	private ProfileChangeOperation profileChangeOperation;
 
+	private final ProfileChangeOperationResolver profileChangeOperationResolver = new ProfileChangeOperationResolver();
+
 	private IProvisioningPlan currentJREPlan;
 
 	private FeatureSelectionWizardPage featureSelectionWizardPage;
@@ -230,6 +235,8 @@ public class MarketplaceWizard extends DiscoveryWizard implements InstallProfile
 
 	private boolean openFavoritesBannerShown;
 
+	private boolean backgroundUpdatesSuspended;
+
 	public String getErrorMessage() {
 		return errorMessage;
 	}
@@ -251,6 +258,7 @@ public class MarketplaceWizard extends DiscoveryWizard implements InstallProfile
 			public void selectionChanged() {
 				super.selectionChanged();
 				profileChangeOperation = null;
+				preResolveProfileChangeOperation();
 			}
 		};
 	}
@@ -277,6 +285,25 @@ public class MarketplaceWizard extends DiscoveryWizard implements InstallProfile
 	public void resetProfileChangeOperation() {
 		profileChangeOperation = null;
 		currentJREPlan = null;
+		preResolveProfileChangeOperation();
+	}
+
+	/**
+	 * Start resolving the provisioning operation for the current selection in the background, so it is ready (or at
+	 * least well on its way) when the user proceeds with the installation.
+	 */
+	private void preResolveProfileChangeOperation() {
+		if (getConfiguration().getCatalogDescriptor() == null
+				|| !getSelectionModel().computeProvisioningOperationViable()) {
+			profileChangeOperationResolver.cancel();
+			return;
+		}
+		try {
+			profileChangeOperationResolver.preResolve(createProfileChangeOperationComputer());
+		} catch (InvocationTargetException | IllegalArgumentException e) {
+			//can't pre-resolve - any problems will be reported when the operation is computed for real
+			profileChangeOperationResolver.cancel();
+		}
 	}
 
 	void initializeInitialSelection() throws CoreException {
@@ -524,6 +551,10 @@ public class MarketplaceWizard extends DiscoveryWizard implements InstallProfile
 
 	@Override
 	public void addPages() {
+		if (!backgroundUpdatesSuspended) {
+			BackgroundUpdateChecker.wizardOpened();
+			backgroundUpdatesSuspended = true;
+		}
 		doDefaultCatalogSelection();
 		super.addPages();
 		featureSelectionWizardPage = new FeatureSelectionWizardPage();
@@ -578,7 +609,12 @@ public class MarketplaceWizard extends DiscoveryWizard implements InstallProfile
 
 	@Override
 	public void dispose() {
+		profileChangeOperationResolver.cancel();
 		removeAddedRepositoryLocations();
+		if (backgroundUpdatesSuspended) {
+			BackgroundUpdateChecker.wizardClosed();
+			backgroundUpdatesSuspended = false;
+		}
 		if (getConfiguration().getCatalogDescriptor() != null) {
 			// remember the catalog for next time.
 			try {
@@ -590,6 +626,7 @@ public class MarketplaceWizard extends DiscoveryWizard implements InstallProfile
 			}
 		}
 		if (getCatalog() != null) {
+			getCatalog().cancelUpdateRefresh();
 			getCatalog().dispose();
 		}
 		super.dispose();
@@ -762,6 +799,60 @@ public class MarketplaceWizard extends DiscoveryWizard implements InstallProfile
 		return null;
 	}
 
+	private ProfileChangeOperationComputer createProfileChangeOperationComputer() throws InvocationTargetException {
+		Map<CatalogItem, Operation> itemToOperation = getSelectionModel().getItemToSelectedOperation();
+		Set<CatalogItem> selectedItems = getSelectionModel().getSelectedCatalogItems();
+		OperationType operationType = null;
+		for (Map.Entry<CatalogItem, Operation> entry : itemToOperation.entrySet()) {
+			if (!selectedItems.contains(entry.getKey())) {
+				continue;
+			}
+			OperationType entryOperationType = OperationType.map(entry.getValue());
+			if (entryOperationType != null) {
+				if (operationType == null || operationType == OperationType.UPDATE || entryOperationType == OperationType.CHANGE) {
+					operationType = entryOperationType;
+				}
+			}
+		}
+		Map<FeatureEntry, Operation> featureEntries = getSelectionModel().getFeatureEntryToOperation(false,
+				false);
+		if (operationType == OperationType.CHANGE || operationType == OperationType.UPDATE) {
+			Set<OperationType> featureOperations = EnumSet.noneOf(OperationType.class);
+			for (Entry<FeatureEntry, Operation> entry : featureEntries.entrySet()) {
+				OperationType operation = OperationType.map(entry.getValue());
+				if (operation != null) {
+					featureOperations.add(operation);
+				}
+			}
+			if (featureOperations.contains(OperationType.INSTALL)
+					&& featureOperations.contains(OperationType.UPDATE)) {
+				//just perform install instead, which covers update
+				featureOperations.remove(OperationType.UPDATE);
+			}
+			if (featureOperations.size() == 1) {
+				operationType = featureOperations.iterator().next();
+			}
+		}
+		URI dependenciesRepository = null;
+		if (getConfiguration().getCatalogDescriptor().getDependenciesRepository() != null) {
+			try {
+				dependenciesRepository = getConfiguration().getCatalogDescriptor()
+						.getDependenciesRepository()
+						.toURI();
+			} catch (URISyntaxException e) {
+				throw new InvocationTargetException(e);
+			}
+		}
+		return new ProfileChangeOperationComputer(
+				operationType,
+				selectedItems,
+				featureEntries.keySet(),
+				dependenciesRepository,
+				getConfiguration().getCatalogDescriptor().isInstallFromAllRepositories() ? ProfileChangeOperationComputer.ResolutionStrategy.FALLBACK_STRATEGY
+						: ProfileChangeOperationComputer.ResolutionStrategy.SELECTED_REPOSITORIES,
+						withRemediation);
+	}
+
 	public void updateProfileChangeOperation() {
 		removeAddedRepositoryLocations();
 		addedRepositoryLocations = null;
@@ -773,63 +864,22 @@ public class MarketplaceWizard extends DiscoveryWizard implements InstallProfile
 			ProfileChangeOperationComputer provisioningOperation = null;
 			try {
 				final Map<CatalogItem, Operation> itemToOperation = getSelectionModel().getItemToSelectedOperation();
-				final Set<CatalogItem> selectedItems = getSelectionModel().getSelectedCatalogItems();
-				OperationType operationType = null;
-				for (Map.Entry<CatalogItem, Operation> entry : itemToOperation.entrySet()) {
-					if (!selectedItems.contains(entry.getKey())) {
-						continue;
-					}
-					OperationType entryOperationType = OperationType.map(entry.getValue());
-					if (entryOperationType != null) {
-						if (operationType == null || operationType == OperationType.UPDATE || entryOperationType == OperationType.CHANGE) {
-							operationType = entryOperationType;
-						}
-					}
-				}
-				Map<FeatureEntry, Operation> featureEntries = getSelectionModel().getFeatureEntryToOperation(false,
-						false);
-				if (operationType == OperationType.CHANGE || operationType == OperationType.UPDATE) {
-					Set<OperationType> featureOperations = EnumSet.noneOf(OperationType.class);
-					for (Entry<FeatureEntry, Operation> entry : featureEntries.entrySet()) {
-						OperationType operation = OperationType.map(entry.getValue());
-						if (operation != null) {
-							featureOperations.add(operation);
-						}
-					}
-					if (featureOperations.contains(OperationType.INSTALL)
-							&& featureOperations.contains(OperationType.UPDATE)) {
-						//just perform install instead, which covers update
-						featureOperations.remove(OperationType.UPDATE);
-					}
-					if (featureOperations.size() == 1) {
-						operationType = featureOperations.iterator().next();
-					}
-				}
-				URI dependenciesRepository = null;
-				if (getConfiguration().getCatalogDescriptor().getDependenciesRepository() != null) {
-					try {
-						dependenciesRepository = getConfiguration().getCatalogDescriptor()
-								.getDependenciesRepository()
-								.toURI();
-					} catch (URISyntaxException e) {
-						throw new InvocationTargetException(e);
-					}
-				}
-				provisioningOperation = new ProfileChangeOperationComputer(
-						operationType,
-						selectedItems,
-						featureEntries.keySet(),
-						dependenciesRepository,
-						getConfiguration().getCatalogDescriptor().isInstallFromAllRepositories() ? ProfileChangeOperationComputer.ResolutionStrategy.FALLBACK_STRATEGY
-								: ProfileChangeOperationComputer.ResolutionStrategy.SELECTED_REPOSITORIES,
-								withRemediation);
-				wizardContainer.run(true, true, provisioningOperation);
+				provisioningOperation = createProfileChangeOperationComputer();
+				OperationType operationType = provisioningOperation.getOperationType();
+
+				final ProfileChangeOperationComputer computer = provisioningOperation;
+				final Resolution[] resolution = new Resolution[1];
+				wizardContainer.run(true, true,
+						monitor -> resolution[0] = profileChangeOperationResolver.resolve(computer, monitor));
+				//this might be the computer of a matching pre-resolution
+				provisioningOperation = resolution[0].getComputer();
 
 				profileChangeOperation = provisioningOperation.getOperation();
 				operationIUs = provisioningOperation.getIus();
 				addedRepositoryLocations = provisioningOperation.getAddedRepositoryLocations();
 				operationNewInstallItems = computeNewInstallCatalogItems();
 				errorMessage = provisioningOperation.getErrorMessage();
+				currentJREPlan = resolution[0].getCurrentJREPlan();
 
 				final IStatus result = profileChangeOperation.getResolutionResult();
 				if (result != null && operationIUs != null && operationIUs.length > 0
@@ -859,23 +909,6 @@ public class MarketplaceWizard extends DiscoveryWizard implements InstallProfile
 						job.schedule();
 					}
 				}
-				if (ProvisioningUI.getDefaultUI().getPolicy().getCheckAgainstCurrentExecutionEnvironment()) {
-					if ((profileChangeOperation instanceof RemediationOperation)
-							&& ((RemediationOperation) profileChangeOperation).getCurrentRemedy() == null) {
-						// "Dirty" workaround, see bug 561865: To be able to calculate a plan while checking compatibility to the running JRE, we set the current remedy to the best solution found, here.
-						// This is reset afterwards, but not reresolved since this costs extra time and does not seem to be needed.
-						RemediationOperation remediationOperation = (RemediationOperation) profileChangeOperation;
-						try {
-							remediationOperation.setCurrentRemedy(
-									((RemediationOperation) profileChangeOperation).bestSolutionChangingTheRequest());
-							wizardContainer.run(true, false, monitor -> profileChangeOperation.resolveModal(monitor));
-						} finally {
-							remediationOperation.setCurrentRemedy(null);
-						}
-					}
-					wizardContainer.run(true, false, monitor -> currentJREPlan = ProvUI
-							.toCompabilityWithCurrentJREProvisioningPlan(profileChangeOperation, monitor));
-				}
 			} catch (InvocationTargetException e) {
 				Throwable cause = e.getCause();
 				IStatus status;
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2009, 2018 Tasktop Technologies and others.
+ * Copyright (c) 2009, 2019 Tasktop Technologies and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v2.0
  * which accompanies this distribution, and is available at
@@ -22,22 +22,20 @@ import org.eclipse.core.runtime.Assert;
 import org.eclipse.core.runtime.Platform;
 import org.eclipse.epp.internal.mpc.core.util.TextUtil;
 import org.eclipse.epp.internal.mpc.ui.MarketplaceClientUi;
+import org.eclipse.epp.internal.mpc.ui.MarketplaceClientUiResources;
 import org.eclipse.epp.internal.mpc.ui.catalog.MarketplaceCatalogSource;
 import org.eclipse.epp.internal.mpc.ui.catalog.MarketplaceDiscoveryStrategy;
 import org.eclipse.epp.internal.mpc.ui.catalog.ResourceProvider;
 import org.eclipse.epp.internal.mpc.ui.catalog.ResourceProvider.ResourceReceiver;
 import org.eclipse.epp.internal.mpc.ui.css.StyleHelper;
-import org.eclipse.epp.internal.mpc.ui.util.Util;
 import org.eclipse.equinox.internal.p2.discovery.model.Overview;
 import org.eclipse.equinox.internal.p2.ui.discovery.util.WorkbenchUtil;
 import org.eclipse.jface.layout.GridDataFactory;
 import org.eclipse.jface.layout.GridLayoutFactory;
-import org.eclipse.jface.resource.ImageDescriptor;
 import org.eclipse.jface.resource.JFaceResources;
 import org.eclipse.jface.window.ToolTip;
 import org.eclipse.osgi.util.NLS;
 import org.eclipse.swt.SWT;
-import org.eclipse.swt.SWTException;
 import org.eclipse.swt.browser.Browser;
 import org.eclipse.swt.browser.LocationEvent;
 import org.eclipse.swt.browser.LocationListener;
@@ -50,7 +48,6 @@ import org.eclipse.swt.graphics.Cursor;
 import org.eclipse.swt.graphics.Font;
 import org.eclipse.swt.graphics.FontData;
 import org.eclipse.swt.graphics.GC;
-import org.eclipse.swt.graphics.Image;
 import org.eclipse.swt.graphics.Point;
 import org.eclipse.swt.graphics.Rectangle;
 import org.eclipse.swt.layout.GridData;
@@ -317,39 +314,30 @@ class OverviewToolTip extends ToolTip {
 	private void provideImage(final Label imageLabel, MarketplaceCatalogSource discoverySource, final String imagePath) {
 		ResourceProvider resourceProvider = discoverySource.getResourceProvider();
 		MarketplaceDiscoveryStrategy.cacheResource(resourceProvider, overview.getItem(), imagePath);
-		resourceProvider.provideResource(new ResourceReceiver<ImageDescriptor>() {
+		resourceProvider.provideResource(new ResourceReceiver<URL>() {
 
 			@Override
-			public ImageDescriptor processResource(URL resource) {
-				return ImageDescriptor.createFromURL(resource);
+			public URL processResource(URL resource) {
+				return resource;
 			}
 
 			@Override
-			public void setResource(final ImageDescriptor resource) {
+			public void setResource(final URL resource) {
 				if (resource != null && imageLabel != null && !imageLabel.isDisposed()) {
 					imageLabel.getDisplay().asyncExec(() -> {
 						if (!imageLabel.isDisposed()) {
-							try {
-								Image image = resource.createImage();
-								if (image != null) {
-									Rectangle imageBounds = image.getBounds();
-									if (imageBounds.width > SCREENSHOT_WIDTH
-											|| imageBounds.height > SCREENSHOT_HEIGHT) {
-										final Image scaledImage = Util.scaleImage(image, SCREENSHOT_WIDTH,
-												SCREENSHOT_HEIGHT);
-										Image originalImage = image;
-										image = scaledImage;
-										originalImage.dispose();
-									}
-									final Image fimage = image;
-									imageLabel.addDisposeListener(e -> fimage.dispose());
-									imageLabel.setImage(image);
+							//decoded and scaled down off the UI thread, so we never keep the full-size screenshot
+							MarketplaceClientUiResources.getInstance()
+							.getImageCache()
+							.load(resource, SCREENSHOT_WIDTH, SCREENSHOT_HEIGHT, reference -> {
+								if (reference == null) {
+									// already logged, probably a bad image format
+									return;
 								}
-							} catch (SWTException e) {
-								// ignore, probably a bad image format
-								MarketplaceClientUi.error(NLS.bind(Messages.OverviewToolTip_cannotRenderImage_reason,
-										imagePath, e.getMessage()), e);
-							}
+								if (reference.releaseOnDispose(imageLabel)) {
+									imageLabel.setImage(reference.getImage());
+								}
+							});
 						}
 					});
 				}